@@ -0,0 +1,463 @@
+package org.apache.lucene.codecs.impact;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.FieldsConsumer;
+import org.apache.lucene.codecs.FieldsProducer;
+import org.apache.lucene.codecs.PostingsConsumer;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.TermStats;
+import org.apache.lucene.codecs.TermsConsumer;
+import org.apache.lucene.codecs.lucene41.Lucene41PostingsFormat; // javadocs
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FilterAtomicReader.FilterTerms;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+
+/**
+ * Wraps {@link Lucene41PostingsFormat} and additionally stores, for each
+ * term, its postings sorted by impact, so that top-k queries can read the
+ * documents that contribute the most to the score first and stop early.
+ * See {@link ImpactOrderedQuery}.
+ *
+ * <p>The impact of a document for a term is the {@link #impactLevel level}
+ * of the term's frequency in the document, a logarithmic quantization: all
+ * documents whose frequency is in [2<sup>level-1</sup>, 2<sup>level</sup>)
+ * have the same impact. The postings of a term are written as segments of
+ * documents of equal impact, from the highest impact to the lowest, each
+ * segment being in docID order. Postings in docID order are still written
+ * by the wrapped format and used by all other queries.
+ *
+ * <p>This trades indexing time and disk space for query speed on
+ * indexes that are mostly static, and only makes sense for a few fields,
+ * selected through {@link
+ * org.apache.lucene.codecs.perfield.PerFieldPostingsFormat}. Only terms
+ * whose docFreq is at least <code>minDocFreq</code> get impact-ordered
+ * postings; the postings of rarer terms are cheap to sort at search time.
+ *
+ * <p>The format of the impacts file is as follows:
+ * <ul>
+ * <li>Impacts (.imp) --&gt; Header, TermImpacts<sup>NumTerms</sup>,
+ * Directory, DirectoryOffset</li>
+ * <li>TermImpacts --&gt; NumSegments, Segment<sup>NumSegments</sup></li>
+ * <li>Segment --&gt; Level, Count, DocDelta<sup>Count</sup></li>
+ * <li>Directory --&gt; NumFields, &lt;FieldNumber, NumTerms,
+ * &lt;Term, TermImpactsPointer&gt;<sup>NumTerms</sup>&gt;<sup>NumFields</sup></li>
+ * <li>Header --&gt; {@link CodecUtil#writeHeader CodecHeader}</li>
+ * <li>NumSegments, Level, Count, DocDelta, NumFields, FieldNumber, NumTerms
+ * --&gt; {@link DataOutput#writeVInt VInt}</li>
+ * <li>Term --&gt; term length as a {@link DataOutput#writeVInt VInt},
+ * followed by the term bytes</li>
+ * <li>TermImpactsPointer --&gt; {@link DataOutput#writeVLong VLong}, the
+ * difference with the pointer of the previous term of the field</li>
+ * <li>DirectoryOffset --&gt; {@link DataOutput#writeLong Uint64}</li>
+ * </ul>
+ * <p>DocDelta is the difference between a document and the previous
+ * document of the segment, or the document itself for the first document
+ * of a segment.
+ *
+ * @lucene.experimental
+ */
+public final class ImpactOrderedPostingsFormat extends PostingsFormat {
+
+  /** Highest impact level. */
+  public static final int MAX_LEVEL = 31;
+
+  /** Default minimum docFreq of the terms that get impact-ordered
+   *  postings. */
+  public static final int DEFAULT_MIN_DOC_FREQ = 128;
+
+  static final String CODEC_NAME = "ImpactOrdered";
+  static final int VERSION_START = 0;
+  static final int VERSION_CURRENT = VERSION_START;
+
+  /** Extension of the impacts file */
+  static final String IMPACTS_EXTENSION = "imp";
+
+  private final int minDocFreq;
+
+  /** Creates a format that writes impact-ordered postings for the terms
+   *  with a docFreq of at least {@link #DEFAULT_MIN_DOC_FREQ}. */
+  public ImpactOrderedPostingsFormat() {
+    this(DEFAULT_MIN_DOC_FREQ);
+  }
+
+  /** Creates a format that writes impact-ordered postings for the terms
+   *  with a docFreq of at least <code>minDocFreq</code>. */
+  public ImpactOrderedPostingsFormat(int minDocFreq) {
+    super(CODEC_NAME);
+    if (minDocFreq < 1) {
+      throw new IllegalArgumentException("minDocFreq must be >= 1 (got " + minDocFreq + ")");
+    }
+    this.minDocFreq = minDocFreq;
+  }
+
+  /** Returns the impact level of a term that occurs <code>freq</code>
+   *  times in a document, between 1 and {@link #MAX_LEVEL}. Documents of
+   *  fields that don't index frequencies all have level 1. */
+  public static int impactLevel(int freq) {
+    return freq <= 1 ? 1 : 32 - Integer.numberOfLeadingZeros(freq);
+  }
+
+  @Override
+  public String toString() {
+    return getName() + "(minDocFreq=" + minDocFreq + ")";
+  }
+
+  @Override
+  public FieldsConsumer fieldsConsumer(SegmentWriteState state) throws IOException {
+    final FieldsConsumer delegate = PostingsFormat.forName("Lucene41").fieldsConsumer(state);
+    boolean success = false;
+    try {
+      final FieldsConsumer consumer = new ImpactFieldsConsumer(delegate, state);
+      success = true;
+      return consumer;
+    } finally {
+      if (!success) {
+        IOUtils.closeWhileHandlingException(delegate);
+      }
+    }
+  }
+
+  @Override
+  public FieldsProducer fieldsProducer(SegmentReadState state) throws IOException {
+    final FieldsProducer delegate = PostingsFormat.forName("Lucene41").fieldsProducer(state);
+    boolean success = false;
+    try {
+      final FieldsProducer producer = new ImpactFieldsProducer(delegate, state);
+      success = true;
+      return producer;
+    } finally {
+      if (!success) {
+        IOUtils.closeWhileHandlingException(delegate);
+      }
+    }
+  }
+
+  private static String impactsFileName(String segmentName, String segmentSuffix) {
+    return IndexFileNames.segmentFileName(segmentName, segmentSuffix, IMPACTS_EXTENSION);
+  }
+
+  // terms of a field that have impact-ordered postings, in order
+  private static final class FieldImpacts {
+    final int fieldNumber;
+    final List<BytesRef> terms = new ArrayList<BytesRef>();
+    long[] pointers = new long[8];
+
+    FieldImpacts(int fieldNumber) {
+      this.fieldNumber = fieldNumber;
+    }
+  }
+
+  private final class ImpactFieldsConsumer extends FieldsConsumer {
+    private final FieldsConsumer delegate;
+    private final IndexOutput out;
+    private final List<FieldImpacts> fields = new ArrayList<FieldImpacts>();
+
+    ImpactFieldsConsumer(FieldsConsumer delegate, SegmentWriteState state) throws IOException {
+      this.delegate = delegate;
+      out = state.directory.createOutput(impactsFileName(state.segmentInfo.name, state.segmentSuffix), state.context);
+      boolean success = false;
+      try {
+        CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+        success = true;
+      } finally {
+        if (!success) {
+          IOUtils.closeWhileHandlingException(out);
+        }
+      }
+    }
+
+    @Override
+    public TermsConsumer addField(FieldInfo field) throws IOException {
+      final FieldImpacts fieldImpacts = new FieldImpacts(field.number);
+      fields.add(fieldImpacts);
+      return new ImpactTermsConsumer(delegate.addField(field), fieldImpacts);
+    }
+
+    @Override
+    public void close() throws IOException {
+      boolean success = false;
+      try {
+        delegate.close();
+        final long dirOffset = out.getFilePointer();
+        out.writeVInt(fields.size());
+        for (FieldImpacts field : fields) {
+          out.writeVInt(field.fieldNumber);
+          out.writeVInt(field.terms.size());
+          long lastPointer = 0;
+          for (int i = 0; i < field.terms.size(); i++) {
+            final BytesRef term = field.terms.get(i);
+            out.writeVInt(term.length);
+            out.writeBytes(term.bytes, term.offset, term.length);
+            out.writeVLong(field.pointers[i] - lastPointer);
+            lastPointer = field.pointers[i];
+          }
+        }
+        out.writeLong(dirOffset);
+        success = true;
+      } finally {
+        if (success) {
+          IOUtils.close(out);
+        } else {
+          IOUtils.closeWhileHandlingException(out);
+        }
+      }
+    }
+
+    private final class ImpactTermsConsumer extends TermsConsumer {
+      private final TermsConsumer delegate;
+      private final FieldImpacts fieldImpacts;
+      private final BufferingPostingsConsumer postings = new BufferingPostingsConsumer();
+
+      ImpactTermsConsumer(TermsConsumer delegate, FieldImpacts fieldImpacts) {
+        this.delegate = delegate;
+        this.fieldImpacts = fieldImpacts;
+      }
+
+      @Override
+      public PostingsConsumer startTerm(BytesRef text) throws IOException {
+        postings.reset(delegate.startTerm(text));
+        return postings;
+      }
+
+      @Override
+      public void finishTerm(BytesRef text, TermStats stats) throws IOException {
+        if (stats.docFreq >= minDocFreq) {
+          assert postings.count == stats.docFreq;
+          final int termIndex = fieldImpacts.terms.size();
+          fieldImpacts.terms.add(BytesRef.deepCopyOf(text));
+          fieldImpacts.pointers = ArrayUtil.grow(fieldImpacts.pointers, termIndex + 1);
+          fieldImpacts.pointers[termIndex] = out.getFilePointer();
+          writeImpacts(new ImpactsEnum.BucketedImpactsEnum(postings.docs, postings.levels, postings.count));
+        }
+        delegate.finishTerm(text, stats);
+      }
+
+      private void writeImpacts(ImpactsEnum.BucketedImpactsEnum impacts) throws IOException {
+        out.writeVInt(impacts.numSegments());
+        while (impacts.nextSegment()) {
+          final int count = impacts.count();
+          final int[] docs = impacts.docs();
+          out.writeVInt(impacts.level());
+          out.writeVInt(count);
+          int lastDoc = 0;
+          for (int i = 0; i < count; i++) {
+            out.writeVInt(docs[i] - lastDoc);
+            lastDoc = docs[i];
+          }
+        }
+      }
+
+      @Override
+      public void finish(long sumTotalTermFreq, long sumDocFreq, int docCount) throws IOException {
+        delegate.finish(sumTotalTermFreq, sumDocFreq, docCount);
+      }
+
+      @Override
+      public Comparator<BytesRef> getComparator() throws IOException {
+        return delegate.getComparator();
+      }
+    }
+  }
+
+  // records the documents and impact levels of the current term
+  private static final class BufferingPostingsConsumer extends PostingsConsumer {
+    private PostingsConsumer delegate;
+    int[] docs = new int[16];
+    int[] levels = new int[16];
+    int count;
+
+    void reset(PostingsConsumer delegate) {
+      this.delegate = delegate;
+      count = 0;
+    }
+
+    @Override
+    public void startDoc(int docID, int freq) throws IOException {
+      if (count == docs.length) {
+        docs = ArrayUtil.grow(docs, count + 1);
+        levels = ArrayUtil.grow(levels, docs.length);
+      }
+      docs[count] = docID;
+      levels[count] = impactLevel(freq);
+      count++;
+      delegate.startDoc(docID, freq);
+    }
+
+    @Override
+    public void addPosition(int position, BytesRef payload, int startOffset, int endOffset) throws IOException {
+      delegate.addPosition(position, payload, startOffset, endOffset);
+    }
+
+    @Override
+    public void finishDoc() throws IOException {
+      delegate.finishDoc();
+    }
+  }
+
+  private static final class ImpactFieldsProducer extends FieldsProducer {
+    private final FieldsProducer delegate;
+    private final IndexInput in;
+    private final Map<String,TermPointers> fields = new HashMap<String,TermPointers>();
+
+    ImpactFieldsProducer(FieldsProducer delegate, SegmentReadState state) throws IOException {
+      this.delegate = delegate;
+      in = state.dir.openInput(impactsFileName(state.segmentInfo.name, state.segmentSuffix), state.context);
+      boolean success = false;
+      try {
+        CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+        in.seek(in.length() - 8);
+        in.seek(in.readLong());
+        final int numFields = in.readVInt();
+        for (int i = 0; i < numFields; i++) {
+          final FieldInfo fieldInfo = state.fieldInfos.fieldInfo(in.readVInt());
+          final TermPointers pointers = new TermPointers(in, in.readVInt());
+          if (pointers.numTerms > 0) {
+            fields.put(fieldInfo.name, pointers);
+          }
+        }
+        success = true;
+      } finally {
+        if (!success) {
+          IOUtils.closeWhileHandlingException(in);
+        }
+      }
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      return delegate.iterator();
+    }
+
+    @Override
+    public Terms terms(String field) throws IOException {
+      final Terms terms = delegate.terms(field);
+      if (terms == null) {
+        return null;
+      }
+      final TermPointers pointers = fields.get(field);
+      return new ImpactOrderedTerms(terms, in, pointers);
+    }
+
+    @Override
+    public int size() {
+      return delegate.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+      IOUtils.close(delegate, in);
+    }
+  }
+
+  // sorted terms that have impact-ordered postings, and their pointers
+  private static final class TermPointers {
+    final int numTerms;
+    final byte[] bytes;
+    final int[] offsets;
+    final long[] pointers;
+
+    TermPointers(IndexInput in, int numTerms) throws IOException {
+      this.numTerms = numTerms;
+      offsets = new int[numTerms + 1];
+      pointers = new long[numTerms];
+      byte[] bytes = new byte[16];
+      int upto = 0;
+      long pointer = 0;
+      for (int i = 0; i < numTerms; i++) {
+        final int length = in.readVInt();
+        bytes = ArrayUtil.grow(bytes, upto + length);
+        in.readBytes(bytes, upto, length);
+        offsets[i] = upto;
+        upto += length;
+        pointer += in.readVLong();
+        pointers[i] = pointer;
+      }
+      offsets[numTerms] = upto;
+      this.bytes = bytes;
+    }
+
+    /** Returns the pointer of the impacts of the term, or -1 if it has none. */
+    long find(BytesRef term) {
+      final BytesRef scratch = new BytesRef(bytes);
+      int lo = 0;
+      int hi = numTerms - 1;
+      while (lo <= hi) {
+        final int mid = (lo + hi) >>> 1;
+        scratch.offset = offsets[mid];
+        scratch.length = offsets[mid + 1] - offsets[mid];
+        final int cmp = scratch.compareTo(term);
+        if (cmp < 0) {
+          lo = mid + 1;
+        } else if (cmp > 0) {
+          hi = mid - 1;
+        } else {
+          return pointers[mid];
+        }
+      }
+      return -1;
+    }
+  }
+
+  /**
+   * The {@link Terms} of a field written with {@link
+   * ImpactOrderedPostingsFormat}, which give access to the impact-ordered
+   * postings of the terms.
+   */
+  public static final class ImpactOrderedTerms extends FilterTerms {
+    private final IndexInput in;
+    private final TermPointers pointers;
+
+    ImpactOrderedTerms(Terms terms, IndexInput in, TermPointers pointers) {
+      super(terms);
+      this.in = in;
+      this.pointers = pointers;
+    }
+
+    /** Returns the impact-ordered postings of <code>term</code>, or null if
+     *  the term doesn't exist or its docFreq is less than the
+     *  <code>minDocFreq</code> of the format when it was written. */
+    public ImpactsEnum impacts(BytesRef term) throws IOException {
+      final long pointer = pointers == null ? -1 : pointers.find(term);
+      if (pointer == -1) {
+        return null;
+      }
+      final IndexInput clone = in.clone();
+      clone.seek(pointer);
+      return new ImpactsEnum.DiskImpactsEnum(clone);
+    }
+  }
+}
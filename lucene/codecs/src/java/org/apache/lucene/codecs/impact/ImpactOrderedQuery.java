@@ -0,0 +1,629 @@
+package org.apache.lucene.codecs.impact;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.codecs.impact.ImpactOrderedPostingsFormat.ImpactOrderedTerms;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.index.TermState;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.ComplexExplanation;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.ToStringUtils;
+
+/**
+ * A disjunction of terms of a single field that only matches the
+ * <code>topN</code> best scoring documents of each segment, computed
+ * score-at-a-time: the postings of all terms are read by decreasing
+ * impact, and reading stops as soon as the set of the top
+ * <code>topN</code> documents can't change anymore. This is much faster
+ * than scoring every matching document when the field is indexed with
+ * {@link ImpactOrderedPostingsFormat}; postings of other fields or formats
+ * are sorted by impact in memory.
+ *
+ * <p>The score of a document is the sum, over the query terms it contains,
+ * of <code>idf(t) * sqrt(2<sup>level-1</sup>)</code>, where level is the
+ * {@link ImpactOrderedPostingsFormat#impactLevel impact level} of the term
+ * in the document, ie. the classic <code>tf * idf</code> on quantized term
+ * frequencies, without length normalization. It does not use the
+ * {@link org.apache.lucene.search.similarities.Similarity} of the searcher.
+ *
+ * <p>Searching for the top N hits with N &lt;= <code>topN</code> returns
+ * the same hits as scoring all matching documents would, except that
+ * documents that have the same score as the N-th hit may be different.
+ *
+ * @lucene.experimental
+ */
+public class ImpactOrderedQuery extends Query {
+
+  private String field;
+  private final List<Term> terms = new ArrayList<Term>(4);
+  private final int topN;
+
+  /** Creates a query that matches the <code>topN</code> best scoring
+   *  documents of each segment. */
+  public ImpactOrderedQuery(int topN) {
+    if (topN < 1) {
+      throw new IllegalArgumentException("topN must be >= 1 (got " + topN + ")");
+    }
+    this.topN = topN;
+  }
+
+  /** Adds a term to the query. All terms must be in the same field. */
+  public void add(Term term) {
+    if (terms.size() == 0) {
+      field = term.field();
+    } else if (!term.field().equals(field)) {
+      throw new IllegalArgumentException("All terms must be in the same field (" + field + "): " + term);
+    }
+    terms.add(term);
+  }
+
+  /** Returns the terms of this query. */
+  public Term[] getTerms() {
+    return terms.toArray(new Term[terms.size()]);
+  }
+
+  /** Returns the maximum number of documents this query matches per
+   *  segment. */
+  public int getTopN() {
+    return topN;
+  }
+
+  /** Returns the score contribution of a term of weight
+   *  <code>termWeight</code> to a document where it has the given impact
+   *  level. */
+  static float contribution(float termWeight, int level) {
+    return termWeight * (float) Math.sqrt(1 << (level - 1));
+  }
+
+  @Override
+  public Weight createWeight(IndexSearcher searcher) throws IOException {
+    return new ImpactOrderedWeight(searcher);
+  }
+
+  @Override
+  public void extractTerms(Set<Term> queryTerms) {
+    queryTerms.addAll(terms);
+  }
+
+  @Override
+  public String toString(String f) {
+    StringBuilder buffer = new StringBuilder();
+    if (field != null && !field.equals(f)) {
+      buffer.append(field);
+      buffer.append(":");
+    }
+    buffer.append("impacts(");
+    for (int i = 0; i < terms.size(); i++) {
+      if (i != 0) {
+        buffer.append(" ");
+      }
+      buffer.append(terms.get(i).text());
+    }
+    buffer.append(")~");
+    buffer.append(topN);
+    buffer.append(ToStringUtils.boost(getBoost()));
+    return buffer.toString();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof ImpactOrderedQuery)) {
+      return false;
+    }
+    ImpactOrderedQuery other = (ImpactOrderedQuery) o;
+    return getBoost() == other.getBoost()
+        && topN == other.topN
+        && terms.equals(other.terms);
+  }
+
+  @Override
+  public int hashCode() {
+    return Float.floatToIntBits(getBoost()) ^ terms.hashCode() ^ topN;
+  }
+
+  private class ImpactOrderedWeight extends Weight {
+    private final TermContext[] states;
+    private final float[] idfs;
+    private final float[] weights;
+
+    ImpactOrderedWeight(IndexSearcher searcher) throws IOException {
+      final IndexReaderContext context = searcher.getTopReaderContext();
+      states = new TermContext[terms.size()];
+      idfs = new float[terms.size()];
+      weights = new float[terms.size()];
+      final CollectionStatistics collectionStats = terms.size() == 0 ? null : searcher.collectionStatistics(field);
+      for (int i = 0; i < terms.size(); i++) {
+        final Term term = terms.get(i);
+        states[i] = TermContext.build(context, term, true);
+        final TermStatistics termStats = searcher.termStatistics(term, states[i]);
+        idfs[i] = (float) (Math.log(collectionStats.maxDoc() / (double) (termStats.docFreq() + 1)) + 1.0);
+        weights[i] = idfs[i] * getBoost();
+      }
+    }
+
+    @Override
+    public Query getQuery() {
+      return ImpactOrderedQuery.this;
+    }
+
+    @Override
+    public float getValueForNormalization() {
+      float sum = 0;
+      for (float weight : weights) {
+        sum += weight * weight;
+      }
+      return sum;
+    }
+
+    @Override
+    public void normalize(float queryNorm, float topLevelBoost) {
+      for (int i = 0; i < weights.length; i++) {
+        weights[i] = idfs[i] * getBoost() * queryNorm * topLevelBoost;
+      }
+    }
+
+    @Override
+    public Scorer scorer(AtomicReaderContext context, boolean scoreDocsInOrder,
+        boolean topScorer, Bits acceptDocs) throws IOException {
+      if (terms.size() == 0) {
+        return null;
+      }
+      final Terms fieldTerms = context.reader().terms(field);
+      if (fieldTerms == null) {
+        return null;
+      }
+      final ImpactsEnum[] impacts = new ImpactsEnum[terms.size()];
+      TermsEnum termsEnum = null;
+      boolean any = false;
+      for (int i = 0; i < impacts.length; i++) {
+        final TermState state = states[i].get(context.ord);
+        if (state == null) {
+          continue;
+        }
+        if (fieldTerms instanceof ImpactOrderedTerms) {
+          impacts[i] = ((ImpactOrderedTerms) fieldTerms).impacts(terms.get(i).bytes());
+        }
+        if (impacts[i] == null) {
+          // rare term, or not indexed with ImpactOrderedPostingsFormat
+          termsEnum = fieldTerms.iterator(termsEnum);
+          termsEnum.seekExact(terms.get(i).bytes(), state);
+          impacts[i] = ImpactsEnum.fromDocs(termsEnum.docs(null, null, DocsEnum.FLAG_FREQS));
+        }
+        if (impacts[i].nextSegment()) {
+          any = true;
+        } else {
+          impacts[i] = null;
+        }
+      }
+      if (!any) {
+        return null;
+      }
+      final TopImpacts top = new TopImpacts(weights, impacts, acceptDocs, topN);
+      final int[] docs = top.run();
+      if (docs.length == 0) {
+        return null;
+      }
+      final float[] scores;
+      if (top.isComplete()) {
+        scores = top.scores(docs);
+      } else {
+        // documents may miss the contributions of the segments that
+        // were not read
+        scores = score(context, docs);
+      }
+      return new ImpactOrderedScorer(this, docs, scores);
+    }
+
+    /** Computes the scores of the given documents, in increasing order,
+     *  from docID-ordered postings. */
+    private float[] score(AtomicReaderContext context, int[] docs) throws IOException {
+      final float[] scores = new float[docs.length];
+      final Terms fieldTerms = context.reader().terms(field);
+      if (fieldTerms == null) {
+        return scores;
+      }
+      TermsEnum termsEnum = null;
+      for (int i = 0; i < terms.size(); i++) {
+        final TermState state = states[i].get(context.ord);
+        if (state == null) {
+          continue;
+        }
+        termsEnum = fieldTerms.iterator(termsEnum);
+        termsEnum.seekExact(terms.get(i).bytes(), state);
+        final DocsEnum docsEnum = termsEnum.docs(null, null, DocsEnum.FLAG_FREQS);
+        int doc = -1;
+        for (int j = 0; j < docs.length; j++) {
+          if (doc < docs[j]) {
+            doc = docsEnum.advance(docs[j]);
+          }
+          if (doc == docs[j]) {
+            scores[j] += contribution(weights[i], ImpactOrderedPostingsFormat.impactLevel(docsEnum.freq()));
+          }
+        }
+      }
+      return scores;
+    }
+
+    @Override
+    public Explanation explain(AtomicReaderContext context, int doc) throws IOException {
+      final Terms fieldTerms = context.reader().terms(field);
+      final ComplexExplanation result = new ComplexExplanation();
+      result.setDescription("sum of:");
+      float sum = 0;
+      TermsEnum termsEnum = null;
+      for (int i = 0; fieldTerms != null && i < terms.size(); i++) {
+        final TermState state = states[i].get(context.ord);
+        if (state == null) {
+          continue;
+        }
+        termsEnum = fieldTerms.iterator(termsEnum);
+        termsEnum.seekExact(terms.get(i).bytes(), state);
+        final DocsEnum docsEnum = termsEnum.docs(context.reader().getLiveDocs(), null, DocsEnum.FLAG_FREQS);
+        if (docsEnum.advance(doc) == doc) {
+          final int level = ImpactOrderedPostingsFormat.impactLevel(docsEnum.freq());
+          final float contribution = contribution(weights[i], level);
+          final Explanation termExpl = new Explanation(contribution, "weight(" + terms.get(i) + "), product of:");
+          termExpl.addDetail(new Explanation(weights[i], "termWeight, idf=" + idfs[i]));
+          termExpl.addDetail(new Explanation(contribution / weights[i], "sqrt(2^(level-1)), level=" + level
+              + " for freq=" + docsEnum.freq()));
+          result.addDetail(termExpl);
+          sum += contribution;
+        }
+      }
+      result.setValue(sum);
+      result.setMatch(sum > 0);
+      if (sum > 0) {
+        // only the top N documents of the segment match, apply the same cut as the scorer
+        final Scorer scorer = scorer(context, true, false, context.reader().getLiveDocs());
+        if (scorer == null || scorer.advance(doc) != doc) {
+          final ComplexExplanation notCollected = new ComplexExplanation(false, 0f,
+              "no match, not among the top " + topN + " documents of the segment, would have scored:");
+          notCollected.addDetail(result);
+          return notCollected;
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Computes the top documents of a segment score-at-a-time. Segments of
+   * postings are read by decreasing contribution to the score. While the
+   * best possible score of a document that has not been seen yet is above
+   * the score of the current N-th document, new documents are added to the
+   * candidates; after that, only the scores of the candidates are updated,
+   * and candidates whose best possible score is below the N-th score are
+   * dropped, until only N candidates are left.
+   */
+  static final class TopImpacts {
+    private final float[] weights;
+    private final ImpactsEnum[] impacts;
+    private final Bits acceptDocs;
+    private final int topN;
+    // the scores of the documents that were added to the candidates, sized
+    // by the number of candidates rather than by maxDoc
+    private final DocScores scores = new DocScores();
+    private int[] candidates = new int[16];
+    private int numCandidates;
+    // scratch min-heap to select the N-th score
+    private float[] heap;
+
+    TopImpacts(float[] weights, ImpactsEnum[] impacts, Bits acceptDocs, int topN) {
+      this.weights = weights;
+      this.impacts = impacts;
+      this.acceptDocs = acceptDocs;
+      this.topN = topN;
+    }
+
+    /** Returns the top documents, in increasing order. */
+    int[] run() throws IOException {
+      boolean addNew = true;
+      while (true) {
+        // the best possible score of a document that has not been seen
+        // yet, and the segment with the highest contribution
+        float bound = 0;
+        int best = -1;
+        float contribution = 0;
+        for (int i = 0; i < impacts.length; i++) {
+          if (impacts[i] != null) {
+            final float c = contribution(weights[i], impacts[i].level());
+            bound += c;
+            if (best == -1 || c > contribution) {
+              best = i;
+              contribution = c;
+            }
+          }
+        }
+
+        if (numCandidates >= topN) {
+          final float minCompetitiveScore = nthScore(topN);
+          if (addNew && bound <= minCompetitiveScore) {
+            addNew = false;
+          }
+          if (!addNew) {
+            prune(minCompetitiveScore - bound);
+            if (numCandidates <= topN) {
+              break;
+            }
+          }
+        }
+        if (best == -1) {
+          break;
+        }
+
+        final ImpactsEnum segment = impacts[best];
+        final int[] docs = segment.docs();
+        final int count = segment.count();
+        for (int i = 0; i < count; i++) {
+          final int doc = docs[i];
+          final int slot = scores.find(doc);
+          if (slot >= 0) {
+            scores.add(slot, contribution);
+          } else if (addNew && (acceptDocs == null || acceptDocs.get(doc))) {
+            scores.put(doc, contribution);
+            if (numCandidates == candidates.length) {
+              candidates = ArrayUtil.grow(candidates, numCandidates + 1);
+            }
+            candidates[numCandidates++] = doc;
+          }
+        }
+        if (!segment.nextSegment()) {
+          impacts[best] = null;
+        }
+      }
+
+      if (numCandidates > topN) {
+        // all postings were read, or ties
+        final float minScore = nthScore(topN);
+        int numAbove = 0;
+        for (int i = 0; i < numCandidates; i++) {
+          if (scores.get(candidates[i]) > minScore) {
+            numAbove++;
+          }
+        }
+        // keep the documents above the N-th score, and the first documents
+        // that have the N-th score
+        int ties = topN - numAbove;
+        int upto = 0;
+        Arrays.sort(candidates, 0, numCandidates);
+        for (int i = 0; i < numCandidates; i++) {
+          final float score = scores.get(candidates[i]);
+          if (score > minScore || (score == minScore && ties-- > 0)) {
+            candidates[upto++] = candidates[i];
+          }
+        }
+        numCandidates = upto;
+      } else {
+        Arrays.sort(candidates, 0, numCandidates);
+      }
+      return Arrays.copyOf(candidates, numCandidates);
+    }
+
+    /** Returns true if all postings were read, so that the accumulated
+     *  scores are final. */
+    boolean isComplete() {
+      for (ImpactsEnum segment : impacts) {
+        if (segment != null) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    float[] scores(int[] docs) {
+      final float[] result = new float[docs.length];
+      for (int i = 0; i < docs.length; i++) {
+        result[i] = scores.get(docs[i]);
+      }
+      return result;
+    }
+
+    /** Drops the candidates whose score is less than <code>minScore</code>. */
+    private void prune(float minScore) {
+      int upto = 0;
+      for (int i = 0; i < numCandidates; i++) {
+        if (scores.get(candidates[i]) >= minScore) {
+          candidates[upto++] = candidates[i];
+        }
+      }
+      numCandidates = upto;
+    }
+
+    /** Returns the n-th highest score of the candidates. */
+    private float nthScore(int n) {
+      assert numCandidates >= n;
+      if (heap == null || heap.length < n) {
+        heap = new float[n];
+      }
+      int size = 0;
+      for (int i = 0; i < numCandidates; i++) {
+        final float score = scores.get(candidates[i]);
+        if (size < n) {
+          // sift up
+          int j = size++;
+          while (j > 0 && heap[(j - 1) >>> 1] > score) {
+            heap[j] = heap[(j - 1) >>> 1];
+            j = (j - 1) >>> 1;
+          }
+          heap[j] = score;
+        } else if (score > heap[0]) {
+          // replace the minimum and sift down
+          int j = 0;
+          while (true) {
+            int child = 2 * j + 1;
+            if (child >= n) {
+              break;
+            }
+            if (child + 1 < n && heap[child + 1] < heap[child]) {
+              child++;
+            }
+            if (heap[child] >= score) {
+              break;
+            }
+            heap[j] = heap[child];
+            j = child;
+          }
+          heap[j] = score;
+        }
+      }
+      return heap[0];
+    }
+  }
+
+  /** Open addressing hash map from doc IDs to scores. */
+  static final class DocScores {
+    private static final int EMPTY = -1;
+    private int[] docs;
+    private float[] scores;
+    private int size;
+    private int mask;
+
+    DocScores() {
+      allocate(16);
+    }
+
+    private void allocate(int capacity) {
+      docs = new int[capacity];
+      Arrays.fill(docs, EMPTY);
+      scores = new float[capacity];
+      mask = capacity - 1;
+    }
+
+    private static int hash(int doc) {
+      // spread consecutive doc IDs over the table
+      return doc * 0x9E3779B9;
+    }
+
+    /** Returns the slot of <code>doc</code>, or -1 if it has no score. */
+    int find(int doc) {
+      int slot = hash(doc) & mask;
+      while (true) {
+        final int d = docs[slot];
+        if (d == doc) {
+          return slot;
+        } else if (d == EMPTY) {
+          return -1;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+
+    /** Returns the score of <code>doc</code>, or 0 if it has none. */
+    float get(int doc) {
+      final int slot = find(doc);
+      return slot == -1 ? 0 : scores[slot];
+    }
+
+    /** Adds <code>score</code> to the score in <code>slot</code>. */
+    void add(int slot, float score) {
+      scores[slot] += score;
+    }
+
+    /** Sets the score of <code>doc</code>, which must not have one yet. */
+    void put(int doc, float score) {
+      assert find(doc) == -1;
+      if (++size > (docs.length >>> 1)) {
+        final int[] oldDocs = docs;
+        final float[] oldScores = scores;
+        allocate(docs.length << 1);
+        for (int i = 0; i < oldDocs.length; i++) {
+          if (oldDocs[i] != EMPTY) {
+            insert(oldDocs[i], oldScores[i]);
+          }
+        }
+      }
+      insert(doc, score);
+    }
+
+    private void insert(int doc, float score) {
+      int slot = hash(doc) & mask;
+      while (docs[slot] != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      docs[slot] = doc;
+      scores[slot] = score;
+    }
+  }
+
+  /** Iterates over precomputed top documents. */
+  private static final class ImpactOrderedScorer extends Scorer {
+    private final int[] docs;
+    private final float[] scores;
+    private int upto = -1;
+    private int doc = -1;
+
+    ImpactOrderedScorer(Weight weight, int[] docs, float[] scores) {
+      super(weight);
+      this.docs = docs;
+      this.scores = scores;
+    }
+
+    @Override
+    public int docID() {
+      return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+      if (++upto < docs.length) {
+        doc = docs[upto];
+      } else {
+        doc = NO_MORE_DOCS;
+      }
+      return doc;
+    }
+
+    @Override
+    public int advance(int target) {
+      while (doc < target) {
+        nextDoc();
+      }
+      return doc;
+    }
+
+    @Override
+    public float score() {
+      return scores[upto];
+    }
+
+    @Override
+    public int freq() {
+      return 1;
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package org.apache.lucene.codecs.impact;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Iterates over the postings of a term by decreasing impact: the documents
+ * are grouped in segments of equal {@link
+ * ImpactOrderedPostingsFormat#impactLevel impact level}, the segments are
+ * returned from the highest level to the lowest, and the documents of a
+ * segment are in increasing docID order.
+ *
+ * <p>Deleted documents are not filtered out.
+ *
+ * @lucene.experimental
+ */
+public abstract class ImpactsEnum {
+
+  /** Sole constructor. (For invocation by subclass
+   *  constructors, typically implicit.) */
+  protected ImpactsEnum() {
+  }
+
+  /** Moves to the next segment, and returns false if there are no more
+   *  segments. Must be called once before the first segment can be
+   *  read. */
+  public abstract boolean nextSegment() throws IOException;
+
+  /** Returns the impact level of the documents of the current segment. */
+  public abstract int level();
+
+  /** Returns the number of documents in the current segment. */
+  public abstract int count();
+
+  /** Returns the documents of the current segment, in the {@link #count()}
+   *  first slots of the returned array, which may be reused by the next
+   *  call. */
+  public abstract int[] docs() throws IOException;
+
+  /**
+   * Reads all documents of <code>docsEnum</code> into memory, and returns
+   * an enum over them by decreasing impact. This is how the postings of
+   * terms that have no impact-ordered postings on disk are processed.
+   * <code>docsEnum</code> must have been requested with freqs, unless its
+   * field doesn't index them.
+   */
+  public static ImpactsEnum fromDocs(DocsEnum docsEnum) throws IOException {
+    int[] docs = new int[16];
+    int[] levels = new int[16];
+    int count = 0;
+    int doc;
+    while ((doc = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+      if (count == docs.length) {
+        docs = ArrayUtil.grow(docs, count + 1);
+        levels = ArrayUtil.grow(levels, docs.length);
+      }
+      docs[count] = doc;
+      levels[count] = ImpactOrderedPostingsFormat.impactLevel(docsEnum.freq());
+      count++;
+    }
+    return new BucketedImpactsEnum(docs, levels, count);
+  }
+
+  /** Groups buffered documents by impact level, with a counting sort. */
+  static final class BucketedImpactsEnum extends ImpactsEnum {
+    private final int[] sortedDocs;
+    // start of the documents of each level in sortedDocs
+    private final int[] starts = new int[ImpactOrderedPostingsFormat.MAX_LEVEL + 2];
+    private int level = ImpactOrderedPostingsFormat.MAX_LEVEL + 1;
+    private int[] docs;
+
+    /** <code>docs</code> must be in increasing order. */
+    BucketedImpactsEnum(int[] docs, int[] levels, int count) {
+      final int[] counts = new int[ImpactOrderedPostingsFormat.MAX_LEVEL + 1];
+      for (int i = 0; i < count; i++) {
+        counts[levels[i]]++;
+      }
+      // highest levels first
+      int upto = 0;
+      for (int l = ImpactOrderedPostingsFormat.MAX_LEVEL; l >= 0; l--) {
+        starts[l + 1] = upto;
+        upto += counts[l];
+      }
+      starts[0] = upto;
+      final int[] next = new int[starts.length];
+      System.arraycopy(starts, 0, next, 0, starts.length);
+      sortedDocs = new int[count];
+      for (int i = 0; i < count; i++) {
+        sortedDocs[next[levels[i] + 1]++] = docs[i];
+      }
+    }
+
+    /** Returns the number of segments. */
+    int numSegments() {
+      int numSegments = 0;
+      for (int l = 1; l <= ImpactOrderedPostingsFormat.MAX_LEVEL; l++) {
+        if (starts[l] > starts[l + 1]) {
+          numSegments++;
+        }
+      }
+      return numSegments;
+    }
+
+    @Override
+    public boolean nextSegment() {
+      while (--level > 0) {
+        if (count() > 0) {
+          return true;
+        }
+      }
+      level = 0;
+      return false;
+    }
+
+    @Override
+    public int level() {
+      return level;
+    }
+
+    @Override
+    public int count() {
+      return starts[level] - starts[level + 1];
+    }
+
+    @Override
+    public int[] docs() {
+      final int count = count();
+      if (docs == null || docs.length < count) {
+        docs = new int[ArrayUtil.oversize(count, 4)];
+      }
+      System.arraycopy(sortedDocs, starts[level + 1], docs, 0, count);
+      return docs;
+    }
+  }
+
+  /** Reads impact-ordered postings written by {@link
+   *  ImpactOrderedPostingsFormat}. */
+  static final class DiskImpactsEnum extends ImpactsEnum {
+    private final IndexInput in;
+    private int segmentsLeft;
+    private int level;
+    private int count;
+    private boolean docsRead = true;
+    private int[] docs = new int[16];
+
+    DiskImpactsEnum(IndexInput in) throws IOException {
+      this.in = in;
+      segmentsLeft = in.readVInt();
+    }
+
+    @Override
+    public boolean nextSegment() throws IOException {
+      if (!docsRead) {
+        // the documents of the previous segment must be skipped
+        docs();
+      }
+      if (segmentsLeft == 0) {
+        level = 0;
+        count = 0;
+        return false;
+      }
+      segmentsLeft--;
+      level = in.readVInt();
+      count = in.readVInt();
+      docsRead = false;
+      return true;
+    }
+
+    @Override
+    public int level() {
+      return level;
+    }
+
+    @Override
+    public int count() {
+      return count;
+    }
+
+    @Override
+    public int[] docs() throws IOException {
+      if (!docsRead) {
+        if (docs.length < count) {
+          docs = new int[ArrayUtil.oversize(count, 4)];
+        }
+        int doc = 0;
+        for (int i = 0; i < count; i++) {
+          doc += in.readVInt();
+          docs[i] = doc;
+        }
+        docsRead = true;
+      }
+      return docs;
+    }
+  }
+}
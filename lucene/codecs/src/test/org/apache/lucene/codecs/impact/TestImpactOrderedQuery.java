@@ -0,0 +1,177 @@
+package org.apache.lucene.codecs.impact;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene41.Lucene41Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestImpactOrderedQuery extends LuceneTestCase {
+
+  public void testSameHitsAsFullScoring() throws Exception {
+    Directory dir = newDirectory();
+    final PostingsFormat impacts = new ImpactOrderedPostingsFormat(_TestUtil.nextInt(random(), 1, 50));
+    final Codec codec = new Lucene41Codec() {
+      @Override
+      public PostingsFormat getPostingsFormatForField(String field) {
+        // "plain" has no impact-ordered postings, they are sorted in memory
+        return field.equals("body") ? impacts : super.getPostingsFormatForField(field);
+      }
+    };
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setCodec(codec);
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+    final int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; i++) {
+      StringBuilder sb = new StringBuilder();
+      final int length = _TestUtil.nextInt(random(), 1, 50);
+      for (int j = 0; j < length; j++) {
+        // skewed, so that terms have various frequencies
+        sb.append("t").append(Math.min(random().nextInt(30), random().nextInt(30))).append(' ');
+      }
+      Document doc = new Document();
+      doc.add(newStringField("id", Integer.toString(i), Field.Store.NO));
+      doc.add(newTextField("body", sb.toString(), Field.Store.NO));
+      doc.add(newTextField("plain", sb.toString(), Field.Store.NO));
+      w.addDocument(doc);
+      if (random().nextInt(50) == 17) {
+        w.deleteDocuments(new Term("id", Integer.toString(random().nextInt(i + 1))));
+      }
+    }
+    IndexReader r = w.getReader();
+    w.close();
+    // not newSearcher: the searcher must not wrap the reader, so that the
+    // impact-ordered terms are visible
+    IndexSearcher s = new IndexSearcher(r);
+
+    final int iters = atLeast(50);
+    for (int iter = 0; iter < iters; iter++) {
+      final int topN = _TestUtil.nextInt(random(), 1, 20);
+      final int numTerms = _TestUtil.nextInt(random(), 1, 4);
+      for (String field : new String[] {"body", "plain"}) {
+        ImpactOrderedQuery q = new ImpactOrderedQuery(topN);
+        ImpactOrderedQuery full = new ImpactOrderedQuery(Integer.MAX_VALUE);
+        for (int i = 0; i < numTerms; i++) {
+          final Term term = new Term(field, "t" + random().nextInt(35));
+          q.add(term);
+          full.add(term);
+        }
+        if (random().nextBoolean()) {
+          q.setBoost(3f);
+          full.setBoost(3f);
+        }
+        TopDocs hits = s.search(q, topN);
+        TopDocs expected = s.search(full, topN);
+        assertEquals(expected.scoreDocs.length, hits.scoreDocs.length);
+        for (int i = 0; i < hits.scoreDocs.length; i++) {
+          // documents that have the same score may differ
+          assertEquals(expected.scoreDocs[i].score, hits.scoreDocs[i].score, expected.scoreDocs[i].score * 1e-5f);
+        }
+        for (ScoreDoc hit : hits.scoreDocs) {
+          assertEquals(hit.score, s.explain(q, hit.doc).getValue(), hit.score * 1e-5f);
+        }
+      }
+    }
+    r.close();
+    dir.close();
+  }
+
+  public void testSameField() {
+    ImpactOrderedQuery q = new ImpactOrderedQuery(10);
+    q.add(new Term("field", "a"));
+    try {
+      q.add(new Term("other", "b"));
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+  public void testExplainOutsideTopN() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    final String[] bodies = new String[] {"a", "a a a a a a a a", "a b", "b"};
+    for (String body : bodies) {
+      Document doc = new Document();
+      doc.add(newTextField("body", body, Field.Store.NO));
+      w.addDocument(doc);
+    }
+    w.forceMerge(1);
+    IndexReader r = w.getReader();
+    w.close();
+    IndexSearcher s = new IndexSearcher(r);
+    ImpactOrderedQuery q = new ImpactOrderedQuery(1);
+    q.add(new Term("body", "a"));
+    TopDocs hits = s.search(q, 10);
+    assertEquals(1, hits.totalHits);
+    for (int doc = 0; doc < r.maxDoc(); doc++) {
+      // documents that contain the term but are not collected must not match
+      final Explanation expl = s.explain(q, doc);
+      assertEquals(doc == hits.scoreDocs[0].doc, expl.isMatch());
+      if (expl.isMatch()) {
+        assertEquals(hits.scoreDocs[0].score, expl.getValue(), hits.scoreDocs[0].score * 1e-5f);
+      } else {
+        assertEquals(0f, expl.getValue(), 0f);
+      }
+    }
+    r.close();
+    dir.close();
+  }
+
+  public void testDocScores() {
+    final ImpactOrderedQuery.DocScores scores = new ImpactOrderedQuery.DocScores();
+    final Map<Integer,Float> expected = new HashMap<Integer,Float>();
+    final int maxDoc = _TestUtil.nextInt(random(), 1, 100000);
+    final int iters = atLeast(1000);
+    for (int i = 0; i < iters; i++) {
+      final int doc = random().nextInt(maxDoc);
+      final float score = random().nextFloat();
+      final int slot = scores.find(doc);
+      if (expected.containsKey(doc)) {
+        assertTrue(slot >= 0);
+        scores.add(slot, score);
+        expected.put(doc, expected.get(doc) + score);
+      } else {
+        assertEquals(-1, slot);
+        scores.put(doc, score);
+        expected.put(doc, score);
+      }
+    }
+    for (int doc = 0; doc < Math.min(maxDoc, 10000); doc++) {
+      final Float score = expected.get(doc);
+      assertEquals(score == null ? 0f : score.floatValue(), scores.get(doc), 0f);
+    }
+  }
+}
@@ -35,6 +35,7 @@ import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.index.SegmentWriteState;
 import org.apache.lucene.index.TermState;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
@@ -42,6 +43,7 @@ import org.apache.lucene.store.ByteArrayDataInput;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RandomAccessInput;
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
@@ -77,6 +79,14 @@ import org.apache.lucene.util.fst.Util;
  *  but with added logic to break up too-large blocks of all
  *  terms sharing a given prefix into smaller ones.</p>
  *
+ *  <p>The terms index of a field is loaded in memory,
+ *  unless the field has the {@link #FST_OFF_HEAP_KEY}
+ *  attribute and the index file is a {@link
+ *  RandomAccessInput}, eg. when it is opened by {@link
+ *  org.apache.lucene.store.MMapDirectory}: in that case, the
+ *  index is read from the file on every lookup. See
+ *  {@link BlockTreeTermsWriter#BlockTreeTermsWriter(SegmentWriteState,PostingsWriterBase,int,int,boolean)}.</p>
+ *
  *  <p>Use {@link org.apache.lucene.index.CheckIndex} with the <code>-verbose</code>
  *  option to see summary statistics on the blocks in the
  *  dictionary.
@@ -88,9 +98,18 @@ import org.apache.lucene.util.fst.Util;
 
 public class BlockTreeTermsReader extends FieldsProducer {
 
+  /** {@link FieldInfo} attribute which is <code>"true"</code>
+   *  if the terms index of the field should not be loaded
+   *  in memory. */
+  public static final String FST_OFF_HEAP_KEY = BlockTreeTermsReader.class.getSimpleName() + ".fstOffHeap";
+
   // Open input to the main terms dict file (_X.tib)
   private final IndexInput in;
 
+  // Open input to the terms index file (_X.tip) if the
+  // terms index of at least one field is read off-heap
+  private IndexInput indexIn;
+
   //private static final boolean DEBUG = BlockTreeTermsWriter.DEBUG;
 
   // Reads the terms dict entries, to gather state to
@@ -177,7 +196,8 @@ public class BlockTreeTermsReader extends FieldsProducer {
           throw new CorruptIndexException("duplicate field: " + fieldInfo.name + " (resource=" + in + ")");
         }
       }
-      if (indexDivisor != -1) {
+      if (indexDivisor != -1 && this.indexIn == null) {
+        // no off-heap terms index
         indexIn.close();
       }
 
@@ -230,7 +250,7 @@ public class BlockTreeTermsReader extends FieldsProducer {
   @Override
   public void close() throws IOException {
     try {
-      IOUtils.close(in, postingsReader);
+      IOUtils.close(in, indexIn, postingsReader);
     } finally { 
       // Clear so refs to terms index is GCable even if
       // app hangs onto us:
@@ -284,6 +304,10 @@ public class BlockTreeTermsReader extends FieldsProducer {
     /** Byte size of the index. */
     public int indexNumBytes;
 
+    /** True if the index is read from the index file
+     *  instead of being loaded in memory. */
+    public boolean indexOffHeap;
+
     /** Total number of terms in the field. */
     public long totalTermCount;
 
@@ -405,7 +429,7 @@ public class BlockTreeTermsReader extends FieldsProducer {
       out.println("  index FST:");
       out.println("    " + indexNodeCount + " nodes");
       out.println("    " + indexArcCount + " arcs");
-      out.println("    " + indexNumBytes + " bytes");
+      out.println("    " + indexNumBytes + " bytes" + (indexOffHeap ? " (off-heap)" : ""));
       out.println("  terms:");
       out.println("    " + totalTermCount + " terms");
       out.println("    " + totalTermBytes + " bytes" + (totalTermCount != 0 ? " (" + String.format(Locale.ROOT, "%.1f", ((double) totalTermBytes)/totalTermCount) + " bytes/term)" : ""));
@@ -478,7 +502,13 @@ public class BlockTreeTermsReader extends FieldsProducer {
         final IndexInput clone = indexIn.clone();
         //System.out.println("start=" + indexStartFP + " field=" + fieldInfo.name);
         clone.seek(indexStartFP);
-        index = new FST<BytesRef>(clone, ByteSequenceOutputs.getSingleton());
+        if ("true".equals(fieldInfo.getAttribute(FST_OFF_HEAP_KEY)) && clone instanceof RandomAccessInput) {
+          index = new FST<BytesRef>(clone, ByteSequenceOutputs.getSingleton(), true);
+          // keep the index file open
+          BlockTreeTermsReader.this.indexIn = indexIn;
+        } else {
+          index = new FST<BytesRef>(clone, ByteSequenceOutputs.getSingleton());
+        }
         
         /*
         if (false) {
@@ -1324,6 +1354,7 @@ public class BlockTreeTermsReader extends FieldsProducer {
           stats.indexNodeCount = index.getNodeCount();
           stats.indexArcCount = index.getArcCount();
           stats.indexNumBytes = index.sizeInBytes();
+          stats.indexOffHeap = index.isOffHeap();
         }
         
         currentFrame = staticFrame;
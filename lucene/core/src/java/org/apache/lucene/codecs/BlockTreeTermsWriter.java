@@ -254,6 +254,8 @@ public class BlockTreeTermsWriter extends FieldsConsumer {
   private final List<FieldMetaData> fields = new ArrayList<FieldMetaData>();
   // private final String segment;
 
+  private final boolean offHeapTermsIndex;
+
   /** Create a new writer.  The number of items (terms or
    *  sub-blocks) per block will aim to be between
    *  minItemsPerBlock and maxItemsPerBlock, though in some
@@ -264,6 +266,26 @@ public class BlockTreeTermsWriter extends FieldsConsumer {
                               int minItemsInBlock,
                               int maxItemsInBlock)
     throws IOException
+  {
+    this(state, postingsWriter, minItemsInBlock, maxItemsInBlock, false);
+  }
+
+  /** Create a new writer, like {@link
+   *  #BlockTreeTermsWriter(SegmentWriteState,PostingsWriterBase,int,int)}.
+   *  If <code>offHeapTermsIndex</code> is true, the fields
+   *  written by this writer are marked with the {@link
+   *  BlockTreeTermsReader#FST_OFF_HEAP_KEY} attribute so that
+   *  their terms index is read from disk instead of being
+   *  loaded in memory, which saves heap for fields that have
+   *  many unique terms (eg. ids or URLs) at the expense of
+   *  slower term lookups. */
+  public BlockTreeTermsWriter(
+                              SegmentWriteState state,
+                              PostingsWriterBase postingsWriter,
+                              int minItemsInBlock,
+                              int maxItemsInBlock,
+                              boolean offHeapTermsIndex)
+    throws IOException
   {
     if (minItemsInBlock <= 1) {
       throw new IllegalArgumentException("minItemsInBlock must be >= 2; got " + minItemsInBlock);
@@ -286,6 +308,7 @@ public class BlockTreeTermsWriter extends FieldsConsumer {
       fieldInfos = state.fieldInfos;
       this.minItemsInBlock = minItemsInBlock;
       this.maxItemsInBlock = maxItemsInBlock;
+      this.offHeapTermsIndex = offHeapTermsIndex;
       writeHeader(out);
 
       //DEBUG = state.segmentName.equals("_4a");
@@ -336,6 +359,9 @@ public class BlockTreeTermsWriter extends FieldsConsumer {
     //if (DEBUG) System.out.println("\nBTTW.addField seg=" + segment + " field=" + field.name);
     assert currentField == null || currentField.name.compareTo(field.name) < 0;
     currentField = field;
+    if (offHeapTermsIndex) {
+      field.putAttribute(BlockTreeTermsReader.FST_OFF_HEAP_KEY, "true");
+    }
     return new TermsWriter(field);
   }
 
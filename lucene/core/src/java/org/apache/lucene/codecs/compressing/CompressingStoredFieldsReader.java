@@ -62,6 +62,7 @@ final class CompressingStoredFieldsReader extends StoredFieldsReader {
   private final int packedIntsVersion;
   private final CompressionMode compressionMode;
   private final Decompressor decompressor;
+  private final byte[] dictionary;
   private final BytesRef bytes;
   private final int numDocs;
   private boolean closed;
@@ -74,6 +75,7 @@ final class CompressingStoredFieldsReader extends StoredFieldsReader {
     this.packedIntsVersion = reader.packedIntsVersion;
     this.compressionMode = reader.compressionMode;
     this.decompressor = reader.decompressor.clone();
+    this.dictionary = reader.dictionary;
     this.numDocs = reader.numDocs;
     this.bytes = new BytesRef(reader.bytes.bytes.length);
     this.closed = false;
@@ -104,6 +106,17 @@ final class CompressingStoredFieldsReader extends StoredFieldsReader {
 
       packedIntsVersion = fieldsStream.readVInt();
       decompressor = compressionMode.newDecompressor();
+      if (compressionMode.maxDictionaryLength() > 0) {
+        final int dictionaryLength = fieldsStream.readVInt();
+        if (dictionaryLength > compressionMode.maxDictionaryLength()) {
+          throw new CorruptIndexException("Invalid dictionary length: " + dictionaryLength + " (resource=" + fieldsStream + ")");
+        }
+        dictionary = new byte[dictionaryLength];
+        fieldsStream.readBytes(dictionary, 0, dictionaryLength);
+        decompressor.setDictionary(dictionary);
+      } else {
+        dictionary = null;
+      }
       this.bytes = new BytesRef();
 
       success = true;
@@ -285,6 +298,12 @@ final class CompressingStoredFieldsReader extends StoredFieldsReader {
     return compressionMode;
   }
 
+  /** Return the preset dictionary of this segment, or <code>null</code> if
+   *  the compression mode doesn't use dictionaries. */
+  byte[] getDictionary() {
+    return dictionary;
+  }
+
   ChunkIterator chunkIterator(int startDocID) throws IOException {
     ensureOpen();
     fieldsStream.seek(indexReader.getStartPointer(startDocID));
@@ -384,11 +403,19 @@ final class CompressingStoredFieldsReader extends StoredFieldsReader {
     }
 
     /**
-     * Copy compressed data.
+     * Copy compressed data. The compressed data of a chunk ends where the
+     * next chunk starts (or at the end of the file), so it is copied as raw
+     * bytes without being parsed.
      */
     void copyCompressedData(DataOutput out) throws IOException {
-      final int chunkSize = chunkSize();
-      decompressor.copyCompressedData(fieldsStream, chunkSize, out);
+      final long start = fieldsStream.getFilePointer();
+      final long end = docBase + chunkDocs == numDocs
+          ? fieldsStream.length()
+          : indexReader.getStartPointer(docBase + chunkDocs);
+      if (end < start) {
+        throw new CorruptIndexException("Corrupted: chunk of docBase=" + docBase + " ends at " + end + " < " + start);
+      }
+      out.copyBytes(fieldsStream, end - start);
     }
 
   }
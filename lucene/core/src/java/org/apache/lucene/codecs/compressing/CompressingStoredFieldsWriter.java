@@ -72,6 +72,8 @@ final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
   private final CompressionMode compressionMode;
   private final Compressor compressor;
   private final int chunkSize;
+  private final int maxDictionaryLength;
+  private byte[] dictionary; // null until the first chunk is written
 
   private final GrowableByteArrayDataOutput bufferedDocs;
   private int[] numStoredFields; // number of stored fields
@@ -79,6 +81,13 @@ final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
   private int docBase; // doc ID at the beginning of the chunk
   private int numBufferedDocs; // docBase + numBufferedDocs == current doc ID
 
+  // merge statistics, reported through the InfoStream
+  int numCopiedChunks; // chunks copied without decompression
+  int numCopiedDocs;
+  int numRecompressedChunks; // chunks decompressed to be recompressed
+  int numRecompressedDocs;
+  int numVisitedDocs; // docs added one by one, through their fields
+
   public CompressingStoredFieldsWriter(Directory directory, SegmentInfo si, IOContext context,
       String formatName, CompressionMode compressionMode, int chunkSize) throws IOException {
     assert directory != null;
@@ -87,6 +96,7 @@ final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
     this.compressionMode = compressionMode;
     this.compressor = compressionMode.newCompressor();
     this.chunkSize = chunkSize;
+    this.maxDictionaryLength = compressionMode.maxDictionaryLength();
     this.docBase = 0;
     this.bufferedDocs = new GrowableByteArrayDataOutput(chunkSize);
     this.numStoredFields = new int[16];
@@ -199,7 +209,48 @@ final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
         numBufferedDocs >= chunkSize; // can be necessary if most docs are empty
   }
 
+  /**
+   * Write the dictionary right after the header of the fields stream, this
+   * must be done before the first chunk is written.
+   */
+  private void writeDictionary(byte[] dictionary) throws IOException {
+    assert this.dictionary == null && docBase == 0;
+    fieldsStream.writeVInt(dictionary.length);
+    fieldsStream.writeBytes(dictionary, dictionary.length);
+    compressor.setDictionary(dictionary);
+    this.dictionary = dictionary;
+  }
+
+  /**
+   * Build a dictionary out of buffered documents which are evenly spread
+   * over the chunk.
+   */
+  private byte[] sampleDictionary() {
+    final int totalLength = bufferedDocs.length;
+    if (totalLength <= maxDictionaryLength) {
+      return Arrays.copyOf(bufferedDocs.bytes, totalLength);
+    }
+    final byte[] dictionary = new byte[maxDictionaryLength];
+    // number of documents of average length that fit in the dictionary
+    final int fit = (int) Math.max(1L, (long) maxDictionaryLength * numBufferedDocs / totalLength);
+    // sample one document every step documents so that samples span the
+    // whole chunk, and share the room of the dictionary between samples
+    final int step = (numBufferedDocs + fit - 1) / fit;
+    int numSamples = (numBufferedDocs + step - 1) / step;
+    int length = 0;
+    for (int i = 0; i < numBufferedDocs; i += step, --numSamples) {
+      final int start = i == 0 ? 0 : endOffsets[i - 1];
+      final int docLength = Math.min(endOffsets[i] - start, (maxDictionaryLength - length) / numSamples);
+      System.arraycopy(bufferedDocs.bytes, start, dictionary, length, docLength);
+      length += docLength;
+    }
+    return Arrays.copyOf(dictionary, length);
+  }
+
   private void flush() throws IOException {
+    if (maxDictionaryLength > 0 && dictionary == null) {
+      writeDictionary(sampleDictionary());
+    }
     indexWriter.writeIndex(numBufferedDocs, fieldsStream.getFilePointer());
 
     // transform end offsets into lengths
@@ -292,6 +343,10 @@ final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
     if (numBufferedDocs > 0) {
       flush();
     }
+    if (maxDictionaryLength > 0 && dictionary == null) {
+      // no document
+      writeDictionary(new byte[0]);
+    }
     if (docBase != numDocs) {
       throw new RuntimeException("Wrote " + docBase + " docs, finish called with numDocs=" + numDocs);
     }
@@ -324,6 +379,7 @@ final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
           StoredDocument doc = reader.document(i);
           addDocument(doc, mergeState.fieldInfos);
           ++docCount;
+          ++numVisitedDocs;
           mergeState.checkAbort.work(300);
         }
       } else {
@@ -343,28 +399,38 @@ final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
               startOffsets[i] = startOffsets[i - 1] + it.lengths[i - 1];
             }
 
+            final int chunkLength = startOffsets[it.chunkDocs - 1] + it.lengths[it.chunkDocs - 1];
             if (compressionMode == matchingFieldsReader.getCompressionMode() // same compression mode
-                && (numBufferedDocs == 0 || triggerFlush()) // starting a new chunk
+                && canCopyCompressedData(matchingFieldsReader) // same dictionary
                 && startOffsets[it.chunkDocs - 1] < chunkSize // chunk is small enough
-                && startOffsets[it.chunkDocs - 1] + it.lengths[it.chunkDocs - 1] >= chunkSize // chunk is large enough
+                && (chunkLength >= chunkSize || it.chunkDocs >= chunkSize) // chunk is large enough
                 && nextDeletedDoc(it.docBase, liveDocs, it.docBase + it.chunkDocs) == it.docBase + it.chunkDocs) { // no deletion in the chunk
               assert docID == it.docBase;
 
-              // no need to decompress, just copy data
+              // no need to decompress, just copy data. Docs that are still
+              // buffered, eg. the live docs of a previous chunk that had
+              // deletions, are flushed to a smaller chunk first rather than
+              // forcing this full chunk to be recompressed
               endWithPreviousDocument();
-              if (triggerFlush()) {
+              if (numBufferedDocs > 0) {
                 flush();
               }
+              if (maxDictionaryLength > 0 && dictionary == null) {
+                writeDictionary(matchingFieldsReader.getDictionary());
+              }
               indexWriter.writeIndex(it.chunkDocs, fieldsStream.getFilePointer());
               writeHeader(this.docBase, it.chunkDocs, it.numStoredFields, it.lengths);
               it.copyCompressedData(fieldsStream);
               this.docBase += it.chunkDocs;
               docID = nextLiveDoc(it.docBase + it.chunkDocs, liveDocs, maxDoc);
               docCount += it.chunkDocs;
+              ++numCopiedChunks;
+              numCopiedDocs += it.chunkDocs;
               mergeState.checkAbort.work(300 * it.chunkDocs);
             } else {
               // decompress
               it.decompress();
+              ++numRecompressedChunks;
               if (startOffsets[it.chunkDocs - 1] + it.lengths[it.chunkDocs - 1] != it.bytes.length) {
                 throw new CorruptIndexException("Corrupted: expected chunk size=" + startOffsets[it.chunkDocs - 1] + it.lengths[it.chunkDocs - 1] + ", got " + it.bytes.length);
               }
@@ -374,6 +440,7 @@ final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
                 startDocument(it.numStoredFields[diff]);
                 bufferedDocs.writeBytes(it.bytes.bytes, it.bytes.offset + startOffsets[diff], it.lengths[diff]);
                 ++docCount;
+                ++numRecompressedDocs;
                 mergeState.checkAbort.work(300);
               }
             }
@@ -382,9 +449,31 @@ final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
       }
     }
     finish(mergeState.fieldInfos, docCount);
+    if (mergeState.infoStream != null && mergeState.infoStream.isEnabled("SM")) {
+      mergeState.infoStream.message("SM", "stored fields: copied " + numCopiedChunks + " compressed chunks ["
+          + numCopiedDocs + " docs], recompressed " + numRecompressedChunks + " chunks [" + numRecompressedDocs
+          + " live docs], added " + numVisitedDocs + " docs one by one");
+    }
     return docCount;
   }
 
+  /**
+   * Return whether compressed chunks from <code>reader</code> can be decoded
+   * with the dictionary of this writer, assuming <code>reader</code> has the
+   * same compression mode.
+   */
+  private boolean canCopyCompressedData(CompressingStoredFieldsReader reader) {
+    if (maxDictionaryLength == 0) {
+      return true;
+    } else if (dictionary == null) {
+      // nothing has been compressed yet, the dictionary of the reader can be
+      // reused unless buffered documents need to be flushed first
+      return numBufferedDocs == 0;
+    } else {
+      return Arrays.equals(dictionary, reader.getDictionary());
+    }
+  }
+
   private static int nextLiveDoc(int doc, Bits liveDocs, int maxDoc) {
     if (liveDocs == null) {
       return doc;
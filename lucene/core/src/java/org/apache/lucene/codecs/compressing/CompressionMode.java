@@ -110,6 +110,39 @@ public abstract class CompressionMode {
 
   };
 
+  /**
+   * A compression mode that compresses chunks with LZ4 against a preset
+   * dictionary. The dictionary is sampled from the documents of the first
+   * chunk of every segment and stored once per segment. This improves the
+   * compression ratio of small documents that share a lot of content (such
+   * as field names or markup) at the same speed as {@link #FAST}. However,
+   * segments that have different dictionaries can't have their compressed
+   * chunks copied as-is on merge.
+   */
+  public static final CompressionMode FAST_DICTIONARY = new CompressionMode() {
+
+    @Override
+    public Compressor newCompressor() {
+      return new LZ4DictionaryCompressor();
+    }
+
+    @Override
+    public Decompressor newDecompressor() {
+      return new LZ4DictionaryDecompressor();
+    }
+
+    @Override
+    int maxDictionaryLength() {
+      return 1 << 12;
+    }
+
+    @Override
+    public String toString() {
+      return "FAST_DICTIONARY";
+    }
+
+  };
+
   /** Sole constructor. */
   protected CompressionMode() {}
 
@@ -123,6 +156,15 @@ public abstract class CompressionMode {
    */
   public abstract Decompressor newDecompressor();
 
+  /**
+   * Return the maximum length of the preset dictionary that the
+   * {@link Compressor}s and {@link Decompressor}s of this mode should be
+   * configured with, or <code>0</code> if this mode doesn't use dictionaries.
+   */
+  int maxDictionaryLength() {
+    return 0;
+  }
+
   private static final Decompressor LZ4_DECOMPRESSOR = new Decompressor() {
 
     @Override
@@ -175,6 +217,78 @@ public abstract class CompressionMode {
 
   };
 
+  private static final class LZ4DictionaryDecompressor extends Decompressor {
+
+    byte[] dictionary = new byte[0];
+    // the last buffer that the dictionary has been copied to: decompression
+    // never writes to the first dictionary.length bytes of the buffer, so
+    // there is no need to copy it again if the same buffer is reused
+    byte[] buffer;
+
+    @Override
+    public void setDictionary(byte[] dictionary) {
+      this.dictionary = dictionary;
+      buffer = null;
+    }
+
+    @Override
+    public void decompress(DataInput in, int originalLength, int offset, int length, BytesRef bytes) throws IOException {
+      assert offset + length <= originalLength;
+      final int dictLength = dictionary.length;
+      // the dictionary goes right before the decompressed bytes so that
+      // matches can refer to it, plus 7 padding bytes like LZ4_DECOMPRESSOR
+      if (bytes.bytes.length < dictLength + originalLength + 7) {
+        bytes.bytes = new byte[ArrayUtil.oversize(dictLength + originalLength + 7, 1)];
+      }
+      if (bytes.bytes != buffer) {
+        System.arraycopy(dictionary, 0, bytes.bytes, 0, dictLength);
+        buffer = bytes.bytes;
+      }
+      final int decompressedLength = LZ4.decompress(in, dictLength + offset + length, bytes.bytes, dictLength) - dictLength;
+      if (decompressedLength > originalLength) {
+        throw new CorruptIndexException("Corrupted: lengths mismatch: " + decompressedLength + " > " + originalLength);
+      }
+      bytes.offset = dictLength + offset;
+      bytes.length = length;
+    }
+
+    @Override
+    public void copyCompressedData(DataInput in, int originalLength, DataOutput out) throws IOException {
+      LZ4_DECOMPRESSOR.copyCompressedData(in, originalLength, out);
+    }
+
+    @Override
+    public Decompressor clone() {
+      final LZ4DictionaryDecompressor clone = new LZ4DictionaryDecompressor();
+      clone.dictionary = dictionary;
+      return clone;
+    }
+
+  }
+
+  private static final class LZ4DictionaryCompressor extends Compressor {
+
+    byte[] dictionary = new byte[0];
+    byte[] buffer = new byte[0];
+
+    @Override
+    public void setDictionary(byte[] dictionary) {
+      this.dictionary = dictionary;
+    }
+
+    @Override
+    public void compress(byte[] bytes, int off, int len, DataOutput out) throws IOException {
+      final int dictLength = dictionary.length;
+      if (buffer.length < dictLength + len) {
+        buffer = new byte[ArrayUtil.oversize(dictLength + len, 1)];
+      }
+      System.arraycopy(dictionary, 0, buffer, 0, dictLength);
+      System.arraycopy(bytes, off, buffer, dictLength, len);
+      LZ4.compressWithDictionary(buffer, 0, dictLength, len, out);
+    }
+
+  }
+
   private static final class DeflateDecompressor extends Decompressor {
 
     final Inflater decompressor;
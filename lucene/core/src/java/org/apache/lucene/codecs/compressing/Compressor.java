@@ -33,4 +33,14 @@ abstract class Compressor {
    */
   public abstract void compress(byte[] bytes, int off, int len, DataOutput out) throws IOException;
 
+  /**
+   * Set the preset dictionary that compressed streams may refer to. The
+   * {@link Decompressor} must be configured with the same dictionary.
+   * Compressors of modes whose {@link CompressionMode#maxDictionaryLength()}
+   * is <code>0</code> don't support dictionaries.
+   */
+  public void setDictionary(byte[] dictionary) {
+    throw new UnsupportedOperationException();
+  }
+
 }
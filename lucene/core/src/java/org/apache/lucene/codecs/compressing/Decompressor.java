@@ -48,6 +48,14 @@ abstract class Decompressor implements Cloneable {
    * <code>originalLength</code> from <code>in</code> to <code>out</code>. */
   public abstract void copyCompressedData(DataInput in, int originalLength, DataOutput out) throws IOException;
 
+  /**
+   * Set the preset dictionary that was used to compress streams, see
+   * {@link Compressor#setDictionary(byte[])}. Clones share the dictionary.
+   */
+  public void setDictionary(byte[] dictionary) {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public abstract Decompressor clone();
 
@@ -186,22 +186,44 @@ class LZ4 {
    * at most 16KB of memory.
    */
   public static void compress(byte[] bytes, int off, int len, DataOutput out) throws IOException {
+    compressWithDictionary(bytes, off, 0, len, out);
+  }
+
+  /**
+   * Compress <code>bytes[dictOff+dictLen:dictOff+dictLen+len]</code> into
+   * <code>out</code>, allowing references to the preset dictionary
+   * <code>bytes[dictOff:dictOff+dictLen]</code>. The dictionary is not
+   * encoded: decompression must be performed with the same dictionary stored
+   * right before the decompressed bytes, see
+   * {@link #decompress(DataInput, int, byte[], int)}.
+   */
+  public static void compressWithDictionary(byte[] bytes, int dictOff, int dictLen, int len, DataOutput out) throws IOException {
 
-    final int base = off;
+    final int base = dictOff;
+    int off = dictOff + dictLen;
     final int end = off + len;
 
-    int anchor = off++;
+    int anchor = off;
+    if (dictLen == 0) {
+      // nothing to refer to
+      ++off;
+    }
 
     if (len > LAST_LITERALS + MIN_MATCH) {
 
       final int limit = end - LAST_LITERALS;
       final int matchLimit = limit - MIN_MATCH;
 
-      final int bitsPerOffset = PackedInts.bitsRequired(len - LAST_LITERALS);
+      final int bitsPerOffset = PackedInts.bitsRequired(dictLen + len - LAST_LITERALS);
       final int bitsPerOffsetLog = 32 - Integer.numberOfLeadingZeros(bitsPerOffset - 1);
       final int hashLog = MEMORY_USAGE + 3 - bitsPerOffsetLog;
       final PackedInts.Mutable hashTable = PackedInts.getMutable(1 << hashLog, bitsPerOffset, PackedInts.DEFAULT);
 
+      // index the dictionary
+      for (int i = Math.max(dictOff, off - MAX_DISTANCE + 1), dictLimit = off - MIN_MATCH; i <= dictLimit; ++i) {
+        hashTable.set(hash(readInt(bytes, i), hashLog), i - base);
+      }
+
       main:
       while (off < limit) {
         // find a match
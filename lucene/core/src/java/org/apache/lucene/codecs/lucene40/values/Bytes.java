@@ -36,6 +36,7 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RandomAccessInput;
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.ByteBlockPool.Allocator;
 import org.apache.lucene.util.ByteBlockPool.DirectTrackingAllocator;
@@ -377,6 +378,25 @@ public final class Bytes {
     
   }
   
+  /**
+   * Reads <code>length</code> bytes starting at <code>pos</code> from the
+   * given {@link RandomAccessInput} into <code>ref</code>, growing it if needed.
+   */
+  static BytesRef readBytes(RandomAccessInput in, long pos, int length, BytesRef ref) {
+    try {
+      ref.offset = 0;
+      ref.grow(length);
+      final byte[] bytes = ref.bytes;
+      for (int i = 0; i < length; i++) {
+        bytes[i] = in.readByte(pos + i);
+      }
+      ref.length = length;
+      return ref;
+    } catch (IOException ex) {
+      throw new IllegalStateException("failed to read bytes at pos: " + pos, ex);
+    }
+  }
+  
   static abstract class DerefBytesWriterBase extends BytesWriterBase {
     protected int size = -1;
     protected int lastDocId = -1;
@@ -36,6 +36,7 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RandomAccessInput;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Counter;
 import org.apache.lucene.util.IOUtils;
@@ -146,6 +147,17 @@ class FixedSortedBytesImpl {
           valueCount, comparator, type);
     }
 
+    @Override
+    protected Source loadOffHeapSource() throws IOException {
+      final IndexInput data = cloneData();
+      final IndexInput index = cloneIndex();
+      if (!(data instanceof RandomAccessInput) || !(index instanceof RandomAccessInput)) {
+        return null;
+      }
+      return new OffHeapFixedSortedSource((RandomAccessInput) data, data.getFilePointer(),
+          PackedInts.getRandomAccessReader(index), size, valueCount, comparator, type);
+    }
+
     @Override
     public int getValueSize() {
       return size;
@@ -229,4 +241,48 @@ class FixedSortedBytesImpl {
     }
   }
 
+  /** Like {@link DirectFixedSortedSource}, but thread-safe since it reads
+   *  from a memory-mapped file without moving a file pointer. */
+  static final class OffHeapFixedSortedSource extends SortedSource {
+    private final RandomAccessInput data;
+    private final long basePointer;
+    private final PackedInts.Reader docToOrdIndex;
+    private final int size;
+    private final int valueCount;
+
+    OffHeapFixedSortedSource(RandomAccessInput data, long basePointer, PackedInts.Reader docToOrdIndex,
+        int size, int valueCount, Comparator<BytesRef> comp, Type type) {
+      super(type, comp);
+      this.data = data;
+      this.basePointer = basePointer;
+      this.docToOrdIndex = docToOrdIndex;
+      this.size = size;
+      this.valueCount = valueCount;
+    }
+
+    @Override
+    public int ord(int docID) {
+      return (int) docToOrdIndex.get(docID);
+    }
+
+    @Override
+    public boolean hasPackedDocToOrd() {
+      return true;
+    }
+
+    @Override
+    public PackedInts.Reader getDocToOrd() {
+      return docToOrdIndex;
+    }
+
+    @Override
+    public BytesRef getByOrd(int ord, BytesRef bytesRef) {
+      return Bytes.readBytes(data, basePointer + size * ((long) ord), size, bytesRef);
+    }
+
+    @Override
+    public int getValueCount() {
+      return valueCount;
+    }
+  }
 }
@@ -32,6 +32,7 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RandomAccessInput;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.ByteBlockPool.DirectTrackingAllocator;
 import org.apache.lucene.util.ByteBlockPool;
@@ -294,6 +295,15 @@ class FixedStraightBytesImpl {
     protected Source loadDirectSource() throws IOException {
       return new DirectFixedStraightSource(cloneData(), size, getType());
     }
+
+    @Override
+    protected Source loadOffHeapSource() throws IOException {
+      final IndexInput data = cloneData();
+      if (!(data instanceof RandomAccessInput)) {
+        return null;
+      }
+      return new OffHeapFixedStraightSource((RandomAccessInput) data, data.getFilePointer(), size, getType());
+    }
     
     @Override
     public int getValueSize() {
@@ -366,4 +376,61 @@ class FixedStraightBytesImpl {
     }
 
   }
+
+  /** Reads fixed size values at random from a memory-mapped file. */
+  final static class OffHeapFixedStraightSource extends Source {
+    private final RandomAccessInput data;
+    private final long baseOffset;
+    private final int size;
+
+    OffHeapFixedStraightSource(RandomAccessInput data, long baseOffset, int size, Type type) {
+      super(type);
+      this.data = data;
+      this.baseOffset = baseOffset;
+      this.size = size;
+    }
+
+    @Override
+    public BytesRef getBytes(int docID, BytesRef ref) {
+      return Bytes.readBytes(data, baseOffset + size * ((long) docID), size, ref);
+    }
+
+    @Override
+    public long getInt(int docID) {
+      final long pos = baseOffset + size * ((long) docID);
+      try {
+        switch (type) {
+          case FIXED_INTS_8:
+            return data.readByte(pos);
+          case FIXED_INTS_16:
+            return data.readShort(pos);
+          case FIXED_INTS_32:
+            return data.readInt(pos);
+          case FIXED_INTS_64:
+            return data.readLong(pos);
+          default:
+            return super.getInt(docID);
+        }
+      } catch (IOException ex) {
+        throw new IllegalStateException("failed to get value for docID: " + docID, ex);
+      }
+    }
+
+    @Override
+    public double getFloat(int docID) {
+      final long pos = baseOffset + size * ((long) docID);
+      try {
+        switch (type) {
+          case FLOAT_32:
+            return Float.intBitsToFloat(data.readInt(pos));
+          case FLOAT_64:
+            return Double.longBitsToDouble(data.readLong(pos));
+          default:
+            return super.getFloat(docID);
+        }
+      } catch (IOException ex) {
+        throw new IllegalStateException("failed to get value for docID: " + docID, ex);
+      }
+    }
+  }
 }
@@ -31,6 +31,7 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RandomAccessInput;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Counter;
 import org.apache.lucene.util.IOUtils;
@@ -220,6 +221,20 @@ class PackedIntValues {
     protected Source loadDirectSource() throws IOException {
       return values != null ? new FixedStraightBytesImpl.DirectFixedStraightSource(datIn.clone(), 8, Type.FIXED_INTS_64) : new PackedIntsSource(datIn.clone(), true);
     }
+
+    @Override
+    protected Source loadOffHeapSource() throws IOException {
+      final IndexInput input = datIn.clone();
+      if (!(input instanceof RandomAccessInput)) {
+        return null;
+      }
+      if (values != null) {
+        return new FixedStraightBytesImpl.OffHeapFixedStraightSource((RandomAccessInput) input, input.getFilePointer(), 8, Type.FIXED_INTS_64);
+      }
+      final long minValue = input.readLong();
+      final long defaultValue = input.readLong();
+      return new PackedIntsSource(minValue, defaultValue, PackedInts.getRandomAccessReader(input));
+    }
   }
 
   
@@ -229,10 +244,15 @@ class PackedIntValues {
     private final PackedInts.Reader values;
 
     public PackedIntsSource(IndexInput dataIn, boolean direct) throws IOException {
+      this(dataIn.readLong(), dataIn.readLong(),
+          direct ? PackedInts.getDirectReader(dataIn) : PackedInts.getReader(dataIn));
+    }
+
+    PackedIntsSource(long minValue, long defaultValue, PackedInts.Reader values) {
       super(Type.VAR_INTS);
-      minValue = dataIn.readLong();
-      defaultValue = dataIn.readLong();
-      values = direct ? PackedInts.getDirectReader(dataIn) : PackedInts.getReader(dataIn);
+      this.minValue = minValue;
+      this.defaultValue = defaultValue;
+      this.values = values;
     }
     
     @Override
@@ -36,6 +36,7 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RandomAccessInput;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Counter;
 import org.apache.lucene.util.IOUtils;
@@ -170,6 +171,22 @@ final class VarSortedBytesImpl {
     protected Source loadDirectSource() throws IOException {
       return new DirectSortedSource(cloneData(), cloneIndex(), comparator, getType());
     }
+
+    @Override
+    protected Source loadOffHeapSource() throws IOException {
+      final IndexInput data = cloneData();
+      final IndexInput index = cloneIndex();
+      if (!(data instanceof RandomAccessInput) || !(index instanceof RandomAccessInput)) {
+        return null;
+      }
+      index.readLong(); // total bytes
+      // getRandomAccessReader moves the index input to the end of the
+      // offsets, where the docToOrd index starts
+      final PackedInts.Reader ordToOffsetIndex = PackedInts.getRandomAccessReader(index);
+      final PackedInts.Reader docToOrdIndex = PackedInts.getRandomAccessReader(index);
+      return new OffHeapSortedSource((RandomAccessInput) data, data.getFilePointer(),
+          ordToOffsetIndex, docToOrdIndex, comparator, getType());
+    }
     
   }
   private static final class VarSortedSource extends BytesSortedSourceBase {
@@ -255,4 +272,52 @@ final class VarSortedBytesImpl {
     }
 
   }
+
+  /** Like {@link DirectSortedSource}, but thread-safe since it reads from a
+   *  memory-mapped file without moving a file pointer. */
+  private static final class OffHeapSortedSource extends SortedSource {
+    private final RandomAccessInput data;
+    private final long basePointer;
+    private final PackedInts.Reader ordToOffsetIndex;
+    private final PackedInts.Reader docToOrdIndex;
+    private final int valueCount;
+
+    OffHeapSortedSource(RandomAccessInput data, long basePointer, PackedInts.Reader ordToOffsetIndex,
+        PackedInts.Reader docToOrdIndex, Comparator<BytesRef> comparator, Type type) {
+      super(type, comparator);
+      this.data = data;
+      this.basePointer = basePointer;
+      this.ordToOffsetIndex = ordToOffsetIndex;
+      this.docToOrdIndex = docToOrdIndex;
+      valueCount = ordToOffsetIndex.size()-1; // the last value here is just a dummy value to get the length of the last value
+    }
+
+    @Override
+    public int ord(int docID) {
+      return (int) docToOrdIndex.get(docID);
+    }
+
+    @Override
+    public boolean hasPackedDocToOrd() {
+      return true;
+    }
+
+    @Override
+    public PackedInts.Reader getDocToOrd() {
+      return docToOrdIndex;
+    }
+
+    @Override
+    public BytesRef getByOrd(int ord, BytesRef bytesRef) {
+      final long offset = ordToOffsetIndex.get(ord);
+      // 1+ord is safe because we write a sentinel at the end
+      final long nextOffset = ordToOffsetIndex.get(1+ord);
+      return Bytes.readBytes(data, basePointer + offset, (int) (nextOffset - offset), bytesRef);
+    }
+
+    @Override
+    public int getValueCount() {
+      return valueCount;
+    }
+  }
 }
@@ -375,6 +375,7 @@ public final class Lucene41PostingsFormat extends PostingsFormat {
 
   private final int minTermBlockSize;
   private final int maxTermBlockSize;
+  private final boolean offHeapTermsIndex;
 
   /**
    * Fixed packed block size, number of integers encoded in 
@@ -394,11 +395,21 @@ public final class Lucene41PostingsFormat extends PostingsFormat {
    *  maxBlockSize} passed to block terms dictionary.
    *  @see BlockTreeTermsWriter#BlockTreeTermsWriter(SegmentWriteState,PostingsWriterBase,int,int) */
   public Lucene41PostingsFormat(int minTermBlockSize, int maxTermBlockSize) {
+    this(minTermBlockSize, maxTermBlockSize, false);
+  }
+
+  /** Creates {@code Lucene41PostingsFormat} with custom
+   *  values for {@code minBlockSize} and {@code
+   *  maxBlockSize}, and whether the terms index should be
+   *  read from disk instead of being loaded in memory.
+   *  @see BlockTreeTermsWriter#BlockTreeTermsWriter(SegmentWriteState,PostingsWriterBase,int,int,boolean) */
+  public Lucene41PostingsFormat(int minTermBlockSize, int maxTermBlockSize, boolean offHeapTermsIndex) {
     super("Lucene41");
     this.minTermBlockSize = minTermBlockSize;
     assert minTermBlockSize > 1;
     this.maxTermBlockSize = maxTermBlockSize;
     assert minTermBlockSize <= maxTermBlockSize;
+    this.offHeapTermsIndex = offHeapTermsIndex;
   }
 
   @Override
@@ -415,7 +426,8 @@ public final class Lucene41PostingsFormat extends PostingsFormat {
       FieldsConsumer ret = new BlockTreeTermsWriter(state, 
                                                     postingsWriter,
                                                     minTermBlockSize, 
-                                                    maxTermBlockSize);
+                                                    maxTermBlockSize,
+                                                    offHeapTermsIndex);
       success = true;
       return ret;
     } finally {
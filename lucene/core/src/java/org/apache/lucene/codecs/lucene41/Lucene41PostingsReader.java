@@ -505,6 +505,52 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
       }
     }
 
+    @Override
+    public int read(int[] docs, int[] freqs) throws IOException {
+      int count = 0;
+      while (count < docs.length && docUpto < docFreq) {
+        if (docBufferUpto == BLOCK_SIZE) {
+          refillDocs();
+        }
+        // copy as much of the decoded block as fits, without
+        // going through nextDoc() for every document:
+        final int end = docBufferUpto + Math.min(docs.length - count,
+            Math.min(BLOCK_SIZE - docBufferUpto, docFreq - docUpto));
+        int acc = accum;
+        if (liveDocs == null) {
+          for (int i = docBufferUpto; i < end; i++) {
+            acc += docDeltaBuffer[i];
+            docs[count++] = acc;
+          }
+          if (freqs != null) {
+            System.arraycopy(freqBuffer, docBufferUpto, freqs, count - (end - docBufferUpto), end - docBufferUpto);
+          }
+          doc = acc;
+          freq = freqBuffer[end - 1];
+        } else {
+          for (int i = docBufferUpto; i < end; i++) {
+            acc += docDeltaBuffer[i];
+            if (liveDocs.get(acc)) {
+              docs[count] = acc;
+              if (freqs != null) {
+                freqs[count] = freqBuffer[i];
+              }
+              count++;
+              doc = acc;
+              freq = freqBuffer[i];
+            }
+          }
+        }
+        accum = acc;
+        docUpto += end - docBufferUpto;
+        docBufferUpto = end;
+      }
+      if (count == 0 && docUpto == docFreq) {
+        doc = NO_MORE_DOCS;
+      }
+      return count;
+    }
+
     @Override
     public int advance(int target) throws IOException {
       // TODO: make frq block load lazy/skippable
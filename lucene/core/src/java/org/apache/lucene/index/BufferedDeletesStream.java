@@ -22,6 +22,10 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -30,8 +34,11 @@ import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.QueryWrapperFilter;
 import org.apache.lucene.store.IOContext;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /* Tracks the stream of {@link BufferedDeletes}.
  * When DocumentsWriterPerThread flushes, its buffered
@@ -58,15 +65,20 @@ class BufferedDeletesStream {
   // will be correct:
   private long nextGen = 1;
 
-  // used only by assert
-  private Term lastDeleteTerm;
-
   private final InfoStream infoStream;
+  private final ExecutorService executor;
   private final AtomicLong bytesUsed = new AtomicLong();
   private final AtomicInteger numTerms = new AtomicInteger();
 
   public BufferedDeletesStream(InfoStream infoStream) {
+    this(infoStream, null);
+  }
+
+  /** If <code>executor</code> is non-null, the deletes of
+   *  different segments are resolved concurrently using it. */
+  public BufferedDeletesStream(InfoStream infoStream, ExecutorService executor) {
     this.infoStream = infoStream;
+    this.executor = executor;
   }
 
   // Appends a new packet of buffered deletes to the stream,
@@ -147,7 +159,13 @@ class BufferedDeletesStream {
   
   /** Resolves the buffered deleted Term/Query/docIDs, into
    *  actual deleted docIDs in the liveDocs MutableBits for
-   *  each SegmentReader. */
+   *  each SegmentReader.
+   *
+   *  <p>NOTE: this is called while the IndexWriter's lock is
+   *  held, and the deletes are resolved before it returns:
+   *  an executor only lets the segments be resolved
+   *  concurrently, it does not release that lock any
+   *  sooner. */
   public synchronized ApplyDeletesResult applyDeletes(IndexWriter.ReaderPool readerPool, List<SegmentInfoPerCommit> infos) throws IOException {
     final long t0 = System.currentTimeMillis();
 
@@ -173,136 +191,272 @@ class BufferedDeletesStream {
     Collections.sort(infos2, sortSegInfoByDelGen);
 
     CoalescedDeletes coalescedDeletes = null;
-    boolean anyNewDeletes = false;
 
     int infosIDX = infos2.size()-1;
     int delIDX = deletes.size()-1;
 
-    List<SegmentInfoPerCommit> allDeleted = null;
+    // every segment whose reader we got from the pool, so that
+    // the readers are released if resolving or applying fails;
+    // with an executor, their deletes are resolved concurrently
+    final List<SegmentDeletes> opened = new ArrayList<SegmentDeletes>();
+    final DeletesResult result = new DeletesResult();
+    boolean success = false;
+    try {
+      while (infosIDX >= 0) {
+        //System.out.println("BD: cycle delIDX=" + delIDX + " infoIDX=" + infosIDX);
+
+        final FrozenBufferedDeletes packet = delIDX >= 0 ? deletes.get(delIDX) : null;
+        final SegmentInfoPerCommit info = infos2.get(infosIDX);
+        final long segGen = info.getBufferedDeletesGen();
+
+        if (packet != null && segGen < packet.delGen()) {
+          //System.out.println("  coalesce");
+          if (coalescedDeletes == null) {
+            coalescedDeletes = new CoalescedDeletes();
+          }
+          if (!packet.isSegmentPrivate) {
+            /*
+             * Only coalesce if we are NOT on a segment private del packet: the segment private del packet
+             * must only applied to segments with the same delGen.  Yet, if a segment is already deleted
+             * from the SI since it had no more documents remaining after some del packets younger than
+             * its segPrivate packet (higher delGen) have been applied, the segPrivate packet has not been
+             * removed.
+             */
+            coalescedDeletes.update(packet);
+          }
 
-    while (infosIDX >= 0) {
-      //System.out.println("BD: cycle delIDX=" + delIDX + " infoIDX=" + infosIDX);
+          delIDX--;
+        } else if (packet != null && segGen == packet.delGen()) {
+          assert packet.isSegmentPrivate : "Packet and Segments deletegen can only match on a segment private del packet gen=" + segGen;
+          //System.out.println("  eq");
 
-      final FrozenBufferedDeletes packet = delIDX >= 0 ? deletes.get(delIDX) : null;
-      final SegmentInfoPerCommit info = infos2.get(infosIDX);
-      final long segGen = info.getBufferedDeletesGen();
+          // Lock order: IW -> BD -> RP
+          assert readerPool.infoIsLive(info);
+          // Don't delete by Term here; DocumentsWriterPerThread
+          // already did that on flush:
+          final SegmentDeletes segDeletes = new SegmentDeletes(readerPool, info, coalescedDeletes, packet);
+          opened.add(segDeletes);
+          if (executor == null) {
+            segDeletes.resolve();
+            segDeletes.apply(readerPool, result);
+          }
 
-      if (packet != null && segGen < packet.delGen()) {
-        //System.out.println("  coalesce");
-        if (coalescedDeletes == null) {
-          coalescedDeletes = new CoalescedDeletes();
-        }
-        if (!packet.isSegmentPrivate) {
+          if (coalescedDeletes == null) {
+            coalescedDeletes = new CoalescedDeletes();
+          }
+        
           /*
-           * Only coalesce if we are NOT on a segment private del packet: the segment private del packet
-           * must only applied to segments with the same delGen.  Yet, if a segment is already deleted
-           * from the SI since it had no more documents remaining after some del packets younger than
-           * its segPrivate packet (higher delGen) have been applied, the segPrivate packet has not been
-           * removed.
+           * Since we are on a segment private del packet we must not
+           * update the coalescedDeletes here! We can simply advance to the 
+           * next packet and seginfo.
            */
-          coalescedDeletes.update(packet);
-        }
+          delIDX--;
+          infosIDX--;
+
+        } else {
+          //System.out.println("  gt");
 
-        delIDX--;
-      } else if (packet != null && segGen == packet.delGen()) {
-        assert packet.isSegmentPrivate : "Packet and Segments deletegen can only match on a segment private del packet gen=" + segGen;
-        //System.out.println("  eq");
-
-        // Lock order: IW -> BD -> RP
-        assert readerPool.infoIsLive(info);
-        final ReadersAndLiveDocs rld = readerPool.get(info, true);
-        final SegmentReader reader = rld.getReader(IOContext.READ);
-        int delCount = 0;
-        final boolean segAllDeletes;
-        try {
           if (coalescedDeletes != null) {
-            //System.out.println("    del coalesced");
-            delCount += applyTermDeletes(coalescedDeletes.termsIterable(), rld, reader);
-            delCount += applyQueryDeletes(coalescedDeletes.queriesIterable(), rld, reader);
+            // Lock order: IW -> BD -> RP
+            assert readerPool.infoIsLive(info);
+            final SegmentDeletes segDeletes = new SegmentDeletes(readerPool, info, coalescedDeletes, null);
+            opened.add(segDeletes);
+            if (executor == null) {
+              segDeletes.resolve();
+              segDeletes.apply(readerPool, result);
+            }
+          } else {
+            info.setBufferedDeletesGen(nextGen);
           }
-          //System.out.println("    del exact");
-          // Don't delete by Term here; DocumentsWriterPerThread
-          // already did that on flush:
-          delCount += applyQueryDeletes(packet.queriesIterable(), rld, reader);
-          final int fullDelCount = rld.info.getDelCount() + rld.getPendingDeleteCount();
-          assert fullDelCount <= rld.info.info.getDocCount();
-          segAllDeletes = fullDelCount == rld.info.info.getDocCount();
-        } finally {
-          rld.release(reader);
-          readerPool.release(rld);
-        }
-        anyNewDeletes |= delCount > 0;
 
-        if (segAllDeletes) {
-          if (allDeleted == null) {
-            allDeleted = new ArrayList<SegmentInfoPerCommit>();
-          }
-          allDeleted.add(info);
+          infosIDX--;
         }
+      }
 
-        if (infoStream.isEnabled("BD")) {
-          infoStream.message("BD", "seg=" + info + " segGen=" + segGen + " segDeletes=[" + packet + "]; coalesced deletes=[" + (coalescedDeletes == null ? "null" : coalescedDeletes) + "] newDelCount=" + delCount + (segAllDeletes ? " 100% deleted" : ""));
+      if (executor != null && !opened.isEmpty()) {
+        resolveConcurrently(opened);
+        for (SegmentDeletes segDeletes : opened) {
+          segDeletes.apply(readerPool, result);
+        }
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        // release() skips the segments that were already applied
+        for (SegmentDeletes segDeletes : opened) {
+          segDeletes.release(readerPool);
         }
+      }
+    }
 
-        if (coalescedDeletes == null) {
-          coalescedDeletes = new CoalescedDeletes();
+    assert checkDeleteStats();
+    if (infoStream.isEnabled("BD")) {
+      infoStream.message("BD", "applyDeletes took " + (System.currentTimeMillis()-t0) + " msec");
+    }
+    // assert infos != segmentInfos || !any() : "infos=" + infos + " segmentInfos=" + segmentInfos + " any=" + any;
+
+    return new ApplyDeletesResult(result.anyNewDeletes, nextGen++, result.allDeleted);
+  }
+
+  private void resolveConcurrently(List<SegmentDeletes> pending) throws IOException {
+    final List<Future<Void>> futures = new ArrayList<Future<Void>>(pending.size());
+    for (final SegmentDeletes segDeletes : pending) {
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          segDeletes.resolve();
+          return null;
         }
-        
-        /*
-         * Since we are on a segment private del packet we must not
-         * update the coalescedDeletes here! We can simply advance to the 
-         * next packet and seginfo.
-         */
-        delIDX--;
-        infosIDX--;
-        info.setBufferedDeletesGen(nextGen);
+      }));
+    }
+    Throwable th = null;
+    for (Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        if (th == null) {
+          th = new ThreadInterruptedException(e);
+        }
+      } catch (ExecutionException e) {
+        if (th == null) {
+          th = e.getCause();
+        }
+      }
+    }
+    if (th != null) {
+      if (th instanceof IOException) {
+        throw (IOException) th;
+      } else if (th instanceof RuntimeException) {
+        throw (RuntimeException) th;
+      } else if (th instanceof Error) {
+        throw (Error) th;
+      } else {
+        throw new RuntimeException(th);
+      }
+    }
+  }
+
+  private static final class DeletesResult {
+    boolean anyNewDeletes;
+    List<SegmentInfoPerCommit> allDeleted;
+  }
 
+  /** The buffered deletes to apply to one segment. They are
+   *  first resolved to docIDs, which doesn't modify the
+   *  segment and may happen in any thread, and then applied
+   *  to the segment's live docs, which must happen under
+   *  the IndexWriter's lock. */
+  private final class SegmentDeletes {
+    final SegmentInfoPerCommit info;
+    final ReadersAndLiveDocs rld;
+    final SegmentReader reader;
+    // live docs when the deletes are resolved, only used as accept docs
+    final Bits liveDocs;
+    final Iterable<Term> terms;
+    final int termCount;
+    final Iterable<QueryAndLimit> queries;
+    final Iterable<QueryAndLimit> privateQueries;
+    final String description;
+    int[] docIDs = new int[8];
+    int numDocIDs;
+    boolean released;
+
+    SegmentDeletes(IndexWriter.ReaderPool readerPool, SegmentInfoPerCommit info,
+                   CoalescedDeletes coalescedDeletes, FrozenBufferedDeletes privatePacket) throws IOException {
+      this.info = info;
+      terms = coalescedDeletes == null ? null : coalescedDeletes.termsIterable();
+      termCount = coalescedDeletes == null ? 0 : coalescedDeletes.termCount;
+      queries = coalescedDeletes == null ? null : coalescedDeletes.queriesIterable();
+      privateQueries = privatePacket == null ? null : privatePacket.queriesIterable();
+      if (infoStream.isEnabled("BD")) {
+        description = "seg=" + info + " segGen=" + info.getBufferedDeletesGen()
+            + (privatePacket == null ? "" : " segDeletes=[" + privatePacket + "];")
+            + " coalesced deletes=[" + (coalescedDeletes == null ? "null" : coalescedDeletes) + "]";
       } else {
-        //System.out.println("  gt");
+        description = null;
+      }
+      rld = readerPool.get(info, true);
+      boolean success = false;
+      try {
+        reader = rld.getReader(IOContext.READ);
+        success = true;
+      } finally {
+        if (!success) {
+          readerPool.release(rld);
+        }
+      }
+      liveDocs = rld.getLiveDocs();
+    }
 
-        if (coalescedDeletes != null) {
-          // Lock order: IW -> BD -> RP
-          assert readerPool.infoIsLive(info);
-          final ReadersAndLiveDocs rld = readerPool.get(info, true);
-          final SegmentReader reader = rld.getReader(IOContext.READ);
-          int delCount = 0;
-          final boolean segAllDeletes;
-          try {
-            delCount += applyTermDeletes(coalescedDeletes.termsIterable(), rld, reader);
-            delCount += applyQueryDeletes(coalescedDeletes.queriesIterable(), rld, reader);
-            final int fullDelCount = rld.info.getDelCount() + rld.getPendingDeleteCount();
-            assert fullDelCount <= rld.info.info.getDocCount();
-            segAllDeletes = fullDelCount == rld.info.info.getDocCount();
-          } finally {   
-            rld.release(reader);
-            readerPool.release(rld);
-          }
-          anyNewDeletes |= delCount > 0;
+    /** Collects the docIDs matched by the deletes. */
+    void resolve() throws IOException {
+      if (terms != null) {
+        resolveTermDeletes(terms, termCount, reader, liveDocs, this);
+      }
+      if (queries != null) {
+        resolveQueryDeletes(queries, reader, liveDocs, this);
+      }
+      if (privateQueries != null) {
+        resolveQueryDeletes(privateQueries, reader, liveDocs, this);
+      }
+    }
 
-          if (segAllDeletes) {
-            if (allDeleted == null) {
-              allDeleted = new ArrayList<SegmentInfoPerCommit>();
+    void add(int docID) {
+      if (numDocIDs == docIDs.length) {
+        docIDs = ArrayUtil.grow(docIDs, numDocIDs + 1);
+      }
+      docIDs[numDocIDs++] = docID;
+    }
+
+    /** Deletes the resolved docIDs and releases the reader. */
+    void apply(IndexWriter.ReaderPool readerPool, DeletesResult result) throws IOException {
+      int delCount = 0;
+      final boolean segAllDeletes;
+      try {
+        if (numDocIDs > 0) {
+          rld.initWritableLiveDocs();
+          for (int i = 0; i < numDocIDs; i++) {
+            if (rld.delete(docIDs[i])) {
+              delCount++;
             }
-            allDeleted.add(info);
           }
+        }
+        final int fullDelCount = rld.info.getDelCount() + rld.getPendingDeleteCount();
+        assert fullDelCount <= rld.info.info.getDocCount();
+        segAllDeletes = fullDelCount == rld.info.info.getDocCount();
+      } finally {
+        release(readerPool);
+      }
+      result.anyNewDeletes |= delCount > 0;
 
-          if (infoStream.isEnabled("BD")) {
-            infoStream.message("BD", "seg=" + info + " segGen=" + segGen + " coalesced deletes=[" + (coalescedDeletes == null ? "null" : coalescedDeletes) + "] newDelCount=" + delCount + (segAllDeletes ? " 100% deleted" : ""));
-          }
+      if (segAllDeletes) {
+        if (result.allDeleted == null) {
+          result.allDeleted = new ArrayList<SegmentInfoPerCommit>();
         }
-        info.setBufferedDeletesGen(nextGen);
+        result.allDeleted.add(info);
+      }
 
-        infosIDX--;
+      if (infoStream.isEnabled("BD")) {
+        infoStream.message("BD", description + " newDelCount=" + delCount + (segAllDeletes ? " 100% deleted" : ""));
       }
+      info.setBufferedDeletesGen(nextGen);
     }
 
-    assert checkDeleteStats();
-    if (infoStream.isEnabled("BD")) {
-      infoStream.message("BD", "applyDeletes took " + (System.currentTimeMillis()-t0) + " msec");
+    /** Releases the reader and the pool's reference, only the
+     *  first time it is called. */
+    void release(IndexWriter.ReaderPool readerPool) throws IOException {
+      if (released) {
+        return;
+      }
+      // set first: a second attempt after a failure would
+      // decrement the ref counts twice
+      released = true;
+      try {
+        rld.release(reader);
+      } finally {
+        readerPool.release(rld);
+      }
     }
-    // assert infos != segmentInfos || !any() : "infos=" + infos + " segmentInfos=" + segmentInfos + " any=" + any;
-
-    return new ApplyDeletesResult(anyNewDeletes, nextGen++, allDeleted);
   }
 
   synchronized long getNextGen() {
@@ -354,26 +508,44 @@ class BufferedDeletesStream {
     }
   }
 
+  /** If there is at least one delete term per this many
+   *  terms of a field, we walk the field's terms dictionary
+   *  with {@link TermsEnum#seekCeil}, skipping the delete
+   *  terms that a seek went past; otherwise each term is
+   *  looked up with {@link TermsEnum#seekExact}, which lets
+   *  the codec reject absent terms early, for instance
+   *  with the bloom filter of a primary key field's
+   *  postings format or with the block tree terms index. */
+  static final int SORTED_WALK_TERMS_PER_DELETE = 32;
+
   // Delete by Term
-  private synchronized long applyTermDeletes(Iterable<Term> termsIter, ReadersAndLiveDocs rld, SegmentReader reader) throws IOException {
-    long delCount = 0;
+  private static void resolveTermDeletes(Iterable<Term> termsIter, int termCount, SegmentReader reader, Bits liveDocs, SegmentDeletes segDeletes) throws IOException {
     Fields fields = reader.fields();
     if (fields == null) {
       // This reader has no postings
-      return 0;
+      return;
     }
 
     TermsEnum termsEnum = null;
+    // The term the TermsEnum is positioned on, or null if it
+    // was not positioned yet
+    BytesRef current = null;
+    // True if the last seek went past the last term of the field
+    boolean exhausted = false;
+    // True if we walk the terms dictionary with seekCeil
+    // instead of looking up each term
+    boolean sortedWalk = false;
 
     String currentField = null;
     DocsEnum docs = null;
 
-    assert checkDeleteTerm(null);
-
-    boolean any = false;
+    Term lastTerm = null;
 
     //System.out.println(Thread.currentThread().getName() + " del terms reader=" + reader);
     for (Term term : termsIter) {
+      assert checkDeleteTerm(lastTerm, term);
+      assert (lastTerm = new Term(term.field(), BytesRef.deepCopyOf(term.bytes()))) != null;
+
       // Since we visit terms sorted, we gain performance
       // by re-using the same TermsEnum and seeking only
       // forwards
@@ -383,48 +555,69 @@ class BufferedDeletesStream {
         Terms terms = fields.terms(currentField);
         if (terms != null) {
           termsEnum = terms.iterator(null);
+          final long fieldTermCount = terms.size();
+          sortedWalk = fieldTermCount != -1 && (long) termCount * SORTED_WALK_TERMS_PER_DELETE >= fieldTermCount;
         } else {
           termsEnum = null;
         }
+        current = null;
+        exhausted = false;
       }
 
-      if (termsEnum == null) {
+      if (termsEnum == null || exhausted) {
+        // no (more) terms in this field
         continue;
       }
-      assert checkDeleteTerm(term);
 
       // System.out.println("  term=" + term);
 
-      if (termsEnum.seekExact(term.bytes(), false)) {
-        // we don't need term frequencies for this
-        DocsEnum docsEnum = termsEnum.docs(rld.getLiveDocs(), docs, 0);
-        //System.out.println("BDS: got docsEnum=" + docsEnum);
-
-        if (docsEnum != null) {
-          while (true) {
-            final int docID = docsEnum.nextDoc();
-            //System.out.println(Thread.currentThread().getName() + " del term=" + term + " doc=" + docID);
-            if (docID == DocIdSetIterator.NO_MORE_DOCS) {
-              break;
-            }   
-            // NOTE: there is no limit check on the docID
-            // when deleting by Term (unlike by Query)
-            // because on flush we apply all Term deletes to
-            // each segment.  So all Term deleting here is
-            // against prior segments:
-            if (!any) {
-              rld.initWritableLiveDocs();
-              any = true;
-            }
-            if (rld.delete(docID)) {
-              delCount++;
-            }
+      if (!sortedWalk) {
+        if (!termsEnum.seekExact(term.bytes(), false)) {
+          continue;
+        }
+      } else {
+        // Intersect the sorted delete terms with the terms
+        // dictionary: after a seek lands past a delete term,
+        // all delete terms before the term it landed on are
+        // known to be absent from this segment, so we don't
+        // need to seek for them:
+        final int cmp = current == null ? 1 : term.bytes().compareTo(current);
+        if (cmp < 0) {
+          continue;
+        } else if (cmp > 0) {
+          final TermsEnum.SeekStatus status = termsEnum.seekCeil(term.bytes(), false);
+          if (status == TermsEnum.SeekStatus.END) {
+            exhausted = true;
+            continue;
+          }
+          current = termsEnum.term();
+          if (status == TermsEnum.SeekStatus.NOT_FOUND) {
+            continue;
           }
         }
       }
-    }
 
-    return delCount;
+      // we don't need term frequencies for this
+      DocsEnum docsEnum = termsEnum.docs(liveDocs, docs, 0);
+      //System.out.println("BDS: got docsEnum=" + docsEnum);
+
+      if (docsEnum != null) {
+        docs = docsEnum;
+        while (true) {
+          final int docID = docsEnum.nextDoc();
+          //System.out.println(Thread.currentThread().getName() + " del term=" + term + " doc=" + docID);
+          if (docID == DocIdSetIterator.NO_MORE_DOCS) {
+            break;
+          }   
+          // NOTE: there is no limit check on the docID
+          // when deleting by Term (unlike by Query)
+          // because on flush we apply all Term deletes to
+          // each segment.  So all Term deleting here is
+          // against prior segments:
+          segDeletes.add(docID);
+        }
+      }
+    }
   }
 
   public static class QueryAndLimit {
@@ -437,14 +630,12 @@ class BufferedDeletesStream {
   }
 
   // Delete by query
-  private static long applyQueryDeletes(Iterable<QueryAndLimit> queriesIter, ReadersAndLiveDocs rld, final SegmentReader reader) throws IOException {
-    long delCount = 0;
+  private static void resolveQueryDeletes(Iterable<QueryAndLimit> queriesIter, final SegmentReader reader, Bits liveDocs, SegmentDeletes segDeletes) throws IOException {
     final AtomicReaderContext readerContext = reader.getContext();
-    boolean any = false;
     for (QueryAndLimit ent : queriesIter) {
       Query query = ent.query;
       int limit = ent.limit;
-      final DocIdSet docs = new QueryWrapperFilter(query).getDocIdSet(readerContext, reader.getLiveDocs());
+      final DocIdSet docs = new QueryWrapperFilter(query).getDocIdSet(readerContext, liveDocs);
       if (docs != null) {
         final DocIdSetIterator it = docs.iterator();
         if (it != null) {
@@ -454,29 +645,16 @@ class BufferedDeletesStream {
               break;
             }
 
-            if (!any) {
-              rld.initWritableLiveDocs();
-              any = true;
-            }
-
-            if (rld.delete(doc)) {
-              delCount++;
-            }
+            segDeletes.add(doc);
           }
         }
       }
     }
-
-    return delCount;
   }
 
   // used only by assert
-  private boolean checkDeleteTerm(Term term) {
-    if (term != null) {
-      assert lastDeleteTerm == null || term.compareTo(lastDeleteTerm) > 0: "lastTerm=" + lastDeleteTerm + " vs term=" + term;
-    }
-    // TODO: we re-use term now in our merged iterable, but we shouldn't clone, instead copy for this assert
-    lastDeleteTerm = term == null ? null : new Term(term.field(), BytesRef.deepCopyOf(term.bytes));
+  private static boolean checkDeleteTerm(Term lastTerm, Term term) {
+    assert lastTerm == null || term.compareTo(lastTerm) > 0: "lastTerm=" + lastTerm + " vs term=" + term;
     return true;
   }
 
@@ -29,6 +29,9 @@ import org.apache.lucene.index.BufferedDeletesStream.QueryAndLimit;
 class CoalescedDeletes {
   final Map<Query,Integer> queries = new HashMap<Query,Integer>();
   final List<Iterable<Term>> iterables = new ArrayList<Iterable<Term>>();
+  // upper bound of the number of unique terms, since the
+  // same term may be deleted in several packets
+  int termCount;
 
   @Override
   public String toString() {
@@ -38,6 +41,7 @@ class CoalescedDeletes {
 
   void update(FrozenBufferedDeletes in) {
     iterables.add(in.termsIterable());
+    termCount += in.termCount;
 
     for(int queryIdx=0;queryIdx<in.queries.length;queryIdx++) {
       final Query query = in.queries[queryIdx];
@@ -45,7 +49,10 @@ class CoalescedDeletes {
     }
   }
 
+ // The returned iterables don't see packets that are coalesced later,
+ // since they may be consumed after that
  public Iterable<Term> termsIterable() {
+   final List<Iterable<Term>> iterables = new ArrayList<Iterable<Term>>(this.iterables);
    return new Iterable<Term>() {
      @SuppressWarnings({"unchecked","rawtypes"})
      @Override
@@ -60,6 +67,7 @@ class CoalescedDeletes {
   }
 
   public Iterable<QueryAndLimit> queriesIterable() {
+    final Map<Query,Integer> queries = new HashMap<Query,Integer>(this.queries);
     return new Iterable<QueryAndLimit>() {
       
       @Override
@@ -153,6 +153,23 @@ public abstract class DocValues implements Closeable {
    */
   protected abstract Source loadDirectSource() throws IOException;
 
+  /**
+   * Loads a new {@link Source} instance that reads its values straight from
+   * memory-mapped index files instead of loading them onto the heap, or
+   * returns <code>null</code> if this {@link DocValues} instance can't provide
+   * such a source, eg because its files are not memory-mapped. Unlike
+   * {@link #loadDirectSource() direct sources}, the returned source is
+   * thread-safe.
+   * <p>
+   * The default implementation returns <code>null</code>.
+   * 
+   * @see SourceCache.OffHeapSourceCache
+   * @lucene.experimental
+   */
+  protected Source loadOffHeapSource() throws IOException {
+    return null;
+  }
+
   /**
    * Returns the {@link Type} of this {@link DocValues} instance
    */
@@ -808,5 +825,55 @@ public abstract class DocValues implements Closeable {
         }
       }
     }
+
+    /**
+     * A {@link SourceCache} that loads {@link Source}s from
+     * {@link DocValues#loadOffHeapSource()}, so that sorting or faceting on a
+     * field doesn't hold per-document arrays on the heap, and falls back to
+     * {@link DocValues#loadSource()} if the {@link DocValues} instance doesn't
+     * support off-heap sources. Lookups are a bit slower than with
+     * heap-resident sources, and {@link Source#hasArray()} is generally
+     * <code>false</code>, so don't use this cache for norms.
+     * 
+     * @see DocValues#setCache(SourceCache)
+     * @lucene.experimental
+     */
+    public static final class OffHeapSourceCache extends SourceCache {
+      private Source ref;
+      private final CloseableThreadLocal<Source> directSourceCache = new CloseableThreadLocal<Source>();
+      
+      /** Sole constructor. */
+      public OffHeapSourceCache() {
+      }
+
+      @Override
+      public synchronized Source load(DocValues values) throws IOException {
+        if (ref == null) {
+          ref = values.loadOffHeapSource();
+          if (ref == null) {
+            ref = values.loadSource();
+          }
+        }
+        return ref;
+      }
+
+      @Override
+      public synchronized void invalidate(DocValues values) {
+        ref = null;
+        directSourceCache.close();
+      }
+
+      @Override
+      public synchronized Source loadDirect(DocValues values) throws IOException {
+        final Source source = directSourceCache.get();
+        if (source == null) {
+          final Source loadDirectSource = values.loadDirectSource();
+          directSourceCache.set(loadDirectSource);
+          return loadDirectSource;
+        } else {
+          return source;
+        }
+      }
+    }
   }
 }
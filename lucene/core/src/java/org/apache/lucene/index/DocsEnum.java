@@ -44,6 +44,47 @@ public abstract class DocsEnum extends DocIdSetIterator {
    *  nor after {@link #nextDoc} returns NO_MORE_DOCS. 
    **/
   public abstract int freq() throws IOException;
+
+  /** Bulk read: fills <code>docs</code> with the next matching
+   *  documents, and <code>freqs</code> with their term
+   *  frequencies unless it is null, and returns how many
+   *  documents were read. At most <code>docs.length</code>
+   *  documents are read, and <code>freqs</code>, if non-null,
+   *  must be at least as long as <code>docs</code>. Returns 0
+   *  once the enum is exhausted.
+   *  <p>
+   *  Calls to this method can be mixed with {@link #nextDoc}
+   *  and {@link #advance}, which continue after the last
+   *  document that was read, as long as {@link #docID} is not
+   *  {@link #NO_MORE_DOCS}: an enum that returned fewer than
+   *  <code>docs.length</code> documents may already be
+   *  exhausted. Frequencies are only meaningful if they were
+   *  requested with {@link #FLAG_FREQS}.
+   *  <p>
+   *  The default implementation calls {@link #nextDoc} and
+   *  {@link #freq} for every document; codecs that decode
+   *  postings in blocks should override it to copy whole
+   *  blocks at once.
+   *
+   *  @lucene.experimental */
+  public int read(int[] docs, int[] freqs) throws IOException {
+    if (docID() == NO_MORE_DOCS) {
+      return 0;
+    }
+    int count = 0;
+    while (count < docs.length) {
+      final int doc = nextDoc();
+      if (doc == NO_MORE_DOCS) {
+        break;
+      }
+      docs[count] = doc;
+      if (freqs != null) {
+        freqs[count] = freq();
+      }
+      count++;
+    }
+    return count;
+  }
   
   /** Returns the related attributes. */
   public AttributeSource attributes() {
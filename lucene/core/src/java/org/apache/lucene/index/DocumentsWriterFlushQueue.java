@@ -16,7 +16,9 @@ package org.apache.lucene.index;
  * the License.
  */
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
@@ -100,12 +102,15 @@ class DocumentsWriterFlushQueue {
 
   private void innerPurge(DocumentsWriter writer) throws IOException {
     assert purgeLock.isHeldByCurrentThread();
+    final int flushMergeMaxDocs = writer.indexWriter.getConfig().getFlushMergeMaxDocs();
     while (true) {
       final FlushTicket head;
       final boolean canPublish;
+      final List<SegmentFlushTicket> mergeable;
       synchronized (this) {
         head = queue.peek();
         canPublish = head != null && head.canPublish(); // do this synced 
+        mergeable = canPublish && flushMergeMaxDocs > 0 ? mergeableTickets(flushMergeMaxDocs) : null;
       }
       if (canPublish) {
         try {
@@ -115,13 +120,21 @@ class DocumentsWriterFlushQueue {
            * the downside is that we need to force a purge on fullFlush since ther could
            * be a ticket still in the queue. 
            */
-          head.publish(writer);
+          if (mergeable == null) {
+            head.publish(writer);
+          } else {
+            publishMerged(writer, mergeable);
+          }
         } finally {
           synchronized (this) {
-            // finally remove the published ticket from the queue
-            final FlushTicket poll = queue.poll();
-            ticketCount.decrementAndGet();
-            assert poll == head;
+            // finally remove the published ticket(s) from the queue; if
+            // publishing merged tickets one by one failed, the tickets
+            // after the failed one stay in the queue
+            assert head.published;
+            while (queue.peek() != null && queue.peek().published) {
+              queue.poll();
+              ticketCount.decrementAndGet();
+            }
           }
         }
       } else {
@@ -130,6 +143,74 @@ class DocumentsWriterFlushQueue {
     }
   }
 
+  /**
+   * Returns the run of tickets at the head of the queue whose flushed segments
+   * can be merged into a single segment before they are published, or
+   * <code>null</code> if there are less than two of them. All but the first
+   * ticket must come without global deletes, since those must be applied to
+   * the segments published before them, and no segment may carry segment
+   * private deletes.
+   */
+  private List<SegmentFlushTicket> mergeableTickets(int maxDocs) {
+    assert Thread.holdsLock(this);
+    List<SegmentFlushTicket> tickets = null;
+    int numDocs = 0;
+    for (FlushTicket ticket : queue) {
+      if (!(ticket instanceof SegmentFlushTicket)) {
+        break;
+      }
+      final FlushedSegment segment = ((SegmentFlushTicket) ticket).segment;
+      if (segment == null || segment.segmentDeletes != null
+          || (tickets != null && ticket.frozenDeletes.any())) {
+        break;
+      }
+      numDocs += segment.segmentInfo.info.getDocCount();
+      if (numDocs > maxDocs) {
+        break;
+      }
+      if (tickets == null) {
+        tickets = new ArrayList<SegmentFlushTicket>();
+      }
+      tickets.add((SegmentFlushTicket) ticket);
+    }
+    return tickets != null && tickets.size() > 1 ? tickets : null;
+  }
+
+  private void publishMerged(DocumentsWriter writer, List<SegmentFlushTicket> tickets) throws IOException {
+    final List<FlushedSegment> segments = new ArrayList<FlushedSegment>(tickets.size());
+    for (SegmentFlushTicket ticket : tickets) {
+      segments.add(ticket.segment);
+    }
+    FlushedSegment merged = null;
+    Throwable mergeFailure = null;
+    try {
+      merged = writer.indexWriter.mergeFlushedSegments(segments);
+    } catch (IOException e) {
+      mergeFailure = e;
+    } catch (RuntimeException e) {
+      mergeFailure = e;
+    }
+    if (merged == null) {
+      // merging failed - the flushed segments are still intact so
+      // publish them one by one; only a failure to publish them is
+      // thrown
+      if (writer.infoStream.isEnabled("DW")) {
+        writer.infoStream.message("DW", "merging " + tickets.size() + " flushed segments failed; publish them one by one: " + mergeFailure);
+      }
+      for (SegmentFlushTicket ticket : tickets) {
+        ticket.publish(writer);
+      }
+      return;
+    }
+    for (SegmentFlushTicket ticket : tickets) {
+      assert !ticket.published : "ticket was already publised - can not publish twice";
+      ticket.published = true;
+    }
+    // the global deletes of the first ticket apply to the segments published
+    // before it, the others have none
+    writer.finishFlush(merged, tickets.get(0).frozenDeletes);
+  }
+
   void forcePurge(DocumentsWriter writer) throws IOException {
     assert !Thread.holdsLock(this);
     purgeLock.lock();
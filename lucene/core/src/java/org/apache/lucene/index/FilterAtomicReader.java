@@ -246,6 +246,11 @@ public class FilterAtomicReader extends AtomicReader {
     public int advance(int target) throws IOException {
       return in.advance(target);
     }
+
+    @Override
+    public int read(int[] docs, int[] freqs) throws IOException {
+      return in.read(docs, freqs);
+    }
     
     @Override
     public AttributeSource attributes() {
@@ -286,6 +291,11 @@ public class FilterAtomicReader extends AtomicReader {
       return in.advance(target);
     }
 
+    @Override
+    public int read(int[] docs, int[] freqs) throws IOException {
+      return in.read(docs, freqs);
+    }
+
     @Override
     public int nextPosition() throws IOException {
       return in.nextPosition();
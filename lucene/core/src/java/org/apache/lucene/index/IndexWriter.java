@@ -34,6 +34,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.index.DocumentsWriterPerThread.FlushedSegment;
 import org.apache.lucene.index.FieldInfos.FieldNumbers;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.index.MergePolicy.MergeTrigger;
@@ -42,6 +43,7 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.CompoundFileDirectory;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FlushInfo;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.Lock;
 import org.apache.lucene.store.LockObtainFailedException;
@@ -600,7 +602,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
     mergeScheduler = config.getMergeScheduler();
     codec = config.getCodec();
 
-    bufferedDeletesStream = new BufferedDeletesStream(infoStream);
+    bufferedDeletesStream = new BufferedDeletesStream(infoStream, config.getApplyDeletesExecutor());
     poolReaders = config.getReaderPooling();
 
     writeLock = directory.makeLock(WRITE_LOCK_NAME);
@@ -2191,6 +2193,89 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
     return mergePolicy.useCompoundFile(segmentInfos, segmentInfo);
   }
 
+  /**
+   * Merges flushed segments that have not been published yet into a single
+   * new segment, which is sealed the same way as a freshly flushed segment.
+   * The flushed segments must not carry segment private deletes. On success
+   * the files of the flushed segments are removed; otherwise they are left
+   * untouched so that the segments can still be published on their own.
+   */
+  FlushedSegment mergeFlushedSegments(List<FlushedSegment> segments) throws IOException {
+    assert segments.size() > 1;
+    int numDocs = 0;
+    long sizeInBytes = 0;
+    for (FlushedSegment segment : segments) {
+      assert segment.segmentDeletes == null;
+      numDocs += segment.segmentInfo.info.getDocCount() - segment.delCount;
+      sizeInBytes += segment.segmentInfo.sizeInBytes();
+    }
+    final IOContext context = new IOContext(new FlushInfo(numDocs, sizeInBytes));
+
+    final TrackingDirectoryWrapper trackingDir = new TrackingDirectoryWrapper(directory);
+    final SegmentInfo info = new SegmentInfo(directory, Constants.LUCENE_MAIN_VERSION, newSegmentName(), -1,
+                                             false, codec, null, null);
+    final SegmentMerger merger = new SegmentMerger(info, infoStream, trackingDir, config.getTermIndexInterval(),
+                                                   MergeState.CheckAbort.NONE, globalFieldNumberMap, context);
+    final List<SegmentReader> readers = new ArrayList<SegmentReader>();
+    final MergeState mergeState;
+    boolean success = false;
+    try {
+      for (FlushedSegment segment : segments) {
+        final SegmentReader reader = new SegmentReader(segment.segmentInfo, config.getReaderTermsIndexDivisor(), IOContext.READ);
+        readers.add(reader);
+        merger.add(reader);
+      }
+      mergeState = merger.merge();
+      success = true;
+    } finally {
+      if (success) {
+        IOUtils.close(readers);
+      } else {
+        IOUtils.closeWhileHandlingException(readers);
+        synchronized(this) {
+          deleter.refresh(info.name);
+        }
+      }
+    }
+
+    final SegmentInfoPerCommit infoPerCommit = new SegmentInfoPerCommit(info, 0, -1L);
+    info.setFiles(new HashSet<String>(trackingDir.getCreatedFiles()));
+    trackingDir.getCreatedFiles().clear();
+    setDiagnostics(info, "flush");
+
+    success = false;
+    try {
+      if (useCompoundFile(infoPerCommit)) {
+        Collection<String> oldFiles = createCompoundFile(infoStream, directory, MergeState.CheckAbort.NONE, info, context);
+        info.setUseCompoundFile(true);
+        deleteNewFiles(oldFiles);
+      }
+
+      // Have codec write SegmentInfo.  Must do this after
+      // creating CFS so that 1) .si isn't slurped into CFS,
+      // and 2) .si reflects useCompoundFile=true change
+      // above:
+      codec.segmentInfoFormat().getSegmentInfoWriter().write(trackingDir, info, mergeState.fieldInfos, context);
+      info.addFiles(trackingDir.getCreatedFiles());
+      success = true;
+    } finally {
+      if (!success) {
+        synchronized(this) {
+          deleter.refresh(info.name);
+        }
+      }
+    }
+
+    if (infoStream.isEnabled("IW")) {
+      infoStream.message("IW", "merged " + segments.size() + " flushed segments into " + segString(infoPerCommit));
+    }
+
+    for (FlushedSegment segment : segments) {
+      deleteNewFiles(segment.segmentInfo.files());
+    }
+    return new FlushedSegment(infoPerCommit, mergeState.fieldInfos, null, null, 0);
+  }
+
   private synchronized void resetMergeExceptions() {
     mergeExceptions = new ArrayList<MergePolicy.OneMerge>();
     mergeGen++;
@@ -2387,7 +2472,8 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
                                          false, codec, null, null);
 
       SegmentMerger merger = new SegmentMerger(info, infoStream, trackingDir, config.getTermIndexInterval(),
-                                               MergeState.CheckAbort.NONE, globalFieldNumberMap, context);
+                                               MergeState.CheckAbort.NONE, globalFieldNumberMap, context,
+                                               config.getMergePartsExecutor());
 
       for (IndexReader reader : readers) {    // add new indexes
         merger.add(reader);
@@ -2969,6 +3055,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
 
     // Lazy init (only when we find a delete to carry over):
     ReadersAndLiveDocs mergedDeletes = null;
+    final MergePolicy.DocMap docMap = merge.getDocMap();
 
     for(int i=0; i < sourceSegments.size(); i++) {
       SegmentInfoPerCommit info = sourceSegments.get(i);
@@ -3015,7 +3102,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
                   mergedDeletes = readerPool.get(merge.info, true);
                   mergedDeletes.initWritableLiveDocs();
                 }
-                mergedDeletes.delete(docUpto);
+                mergedDeletes.delete(docMap.map(docUpto));
               }
               docUpto++;
             }
@@ -3033,7 +3120,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
               mergedDeletes = readerPool.get(merge.info, true);
               mergedDeletes.initWritableLiveDocs();
             }
-            mergedDeletes.delete(docUpto);
+            mergedDeletes.delete(docMap.map(docUpto));
           }
           docUpto++;
         }
@@ -3422,15 +3509,15 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
     // names.
     final String mergeSegmentName = newSegmentName();
     SegmentInfo si = new SegmentInfo(directory, Constants.LUCENE_MAIN_VERSION, mergeSegmentName, -1, false, codec, null, null);
-    merge.info = new SegmentInfoPerCommit(si, 0, -1L);
-
-    // Lock order: IW -> BD
-    bufferedDeletesStream.prune(segmentInfos);
-
     Map<String,String> details = new HashMap<String,String>();
     details.put("mergeMaxNumSegments", ""+merge.maxNumSegments);
     details.put("mergeFactor", Integer.toString(merge.segments.size()));
     setDiagnostics(si, "merge", details);
+    // after the diagnostics, so that the merge may add its own
+    merge.setInfo(new SegmentInfoPerCommit(si, 0, -1L));
+
+    // Lock order: IW -> BD
+    bufferedDeletesStream.prune(segmentInfos);
 
     if (infoStream.isEnabled("IW")) {
       infoStream.message("IW", "merge seg=" + merge.info.info.name + " " + segString(merge.segments));
@@ -3543,7 +3630,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
     final TrackingDirectoryWrapper dirWrapper = new TrackingDirectoryWrapper(directory);
 
     SegmentMerger merger = new SegmentMerger(merge.info.info, infoStream, dirWrapper, config.getTermIndexInterval(), checkAbort,
-                                             globalFieldNumberMap, context);
+                                             globalFieldNumberMap, context, config.getMergePartsExecutor());
 
     if (infoStream.isEnabled("IW")) {
       infoStream.message("IW", "merging " + segString(merge.segments));
@@ -3614,12 +3701,14 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
 
         merge.readers.add(reader);
         assert delCount <= info.info.getDocCount(): "delCount=" + delCount + " info.docCount=" + info.info.getDocCount() + " rld.pendingDeleteCount=" + rld.getPendingDeleteCount() + " info.getDelCount()=" + info.getDelCount();
-        if (delCount < info.info.getDocCount()) {
-          merger.add(reader);
-        }
         segUpto++;
       }
 
+      // the merge may reorder or wrap the readers of the segments:
+      for (AtomicReader reader : merge.getMergeReaders()) {
+        merger.add(reader);
+      }
+
       merge.checkAborted(directory);
 
       // This is where all the work happens:
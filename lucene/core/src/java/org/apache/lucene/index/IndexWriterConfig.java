@@ -18,6 +18,7 @@ package org.apache.lucene.index;
  */
 
 import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.codecs.Codec;
@@ -104,6 +105,10 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig implements Cl
 
   /** Default value is 1945. Change using {@link #setRAMPerThreadHardLimitMB(int)} */
   public static final int DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB = 1945;
+
+  /** Default value is 0 (flushed segments are never merged before they are
+   *  published). Change using {@link #setFlushMergeMaxDocs(int)}. */
+  public static final int DEFAULT_FLUSH_MERGE_MAX_DOCS = 0;
   
   /** The maximum number of simultaneous threads that may be
    *  indexing documents at once in IndexWriter; if more
@@ -421,6 +426,55 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig implements Cl
     return perThreadHardLimitMB;
   }
   
+  @Override
+  public int getFlushMergeMaxDocs() {
+    return flushMergeMaxDocs;
+  }
+
+  /**
+   * Expert: sets the {@link ExecutorService} used to resolve buffered deletes
+   * (by term and by query) against several segments concurrently, which
+   * shortens the time {@link IndexWriter} holds its lock while applying
+   * deletes, for instance when opening a near-real-time reader after many
+   * {@link IndexWriter#updateDocument} calls. Note that the deletes are
+   * still resolved and applied while that lock is held: the calling thread
+   * waits for all segments to be resolved. By default this is
+   * <code>null</code> and segments are resolved one after the other in the
+   * calling thread.
+   *
+   * <p>Only takes effect when IndexWriter is first created.
+   */
+  public IndexWriterConfig setApplyDeletesExecutor(ExecutorService executor) {
+    this.applyDeletesExecutor = executor;
+    return this;
+  }
+
+  @Override
+  public ExecutorService getApplyDeletesExecutor() {
+    return applyDeletesExecutor;
+  }
+
+  /**
+   * Expert: sets the {@link ExecutorService} used to merge the independent
+   * parts of a segment (stored fields, postings, doc values, norms and term
+   * vectors) concurrently, so that a large merge takes about as long as its
+   * slowest part rather than the sum of all parts. The merging thread merges
+   * the postings itself and waits for the other parts. The executor should be
+   * bounded, since it is shared by all running merges. By default this is
+   * <code>null</code> and the parts are merged one after the other.
+   *
+   * <p>Only takes effect when IndexWriter is first created.
+   */
+  public IndexWriterConfig setMergePartsExecutor(ExecutorService executor) {
+    this.mergePartsExecutor = executor;
+    return this;
+  }
+
+  @Override
+  public ExecutorService getMergePartsExecutor() {
+    return mergePartsExecutor;
+  }
+
   @Override
   FlushPolicy getFlushPolicy() {
     return flushPolicy;
@@ -484,6 +538,11 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig implements Cl
     return setInfoStream(printStream == null ? InfoStream.NO_OUTPUT : new PrintStreamInfoStream(printStream));
   }
   
+  @Override
+  public IndexWriterConfig setFlushMergeMaxDocs(int flushMergeMaxDocs) {
+    return (IndexWriterConfig) super.setFlushMergeMaxDocs(flushMergeMaxDocs);
+  }
+  
   @Override
   public IndexWriterConfig setMaxBufferedDeleteTerms(int maxBufferedDeleteTerms) {
     return (IndexWriterConfig) super.setMaxBufferedDeleteTerms(maxBufferedDeleteTerms);
@@ -17,6 +17,8 @@ package org.apache.lucene.index;
  * limitations under the License.
  */
 
+import java.util.concurrent.ExecutorService;
+
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.codecs.lucene41.Lucene41PostingsFormat; // javadocs
@@ -95,6 +97,18 @@ public class LiveIndexWriterConfig {
    *  segment, after which the segment is forced to flush. */
   protected volatile int perThreadHardLimitMB;
 
+  /** Flushed segments with at most this many documents are
+   *  merged with their neighbours before they are published. */
+  protected volatile int flushMergeMaxDocs;
+
+  /** {@link ExecutorService} used to resolve buffered
+   *  deletes of several segments concurrently. */
+  protected volatile ExecutorService applyDeletesExecutor;
+
+  /** {@link ExecutorService} used to merge the parts of a
+   *  segment concurrently. */
+  protected volatile ExecutorService mergePartsExecutor;
+
   /** {@link Version} that {@link IndexWriter} should emulate. */
   protected final Version matchVersion;
 
@@ -122,6 +136,9 @@ public class LiveIndexWriterConfig {
     readerPooling = IndexWriterConfig.DEFAULT_READER_POOLING;
     indexerThreadPool = new ThreadAffinityDocumentsWriterThreadPool(IndexWriterConfig.DEFAULT_MAX_THREAD_STATES);
     perThreadHardLimitMB = IndexWriterConfig.DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB;
+    flushMergeMaxDocs = IndexWriterConfig.DEFAULT_FLUSH_MERGE_MAX_DOCS;
+    applyDeletesExecutor = null;
+    mergePartsExecutor = null;
   }
   
   /**
@@ -151,6 +168,9 @@ public class LiveIndexWriterConfig {
     readerPooling = config.getReaderPooling();
     flushPolicy = config.getFlushPolicy();
     perThreadHardLimitMB = config.getRAMPerThreadHardLimitMB();
+    flushMergeMaxDocs = config.getFlushMergeMaxDocs();
+    applyDeletesExecutor = config.getApplyDeletesExecutor();
+    mergePartsExecutor = config.getMergePartsExecutor();
   }
 
   /** Returns the default analyzer to use for indexing documents. */
@@ -407,6 +427,31 @@ public class LiveIndexWriterConfig {
     return this;
   }
 
+  /**
+   * Expert: when several {@link DocumentsWriterPerThread}s finish flushing at
+   * about the same time, for instance on a full flush triggered by
+   * {@link DirectoryReader#open(IndexWriter, boolean)} or a commit, consecutive
+   * flushed segments with no more than <code>flushMergeMaxDocs</code>
+   * documents in total are merged into a single segment before they are
+   * published. This avoids publishing many tiny segments that the
+   * {@link MergePolicy} would have to merge right away. Segments which still
+   * carry buffered delete queries are never merged this way. A value of
+   * <code>0</code> (the default) disables this.
+   *
+   * <p>
+   * Takes effect immediately, but only the next time flushed segments are
+   * published.
+   * 
+   * @see IndexWriterConfig#DEFAULT_FLUSH_MERGE_MAX_DOCS
+   */
+  public LiveIndexWriterConfig setFlushMergeMaxDocs(int flushMergeMaxDocs) {
+    if (flushMergeMaxDocs < 0) {
+      throw new IllegalArgumentException("flushMergeMaxDocs must be >= 0 (got " + flushMergeMaxDocs + ")");
+    }
+    this.flushMergeMaxDocs = flushMergeMaxDocs;
+    return this;
+  }
+
   /** Returns the {@code termInfosIndexDivisor}.
    * 
    * @see #setReaderTermsIndexDivisor(int) */
@@ -524,6 +569,38 @@ public class LiveIndexWriterConfig {
     return perThreadHardLimitMB;
   }
   
+  /**
+   * Returns the maximum number of documents of flushed segments that are
+   * merged together before they are published.
+   * 
+   * @see #setFlushMergeMaxDocs(int)
+   */
+  public int getFlushMergeMaxDocs() {
+    return flushMergeMaxDocs;
+  }
+  
+  /**
+   * Returns the {@link ExecutorService} used to resolve buffered deletes of
+   * several segments concurrently, or <code>null</code> if they are resolved
+   * in the thread applying the deletes.
+   * 
+   * @see IndexWriterConfig#setApplyDeletesExecutor(ExecutorService)
+   */
+  public ExecutorService getApplyDeletesExecutor() {
+    return applyDeletesExecutor;
+  }
+
+  /**
+   * Returns the {@link ExecutorService} used to merge the stored fields,
+   * postings, doc values, norms and term vectors of a segment concurrently,
+   * or <code>null</code> if they are merged one after the other.
+   * 
+   * @see IndexWriterConfig#setMergePartsExecutor(ExecutorService)
+   */
+  public ExecutorService getMergePartsExecutor() {
+    return mergePartsExecutor;
+  }
+  
   /**
    * @see IndexWriterConfig#setFlushPolicy(FlushPolicy)
    */
@@ -564,6 +641,9 @@ public class LiveIndexWriterConfig {
     sb.append("indexerThreadPool=").append(getIndexerThreadPool()).append("\n");
     sb.append("readerPooling=").append(getReaderPooling()).append("\n");
     sb.append("perThreadHardLimitMB=").append(getRAMPerThreadHardLimitMB()).append("\n");
+    sb.append("flushMergeMaxDocs=").append(getFlushMergeMaxDocs()).append("\n");
+    sb.append("applyDeletesExecutor=").append(getApplyDeletesExecutor()).append("\n");
+    sb.append("mergePartsExecutor=").append(getMergePartsExecutor()).append("\n");
     return sb.toString();
   }
 
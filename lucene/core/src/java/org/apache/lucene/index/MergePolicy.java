@@ -212,7 +212,64 @@ public abstract class MergePolicy implements java.io.Closeable, Cloneable {
     /** Return {@link MergeInfo} describing this merge. */
     public MergeInfo getMergeInfo() {
       return new MergeInfo(totalDocCount, estimatedMergeBytes, isExternal, maxNumSegments);
-    }    
+    }
+
+    /** Expert: Get the list of readers to merge. Note that this list does not
+     *  necessarily match the list of segments to merge and should only be used
+     *  to feed SegmentMerger to initialize a merge. When a {@link OneMerge}
+     *  reorders doc IDs, it must override {@link #getDocMap} too so that
+     *  deletes that happened during the merge can be applied to the newly
+     *  merged segment. */
+    public List<AtomicReader> getMergeReaders() throws IOException {
+      if (readers == null) {
+        throw new IllegalStateException("IndexWriter has not initialized readers from the segment infos yet");
+      }
+      final List<AtomicReader> readers = new ArrayList<AtomicReader>(this.readers.size());
+      for (AtomicReader reader : this.readers) {
+        if (reader.numDocs() > 0) {
+          readers.add(reader);
+        }
+      }
+      return Collections.unmodifiableList(readers);
+    }
+
+    /** Expert: Sets the {@link SegmentInfoPerCommit} of this {@link OneMerge}.
+     *  Allows sub-classes to e.g. set diagnostics properties. */
+    public void setInfo(SegmentInfoPerCommit info) {
+      this.info = info;
+    }
+
+    /** Expert: If {@link #getMergeReaders()} reorders document IDs, this method
+     *  must be overridden to return a mapping from the <i>natural</i> doc ID
+     *  (the doc ID that would result from a merge without reordering) to the
+     *  actual doc ID. This mapping is used to apply deletions that happened
+     *  during the merge to the new segment. */
+    public DocMap getDocMap() {
+      return DocMap.IDENTITY;
+    }
+  }
+
+  /**
+   * A map of doc IDs, as returned by {@link OneMerge#getDocMap()}.
+   * @lucene.experimental
+   */
+  public static abstract class DocMap {
+
+    /** A {@link DocMap} that does not reorder doc IDs. */
+    public static final DocMap IDENTITY = new DocMap() {
+      @Override
+      public int map(int docID) {
+        return docID;
+      }
+    };
+
+    /** Sole constructor. (For invocation by subclass 
+     *  constructors, typically implicit.) */
+    protected DocMap() {
+    }
+
+    /** Return the new doc ID according to its old value. */
+    public abstract int map(int docID);
   }
 
   /**
@@ -234,6 +234,20 @@ public class MergeState {
   /** Sole constructor. */
   MergeState() {
   }
+
+  /** Shallow copy, for a part of a merge that runs concurrently with the
+   *  others. */
+  MergeState(MergeState other) {
+    segmentInfo = other.segmentInfo;
+    fieldInfos = other.fieldInfos;
+    readers = other.readers;
+    docMaps = other.docMaps;
+    docBase = other.docBase;
+    checkAbort = other.checkAbort;
+    infoStream = other.infoStream;
+    matchingSegmentReaders = other.matchingSegmentReaders;
+    matchedCount = other.matchedCount;
+  }
   
   /**
    * Class for recording units of work when merging segments.
@@ -255,9 +269,10 @@ public class MergeState {
      * When adding time-consuming code into SegmentMerger,
      * you should test different values for units to ensure
      * that the time in between calls to merge.checkAborted
-     * is up to ~ 1 second.
+     * is up to ~ 1 second. The parts of a merge may
+     * record work concurrently.
      */
-    public void work(double units) throws MergePolicy.MergeAbortedException {
+    public synchronized void work(double units) throws MergePolicy.MergeAbortedException {
       workCount += units;
       if (workCount >= 10000.0) {
         merge.checkAborted(dir);
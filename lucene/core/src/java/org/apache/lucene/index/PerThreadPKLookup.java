@@ -0,0 +1,104 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Looks up the live document that has a given primary key, ie. a term of
+ * a field that has at most one live document per term, such as the field
+ * used with {@link IndexWriter#updateDocument}. This is much cheaper than
+ * running a {@link org.apache.lucene.search.TermQuery} for every key.
+ *
+ * <p>The segments are visited newest first, since recently indexed keys are
+ * the most likely to be looked up again, and the lookup stops at the first
+ * live hit. The {@link TermsEnum} and {@link DocsEnum} of each segment are
+ * created once and reused for all lookups, and terms dictionaries that have
+ * a terms cache are allowed to cache the keys, so that keys that are looked
+ * up again don't need another seek. If the field's postings format keeps a
+ * bloom filter of its terms (eg.
+ * <code>BloomFilteringPostingsFormat</code>), segments that don't have a
+ * key are skipped without touching the terms dictionary.
+ *
+ * <p>Instances are not thread-safe: each thread should use its own
+ * instance, eg. through a {@link org.apache.lucene.util.CloseableThreadLocal}.
+ * Lookups only see the documents of the reader passed to the constructor.
+ *
+ * @lucene.experimental
+ */
+public class PerThreadPKLookup {
+
+  private final TermsEnum[] termsEnums;
+  private final DocsEnum[] docsEnums;
+  private final Bits[] liveDocs;
+  private final int[] docBases;
+  private final int numSegs;
+
+  /**
+   * Creates a lookup of the keys of <code>idFieldName</code> over the
+   * leaves of <code>reader</code>.
+   */
+  public PerThreadPKLookup(IndexReader reader, String idFieldName) throws IOException {
+    final List<AtomicReaderContext> leaves = reader.leaves();
+    termsEnums = new TermsEnum[leaves.size()];
+    docsEnums = new DocsEnum[leaves.size()];
+    liveDocs = new Bits[leaves.size()];
+    docBases = new int[leaves.size()];
+    int numSegs = 0;
+    // IndexWriter appends new segments, so the last leaves are the newest
+    for (int i = leaves.size() - 1; i >= 0; i--) {
+      final AtomicReaderContext leaf = leaves.get(i);
+      final AtomicReader r = leaf.reader();
+      if (r.numDocs() == 0) {
+        continue;
+      }
+      final Terms terms = r.terms(idFieldName);
+      if (terms != null) {
+        termsEnums[numSegs] = terms.iterator(null);
+        liveDocs[numSegs] = r.getLiveDocs();
+        docBases[numSegs] = leaf.docBase;
+        numSegs++;
+      }
+    }
+    this.numSegs = numSegs;
+  }
+
+  /**
+   * Returns the top-level docID of the live document that has the given
+   * key, or -1 if there is none.
+   */
+  public int lookup(BytesRef id) throws IOException {
+    for (int seg = 0; seg < numSegs; seg++) {
+      // use the terms cache, recently indexed keys are often looked up again
+      if (termsEnums[seg].seekExact(id, true)) {
+        final DocsEnum docs = docsEnums[seg] = termsEnums[seg].docs(liveDocs[seg], docsEnums[seg], 0);
+        final int docID = docs.nextDoc();
+        if (docID != DocIdSetIterator.NO_MORE_DOCS) {
+          assert docs.nextDoc() == DocIdSetIterator.NO_MORE_DOCS: "more than one live document for id=" + id;
+          return docBases[seg] + docID;
+        }
+      }
+    }
+    return -1;
+  }
+}
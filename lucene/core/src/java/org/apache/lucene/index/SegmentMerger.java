@@ -22,6 +22,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.codecs.FieldInfosWriter;
@@ -34,6 +39,7 @@ import org.apache.lucene.store.IOContext;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /**
  * The SegmentMerger class combines two or more Segments, represented by an IndexReader ({@link #add},
@@ -54,9 +60,18 @@ final class SegmentMerger {
   private final MergeState mergeState = new MergeState();
   private final FieldInfos.Builder fieldInfosBuilder;
 
+  // merges the parts other than postings concurrently, if non-null
+  private final ExecutorService executor;
+
   // note, just like in codec apis Directory 'dir' is NOT the same as segmentInfo.dir!!
   SegmentMerger(SegmentInfo segmentInfo, InfoStream infoStream, Directory dir, int termIndexInterval,
                 MergeState.CheckAbort checkAbort, FieldInfos.FieldNumbers fieldNumbers, IOContext context) {
+    this(segmentInfo, infoStream, dir, termIndexInterval, checkAbort, fieldNumbers, context, null);
+  }
+
+  SegmentMerger(SegmentInfo segmentInfo, InfoStream infoStream, Directory dir, int termIndexInterval,
+                MergeState.CheckAbort checkAbort, FieldInfos.FieldNumbers fieldNumbers, IOContext context,
+                ExecutorService executor) {
     mergeState.segmentInfo = segmentInfo;
     mergeState.infoStream = infoStream;
     mergeState.readers = new ArrayList<AtomicReader>();
@@ -66,6 +81,7 @@ final class SegmentMerger {
     this.codec = segmentInfo.getCodec();
     this.context = context;
     this.fieldInfosBuilder = new FieldInfos.Builder(fieldNumbers);
+    this.executor = executor;
   }
 
   /**
@@ -99,22 +115,48 @@ final class SegmentMerger {
     mergeState.segmentInfo.setDocCount(setDocMaps());
     mergeDocValuesAndNormsFieldInfos();
     setMatchingSegmentReaders();
-    int numMerged = mergeFields();
-    assert numMerged == mergeState.segmentInfo.getDocCount();
 
-    final SegmentWriteState segmentWriteState = new SegmentWriteState(mergeState.infoStream, directory, mergeState.segmentInfo,
-                                                                      mergeState.fieldInfos, termIndexInterval, null, context);
-    mergeTerms(segmentWriteState);
-    mergePerDoc(segmentWriteState);
-    
+    // the parts below only share read-only state, so they may run
+    // concurrently; postings go first as they are merged by this thread
+    final List<MergePart> parts = new ArrayList<MergePart>();
+    parts.add(new MergePart("postings") {
+      @Override
+      int merge(MergeState mergeState) throws IOException {
+        mergeTerms(mergeState);
+        return -1;
+      }
+    });
+    parts.add(new MergePart("stored fields") {
+      @Override
+      int merge(MergeState mergeState) throws IOException {
+        return mergeFields(mergeState);
+      }
+    });
+    parts.add(new MergePart("doc values") {
+      @Override
+      int merge(MergeState mergeState) throws IOException {
+        mergePerDoc(mergeState);
+        return -1;
+      }
+    });
     if (mergeState.fieldInfos.hasNorms()) {
-      mergeNorms(segmentWriteState);
+      parts.add(new MergePart("norms") {
+        @Override
+        int merge(MergeState mergeState) throws IOException {
+          mergeNorms(mergeState);
+          return -1;
+        }
+      });
     }
-
     if (mergeState.fieldInfos.hasVectors()) {
-      numMerged = mergeVectors();
-      assert numMerged == mergeState.segmentInfo.getDocCount();
+      parts.add(new MergePart("vectors") {
+        @Override
+        int merge(MergeState mergeState) throws IOException {
+          return mergeVectors(mergeState);
+        }
+      });
     }
+    mergeParts(parts);
     
     // write the merged infos
     FieldInfosWriter fieldInfosWriter = codec.fieldInfosFormat().getFieldInfosWriter();
@@ -123,6 +165,94 @@ final class SegmentMerger {
     return mergeState;
   }
 
+  /** An independent part of a merge, which writes its own files. */
+  private abstract class MergePart implements Callable<Void> {
+    final String name;
+    // per-part copy, as codecs record the field being merged in it
+    MergeState mergeState = SegmentMerger.this.mergeState;
+
+    MergePart(String name) {
+      this.name = name;
+    }
+
+    /** Merges this part and returns the number of merged documents, or -1
+     *  if this part is not merged document by document. */
+    abstract int merge(MergeState mergeState) throws IOException;
+
+    @Override
+    public Void call() throws IOException {
+      final long t0 = System.nanoTime();
+      final int numMerged = merge(mergeState);
+      assert numMerged == -1 || numMerged == mergeState.segmentInfo.getDocCount();
+      if (mergeState.infoStream.isEnabled("SM")) {
+        final long msec = (System.nanoTime() - t0) / 1000000;
+        mergeState.infoStream.message("SM", msec + " msec to merge " + name + " [" + mergeState.segmentInfo.getDocCount() + " docs]");
+      }
+      return null;
+    }
+  }
+
+  private void mergeParts(List<MergePart> parts) throws IOException {
+    if (executor == null || parts.size() == 1) {
+      for (MergePart part : parts) {
+        part.call();
+      }
+      return;
+    }
+
+    final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    // the parts merged by this thread
+    final List<MergePart> localParts = new ArrayList<MergePart>();
+    localParts.add(parts.get(0));
+    for (MergePart part : parts.subList(1, parts.size())) {
+      part.mergeState = new MergeState(mergeState);
+      try {
+        futures.add(executor.submit(part));
+      } catch (RejectedExecutionException ree) {
+        // the executor is shut down or saturated
+        localParts.add(part);
+      }
+    }
+    Throwable th = null;
+    for (MergePart part : localParts) {
+      try {
+        part.call();
+      } catch (Throwable t) {
+        th = t;
+        break;
+      }
+    }
+    // always wait for all parts, so that no file is still being written
+    // when the merge is aborted or fails
+    boolean interrupted = false;
+    for (Future<Void> future : futures) {
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        } catch (ExecutionException ee) {
+          if (th == null) {
+            th = ee.getCause();
+          }
+          break;
+        }
+      }
+    }
+    if (th == null && interrupted) {
+      th = new ThreadInterruptedException(new InterruptedException());
+    } else if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (th != null) {
+      if (th instanceof IOException) throw (IOException) th;
+      if (th instanceof RuntimeException) throw (RuntimeException) th;
+      if (th instanceof Error) throw (Error) th;
+      throw new RuntimeException(th);
+    }
+  }
+
   private void setMatchingSegmentReaders() {
     // If the i'th reader is a SegmentReader and has
     // identical fieldName -> number mapping, then this
@@ -240,7 +370,7 @@ final class SegmentMerger {
    * @throws CorruptIndexException if the index is corrupt
    * @throws IOException if there is a low-level IO error
    */
-  private int mergeFields() throws IOException {
+  private int mergeFields(MergeState mergeState) throws IOException {
     final StoredFieldsWriter fieldsWriter = codec.storedFieldsFormat().fieldsWriter(directory, mergeState.segmentInfo, context);
     
     try {
@@ -254,7 +384,7 @@ final class SegmentMerger {
    * Merge the TermVectors from each of the segments into the new one.
    * @throws IOException if there is a low-level IO error
    */
-  private final int mergeVectors() throws IOException {
+  private final int mergeVectors(MergeState mergeState) throws IOException {
     final TermVectorsWriter termVectorsWriter = codec.termVectorsFormat().vectorsWriter(directory, mergeState.segmentInfo, context);
     
     try {
@@ -290,7 +420,12 @@ final class SegmentMerger {
     return docBase;
   }
 
-  private final void mergeTerms(SegmentWriteState segmentWriteState) throws IOException {
+  private SegmentWriteState newSegmentWriteState(MergeState mergeState) {
+    return new SegmentWriteState(mergeState.infoStream, directory, mergeState.segmentInfo,
+                                 mergeState.fieldInfos, termIndexInterval, null, context);
+  }
+
+  private final void mergeTerms(MergeState mergeState) throws IOException {
     
     final List<Fields> fields = new ArrayList<Fields>();
     final List<ReaderSlice> slices = new ArrayList<ReaderSlice>();
@@ -308,7 +443,7 @@ final class SegmentMerger {
       docBase += maxDoc;
     }
 
-    final FieldsConsumer consumer = codec.postingsFormat().fieldsConsumer(segmentWriteState);
+    final FieldsConsumer consumer = codec.postingsFormat().fieldsConsumer(newSegmentWriteState(mergeState));
     boolean success = false;
     try {
       consumer.merge(mergeState,
@@ -324,9 +459,9 @@ final class SegmentMerger {
     }
   }
 
-  private void mergePerDoc(SegmentWriteState segmentWriteState) throws IOException {
+  private void mergePerDoc(MergeState mergeState) throws IOException {
       final PerDocConsumer docsConsumer = codec.docValuesFormat()
-          .docsConsumer(new PerDocWriteState(segmentWriteState));
+          .docsConsumer(new PerDocWriteState(newSegmentWriteState(mergeState)));
       assert docsConsumer != null;
       boolean success = false;
       try {
@@ -341,9 +476,9 @@ final class SegmentMerger {
       }
   }
   
-  private void mergeNorms(SegmentWriteState segmentWriteState) throws IOException {
+  private void mergeNorms(MergeState mergeState) throws IOException {
     final PerDocConsumer docsConsumer = codec.normsFormat()
-        .docsConsumer(new PerDocWriteState(segmentWriteState));
+        .docsConsumer(new PerDocWriteState(newSegmentWriteState(mergeState)));
     assert docsConsumer != null;
     boolean success = false;
     try {
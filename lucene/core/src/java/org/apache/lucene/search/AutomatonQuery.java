@@ -27,6 +27,7 @@ import org.apache.lucene.util.ToStringUtils;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.BasicOperations;
 import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.CompiledAutomatonCache;
 
 /**
  * A {@link Query} that will match terms against a finite-state machine.
@@ -68,6 +69,25 @@ public class AutomatonQuery extends MultiTermQuery {
     this.compiled = new CompiledAutomaton(automaton);
   }
 
+  /**
+   * Create a new AutomatonQuery from the automaton identified by
+   * <code>key</code>, which is taken from the {@link
+   * CompiledAutomatonCache#getDefault() default cache} so that it is only
+   * built and compiled once when the same query is run repeatedly.
+   * 
+   * @param term Term containing field and possibly some pattern structure. The
+   *        term text is ignored.
+   * @param key identifies the automaton to run, and builds it on cache misses.
+   */
+  protected AutomatonQuery(final Term term, CompiledAutomatonCache.Key key) {
+    super(term.field());
+    this.term = term;
+    final CompiledAutomatonCache.Entry entry = CompiledAutomatonCache.getDefault().get(key);
+    // the cached automaton is shared, and equals() may modify it
+    this.automaton = entry.automaton.clone();
+    this.compiled = entry.compiled;
+  }
+
   @Override
   protected TermsEnum getTermsEnum(Terms terms, AttributeSource atts) throws IOException {
     return compiled.getTermsEnum(terms);
@@ -355,6 +355,25 @@ public class BooleanQuery extends Query implements Iterable<BooleanClause> {
         return null;
       }
       
+      // Check if we can return a WANDScorer: a pure disjunction of terms
+      // whose scores have known upper bounds
+      if (required.size() == 0 && prohibited.size() == 0 && minNrShouldMatch <= 1 && optional.size() > 1) {
+        final List<TermScorer> termScorers = new ArrayList<TermScorer>(optional.size());
+        for (Scorer scorer : optional) {
+          if (!(scorer instanceof TermScorer) || ((TermScorer) scorer).maxScore() == Float.POSITIVE_INFINITY) {
+            break;
+          }
+          termScorers.add((TermScorer) scorer);
+        }
+        if (termScorers.size() == optional.size()) {
+          final float[] coordFactors = new float[optional.size() + 1];
+          for (int i = 0; i < coordFactors.length; i++) {
+            coordFactors[i] = disableCoord ? 1.0f : coord(i, maxCoord);
+          }
+          return new WANDScorer(this, termScorers, coordFactors);
+        }
+      }
+
       // Return a BooleanScorer2
       return new BooleanScorer2(this, disableCoord, minNrShouldMatch, required, prohibited, optional, maxCoord);
     }
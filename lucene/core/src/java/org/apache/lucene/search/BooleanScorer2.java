@@ -147,6 +147,11 @@ class BooleanScorer2 extends Scorer {
     public int advance(int target) throws IOException {
       return scorer.advance(target);
     }
+
+    @Override
+    public TwoPhaseDocIdSetIterator asTwoPhaseIterator() {
+      return scorer.asTwoPhaseIterator();
+    }
   }
 
   private Scorer countingDisjunctionSumScorer(final List<Scorer> scorers,
@@ -322,6 +327,43 @@ class BooleanScorer2 extends Scorer {
     return doc = countingSumScorer.advance(target);
   }
 
+  @Override
+  public TwoPhaseDocIdSetIterator asTwoPhaseIterator() {
+    final TwoPhaseDocIdSetIterator twoPhase = countingSumScorer.asTwoPhaseIterator();
+    if (twoPhase == null) {
+      return null;
+    }
+    final DocIdSetIterator countingApproximation = twoPhase.approximation();
+    // keeps doc in sync with the approximation of countingSumScorer
+    final DocIdSetIterator approximation = new DocIdSetIterator() {
+      @Override
+      public int docID() {
+        return doc;
+      }
+
+      @Override
+      public int nextDoc() throws IOException {
+        return doc = countingApproximation.nextDoc();
+      }
+
+      @Override
+      public int advance(int target) throws IOException {
+        return doc = countingApproximation.advance(target);
+      }
+    };
+    return new TwoPhaseDocIdSetIterator() {
+      @Override
+      public DocIdSetIterator approximation() {
+        return approximation;
+      }
+
+      @Override
+      public boolean matches() throws IOException {
+        return twoPhase.matches();
+      }
+    };
+  }
+
   @Override
   public Collection<ChildScorer> getChildren() {
     ArrayList<ChildScorer> children = new ArrayList<ChildScorer>();
@@ -22,11 +22,20 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.List;
 
-/** Scorer for conjunctions, sets of queries, all of which are required. */
+/** Scorer for conjunctions, sets of queries, all of which are required.
+ * Sub-scorers that have a {@link TwoPhaseDocIdSetIterator} are advanced
+ * through their approximation, and only verified on the documents that
+ * all sub-scorers agree on. */
 class ConjunctionScorer extends Scorer {
   
   private final Scorer[] scorers;
+  // the iterators of the scorers, in the same order: approximations for
+  // scorers that support two-phase iteration
+  private final DocIdSetIterator[] iterators;
+  // the sub-scorers that need to be verified, null if none
+  private final TwoPhaseDocIdSetIterator[] twoPhaseIterators;
   private int lastDoc = -1;
 
   public ConjunctionScorer(Weight weight, Collection<Scorer> scorers) throws IOException {
@@ -36,9 +45,20 @@ class ConjunctionScorer extends Scorer {
   public ConjunctionScorer(Weight weight, Scorer... scorers) throws IOException {
     super(weight);
     this.scorers = scorers;
+    iterators = new DocIdSetIterator[scorers.length];
     
+    final List<TwoPhaseDocIdSetIterator> twoPhases = new ArrayList<TwoPhaseDocIdSetIterator>();
     for (int i = 0; i < scorers.length; i++) {
-      if (scorers[i].nextDoc() == NO_MORE_DOCS) {
+      final TwoPhaseDocIdSetIterator twoPhase = scorers[i].asTwoPhaseIterator();
+      if (twoPhase != null) {
+        twoPhases.add(twoPhase);
+      }
+    }
+    twoPhaseIterators = twoPhases.isEmpty() ? null : twoPhases.toArray(new TwoPhaseDocIdSetIterator[twoPhases.size()]);
+
+    for (int i = 0; i < scorers.length; i++) {
+      // the docID() of a scorer follows its approximation
+      if (iterator(scorers[i]).nextDoc() == NO_MORE_DOCS) {
         // If even one of the sub-scorers does not have any documents, this
         // scorer should not attempt to do any more work.
         lastDoc = NO_MORE_DOCS;
@@ -58,17 +78,21 @@ class ConjunctionScorer extends Scorer {
         return o1.docID() - o2.docID();
       }
     });
+    for (int i = 0; i < scorers.length; i++) {
+      iterators[i] = iterator(scorers[i]);
+    }
 
-    // NOTE: doNext() must be called before the re-sorting of the array later on.
+    // NOTE: doNextApproximation() must be called before the re-sorting of the array later on.
     // The reason is this: assume there are 5 scorers, whose first docs are 1,
     // 2, 3, 5, 5 respectively. Sorting (above) leaves the array as is. Calling
-    // doNext() here advances all the first scorers to 5 (or a larger doc ID
+    // doNextApproximation() here advances all the first scorers to 5 (or a larger doc ID
     // they all agree on). 
-    // However, if we re-sort before doNext() is called, the order will be 5, 3,
-    // 2, 1, 5 and then doNext() will stop immediately, since the first scorer's
-    // docs equals the last one. So the invariant that after calling doNext() 
+    // However, if we re-sort before doNextApproximation() is called, the order will be 5, 3,
+    // 2, 1, 5 and then doNextApproximation() will stop immediately, since the first scorer's
+    // docs equals the last one. So the invariant that after calling doNextApproximation() 
     // all scorers are on the same doc ID is broken.
-    if (doNext() == NO_MORE_DOCS) {
+    // The first doc is only verified on the first call to nextDoc() or advance().
+    if (doNextApproximation() == NO_MORE_DOCS) {
       // The scorers did not agree on any document.
       lastDoc = NO_MORE_DOCS;
       return;
@@ -84,29 +108,59 @@ class ConjunctionScorer extends Scorer {
     int max = end >> 1;
     for (int i = 0; i < max; i++) {
       Scorer tmp = scorers[i];
+      DocIdSetIterator tmpIterator = iterators[i];
       int idx = end - i - 1;
       scorers[i] = scorers[idx];
+      iterators[i] = iterators[idx];
       scorers[idx] = tmp;
+      iterators[idx] = tmpIterator;
     }
   }
 
-  private int doNext() throws IOException {
+  private static DocIdSetIterator iterator(Scorer scorer) {
+    final TwoPhaseDocIdSetIterator twoPhase = scorer.asTwoPhaseIterator();
+    return twoPhase == null ? scorer : twoPhase.approximation();
+  }
+
+  /** Returns the next doc that all iterators agree on, without verification. */
+  private int doNextApproximation() throws IOException {
     int first = 0;
-    int doc = scorers[scorers.length - 1].docID();
-    Scorer firstScorer;
-    while ((firstScorer = scorers[first]).docID() < doc) {
-      doc = firstScorer.advance(doc);
-      first = first == scorers.length - 1 ? 0 : first + 1;
+    int doc = iterators[iterators.length - 1].docID();
+    DocIdSetIterator firstIterator;
+    while ((firstIterator = iterators[first]).docID() < doc) {
+      doc = firstIterator.advance(doc);
+      first = first == iterators.length - 1 ? 0 : first + 1;
     }
     return doc;
   }
+
+  private int doNext() throws IOException {
+    int doc = doNextApproximation();
+    while (doc != NO_MORE_DOCS && !matches()) {
+      iterators[iterators.length - 1].nextDoc();
+      doc = doNextApproximation();
+    }
+    return doc;
+  }
+
+  /** Verifies the current doc of the approximations. */
+  private boolean matches() throws IOException {
+    if (twoPhaseIterators != null) {
+      for (TwoPhaseDocIdSetIterator twoPhase : twoPhaseIterators) {
+        if (!twoPhase.matches()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
   
   @Override
   public int advance(int target) throws IOException {
     if (lastDoc == NO_MORE_DOCS) {
       return lastDoc;
-    } else if (scorers[(scorers.length - 1)].docID() < target) {
-      scorers[(scorers.length - 1)].advance(target);
+    } else if (iterators[(iterators.length - 1)].docID() < target) {
+      iterators[(iterators.length - 1)].advance(target);
     }
     return lastDoc = doNext();
   }
@@ -120,12 +174,55 @@ class ConjunctionScorer extends Scorer {
   public int nextDoc() throws IOException {
     if (lastDoc == NO_MORE_DOCS) {
       return lastDoc;
-    } else if (lastDoc == -1) {
-      return lastDoc = scorers[scorers.length - 1].docID();
+    } else if (lastDoc != -1) {
+      iterators[(iterators.length - 1)].nextDoc();
     }
-    scorers[(scorers.length - 1)].nextDoc();
     return lastDoc = doNext();
   }
+
+  @Override
+  public TwoPhaseDocIdSetIterator asTwoPhaseIterator() {
+    if (twoPhaseIterators == null) {
+      return null;
+    }
+    final DocIdSetIterator approximation = new DocIdSetIterator() {
+      @Override
+      public int docID() {
+        return lastDoc;
+      }
+
+      @Override
+      public int nextDoc() throws IOException {
+        if (lastDoc == NO_MORE_DOCS) {
+          return lastDoc;
+        } else if (lastDoc != -1) {
+          iterators[(iterators.length - 1)].nextDoc();
+        }
+        return lastDoc = doNextApproximation();
+      }
+
+      @Override
+      public int advance(int target) throws IOException {
+        if (lastDoc == NO_MORE_DOCS) {
+          return lastDoc;
+        } else if (iterators[(iterators.length - 1)].docID() < target) {
+          iterators[(iterators.length - 1)].advance(target);
+        }
+        return lastDoc = doNextApproximation();
+      }
+    };
+    return new TwoPhaseDocIdSetIterator() {
+      @Override
+      public DocIdSetIterator approximation() {
+        return approximation;
+      }
+
+      @Override
+      public boolean matches() throws IOException {
+        return ConjunctionScorer.this.matches();
+      }
+    };
+  }
   
   @Override
   public float score() throws IOException {
@@ -22,7 +22,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 
-import org.apache.lucene.index.DocsEnum;
 import org.apache.lucene.util.ArrayUtil;
 
 /** Scorer for conjunctions, sets of terms, all of which are required. */
@@ -113,16 +112,17 @@ class ConjunctionTermScorer extends Scorer {
   }
 
   static final class DocsAndFreqs {
-    final DocsEnum docs;
+    final DocIdSetIterator docs;
     final int docFreq;
     final Scorer scorer;
     int doc = -1;
 
     DocsAndFreqs(TermScorer termScorer) {
-      this(termScorer, termScorer.getDocsEnum(), termScorer.getDocFreq());
+      // iterate the scorer itself, which reads the DocsEnum in bulk
+      this(termScorer, termScorer, termScorer.getDocFreq());
     }
     
-    DocsAndFreqs(Scorer scorer, DocsEnum docs, int docFreq) {
+    DocsAndFreqs(Scorer scorer, DocIdSetIterator docs, int docFreq) {
       this.docs = docs;
       this.docFreq = docFreq;
       this.scorer = scorer;
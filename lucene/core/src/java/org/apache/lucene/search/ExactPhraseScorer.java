@@ -83,99 +83,101 @@ final class ExactPhraseScorer extends Scorer {
     }
   }
 
-  @Override
-  public int nextDoc() throws IOException {
-    while(true) {
+  /** Iterates over the documents that contain all terms, positions are not read. */
+  private final DocIdSetIterator approximation = new DocIdSetIterator() {
 
-      // first (rarest) term
-      final int doc = chunkStates[0].posEnum.nextDoc();
-      if (doc == DocIdSetIterator.NO_MORE_DOCS) {
-        docID = doc;
-        return doc;
+    @Override
+    public int docID() {
+      return docID;
+    }
+
+    @Override
+    public int nextDoc() throws IOException {
+      while(true) {
+        // first (rarest) term
+        final int doc = chunkStates[0].posEnum.nextDoc();
+        if (doc == DocIdSetIterator.NO_MORE_DOCS || otherTermsOn(doc, true)) {
+          return docID = doc;
+        }
+      }
+    }
+
+    @Override
+    public int advance(int target) throws IOException {
+      // first term
+      int doc = chunkStates[0].posEnum.advance(target);
+      while(true) {
+        if (doc == DocIdSetIterator.NO_MORE_DOCS || otherTermsOn(doc, false)) {
+          return docID = doc;
+        }
+        doc = chunkStates[0].posEnum.nextDoc();
       }
+    }
+  };
 
-      // not-first terms
-      int i = 1;
-      while(i < chunkStates.length) {
-        final ChunkState cs = chunkStates[i];
-        int doc2 = cs.posEnum.docID();
-        if (cs.useAdvance) {
-          if (doc2 < doc) {
+  /** Moves the not-first terms to <code>doc</code>, and returns true if they all contain it. */
+  private boolean otherTermsOn(int doc, boolean allowNextDoc) throws IOException {
+    for(int i=1;i<chunkStates.length;i++) {
+      final ChunkState cs = chunkStates[i];
+      int doc2 = cs.posEnum.docID();
+      if (cs.useAdvance || !allowNextDoc) {
+        if (doc2 < doc) {
+          doc2 = cs.posEnum.advance(doc);
+        }
+      } else {
+        int iter = 0;
+        while(doc2 < doc) {
+          // safety net -- fallback to .advance if we've
+          // done too many .nextDocs
+          if (++iter == 50) {
             doc2 = cs.posEnum.advance(doc);
-          }
-        } else {
-          int iter = 0;
-          while(doc2 < doc) {
-            // safety net -- fallback to .advance if we've
-            // done too many .nextDocs
-            if (++iter == 50) {
-              doc2 = cs.posEnum.advance(doc);
-              break;
-            } else {
-              doc2 = cs.posEnum.nextDoc();
-            }
+            break;
+          } else {
+            doc2 = cs.posEnum.nextDoc();
           }
         }
-        if (doc2 > doc) {
-          break;
-        }
-        i++;
       }
+      if (doc2 > doc) {
+        return false;
+      }
+    }
+    return true;
+  }
 
-      if (i == chunkStates.length) {
-        // this doc has all the terms -- now test whether
-        // phrase occurs
-        docID = doc;
-
-        freq = phraseFreq();
-        if (freq != 0) {
-          return docID;
-        }
+  @Override
+  public int nextDoc() throws IOException {
+    while(true) {
+      final int doc = approximation.nextDoc();
+      // this doc has all the terms -- now test whether
+      // phrase occurs
+      if (doc == DocIdSetIterator.NO_MORE_DOCS || phraseFreq() != 0) {
+        return doc;
       }
     }
   }
 
   @Override
   public int advance(int target) throws IOException {
-
-    // first term
-    int doc = chunkStates[0].posEnum.advance(target);
-    if (doc == DocIdSetIterator.NO_MORE_DOCS) {
-      docID = DocIdSetIterator.NO_MORE_DOCS;
-      return doc;
+    int doc = approximation.advance(target);
+    while (doc != DocIdSetIterator.NO_MORE_DOCS && phraseFreq() == 0) {
+      doc = approximation.nextDoc();
     }
+    return doc;
+  }
 
-    while(true) {
-      
-      // not-first terms
-      int i = 1;
-      while(i < chunkStates.length) {
-        int doc2 = chunkStates[i].posEnum.docID();
-        if (doc2 < doc) {
-          doc2 = chunkStates[i].posEnum.advance(doc);
-        }
-        if (doc2 > doc) {
-          break;
-        }
-        i++;
-      }
-
-      if (i == chunkStates.length) {
-        // this doc has all the terms -- now test whether
-        // phrase occurs
-        docID = doc;
-        freq = phraseFreq();
-        if (freq != 0) {
-          return docID;
-        }
+  @Override
+  public TwoPhaseDocIdSetIterator asTwoPhaseIterator() {
+    return new TwoPhaseDocIdSetIterator() {
+      @Override
+      public DocIdSetIterator approximation() {
+        return approximation;
       }
 
-      doc = chunkStates[0].posEnum.nextDoc();
-      if (doc == DocIdSetIterator.NO_MORE_DOCS) {
-        docID = doc;
-        return doc;
+      @Override
+      public boolean matches() throws IOException {
+        return phraseFreq() != 0;
       }
-    }
+    };
   }
 
   @Override
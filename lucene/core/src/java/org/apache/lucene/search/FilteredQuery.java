@@ -144,6 +144,10 @@ public class FilteredQuery extends Query {
    */
   private static final class QueryFirstScorer extends Scorer {
     private final Scorer scorer;
+    // the approximation of the scorer if it supports two-phase iteration,
+    // so that only documents that pass the filter are verified
+    private final DocIdSetIterator scorerIterator;
+    private final TwoPhaseDocIdSetIterator twoPhase;
     private int scorerDoc = -1;
     private Bits filterbits;
 
@@ -151,6 +155,8 @@ public class FilteredQuery extends Query {
       super(weight);
       this.scorer = other;
       this.filterbits = filterBits;
+      this.twoPhase = other.asTwoPhaseIterator();
+      this.scorerIterator = twoPhase == null ? other : twoPhase.approximation();
     }
     
     // optimization: we are topScorer and collect directly
@@ -160,11 +166,11 @@ public class FilteredQuery extends Query {
       // so we can use the wrapped scorer directly:
       collector.setScorer(scorer);
       for (;;) {
-        final int scorerDoc = scorer.nextDoc();
+        final int scorerDoc = scorerIterator.nextDoc();
         if (scorerDoc == DocIdSetIterator.NO_MORE_DOCS) {
           break;
         }
-        if (filterbits.get(scorerDoc)) {
+        if (filterbits.get(scorerDoc) && (twoPhase == null || twoPhase.matches())) {
           collector.collect(scorerDoc);
         }
       }
@@ -174,8 +180,8 @@ public class FilteredQuery extends Query {
     public int nextDoc() throws IOException {
       int doc;
       for(;;) {
-        doc = scorer.nextDoc();
-        if (doc == Scorer.NO_MORE_DOCS || filterbits.get(doc)) {
+        doc = scorerIterator.nextDoc();
+        if (doc == Scorer.NO_MORE_DOCS || (filterbits.get(doc) && (twoPhase == null || twoPhase.matches()))) {
           return scorerDoc = doc;
         }
       } 
@@ -184,8 +190,8 @@ public class FilteredQuery extends Query {
     @Override
     public int advance(int target) throws IOException {
       
-      int doc = scorer.advance(target);
-      if (doc != Scorer.NO_MORE_DOCS && !filterbits.get(doc)) {
+      int doc = scorerIterator.advance(target);
+      if (doc != Scorer.NO_MORE_DOCS && !(filterbits.get(doc) && (twoPhase == null || twoPhase.matches()))) {
         return scorerDoc = nextDoc();
       } else {
         return scorerDoc = doc;
@@ -222,13 +228,17 @@ public class FilteredQuery extends Query {
     private final DocIdSetIterator secondary;
     private final DocIdSetIterator primary;
     private final Scorer scorer;
+    // if the scorer supports two-phase iteration, its approximation takes its
+    // place in the leap-frog, and only common docs are verified
+    private final TwoPhaseDocIdSetIterator twoPhase;
     protected int primaryDoc = -1;
     protected int secondaryDoc = -1;
 
     protected LeapFrogScorer(Weight weight, DocIdSetIterator primary, DocIdSetIterator secondary, Scorer scorer) {
       super(weight);
-      this.primary = primary;
-      this.secondary = secondary;
+      this.twoPhase = scorer.asTwoPhaseIterator();
+      this.primary = twoPhase != null && primary == scorer ? twoPhase.approximation() : primary;
+      this.secondary = twoPhase != null && secondary == scorer ? twoPhase.approximation() : secondary;
       this.scorer = scorer;
     }
     
@@ -246,7 +256,9 @@ public class FilteredQuery extends Query {
           if (primDoc == DocIdSetIterator.NO_MORE_DOCS) {
             break;
           }
-          collector.collect(primDoc);
+          if (twoPhase == null || twoPhase.matches()) {
+            collector.collect(primDoc);
+          }
           primDoc = primary.nextDoc();
           secDoc = secondary.advance(primDoc);
         } else if (secDoc > primDoc) {
@@ -262,7 +274,10 @@ public class FilteredQuery extends Query {
         if (secondaryDoc < primaryDoc) {
           secondaryDoc = secondary.advance(primaryDoc);
         } else if (secondaryDoc == primaryDoc) {
-          return primaryDoc;
+          if (primaryDoc == DocIdSetIterator.NO_MORE_DOCS || twoPhase == null || twoPhase.matches()) {
+            return primaryDoc;
+          }
+          primaryDoc = primary.nextDoc();
         } else {
           primaryDoc = primary.advance(secondaryDoc);
         }
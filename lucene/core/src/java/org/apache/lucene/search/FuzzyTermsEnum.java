@@ -34,17 +34,25 @@ import org.apache.lucene.util.AttributeImpl;
 import org.apache.lucene.util.AttributeSource;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IntsRef;
 import org.apache.lucene.util.UnicodeUtil;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.BasicAutomata;
 import org.apache.lucene.util.automaton.BasicOperations;
-import org.apache.lucene.util.automaton.ByteRunAutomaton;
 import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.CompiledAutomatonCache;
 import org.apache.lucene.util.automaton.LevenshteinAutomata;
 
 /** Subclass of TermsEnum for enumerating all terms that are similar
  * to the specified filter term.
  *
+ * <p>Terms are enumerated with {@link Terms#intersect} over the Levenshtein
+ * automaton of the current maximum edit distance. When the competitive boost
+ * of the rewrite method goes up and lowers that distance, the terms dictionary
+ * is intersected again with the tighter automaton from the last term on, so
+ * that fewer blocks are visited. The exact edit distance of each term is
+ * computed in one run of a distance automaton.
+ *
  * <p>Term enumerations are always ordered by
  * {@link #getComparator}.  Each term in the enumeration is
  * greater than all that precede it.</p>
@@ -155,7 +163,7 @@ public class FuzzyTermsEnum extends TermsEnum {
       //if (BlockTreeTermsWriter.DEBUG) System.out.println("FuzzyTE.getAEnum: ed=" + editDistance + " lastTerm=" + (lastTerm==null ? "null" : lastTerm.utf8ToString()));
       final CompiledAutomaton compiled = runAutomata.get(editDistance);
       return new AutomatonFuzzyTermsEnum(terms.intersect(compiled, lastTerm == null ? null : compiled.floor(lastTerm, new BytesRef())),
-                                         runAutomata.subList(0, editDistance + 1).toArray(new CompiledAutomaton[editDistance + 1]));
+                                         initDistanceAutomaton(editDistance));
     } else {
       return null;
     }
@@ -167,24 +175,54 @@ public class FuzzyTermsEnum extends TermsEnum {
     //System.out.println("cached automata size: " + runAutomata.size());
     if (runAutomata.size() <= maxDistance && 
         maxDistance <= LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE) {
-      LevenshteinAutomata builder = 
-        new LevenshteinAutomata(UnicodeUtil.newString(termText, realPrefixLength, termText.length - realPrefixLength), transpositions);
-
+      final CompiledAutomatonCache cache = CompiledAutomatonCache.getDefault();
       for (int i = runAutomata.size(); i <= maxDistance; i++) {
-        Automaton a = builder.toAutomaton(i);
         //System.out.println("compute automaton n=" + i);
-        // constant prefix
-        if (realPrefixLength > 0) {
-          Automaton prefix = BasicAutomata.makeString(
-            UnicodeUtil.newString(termText, 0, realPrefixLength));
-          a = BasicOperations.concatenate(prefix, a);
-        }
-        runAutomata.add(new CompiledAutomaton(a, true, false));
+        runAutomata.add(cache.get(new LevenshteinKey(term.text(), realPrefixLength, i, transpositions)).compiled);
       }
     }
     return runAutomata;
   }
 
+  /** returns a distance automaton for edit distances up to at least maxDistance */
+  private LevenshteinAutomata.DistanceRunAutomaton initDistanceAutomaton(int maxDistance) {
+    if (dfaAtt.distanceAutomaton() == null || dfaAtt.distanceAutomatonMaxDistance() < maxDistance) {
+      // the prefix is matched by the intersected automaton, only the suffix is needed
+      final String text = term.text();
+      final String suffix = text.substring(text.offsetByCodePoints(0, realPrefixLength));
+      dfaAtt.setDistanceAutomaton(new LevenshteinAutomata(suffix, transpositions).toDistanceAutomaton(maxDistance), maxDistance);
+    }
+    return dfaAtt.distanceAutomaton();
+  }
+
+  // identifies the levenshtein automaton of a term in the CompiledAutomatonCache
+  private static final class LevenshteinKey extends CompiledAutomatonCache.Key {
+    LevenshteinKey(String text, int prefixLength, int distance, boolean transpositions) {
+      super(text, (prefixLength << 3) | (distance << 1) | (transpositions ? 1 : 0));
+      assert distance <= LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE && LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE < 4;
+    }
+
+    @Override
+    public Automaton toAutomaton() {
+      // prefixLength is a number of code points
+      final int prefixEnd = pattern.offsetByCodePoints(0, options >>> 3);
+      final int distance = (options >>> 1) & 3;
+      final boolean transpositions = (options & 1) != 0;
+      Automaton a = new LevenshteinAutomata(pattern.substring(prefixEnd), transpositions).toAutomaton(distance);
+      // constant prefix
+      if (prefixEnd > 0) {
+        Automaton prefix = BasicAutomata.makeString(pattern.substring(0, prefixEnd));
+        a = BasicOperations.concatenate(prefix, a);
+      }
+      return a;
+    }
+
+    @Override
+    public CompiledAutomaton compile(Automaton automaton) {
+      return new CompiledAutomaton(automaton, true, false);
+    }
+  }
+
   /** swap in a new actual enum to proxy to */
   protected void setEnum(TermsEnum actualEnum) {
     this.actualEnum = actualEnum;
@@ -330,37 +368,27 @@ public class FuzzyTermsEnum extends TermsEnum {
    * and comparison is linear to length of the term (rather than quadratic)
    */
   private class AutomatonFuzzyTermsEnum extends FilteredTermsEnum {
-    private final ByteRunAutomaton matchers[];
+    private final LevenshteinAutomata.DistanceRunAutomaton distanceAutomaton;
     
-    private final BytesRef termRef;
+    private final IntsRef utf32 = new IntsRef();
     
     private final BoostAttribute boostAtt =
       attributes().addAttribute(BoostAttribute.class);
     
-    public AutomatonFuzzyTermsEnum(TermsEnum tenum, CompiledAutomaton compiled[]) {
+    public AutomatonFuzzyTermsEnum(TermsEnum tenum, LevenshteinAutomata.DistanceRunAutomaton distanceAutomaton) {
       super(tenum, false);
-      this.matchers = new ByteRunAutomaton[compiled.length];
-      for (int i = 0; i < compiled.length; i++)
-        this.matchers[i] = compiled[i].runAutomaton;
-      termRef = new BytesRef(term.text());
+      this.distanceAutomaton = distanceAutomaton;
     }
 
-    /** finds the smallest Lev(n) DFA that accepts the term. */
+    /** computes the edit distance of the term in one run of the distance automaton. */
     @Override
     protected AcceptStatus accept(BytesRef term) {    
       //System.out.println("AFTE.accept term=" + term);
-      int ed = matchers.length - 1;
-      
-      // we are wrapping either an intersect() TermsEnum or an AutomatonTermsENum,
-      // so we know the outer DFA always matches.
-      // now compute exact edit distance
-      while (ed > 0) {
-        if (matches(term, ed - 1)) {
-          ed--;
-        } else {
-          break;
-        }
-      }
+      // we are wrapping an intersect() TermsEnum, so we know the prefix matches
+      // and the suffix is within the max edit distance of the automaton.
+      UnicodeUtil.UTF8toUTF32(term, utf32);
+      final int ed = distanceAutomaton.getDistance(utf32.ints, utf32.offset + realPrefixLength, utf32.length - realPrefixLength);
+      assert ed >= 0;
       //System.out.println("CHECK term=" + term.utf8ToString() + " ed=" + ed);
       
       // scale to a boost and return (if similarity > minSimilarity)
@@ -369,7 +397,7 @@ public class FuzzyTermsEnum extends TermsEnum {
         //System.out.println("  yes");
         return AcceptStatus.YES;
       } else {
-        final int codePointCount = UnicodeUtil.codePointCount(term);
+        final int codePointCount = utf32.length;
         final float similarity = 1.0f - ((float) ed / (float) 
             (Math.min(codePointCount, termLength)));
         if (similarity > minSimilarity) {
@@ -381,11 +409,6 @@ public class FuzzyTermsEnum extends TermsEnum {
         }
       }
     }
-    
-    /** returns true if term is within k edits of the query term */
-    final boolean matches(BytesRef term, int k) {
-      return k == 0 ? term.equals(termRef) : matchers[k].run(term.bytes, term.offset, term.length);
-    }
   }
 
   /** @lucene.internal */
@@ -404,6 +427,11 @@ public class FuzzyTermsEnum extends TermsEnum {
    * @lucene.internal */
   public static interface LevenshteinAutomataAttribute extends Attribute {
     public List<CompiledAutomaton> automata();
+    /** the distance automaton, or null if none was computed yet */
+    public LevenshteinAutomata.DistanceRunAutomaton distanceAutomaton();
+    /** the maximum edit distance of {@link #distanceAutomaton()} */
+    public int distanceAutomatonMaxDistance();
+    public void setDistanceAutomaton(LevenshteinAutomata.DistanceRunAutomaton distanceAutomaton, int maxDistance);
   }
     
   /** 
@@ -411,14 +439,31 @@ public class FuzzyTermsEnum extends TermsEnum {
    * @lucene.internal */
   public static final class LevenshteinAutomataAttributeImpl extends AttributeImpl implements LevenshteinAutomataAttribute {
     private final List<CompiledAutomaton> automata = new ArrayList<CompiledAutomaton>();
+    private LevenshteinAutomata.DistanceRunAutomaton distanceAutomaton;
+    private int distanceAutomatonMaxDistance;
       
     public List<CompiledAutomaton> automata() {
       return automata;
     }
 
+    public LevenshteinAutomata.DistanceRunAutomaton distanceAutomaton() {
+      return distanceAutomaton;
+    }
+
+    public int distanceAutomatonMaxDistance() {
+      return distanceAutomatonMaxDistance;
+    }
+
+    public void setDistanceAutomaton(LevenshteinAutomata.DistanceRunAutomaton distanceAutomaton, int maxDistance) {
+      this.distanceAutomaton = distanceAutomaton;
+      this.distanceAutomatonMaxDistance = maxDistance;
+    }
+
     @Override
     public void clear() {
       automata.clear();
+      distanceAutomaton = null;
+      distanceAutomatonMaxDistance = 0;
     }
 
     @Override
@@ -441,6 +486,7 @@ public class FuzzyTermsEnum extends TermsEnum {
         ((LevenshteinAutomataAttribute) target).automata();
       targetAutomata.clear();
       targetAutomata.addAll(automata);
+      ((LevenshteinAutomataAttribute) target).setDistanceAutomaton(distanceAutomaton, distanceAutomatonMaxDistance);
     }
   }
 }
@@ -18,6 +18,7 @@ package org.apache.lucene.search;
  */
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
@@ -175,6 +176,49 @@ public class IndexSearcher {
     return slices;
   }
 
+  /**
+   * Expert: Creates an array of leaf slices where every leaf holding more than
+   * <code>maxDocsPerSlice</code> documents is split into docID ranges of
+   * roughly equal size, so that a single large segment (eg after
+   * {@link IndexWriter#forceMerge(int)}) can still be searched by several
+   * threads. Smaller leaves get one {@link LeafSlice} each. Subclasses can
+   * use this from {@link #slices(List)}:
+   * <pre class="prettyprint">
+   * IndexSearcher searcher = new IndexSearcher(reader, executor) {
+   *   &#64;Override
+   *   protected LeafSlice[] slices(List&lt;AtomicReaderContext&gt; leaves) {
+   *     return docRangeSlices(leaves, 250000);
+   *   }
+   * };
+   * </pre>
+   * <p>NOTE: docID range slices are always scored in order, so queries
+   * that could otherwise be scored out of order (eg by {@link BooleanScorer})
+   * use their in-order scorer instead.
+   *
+   * @lucene.experimental
+   */
+  public static LeafSlice[] docRangeSlices(List<AtomicReaderContext> leaves, int maxDocsPerSlice) {
+    if (maxDocsPerSlice <= 0) {
+      throw new IllegalArgumentException("maxDocsPerSlice must be > 0; got " + maxDocsPerSlice);
+    }
+    final List<LeafSlice> slices = new ArrayList<LeafSlice>();
+    for (AtomicReaderContext ctx : leaves) {
+      final int maxDoc = ctx.reader().maxDoc();
+      if (maxDoc <= maxDocsPerSlice) {
+        slices.add(new LeafSlice(ctx));
+      } else {
+        final int numRanges = (int) ((maxDoc + (long) maxDocsPerSlice - 1) / maxDocsPerSlice);
+        int upto = 0;
+        for (int i = 0; i < numRanges; i++) {
+          final int end = (int) ((long) maxDoc * (i + 1) / numRanges);
+          slices.add(new LeafSlice(ctx, upto, end));
+          upto = end;
+        }
+      }
+    }
+    return slices.toArray(new LeafSlice[slices.size()]);
+  }
+
   
   /** Return the {@link IndexReader} this searches. */
   public IndexReader getIndexReader() {
@@ -583,11 +627,69 @@ public class IndexSearcher {
     // threaded...?  the Collector could be sync'd?
     // always use single thread:
     for (AtomicReaderContext ctx : leaves) { // search each subreader
+      try {
+        collector.setNextReader(ctx);
+        Scorer scorer = weight.scorer(ctx, !collector.acceptsDocsOutOfOrder(), true, ctx.reader().getLiveDocs());
+        if (scorer != null) {
+          scorer.score(collector);
+        }
+      } catch (CollectionTerminatedException e) {
+        // collection was terminated prematurely
+        // continue with the following leaf
+      }
+    }
+  }
+
+  /** Searches the given slice, only collecting documents within its docID
+   *  range if it is a docID range slice. */
+  TopDocs search(LeafSlice slice, Weight weight, ScoreDoc after, int nDocs) throws IOException {
+    if (!slice.isDocRange()) {
+      return search(Arrays.asList(slice.leaves), weight, after, nDocs);
+    }
+    int limit = reader.maxDoc();
+    if (limit == 0) {
+      limit = 1;
+    }
+    nDocs = Math.min(nDocs, limit);
+    TopScoreDocCollector collector = TopScoreDocCollector.create(nDocs, after, true);
+    searchDocRange(slice, weight, collector);
+    return collector.topDocs();
+  }
+
+  /** Like {@link #search(LeafSlice, Weight, ScoreDoc, int)} but sorting the
+   *  hits by <code>sort</code>. */
+  TopFieldDocs search(LeafSlice slice, Weight weight, FieldDoc after, int nDocs,
+                      Sort sort, boolean fillFields, boolean doDocScores, boolean doMaxScore) throws IOException {
+    if (!slice.isDocRange()) {
+      return search(Arrays.asList(slice.leaves), weight, after, nDocs, sort, fillFields, doDocScores, doMaxScore);
+    }
+    int limit = reader.maxDoc();
+    if (limit == 0) {
+      limit = 1;
+    }
+    nDocs = Math.min(nDocs, limit);
+    TopFieldCollector collector = TopFieldCollector.create(sort, nDocs, after,
+                                                           fillFields, doDocScores,
+                                                           doMaxScore, true);
+    searchDocRange(slice, weight, collector);
+    return (TopFieldDocs) collector.topDocs();
+  }
+
+  private void searchDocRange(LeafSlice slice, Weight weight, Collector collector) throws IOException {
+    assert slice.leaves.length == 1;
+    final AtomicReaderContext ctx = slice.leaves[0];
+    try {
       collector.setNextReader(ctx);
-      Scorer scorer = weight.scorer(ctx, !collector.acceptsDocsOutOfOrder(), true, ctx.reader().getLiveDocs());
+      // we need advance(), so never ask for a top-level (possibly out-of-order) scorer
+      Scorer scorer = weight.scorer(ctx, true, false, ctx.reader().getLiveDocs());
       if (scorer != null) {
-        scorer.score(collector);
+        final int doc = scorer.advance(slice.minDoc);
+        if (doc < slice.maxDoc) {
+          scorer.score(collector, slice.maxDoc, doc);
+        }
       }
+    } catch (CollectionTerminatedException e) {
+      // collection of this slice was terminated prematurely
     }
   }
 
@@ -689,7 +791,7 @@ public class IndexSearcher {
     }
 
     public TopDocs call() throws IOException {
-      final TopDocs docs = searcher.search(Arrays.asList(slice.leaves), weight, after, nDocs);
+      final TopDocs docs = searcher.search(slice, weight, after, nDocs);
       final ScoreDoc[] scoreDocs = docs.scoreDocs;
       //it would be so nice if we had a thread-safe insert 
       lock.lock();
@@ -777,8 +879,7 @@ public class IndexSearcher {
 
     public TopFieldDocs call() throws IOException {
       assert slice.leaves.length == 1;
-      final TopFieldDocs docs = searcher.search(Arrays.asList(slice.leaves),
-          weight, after, nDocs, sort, true, doDocScores, doMaxScore);
+      final TopFieldDocs docs = searcher.search(slice, weight, after, nDocs, sort, true, doDocScores, doMaxScore);
       lock.lock();
       try {
         final AtomicReaderContext ctx = slice.leaves[0];
@@ -852,15 +953,37 @@ public class IndexSearcher {
 
   /**
    * A class holding a subset of the {@link IndexSearcher}s leaf contexts to be
-   * executed within a single thread.
+   * executed within a single thread. A slice may also cover only a range of
+   * docIDs of a single leaf, see {@link IndexSearcher#docRangeSlices}.
    * 
    * @lucene.experimental
    */
   public static class LeafSlice {
     final AtomicReaderContext[] leaves;
+    /** first (segment-relative, inclusive) docID of this slice */
+    final int minDoc;
+    /** last (segment-relative, exclusive) docID of this slice */
+    final int maxDoc;
     
     public LeafSlice(AtomicReaderContext... leaves) {
       this.leaves = leaves;
+      this.minDoc = 0;
+      this.maxDoc = DocIdSetIterator.NO_MORE_DOCS;
+    }
+
+    /** Creates a slice that only covers the docIDs <code>minDoc</code>
+     *  (inclusive) to <code>maxDoc</code> (exclusive) of the given leaf. */
+    public LeafSlice(AtomicReaderContext leaf, int minDoc, int maxDoc) {
+      if (minDoc < 0 || minDoc >= maxDoc) {
+        throw new IllegalArgumentException("invalid docID range: minDoc=" + minDoc + " maxDoc=" + maxDoc);
+      }
+      this.leaves = new AtomicReaderContext[] { leaf };
+      this.minDoc = minDoc;
+      this.maxDoc = maxDoc;
+    }
+
+    boolean isDocRange() {
+      return minDoc != 0 || maxDoc != DocIdSetIterator.NO_MORE_DOCS;
     }
   }
 
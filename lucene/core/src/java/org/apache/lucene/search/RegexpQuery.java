@@ -5,6 +5,7 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.util.ToStringUtils;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.AutomatonProvider;
+import org.apache.lucene.util.automaton.CompiledAutomatonCache;
 import org.apache.lucene.util.automaton.RegExp;
 
 /*
@@ -75,7 +76,9 @@ public class RegexpQuery extends AutomatonQuery {
    * @param flags optional RegExp features from {@link RegExp}
    */
   public RegexpQuery(Term term, int flags) {
-    this(term, flags, defaultProvider);
+    // no custom provider: the automaton only depends on the
+    // pattern and flags and can be cached
+    super(term, new RegexpKey(term.text(), flags));
   }
   
   /**
@@ -89,6 +92,18 @@ public class RegexpQuery extends AutomatonQuery {
     super(term, new RegExp(term.text(), flags).toAutomaton(provider));
   }
   
+  // identifies the automaton of a regular expression in the CompiledAutomatonCache
+  private static final class RegexpKey extends CompiledAutomatonCache.Key {
+    RegexpKey(String pattern, int flags) {
+      super(pattern, flags);
+    }
+
+    @Override
+    public Automaton toAutomaton() {
+      return new RegExp(pattern, options).toAutomaton(defaultProvider);
+    }
+  }
+  
   /** Prints a user-readable version of this query. */
   @Override
   public String toString(String field) {
@@ -26,10 +26,20 @@ import java.util.Collections;
  * <br>
  * This <code>Scorer</code> implements {@link Scorer#advance(int)},
  * and it uses the skipTo() on the given scorers.
+ * <br>
+ * When the required scorer supports {@link Scorer#asTwoPhaseIterator()
+ * two-phase iteration}, its approximation is advanced, and a document is
+ * only verified once it is known not to be excluded. An excluding scorer that
+ * supports two-phase iteration only excludes the documents it verifies.
+ * This scorer exposes its own two-phase view if either scorer does.
  */
 class ReqExclScorer extends Scorer {
   private Scorer reqScorer;
+  // the approximation of reqScorer, or reqScorer itself
+  private DocIdSetIterator reqDisi;
+  private final TwoPhaseDocIdSetIterator reqTwoPhase;
   private DocIdSetIterator exclDisi;
+  private TwoPhaseDocIdSetIterator exclTwoPhase;
   private int doc = -1;
 
   /** Construct a <code>ReqExclScorer</code>.
@@ -39,7 +49,12 @@ class ReqExclScorer extends Scorer {
   public ReqExclScorer(Scorer reqScorer, DocIdSetIterator exclDisi) {
     super(reqScorer.weight);
     this.reqScorer = reqScorer;
-    this.exclDisi = exclDisi;
+    reqTwoPhase = reqScorer.asTwoPhaseIterator();
+    reqDisi = reqTwoPhase == null ? reqScorer : reqTwoPhase.approximation();
+    if (exclDisi instanceof Scorer) {
+      exclTwoPhase = ((Scorer) exclDisi).asTwoPhaseIterator();
+    }
+    this.exclDisi = exclTwoPhase == null ? exclDisi : exclTwoPhase.approximation();
   }
 
   @Override
@@ -47,49 +62,45 @@ class ReqExclScorer extends Scorer {
     if (reqScorer == null) {
       return doc;
     }
-    doc = reqScorer.nextDoc();
-    if (doc == NO_MORE_DOCS) {
-      reqScorer = null; // exhausted, nothing left
-      return doc;
-    }
-    if (exclDisi == null) {
-      return doc;
-    }
-    return doc = toNonExcluded();
+    return doc = toNonExcluded(reqDisi.nextDoc());
   }
   
   /** Advance to non excluded doc.
    * <br>On entry:
    * <ul>
    * <li>reqScorer != null,
-   * <li>exclScorer != null,
-   * <li>reqScorer was advanced once via next() or skipTo()
-   *      and reqScorer.doc() may still be excluded.
+   * <li>reqDisi was advanced once via next() or skipTo()
+   *      and reqDisi.docID() may still be excluded or not verified.
    * </ul>
-   * Advances reqScorer a non excluded required doc, if any.
-   * @return true iff there is a non excluded required doc.
+   * Advances reqDisi a non excluded, verified, required doc, if any.
+   * @return the non excluded required doc, or NO_MORE_DOCS.
    */
-  private int toNonExcluded() throws IOException {
-    int exclDoc = exclDisi.docID();
-    int reqDoc = reqScorer.docID(); // may be excluded
-    do {  
-      if (reqDoc < exclDoc) {
-        return reqDoc; // reqScorer advanced to before exclScorer, ie. not excluded
-      } else if (reqDoc > exclDoc) {
-        exclDoc = exclDisi.advance(reqDoc);
-        if (exclDoc == NO_MORE_DOCS) {
-          exclDisi = null; // exhausted, no more exclusions
-          return reqDoc;
-        }
-        if (exclDoc > reqDoc) {
-          return reqDoc; // not excluded
-        }
+  private int toNonExcluded(int reqDoc) throws IOException {
+    for (; reqDoc != NO_MORE_DOCS; reqDoc = reqDisi.nextDoc()) {
+      if (exclDisi != null && excluded(reqDoc)) {
+        continue;
+      }
+      if (reqTwoPhase == null || reqTwoPhase.matches()) {
+        return reqDoc;
       }
-    } while ((reqDoc = reqScorer.nextDoc()) != NO_MORE_DOCS);
+    }
     reqScorer = null; // exhausted, nothing left
     return NO_MORE_DOCS;
   }
 
+  /** Returns true if <code>reqDoc</code> is excluded. */
+  private boolean excluded(int reqDoc) throws IOException {
+    int exclDoc = exclDisi.docID();
+    if (exclDoc < reqDoc) {
+      exclDoc = exclDisi.advance(reqDoc);
+      if (exclDoc == NO_MORE_DOCS) {
+        exclDisi = null; // exhausted, no more exclusions
+        return false;
+      }
+    }
+    return exclDoc == reqDoc && (exclTwoPhase == null || exclTwoPhase.matches());
+  }
+
   @Override
   public int docID() {
     return doc;
@@ -119,13 +130,43 @@ class ReqExclScorer extends Scorer {
     if (reqScorer == null) {
       return doc = NO_MORE_DOCS;
     }
-    if (exclDisi == null) {
-      return doc = reqScorer.advance(target);
-    }
-    if (reqScorer.advance(target) == NO_MORE_DOCS) {
-      reqScorer = null;
-      return doc = NO_MORE_DOCS;
+    return doc = toNonExcluded(reqDisi.advance(target));
+  }
+
+  @Override
+  public TwoPhaseDocIdSetIterator asTwoPhaseIterator() {
+    if (reqTwoPhase == null && exclTwoPhase == null) {
+      return null;
     }
-    return doc = toNonExcluded();
+    final DocIdSetIterator approximation = new DocIdSetIterator() {
+      @Override
+      public int docID() {
+        return doc;
+      }
+
+      @Override
+      public int nextDoc() throws IOException {
+        return doc = reqDisi.nextDoc();
+      }
+
+      @Override
+      public int advance(int target) throws IOException {
+        return doc = reqDisi.advance(target);
+      }
+    };
+    return new TwoPhaseDocIdSetIterator() {
+      @Override
+      public DocIdSetIterator approximation() {
+        return approximation;
+      }
+
+      @Override
+      public boolean matches() throws IOException {
+        if (exclDisi != null && excluded(doc)) {
+          return false;
+        }
+        return reqTwoPhase == null || reqTwoPhase.matches();
+      }
+    };
   }
 }
@@ -92,6 +92,12 @@ class ReqOptSumScorer extends Scorer {
     return (optScorer != null && optScorer.docID() == reqScorer.docID()) ? 2 : 1;
   }
 
+  @Override
+  public TwoPhaseDocIdSetIterator asTwoPhaseIterator() {
+    // the optional scorer is only advanced to score matches
+    return reqScorer.asTwoPhaseIterator();
+  }
+
   @Override
   public Collection<ChildScorer> getChildren() {
     ArrayList<ChildScorer> children = new ArrayList<ChildScorer>(2);
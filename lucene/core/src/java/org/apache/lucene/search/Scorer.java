@@ -96,6 +96,21 @@ public abstract class Scorer extends DocsEnum {
    */
   public abstract float score() throws IOException;
   
+  /**
+   * Optional method: returns a {@link TwoPhaseDocIdSetIterator} view of this
+   * scorer if it has a cheap approximation of its matches, like the
+   * documents that contain all terms of a phrase, and verifies them with
+   * more expensive work, like reading positions. Consumers that intersect
+   * this scorer with other iterators should advance the approximation
+   * instead of this scorer, and only call {@link
+   * TwoPhaseDocIdSetIterator#matches()} on the documents that all other
+   * iterators accept. The default implementation returns <code>null</code>.
+   * @lucene.experimental
+   */
+  public TwoPhaseDocIdSetIterator asTwoPhaseIterator() {
+    return null;
+  }
+
   /** returns parent Weight
    * @lucene.experimental
    */
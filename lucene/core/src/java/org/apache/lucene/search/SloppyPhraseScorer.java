@@ -555,6 +555,36 @@ final class SloppyPhraseScorer extends Scorer {
     return max.doc; 
   }
 
+  /** Iterates over the documents that contain all terms, positions are not read. */
+  private final DocIdSetIterator approximation = new DocIdSetIterator() {
+
+    @Override
+    public int docID() {
+      return max.doc;
+    }
+
+    @Override
+    public int nextDoc() throws IOException {
+      // all pps are on the current doc: this moves min past it
+      return advance(max.doc);
+    }
+
+    @Override
+    public int advance(int target) throws IOException {
+      sloppyFreq = 0.0f;
+      if (!advanceMin(target)) {
+        return NO_MORE_DOCS;
+      }
+      while (min.doc < max.doc) {
+        if (!advanceMin(max.doc)) {
+          return NO_MORE_DOCS;
+        }
+      }
+      // found a doc with all of the terms
+      return max.doc;
+    }
+  };
+
   @Override
   public int nextDoc() throws IOException {
     return advance(max.doc);
@@ -567,25 +597,32 @@ final class SloppyPhraseScorer extends Scorer {
 
   @Override
   public int advance(int target) throws IOException {
-    sloppyFreq = 0.0f;
-    if (!advanceMin(target)) {
-      return NO_MORE_DOCS;
-    }        
-    boolean restart=false;
-    while (sloppyFreq == 0.0f) {
-      while (min.doc < max.doc || restart) {
-        restart = false;
-        if (!advanceMin(max.doc)) {
-          return NO_MORE_DOCS;
-        }        
-      }
-      // found a doc with all of the terms
+    int doc = approximation.advance(target);
+    while (doc != NO_MORE_DOCS) {
       sloppyFreq = phraseFreq(); // check for phrase
-      restart = true;
-    } 
+      if (sloppyFreq != 0.0f) {
+        // found a match
+        break;
+      }
+      doc = approximation.nextDoc();
+    }
+    return doc;
+  }
+
+  @Override
+  public TwoPhaseDocIdSetIterator asTwoPhaseIterator() {
+    return new TwoPhaseDocIdSetIterator() {
+      @Override
+      public DocIdSetIterator approximation() {
+        return approximation;
+      }
 
-    // found a match
-    return max.doc;
+      @Override
+      public boolean matches() throws IOException {
+        sloppyFreq = phraseFreq(); // check for phrase
+        return sloppyFreq != 0.0f;
+      }
+    };
   }
   
   @Override
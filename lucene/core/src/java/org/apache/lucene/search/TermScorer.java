@@ -25,9 +25,20 @@ import org.apache.lucene.search.similarities.Similarity;
 /** Expert: A <code>Scorer</code> for documents matching a <code>Term</code>.
  */
 final class TermScorer extends Scorer {
+  /** How many documents are decoded at once by {@link #nextDoc()}. */
+  static final int BUFFER_SIZE = 128;
+
   private final DocsEnum docsEnum;
   private final Similarity.ExactSimScorer docScorer;
   private final int docFreq;
+
+  // docs and freqs bulk-read from the DocsEnum, allocated on
+  // the first call to nextDoc() since scorers that are only
+  // advanced don't need them
+  private int[] docBuffer, freqBuffer;
+  private int bufferUpto, bufferLength;
+  private int doc = -1;
+  private int freq;
   
   /**
    * Construct a <code>TermScorer</code>.
@@ -51,34 +62,53 @@ final class TermScorer extends Scorer {
 
   @Override
   public int docID() {
-    return docsEnum.docID();
+    return doc;
   }
 
   @Override
   public int freq() throws IOException {
-    return docsEnum.freq();
+    return freq;
   }
 
   /**
    * Advances to the next document matching the query. <br>
+   * The implementation reads documents and frequencies in bulk
+   * with {@link DocsEnum#read(int[], int[])}.
    * 
    * @return the document matching the query or NO_MORE_DOCS if there are no more documents.
    */
   @Override
   public int nextDoc() throws IOException {
-    return docsEnum.nextDoc();
+    if (++bufferUpto >= bufferLength) {
+      if (!refillBuffer()) {
+        return doc = NO_MORE_DOCS;
+      }
+    }
+    freq = freqBuffer[bufferUpto];
+    return doc = docBuffer[bufferUpto];
+  }
+
+  private boolean refillBuffer() throws IOException {
+    if (docBuffer == null) {
+      docBuffer = new int[BUFFER_SIZE];
+      freqBuffer = new int[BUFFER_SIZE];
+    }
+    bufferLength = docsEnum.read(docBuffer, freqBuffer);
+    bufferUpto = 0;
+    return bufferLength != 0;
   }
   
   @Override
   public float score() throws IOException {
     assert docID() != NO_MORE_DOCS;
-    return docScorer.score(docsEnum.docID(), docsEnum.freq());  
+    return docScorer.score(doc, freq);  
   }
 
   /**
    * Advances to the first match beyond the current whose document number is
    * greater than or equal to a given target. <br>
-   * The implementation uses {@link DocsEnum#advance(int)}.
+   * Buffered documents are scanned first, then the implementation uses
+   * {@link DocsEnum#advance(int)}.
    * 
    * @param target
    *          The target document number.
@@ -86,20 +116,57 @@ final class TermScorer extends Scorer {
    */
   @Override
   public int advance(int target) throws IOException {
-    return docsEnum.advance(target);
+    while (++bufferUpto < bufferLength) {
+      if (docBuffer[bufferUpto] >= target) {
+        freq = freqBuffer[bufferUpto];
+        return doc = docBuffer[bufferUpto];
+      }
+    }
+    // the buffer is exhausted, so the enum is positioned before target
+    bufferUpto = bufferLength = 0;
+    if (docsEnum.docID() == NO_MORE_DOCS) {
+      return doc = NO_MORE_DOCS;
+    }
+    doc = docsEnum.advance(target);
+    if (doc != NO_MORE_DOCS) {
+      freq = docsEnum.freq();
+    }
+    return doc;
+  }
+
+  /** Counts hits in bulk when collecting into a plain
+   *  {@link TotalHitCountCollector}, which never looks at
+   *  the documents. */
+  @Override
+  public void score(Collector collector) throws IOException {
+    if (collector.getClass() != TotalHitCountCollector.class || doc != -1) {
+      super.score(collector);
+      return;
+    }
+    final TotalHitCountCollector counter = (TotalHitCountCollector) collector;
+    counter.setScorer(this);
+    if (docBuffer == null) {
+      docBuffer = new int[BUFFER_SIZE];
+    }
+    int count;
+    while ((count = docsEnum.read(docBuffer, null)) != 0) {
+      counter.addHits(count);
+    }
+    bufferUpto = bufferLength = 0;
+    doc = NO_MORE_DOCS;
+  }
+
+  /** Returns an upper bound of {@link #score()} for any document, or
+   *  {@link Float#POSITIVE_INFINITY} if the similarity can't tell.
+   *  @see Similarity.ExactSimScorer#maxScore() */
+  float maxScore() {
+    return docScorer.maxScore();
   }
 
   /** Returns a string representation of this <code>TermScorer</code>. */
   @Override
   public String toString() { return "scorer(" + weight + ")"; }
 
-  // TODO: benchmark if the specialized conjunction really benefits
-  // from this, or if instead its from sorting by docFreq, or both
-
-  DocsEnum getDocsEnum() {
-    return docsEnum;
-  }
-  
   // TODO: generalize something like this for scorers?
   // even this is just an estimation...
   
@@ -68,6 +68,40 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
     }
   }
   
+  // Assumes docs are scored in order, and tells the scorer which score
+  // a document needs to be competitive so that it can skip the others.
+  private static class InOrderSkippingTopScoreDocCollector extends InOrderTopScoreDocCollector {
+    private WANDScorer wandScorer;
+
+    private InOrderSkippingTopScoreDocCollector(int numHits) {
+      super(numHits);
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+      super.setScorer(scorer);
+      wandScorer = scorer instanceof WANDScorer ? (WANDScorer) scorer : null;
+      updateMinCompetitiveScore();
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+      final ScoreDoc top = pqTop;
+      final float topScore = top.score;
+      super.collect(doc);
+      if (pqTop != top || pqTop.score != topScore) {
+        updateMinCompetitiveScore();
+      }
+    }
+
+    private void updateMinCompetitiveScore() {
+      // pqTop is a sentinel with a score of -Infinity until the queue is full
+      if (wandScorer != null && pqTop.score != Float.NEGATIVE_INFINITY) {
+        wandScorer.setMinCompetitiveScore(pqTop.score);
+      }
+    }
+  }
+  
   // Assumes docs are scored in order.
   private static class InOrderPagingScoreDocCollector extends TopScoreDocCollector {
     private final ScoreDoc after;
@@ -249,15 +283,46 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
    * objects.
    */
   public static TopScoreDocCollector create(int numHits, ScoreDoc after, boolean docsScoredInOrder) {
+    return create(numHits, after, docsScoredInOrder, true);
+  }
+
+  /**
+   * Creates a new {@link TopScoreDocCollector} given the number of hits to
+   * collect, the bottom of the previous page, whether documents are scored in
+   * order by the input {@link Scorer} to {@link #setScorer(Scorer)} and
+   * whether all matching documents need to be counted.
+   *
+   * <p>If <code>trackTotalHits</code> is <code>false</code>, documents are
+   * scored in order and there is no previous page, the collector tells
+   * disjunctions of terms that have a known maximum score (such as with
+   * {@link org.apache.lucene.search.similarities.BM25Similarity}) which score
+   * a document needs to get into the top hits, so that they can skip over
+   * documents that can't. {@link TopDocs#totalHits} is then only a lower
+   * bound of the number of matching documents. Since documents are skipped
+   * before they are collected, this collector must not be wrapped into a
+   * {@link MultiCollector} together with collectors that need to see every
+   * match.
+   *
+   * <p><b>NOTE</b>: The instances returned by this method
+   * pre-allocate a full array of length
+   * <code>numHits</code>, and fill the array with sentinel
+   * objects.
+   *
+   * @lucene.experimental
+   */
+  public static TopScoreDocCollector create(int numHits, ScoreDoc after, boolean docsScoredInOrder, boolean trackTotalHits) {
     
     if (numHits <= 0) {
       throw new IllegalArgumentException("numHits must be > 0; please use TotalHitCountCollector if you just need the total hit count");
     }
     
     if (docsScoredInOrder) {
-      return after == null 
-        ? new InOrderTopScoreDocCollector(numHits) 
-        : new InOrderPagingScoreDocCollector(after, numHits);
+      if (after != null) {
+        return new InOrderPagingScoreDocCollector(after, numHits);
+      }
+      return trackTotalHits
+        ? new InOrderTopScoreDocCollector(numHits)
+        : new InOrderSkippingTopScoreDocCollector(numHits);
     } else {
       return after == null
         ? new OutOfOrderTopScoreDocCollector(numHits)
@@ -40,6 +40,13 @@ public class TotalHitCountCollector extends Collector {
     totalHits++;
   }
 
+  /** Counts <code>count</code> hits at once, for scorers that
+   *  can count their matches without collecting them one by
+   *  one. */
+  void addHits(int count) {
+    totalHits += count;
+  }
+
   @Override
   public void setNextReader(AtomicReaderContext context) {
   }
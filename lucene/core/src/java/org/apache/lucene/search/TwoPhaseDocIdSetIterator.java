@@ -0,0 +1,53 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+/**
+ * An iterator that splits matching into a cheap doc-level approximation
+ * and a more costly verification of the current document. This allows
+ * consumers that intersect several iterators, like conjunctions and filters,
+ * to only verify the documents that all other iterators agree on.
+ * <p>
+ * The {@link #approximation()} iterates over a superset of the matching
+ * documents. Every time it is positioned on a document, {@link #matches()}
+ * may be called once to know whether this document actually matches. The
+ * {@link Scorer} that returned this iterator is positioned on the same
+ * document as the approximation, and its {@link Scorer#score()} and
+ * {@link Scorer#freq()} may only be called once {@link #matches()}
+ * returned true.
+ *
+ * @see Scorer#asTwoPhaseIterator()
+ * @lucene.experimental
+ */
+public abstract class TwoPhaseDocIdSetIterator {
+
+  /** Sole constructor. (For invocation by subclass
+   *  constructors, typically implicit.) */
+  protected TwoPhaseDocIdSetIterator() {
+  }
+
+  /** Returns an approximation of the matching documents: an iterator over
+   *  a superset of them. */
+  public abstract DocIdSetIterator approximation();
+
+  /** Returns whether the current document of the {@link #approximation()}
+   *  actually matches. This is typically where positions are read. */
+  public abstract boolean matches() throws IOException;
+}
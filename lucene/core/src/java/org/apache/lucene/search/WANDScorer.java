@@ -0,0 +1,219 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.search.similarities.Similarity;
+
+/**
+ * A disjunction of {@link TermScorer}s implementing the WAND
+ * ("weak AND") algorithm: every term knows an upper bound of the score it
+ * can contribute to a document (see {@link Similarity.ExactSimScorer#maxScore()}),
+ * and once the collector reports a minimum competitive score through
+ * {@link #setMinCompetitiveScore(float)}, documents that only match terms
+ * whose upper bounds sum up to at most this score are skipped over with
+ * {@link Scorer#advance(int)} instead of being scored.
+ * <p>
+ * Until a minimum competitive score is set, this scorer behaves exactly
+ * like a pure disjunction.
+ */
+final class WANDScorer extends Scorer {
+
+  /** Upper bounds are inflated by this relative amount to make sure float
+   *  rounding when summing up the actual scores never makes us skip a
+   *  competitive document. */
+  private static final double MAX_SCORE_SLACK = 1e-5;
+
+  private static final class Sub {
+    final Scorer scorer;
+    final double maxScore;
+    int doc;
+
+    Sub(Scorer scorer, float maxScore) {
+      this.scorer = scorer;
+      this.maxScore = maxScore * (1 + MAX_SCORE_SLACK);
+    }
+  }
+
+  private final List<TermScorer> scorers;
+  /** sub scorers that are not exhausted yet, sorted by their current docID */
+  private final Sub[] subs;
+  private int numSubs;
+  private final float[] coordFactors;
+  private final float maxCoordFactor;
+  private float minCompetitiveScore = Float.NEGATIVE_INFINITY;
+  private int doc = -1;
+
+  /**
+   * @param weight the parent weight
+   * @param scorers the disjunction's clauses, all of them must have a finite
+   *        {@link TermScorer#maxScore()}
+   * @param coordFactors the coord factor for every number of matching clauses
+   */
+  WANDScorer(Weight weight, List<TermScorer> scorers, float[] coordFactors) throws IOException {
+    super(weight);
+    assert coordFactors.length == scorers.size() + 1;
+    this.scorers = scorers;
+    this.coordFactors = coordFactors;
+    float maxCoord = 0f;
+    for (int i = 1; i < coordFactors.length; i++) {
+      maxCoord = Math.max(maxCoord, coordFactors[i]);
+    }
+    this.maxCoordFactor = maxCoord;
+    subs = new Sub[scorers.size()];
+    for (TermScorer scorer : scorers) {
+      final float maxScore = scorer.maxScore();
+      assert maxScore != Float.POSITIVE_INFINITY && !Float.isNaN(maxScore);
+      final Sub sub = new Sub(scorer, maxScore);
+      sub.doc = scorer.nextDoc();
+      if (sub.doc != NO_MORE_DOCS) {
+        subs[numSubs++] = sub;
+      }
+    }
+    sortSubs();
+  }
+
+  /**
+   * Sets the minimum score a document needs to be competitive: documents
+   * that cannot score more than this are not returned anymore.
+   * This value must never decrease.
+   */
+  void setMinCompetitiveScore(float minScore) {
+    assert minScore >= minCompetitiveScore;
+    minCompetitiveScore = minScore;
+  }
+
+  @Override
+  public int docID() {
+    return doc;
+  }
+
+  @Override
+  public int nextDoc() throws IOException {
+    assert doc != NO_MORE_DOCS;
+    for (int i = 0; i < numSubs && subs[i].doc == doc; i++) {
+      subs[i].doc = subs[i].scorer.nextDoc();
+    }
+    sortSubs();
+    return doc = nextCandidate();
+  }
+
+  @Override
+  public int advance(int target) throws IOException {
+    assert target > doc;
+    for (int i = 0; i < numSubs && subs[i].doc < target; i++) {
+      subs[i].doc = subs[i].scorer.advance(target);
+    }
+    sortSubs();
+    return doc = nextCandidate();
+  }
+
+  /** Returns the first document, at or after the current position of the
+   *  leading sub scorer, that could be competitive. */
+  private int nextCandidate() throws IOException {
+    while (numSubs > 0) {
+      // the pivot is the first sub such that all subs up to and including
+      // it may produce a competitive score together: any document before the
+      // pivot's current doc can only be matched by the subs before the pivot
+      int pivot = -1;
+      double upperBound = 0;
+      for (int i = 0; i < numSubs; i++) {
+        upperBound += subs[i].maxScore;
+        if (upperBound * maxCoordFactor > minCompetitiveScore) {
+          pivot = i;
+          break;
+        }
+      }
+      if (pivot == -1) {
+        // even all remaining terms together can't compete anymore
+        return NO_MORE_DOCS;
+      }
+
+      final int pivotDoc = subs[pivot].doc;
+      if (subs[0].doc == pivotDoc) {
+        // all subs up to the pivot are positioned on the pivot doc
+        return pivotDoc;
+      }
+
+      for (int i = 0; i < pivot; i++) {
+        if (subs[i].doc < pivotDoc) {
+          subs[i].doc = subs[i].scorer.advance(pivotDoc);
+        }
+      }
+      sortSubs();
+    }
+    return NO_MORE_DOCS;
+  }
+
+  /** Drops exhausted subs and restores the docID order with an insertion
+   *  sort, which is cheap since only a few leading subs move at a time. */
+  private void sortSubs() {
+    int upto = 0;
+    for (int i = 0; i < numSubs; i++) {
+      if (subs[i].doc != NO_MORE_DOCS) {
+        subs[upto++] = subs[i];
+      }
+    }
+    for (int i = upto; i < numSubs; i++) {
+      subs[i] = null;
+    }
+    numSubs = upto;
+    for (int i = 1; i < numSubs; i++) {
+      final Sub sub = subs[i];
+      int j = i - 1;
+      while (j >= 0 && subs[j].doc > sub.doc) {
+        subs[j + 1] = subs[j];
+        j--;
+      }
+      subs[j + 1] = sub;
+    }
+  }
+
+  @Override
+  public float score() throws IOException {
+    double sum = 0;
+    int nrMatchers = 0;
+    for (int i = 0; i < numSubs && subs[i].doc == doc; i++) {
+      sum += subs[i].scorer.score();
+      nrMatchers++;
+    }
+    return (float) sum * coordFactors[nrMatchers];
+  }
+
+  @Override
+  public int freq() throws IOException {
+    int freq = 0;
+    for (int i = 0; i < numSubs && subs[i].doc == doc; i++) {
+      freq++;
+    }
+    return freq;
+  }
+
+  @Override
+  public Collection<ChildScorer> getChildren() {
+    ArrayList<ChildScorer> children = new ArrayList<ChildScorer>(scorers.size());
+    for (Scorer s : scorers) {
+      children.add(new ChildScorer(s, "SHOULD"));
+    }
+    return children;
+  }
+}
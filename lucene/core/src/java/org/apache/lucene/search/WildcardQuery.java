@@ -22,6 +22,7 @@ import org.apache.lucene.util.ToStringUtils;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.BasicAutomata;
 import org.apache.lucene.util.automaton.BasicOperations;
+import org.apache.lucene.util.automaton.CompiledAutomatonCache;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -54,7 +55,19 @@ public class WildcardQuery extends AutomatonQuery {
    * Constructs a query for terms matching <code>term</code>. 
    */
   public WildcardQuery(Term term) {
-    super(term, toAutomaton(term));
+    super(term, new WildcardKey(term.text()));
+  }
+
+  // identifies the automaton of a wildcard pattern in the CompiledAutomatonCache
+  private static final class WildcardKey extends CompiledAutomatonCache.Key {
+    WildcardKey(String pattern) {
+      super(pattern, 0);
+    }
+
+    @Override
+    public Automaton toAutomaton() {
+      return WildcardQuery.toAutomaton(new Term("", pattern));
+    }
   }
   
   /**
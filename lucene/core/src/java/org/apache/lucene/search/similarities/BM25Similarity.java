@@ -245,6 +245,12 @@ public class BM25Similarity extends Similarity {
     public float score(int doc, int freq) {
       return weightValue * freq / (freq + cache[norms[doc] & 0xFF]);
     }
+
+    @Override
+    public float maxScore() {
+      // freq / (freq + x) < 1 for any x > 0
+      return weightValue;
+    }
     
     @Override
     public Explanation explain(int doc, Explanation freq) {
@@ -273,6 +279,11 @@ public class BM25Similarity extends Similarity {
         ? scoreCache[freq]                  // cache hit
         : weightValue * freq / (freq + k1); // cache miss
     }
+
+    @Override
+    public float maxScore() {
+      return weightValue;
+    }
     
     @Override
     public Explanation explain(int doc, Explanation freq) {
@@ -213,6 +213,18 @@ public abstract class Similarity {
      * @return document's score
      */
     public abstract float score(int doc, int freq);
+
+    /**
+     * Returns an upper bound of the score that {@link #score(int, int)} may
+     * return for any document and frequency, or
+     * {@link Float#POSITIVE_INFINITY} if no such bound is known (the default).
+     * Disjunctions use this to skip over documents that can't make it into
+     * the top hits.
+     * @lucene.experimental
+     */
+    public float maxScore() {
+      return Float.POSITIVE_INFINITY;
+    }
     
     /**
      * Explain the score for a single document
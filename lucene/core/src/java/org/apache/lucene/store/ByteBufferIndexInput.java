@@ -35,8 +35,11 @@ import org.apache.lucene.util.WeakIdentityMap;
  * <p>
  * For efficiency, this class requires that the buffers
  * are a power-of-two (<code>chunkSizePower</code>).
+ * <p>
+ * The {@link RandomAccessInput} methods use absolute gets on the buffers,
+ * which don't modify any state, so they can be called from several threads.
  */
-abstract class ByteBufferIndexInput extends IndexInput {
+abstract class ByteBufferIndexInput extends IndexInput implements RandomAccessInput {
   private ByteBuffer[] buffers;
   
   private final long chunkSizeMask;
@@ -142,6 +145,64 @@ abstract class ByteBufferIndexInput extends IndexInput {
     }
   }
   
+  @Override
+  public final byte readByte(long pos) throws IOException {
+    try {
+      final long p = pos + offset;
+      return buffers[(int) (p >> chunkSizePower)].get((int) (p & chunkSizeMask));
+    } catch (IndexOutOfBoundsException ioobe) {
+      throw outOfBounds(pos);
+    } catch (NullPointerException npe) {
+      throw new AlreadyClosedException("Already closed: " + this);
+    }
+  }
+
+  @Override
+  public final short readShort(long pos) throws IOException {
+    try {
+      final long p = pos + offset;
+      return buffers[(int) (p >> chunkSizePower)].getShort((int) (p & chunkSizeMask));
+    } catch (IndexOutOfBoundsException ioobe) {
+      // the value spans two buffers, or is out of bounds
+      return (short) (((readByte(pos) & 0xFF) << 8) | (readByte(pos + 1) & 0xFF));
+    } catch (NullPointerException npe) {
+      throw new AlreadyClosedException("Already closed: " + this);
+    }
+  }
+
+  @Override
+  public final int readInt(long pos) throws IOException {
+    try {
+      final long p = pos + offset;
+      return buffers[(int) (p >> chunkSizePower)].getInt((int) (p & chunkSizeMask));
+    } catch (IndexOutOfBoundsException ioobe) {
+      // the value spans two buffers, or is out of bounds
+      return ((readShort(pos) & 0xFFFF) << 16) | (readShort(pos + 2) & 0xFFFF);
+    } catch (NullPointerException npe) {
+      throw new AlreadyClosedException("Already closed: " + this);
+    }
+  }
+
+  @Override
+  public final long readLong(long pos) throws IOException {
+    try {
+      final long p = pos + offset;
+      return buffers[(int) (p >> chunkSizePower)].getLong((int) (p & chunkSizeMask));
+    } catch (IndexOutOfBoundsException ioobe) {
+      // the value spans two buffers, or is out of bounds
+      return (((long) readInt(pos)) << 32) | (readInt(pos + 4) & 0xFFFFFFFFL);
+    } catch (NullPointerException npe) {
+      throw new AlreadyClosedException("Already closed: " + this);
+    }
+  }
+
+  private IOException outOfBounds(long pos) {
+    if (pos < 0L) {
+      throw new IllegalArgumentException("Reading at negative position: " + this);
+    }
+    return new EOFException("read past EOF (pos=" + pos + "): " + this);
+  }
+
   @Override
   public final long getFilePointer() {
     try {
@@ -221,11 +221,39 @@ public class MMapDirectory extends FSDirectory {
     File f = new File(getDirectory(), name);
     RandomAccessFile raf = new RandomAccessFile(f, "r");
     try {
-      return new MMapIndexInput("MMapIndexInput(path=\"" + f + "\")", raf);
+      final long length = raf.length();
+      final ByteBuffer[] buffers = map(raf, 0, length);
+      boolean success = false;
+      try {
+        mapped(name, buffers, context);
+        success = true;
+      } finally {
+        if (!success) {
+          for (ByteBuffer buffer : buffers) {
+            cleanMapping(buffer);
+          }
+        }
+      }
+      return new MMapIndexInput("MMapIndexInput(path=\"" + f + "\")", buffers, length);
     } finally {
       raf.close();
     }
   }
+
+  /**
+   * Expert: called with the buffers of every file this directory maps for
+   * reading, before an {@link IndexInput} is created on top of them. The
+   * default implementation does nothing; subclasses may use it to tell the
+   * operating system how the mapped pages will be accessed, depending on the
+   * {@link IOContext} the file is opened with.
+   * <p>For compound files, this is called once for the whole compound file.
+   *
+   * @param name the name of the mapped file
+   * @param buffers the mapped chunks of the file, see {@link #getMaxChunkSize()}
+   * @param context the {@link IOContext} the file was opened with
+   */
+  protected void mapped(String name, ByteBuffer[] buffers, IOContext context) throws IOException {
+  }
   
   @Override
   public IndexInputSlicer createSlicer(String name, IOContext context) throws IOException {
@@ -246,8 +274,8 @@ public class MMapDirectory extends FSDirectory {
 
   private final class MMapIndexInput extends ByteBufferIndexInput {
     
-    MMapIndexInput(String resourceDescription, RandomAccessFile raf) throws IOException {
-      super(resourceDescription, map(raf, 0, raf.length()), raf.length(), chunkSizePower);
+    MMapIndexInput(String resourceDescription, ByteBuffer[] buffers, long length) throws IOException {
+      super(resourceDescription, buffers, length, chunkSizePower);
     }
     
     @Override
@@ -0,0 +1,51 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+/**
+ * Random access to the content of an {@link IndexInput}: values are read at
+ * absolute positions (using the same coordinates as
+ * {@link IndexInput#seek(long)}) without moving the file pointer.
+ * <p>
+ * Unlike {@link IndexInput}s, implementations of this interface can be used
+ * by several threads concurrently, which makes it possible to share a
+ * single instance, eg for off-heap {@link org.apache.lucene.index.DocValues.Source}s.
+ * {@link MMapDirectory}'s inputs implement this interface.
+ * 
+ * @lucene.experimental
+ */
+public interface RandomAccessInput {
+
+  /** Reads a byte at the given position. */
+  byte readByte(long pos) throws IOException;
+
+  /** Reads a short at the given position.
+   * @see DataInput#readShort() */
+  short readShort(long pos) throws IOException;
+
+  /** Reads an int at the given position.
+   * @see DataInput#readInt() */
+  int readInt(long pos) throws IOException;
+
+  /** Reads a long at the given position.
+   * @see DataInput#readLong() */
+  long readLong(long pos) throws IOException;
+
+}
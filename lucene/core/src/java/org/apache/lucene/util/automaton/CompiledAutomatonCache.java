@@ -0,0 +1,233 @@
+package org.apache.lucene.util.automaton;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.util.DoubleBarrelLRUCache;
+
+/**
+ * A bounded, thread-safe cache of {@link CompiledAutomaton}s, identified by
+ * the pattern and options they are built from, so that queries which are run
+ * again and again don't have to build, minimize and compile the same
+ * automata every time. {@link org.apache.lucene.search.WildcardQuery},
+ * {@link org.apache.lucene.search.RegexpQuery} and {@link
+ * org.apache.lucene.search.FuzzyQuery} use the {@link #getDefault() default
+ * cache}.
+ *
+ * <p>Entries are evicted in LRU order, using a {@link DoubleBarrelLRUCache}:
+ * up to twice the maximum size may be held at any given time. A cache whose
+ * maximum size is 0 never caches anything, but still records how long
+ * building the automata takes.
+ *
+ * @lucene.experimental
+ */
+public final class CompiledAutomatonCache {
+
+  /** Maximum size of the default cache. */
+  public static final int DEFAULT_MAX_SIZE = 128;
+
+  private static volatile CompiledAutomatonCache defaultCache = new CompiledAutomatonCache(DEFAULT_MAX_SIZE);
+
+  /** Returns the cache that queries use. */
+  public static CompiledAutomatonCache getDefault() {
+    return defaultCache;
+  }
+
+  /** Sets the cache that queries use. Pass a cache whose
+   *  maximum size is 0 to disable caching. */
+  public static void setDefault(CompiledAutomatonCache cache) {
+    if (cache == null) {
+      throw new IllegalArgumentException("cache must not be null");
+    }
+    defaultCache = cache;
+  }
+
+  /**
+   * Identifies an automaton by the pattern and options it is built from,
+   * and builds it on cache misses. Two keys are equal if they have the same
+   * class, pattern and options.
+   */
+  public static abstract class Key {
+    /** The pattern the automaton is built from. */
+    protected final String pattern;
+    /** Options that change how the automaton is built from the pattern. */
+    protected final int options;
+
+    /** Sole constructor. */
+    protected Key(String pattern, int options) {
+      if (pattern == null) {
+        throw new IllegalArgumentException("pattern must not be null");
+      }
+      this.pattern = pattern;
+      this.options = options;
+    }
+
+    /** Builds the automaton. */
+    public abstract Automaton toAutomaton();
+
+    /** Compiles an automaton that has been built by {@link
+     *  #toAutomaton()}. By default this calls {@link
+     *  CompiledAutomaton#CompiledAutomaton(Automaton)}. */
+    public CompiledAutomaton compile(Automaton automaton) {
+      return new CompiledAutomaton(automaton);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return options == other.options && pattern.equals(other.pattern);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * getClass().hashCode() + pattern.hashCode()) + options;
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + "(pattern=" + pattern + " options=" + options + ")";
+    }
+  }
+
+  /** An automaton and its compiled form. */
+  public static final class Entry {
+    /** The automaton, which is shared across threads: it must not be
+     *  modified, use {@link Automaton#clone()} to get a private copy. */
+    public final Automaton automaton;
+    /** The compiled automaton. */
+    public final CompiledAutomaton compiled;
+
+    Entry(Automaton automaton, CompiledAutomaton compiled) {
+      if (!automaton.isSingleton()) {
+        // states are numbered lazily, do it now so that
+        // readers never modify the automaton
+        automaton.getNumberedStates();
+      }
+      this.automaton = automaton;
+      this.compiled = compiled;
+    }
+  }
+
+  // DoubleBarrelLRUCache clones keys that it promotes, ours are immutable
+  private static final class CacheKey extends DoubleBarrelLRUCache.CloneableKey {
+    private final Key key;
+
+    CacheKey(Key key) {
+      this.key = key;
+    }
+
+    @Override
+    public CacheKey clone() {
+      return new CacheKey(key);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof CacheKey && key.equals(((CacheKey) obj).key);
+    }
+
+    @Override
+    public int hashCode() {
+      return key.hashCode();
+    }
+  }
+
+  private final int maxSize;
+  private final DoubleBarrelLRUCache<CacheKey,Entry> cache;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong buildTimeNanos = new AtomicLong();
+
+  /** Creates a cache that holds at least the <code>maxSize</code> most
+   *  recently used automata. */
+  public CompiledAutomatonCache(int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize must be >= 0, got " + maxSize);
+    }
+    this.maxSize = maxSize;
+    cache = maxSize == 0 ? null : new DoubleBarrelLRUCache<CacheKey,Entry>(maxSize);
+  }
+
+  /** Returns the automaton identified by <code>key</code>,
+   *  building and caching it if it is not cached yet. */
+  public Entry get(Key key) {
+    final CacheKey cacheKey = new CacheKey(key);
+    if (cache != null) {
+      final Entry entry = cache.get(cacheKey);
+      if (entry != null) {
+        hitCount.incrementAndGet();
+        return entry;
+      }
+    }
+    missCount.incrementAndGet();
+    final long start = System.nanoTime();
+    final Automaton automaton = key.toAutomaton();
+    final Entry entry = new Entry(automaton, key.compile(automaton));
+    buildTimeNanos.addAndGet(System.nanoTime() - start);
+    if (cache != null) {
+      // another thread may have built the same automaton
+      // concurrently, in which case one of them wins
+      cache.put(cacheKey, entry);
+    }
+    return entry;
+  }
+
+  /** Returns the maximum size of this cache. */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /** Returns how many times {@link #get} found the
+   *  automaton in the cache. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** Returns how many times {@link #get} had to build
+   *  the automaton. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /** Returns the ratio of calls to {@link #get} that found
+   *  the automaton in the cache, or 0 if it was never called. */
+  public double getHitRate() {
+    final long hits = hitCount.get();
+    final long lookups = hits + missCount.get();
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  /** Returns the total time spent building and compiling
+   *  automata on cache misses, in nanoseconds. */
+  public long getBuildTimeNanos() {
+    return buildTimeNanos.get();
+  }
+
+  @Override
+  public String toString() {
+    return "CompiledAutomatonCache(maxSize=" + maxSize + " hits=" + getHitCount() + " misses=" + getMissCount()
+        + " buildTimeMS=" + (getBuildTimeNanos() / 1000000) + ")";
+  }
+}
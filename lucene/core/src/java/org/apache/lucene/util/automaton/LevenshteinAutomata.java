@@ -131,7 +131,56 @@ public class LevenshteinAutomata {
     
     if (n >= descriptions.length)
       return null;
-    
+
+    final State states[] = createStates(n);
+    Automaton a = new Automaton(states[0]);
+    a.setDeterministic(true);
+    // we create some useless unconnected states, and its a net-win overall to remove these,
+    // as well as to combine any adjacent transitions (it makes later algorithms more efficient).
+    // so, while we could set our numberedStates here, its actually best not to, and instead to
+    // force a traversal in reduce, pruning the unconnected states while we combine adjacent transitions.
+    //a.setNumberedStates(states);
+    a.reduce();
+    // we need not trim transitions to dead states, as they are not created.
+    //a.restoreInvariant();
+    return a;
+  }
+
+  /**
+   * Compute a {@link DistanceRunAutomaton} that accepts the same strings as
+   * {@link #toAutomaton(int) toAutomaton(n)}, and that also returns the edit
+   * distance of each of them: every accept state of a Levenshtein DFA matches
+   * strings of a single edit distance.
+   */
+  public DistanceRunAutomaton toDistanceAutomaton(int n) {
+    if (n == 0) {
+      final Automaton a = BasicAutomata.makeString(word, 0, word.length);
+      return new DistanceRunAutomaton(a, new int[a.getNumberedStates().length]);
+    }
+
+    if (n >= descriptions.length)
+      return null;
+
+    final ParametricDescription description = descriptions[n];
+    final State states[] = createStates(n);
+    final Automaton a = new Automaton(states[0]);
+    a.setDeterministic(true);
+    // reduce renumbers the reachable states
+    a.reduce();
+    final State numbered[] = a.getNumberedStates();
+    final int distances[] = new int[numbered.length];
+    for (int i = 0; i < states.length; i++) {
+      final State state = states[i];
+      if (state.accept && state.number < numbered.length && numbered[state.number] == state) {
+        distances[state.number] = description.getDistance(i);
+      }
+    }
+    return new DistanceRunAutomaton(a, distances);
+  }
+
+  /** Creates the states of the Levenshtein DFA of degree <code>n</code>,
+   *  the initial state first. */
+  private State[] createStates(int n) {
     final int range = 2*n+1;
     ParametricDescription description = descriptions[n];
     // the number of states is based on the length of the word and n
@@ -165,18 +214,37 @@ public class LevenshteinAutomata {
         for (int r = 0; r < numRanges; r++)
           states[k].addTransition(new Transition(rangeLower[r], rangeUpper[r], states[dest]));      
     }
+    return states;
+  }
 
-    Automaton a = new Automaton(states[0]);
-    a.setDeterministic(true);
-    // we create some useless unconnected states, and its a net-win overall to remove these,
-    // as well as to combine any adjacent transitions (it makes later algorithms more efficient).
-    // so, while we could set our numberedStates here, its actually best not to, and instead to
-    // force a traversal in reduce, pruning the unconnected states while we combine adjacent transitions.
-    //a.setNumberedStates(states);
-    a.reduce();
-    // we need not trim transitions to dead states, as they are not created.
-    //a.restoreInvariant();
-    return a;
+  /**
+   * A {@link RunAutomaton} over code points that accepts the strings within
+   * some edit distance of a word, and that knows the edit distance of the
+   * strings that end in each of its accept states.
+   *
+   * @lucene.experimental
+   */
+  public static final class DistanceRunAutomaton extends RunAutomaton {
+    private final int[] distances;
+
+    DistanceRunAutomaton(Automaton a, int[] distances) {
+      super(a, Character.MAX_CODE_POINT, false);
+      this.distances = distances;
+    }
+
+    /**
+     * Returns the edit distance between the word and the given code points,
+     * or -1 if they are not accepted by this automaton.
+     */
+    public int getDistance(int[] s, int offset, int length) {
+      int p = initial;
+      final int l = offset + length;
+      for (int i = offset; i < l; i++) {
+        p = step(p, s[i]);
+        if (p == -1) return -1;
+      }
+      return accept[p] ? distances[p] : -1;
+    }
   }
   
   /**
@@ -234,6 +302,17 @@ public class LevenshteinAutomata {
       return w - offset + minErrors[state] <= n;
     }
 
+    /**
+     * Returns the edit distance of the strings that end in the accept state
+     * <code>absState</code>.
+     */
+    int getDistance(int absState) {
+      assert isAccept(absState);
+      int state = absState/(w+1);
+      int offset = absState%(w+1);
+      return w - offset + minErrors[state];
+    }
+
     /**
      * Returns the position in the input word for a given <code>state</code>.
      * This is the minimal boundary for the state.
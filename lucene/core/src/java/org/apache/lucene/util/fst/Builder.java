@@ -18,7 +18,9 @@ package org.apache.lucene.util.fst;
  */
 
 import java.io.IOException;
+import java.util.List;
 
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.IntsRef;
 import org.apache.lucene.util.RamUsageEstimator;
@@ -43,7 +45,8 @@ import org.apache.lucene.util.packed.PackedInts;
  */
 
 public class Builder<T> {
-  private final NodeHash<T> dedupHash;
+  private NodeHash<T> dedupHash;
+  private int maxNodeHashSize = Integer.MAX_VALUE;
   private final FST<T> fst;
   private final T NO_OUTPUT;
 
@@ -186,6 +189,51 @@ public class Builder<T> {
     fst.setAllowArrayArcs(b);
   }
 
+  /** Expert: bounds the number of nodes that the suffix
+   *  sharing hash holds (it is unbounded by default).  Once
+   *  it holds <code>maxSize</code> nodes, they are moved to
+   *  a fallback table, which is dropped the next time this
+   *  happens: only the suffixes that were frozen or shared
+   *  recently are shared again, so the FST may not be
+   *  minimal but building it uses less RAM.  Must be called
+   *  before the first input is added; this is a no-op if the
+   *  builder doesn't share suffixes. */
+  public void setMaxNodeHashSize(int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be >= 1, got " + maxSize);
+    }
+    checkNoInput();
+    maxNodeHashSize = maxSize;
+    if (dedupHash != null) {
+      dedupHash = new NodeHash<T>(fst, maxNodeHashSize);
+    }
+  }
+
+  /** Expert: writes the nodes of the FST to the file
+   *  <code>fileName</code> in <code>dir</code> as they are
+   *  frozen, instead of keeping them in RAM while building.
+   *  {@link #finish} reads the FST back and deletes the
+   *  file.  This is meant to be used together with {@link
+   *  #setMaxNodeHashSize}, since the suffix sharing hash
+   *  keeps a copy of the nodes it holds.  Must be called
+   *  before the first input is added, and cannot be used
+   *  with <code>willPackFST</code>.  If building fails, the
+   *  file is not deleted. */
+  public void streamTo(Directory dir, String fileName) throws IOException {
+    checkNoInput();
+    fst.streamTo(dir, fileName);
+    if (dedupHash != null) {
+      // the hash can't read the nodes back from the FST anymore
+      dedupHash = new NodeHash<T>(fst, maxNodeHashSize);
+    }
+  }
+
+  private void checkNoInput() {
+    if (frontier[0].inputCount != 0) {
+      throw new IllegalStateException("inputs have already been added");
+    }
+  }
+
   private CompiledNode compileNode(UnCompiledNode<T> nodeIn, int tailLength) throws IOException {
     final int node;
     if (dedupHash != null && (doShareNonSingletonNodes || nodeIn.numArcs <= 1) && tailLength <= shareMaxTailLength) {
@@ -460,10 +508,11 @@ public class Builder<T> {
     // minimize nodes in the last word's suffix
     freezeTail(0);
     if (root.inputCount < minSuffixCount1 || root.inputCount < minSuffixCount2 || root.numArcs == 0) {
-      if (fst.emptyOutput == null) {
-        return null;
-      } else if (minSuffixCount1 > 0 || minSuffixCount2 > 0) {
-        // empty string got pruned
+      if (fst.emptyOutput == null || minSuffixCount1 > 0 || minSuffixCount2 > 0) {
+        // nothing is accepted, or the empty string got pruned
+        if (fst.isStreaming()) {
+          fst.closeStream(false);
+        }
         return null;
       }
     } else {
@@ -477,6 +526,83 @@ public class Builder<T> {
     return fst;
   }
 
+  /**
+   * Returns an FST that accepts the union of the inputs of
+   * the given FSTs, with the same outputs, or null if none of
+   * them accepts anything.  The partitions must be ordered by
+   * input, and must not share first labels: every input of a
+   * partition must start with a label that is greater than
+   * the first label of any input of the previous partitions,
+   * and only the first partition that accepts something may
+   * accept the empty input.  This makes it possible to build
+   * large FSTs concurrently, one {@link Builder} per range of
+   * first labels.  Suffixes are not shared across partitions,
+   * so the resulting FST is not minimal.
+   *
+   * <p>Partitions must have been built with the same {@link
+   * Outputs}, and must not be packed.  Null partitions are
+   * ignored.
+   */
+  public static <T> FST<T> stitch(List<FST<T>> partitions) throws IOException {
+    Builder<T> builder = null;
+    for (FST<T> partition : partitions) {
+      if (partition == null) {
+        continue;
+      }
+      if (builder == null) {
+        builder = new Builder<T>(partition.inputType, partition.outputs);
+      } else if (partition.outputs != builder.fst.outputs) {
+        throw new IllegalArgumentException("all partitions must have the same outputs");
+      }
+      builder.append(partition);
+    }
+    return builder == null ? null : builder.finishStitch();
+  }
+
+  // copies the nodes of partition to the FST, and adds the arcs of its root
+  // node to the root node of the FST
+  private void append(FST<T> partition) throws IOException {
+    final UnCompiledNode<T> root = frontier[0];
+    if (partition.emptyOutput != null) {
+      if (root.isFinal || root.numArcs != 0) {
+        throw new IllegalArgumentException("only the first partition can accept the empty input");
+      }
+      root.isFinal = true;
+      fst.setEmptyOutput(partition.emptyOutput);
+    }
+    final int offset = fst.append(partition);
+    final FST.Arc<T> arc = partition.getFirstArc(new FST.Arc<T>());
+    if (!FST.targetHasArcs(arc)) {
+      return;
+    }
+    final FST.BytesReader in = partition.getBytesReader(0);
+    partition.readFirstRealTargetArc(arc.target, arc, in);
+    while (true) {
+      if (root.numArcs != 0 && arc.label <= root.arcs[root.numArcs-1].label) {
+        throw new IllegalArgumentException("partitions must be ordered and must not share first labels, but got label " + arc.label + " after label " + root.arcs[root.numArcs-1].label);
+      }
+      final CompiledNode target = new CompiledNode();
+      target.node = FST.targetHasArcs(arc) ? arc.target + offset : arc.target;
+      root.addArc(arc.label, target);
+      root.setLastOutput(arc.label, arc.output);
+      root.replaceLast(arc.label, target, arc.nextFinalOutput, arc.isFinal());
+      root.inputCount++;
+      if (arc.isLast()) {
+        break;
+      }
+      partition.readNextRealArc(arc, in);
+    }
+  }
+
+  private FST<T> finishStitch() throws IOException {
+    final UnCompiledNode<T> root = frontier[0];
+    if (root.numArcs == 0 && fst.emptyOutput == null) {
+      return null;
+    }
+    fst.finish(compileNode(root, 0).node);
+    return fst;
+  }
+
   private void compileAllTargets(UnCompiledNode<T> node, int tailLength) throws IOException {
     for(int arcIdx=0;arcIdx<node.numArcs;arcIdx++) {
       final Arc<T> arc = node.arcs[arcIdx];
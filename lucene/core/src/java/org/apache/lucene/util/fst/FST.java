@@ -31,6 +31,11 @@ import java.util.Map;
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.store.DataInput;
 import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RandomAccessInput;
 import org.apache.lucene.store.InputStreamDataInput;
 import org.apache.lucene.store.OutputStreamDataOutput;
 import org.apache.lucene.util.ArrayUtil;
@@ -143,6 +148,21 @@ public final class FST<T> {
   byte[] bytes;
   int byteUpto = 0;
 
+  // if non-null, the bytes of this FST are not loaded in memory but read from
+  // offHeapIn, starting at offHeapStart, and bytes is null
+  private RandomAccessInput offHeapIn;
+  private long offHeapStart;
+  private int offHeapLength;
+
+  // if non-null, frozen nodes are written to this file while the FST is being
+  // built, and bytes only holds the node that is being added
+  private IndexOutput streamOut;
+  private Directory streamDir;
+  private String streamFileName;
+  // number of bytes written to streamOut, ie. the address of bytes[0]
+  private int streamedBytes;
+  private int lastNodeLength;
+
   private int startNode = -1;
 
   public final Outputs<T> outputs;
@@ -284,6 +304,33 @@ public final class FST<T> {
 
   /** Load a previously saved FST. */
   public FST(DataInput in, Outputs<T> outputs) throws IOException {
+    this(in, outputs, null);
+  }
+
+  /**
+   * Load a previously saved FST. If <code>offHeap</code> is true, the bytes
+   * of the FST are not loaded into memory: arcs are read from
+   * <code>in</code> instead, which must be a {@link RandomAccessInput}, such
+   * as the inputs of {@link org.apache.lucene.store.MMapDirectory}, and must
+   * not be closed as long as this FST is used. This saves heap at the
+   * expense of slower lookups. In both cases, <code>in</code> is positioned
+   * after the FST on return.
+   *
+   * @throws IllegalArgumentException if <code>offHeap</code> is true and
+   *         <code>in</code> is not a {@link RandomAccessInput}
+   */
+  public FST(IndexInput in, Outputs<T> outputs, boolean offHeap) throws IOException {
+    this(in, outputs, offHeap ? checkRandomAccess(in) : null);
+  }
+
+  private static RandomAccessInput checkRandomAccess(IndexInput in) {
+    if (!(in instanceof RandomAccessInput)) {
+      throw new IllegalArgumentException("input must implement RandomAccessInput, got " + in);
+    }
+    return (RandomAccessInput) in;
+  }
+
+  private FST(DataInput in, Outputs<T> outputs, RandomAccessInput offHeapIn) throws IOException {
     this.outputs = outputs;
     writer = null;
     // NOTE: only reads most recent format; we don't have
@@ -293,14 +340,15 @@ public final class FST<T> {
     if (in.readByte() == 1) {
       // accepts empty string
       int numBytes = in.readVInt();
-      // messy
-      bytes = new byte[numBytes];
-      in.readBytes(bytes, 0, numBytes);
+      final byte[] emptyBytes = new byte[numBytes];
+      in.readBytes(emptyBytes, 0, numBytes);
+      // kept so that this FST can be saved again
+      emptyOutputBytes = emptyBytes;
       BytesReader reader;
       if (packed) {
-        reader = getBytesReader(0);
+        reader = new ForwardBytesReader(emptyBytes, 0);
       } else {
-        reader = getBytesReader(numBytes-1);
+        reader = new ReverseBytesReader(emptyBytes, numBytes-1);
       }
       emptyOutput = outputs.readFinalOutput(reader);
     } else {
@@ -330,8 +378,18 @@ public final class FST<T> {
     arcCount = in.readVInt();
     arcWithOutputCount = in.readVInt();
 
-    bytes = new byte[in.readVInt()];
-    in.readBytes(bytes, 0, bytes.length);
+    final int numBytes = in.readVInt();
+    if (offHeapIn == null) {
+      bytes = new byte[numBytes];
+      in.readBytes(bytes, 0, bytes.length);
+    } else {
+      assert in == offHeapIn;
+      final IndexInput indexIn = (IndexInput) in;
+      this.offHeapIn = offHeapIn;
+      this.offHeapStart = indexIn.getFilePointer();
+      this.offHeapLength = numBytes;
+      indexIn.seek(offHeapStart + numBytes);
+    }
     NO_OUTPUT = outputs.getNoOutput();
 
     cacheRootArcs();
@@ -341,9 +399,18 @@ public final class FST<T> {
     return inputType;
   }
 
-  /** Returns bytes used to represent the FST */
+  /** Returns true if the bytes of this FST are read from a
+   *  {@link RandomAccessInput} instead of being loaded in memory.
+   *  @see #FST(IndexInput, Outputs, boolean) */
+  public boolean isOffHeap() {
+    return offHeapIn != null;
+  }
+
+  /** Returns bytes used to represent the FST, including
+   *  the bytes that are not loaded in memory if this FST is
+   *  {@link #isOffHeap() off-heap}. */
   public int sizeInBytes() {
-    int size = bytes.length;
+    int size = offHeapIn == null ? bytes.length : offHeapLength;
     if (packed) {
       size += nodeRefToAddress.ramBytesUsed();
     } else if (nodeAddress != null) {
@@ -360,14 +427,77 @@ public final class FST<T> {
     if (this.startNode != -1) {
       throw new IllegalStateException("already finished");
     }
-    byte[] finalBytes = new byte[writer.posWrite];
-    System.arraycopy(bytes, 0, finalBytes, 0, writer.posWrite);
-    bytes = finalBytes;
+    if (streamOut != null) {
+      closeStream(true);
+    } else {
+      byte[] finalBytes = new byte[writer.posWrite];
+      System.arraycopy(bytes, 0, finalBytes, 0, writer.posWrite);
+      bytes = finalBytes;
+    }
     this.startNode = startNode;
 
     cacheRootArcs();
   }
 
+  // writes frozen nodes to a file of dir instead of keeping them in bytes
+  void streamTo(Directory dir, String fileName) throws IOException {
+    if (nodeCount != 0) {
+      throw new IllegalStateException("nodes have already been added");
+    }
+    if (streamOut != null) {
+      throw new IllegalStateException("nodes are already streamed to " + streamFileName);
+    }
+    if (nodeAddress != null) {
+      throw new IllegalStateException("cannot stream an FST that will be packed");
+    }
+    streamOut = dir.createOutput(fileName, IOContext.DEFAULT);
+    streamDir = dir;
+    streamFileName = fileName;
+    // the padding byte
+    streamOut.writeBytes(bytes, 0, writer.posWrite);
+    streamedBytes = writer.posWrite;
+    writer.posWrite = 0;
+  }
+
+  boolean isStreaming() {
+    return streamOut != null;
+  }
+
+  // when streaming, the bytes of the last added node are still in
+  // bytes[0:lastNodeLength()] after addNode returns
+  int lastNodeLength() {
+    assert streamOut != null;
+    return lastNodeLength;
+  }
+
+  // closes the stream and deletes its file, after having read it into
+  // bytes if load is true
+  void closeStream(boolean load) throws IOException {
+    assert writer.posWrite == 0;
+    IndexInput in = null;
+    boolean success = false;
+    try {
+      streamOut.close();
+      streamOut = null;
+      if (load) {
+        in = streamDir.openInput(streamFileName, IOContext.READONCE);
+        bytes = new byte[streamedBytes];
+        in.readBytes(bytes, 0, bytes.length);
+      }
+      success = true;
+    } finally {
+      if (success) {
+        IOUtils.close(in);
+      } else {
+        IOUtils.closeWhileHandlingException(streamOut, in);
+      }
+    }
+    streamDir.deleteFile(streamFileName);
+    if (load) {
+      writer.posWrite = streamedBytes;
+    }
+  }
+
   private int getNodeAddress(int node) {
     if (nodeAddress != null) {
       // Deref
@@ -475,8 +605,15 @@ public final class FST<T> {
     out.writeVInt(nodeCount);
     out.writeVInt(arcCount);
     out.writeVInt(arcWithOutputCount);
-    out.writeVInt(bytes.length);
-    out.writeBytes(bytes, 0, bytes.length);
+    if (offHeapIn == null) {
+      out.writeVInt(bytes.length);
+      out.writeBytes(bytes, 0, bytes.length);
+    } else {
+      out.writeVInt(offHeapLength);
+      for (int i = 0; i < offHeapLength; ++i) {
+        out.writeByte(offHeapIn.readByte(offHeapStart + i));
+      }
+    }
   }
   
   /**
@@ -720,6 +857,16 @@ public final class FST<T> {
       nodeAddress.set(nodeCount, endAddress);
       // System.out.println("  write nodeAddress[" + nodeCount + "] = " + endAddress);
       node = nodeCount;
+    } else if (streamOut != null) {
+      assert startAddress == 0;
+      if (streamedBytes > Integer.MAX_VALUE - writer.posWrite) {
+        throw new IllegalStateException("FST too large (> 2.1 GB)");
+      }
+      node = streamedBytes + endAddress;
+      streamOut.writeBytes(bytes, 0, writer.posWrite);
+      streamedBytes += writer.posWrite;
+      lastNodeLength = writer.posWrite;
+      writer.posWrite = 0;
     } else {
       node = endAddress;
     }
@@ -728,6 +875,67 @@ public final class FST<T> {
     return node;
   }
 
+  // appends the nodes of other to the nodes of this FST, and returns the
+  // offset that must be added to the addresses of other's nodes to get
+  // their addresses in this FST
+  int append(FST<T> other) throws IOException {
+    if (other.packed || other.nodeAddress != null || other.offHeapIn != null) {
+      throw new IllegalArgumentException("cannot append a packed or off-heap FST");
+    }
+    if (other.inputType != inputType) {
+      throw new IllegalArgumentException("cannot append an FST whose inputType is " + other.inputType + " to an FST whose inputType is " + inputType);
+    }
+    assert nodeAddress == null && streamOut == null;
+    // don't copy the padding byte
+    final int length = other.bytes.length - 1;
+    if (writer.posWrite > Integer.MAX_VALUE - length) {
+      throw new IllegalStateException("FST too large (> 2.1 GB)");
+    }
+    final int start = writer.posWrite;
+    final int offset = start - 1;
+    writer.writeBytes(other.bytes, 1, length);
+    relocate(start, writer.posWrite - 1, offset);
+    nodeCount += other.nodeCount;
+    arcCount += other.arcCount;
+    arcWithOutputCount += other.arcWithOutputCount;
+    if (length > 0) {
+      lastFrozenNode = writer.posWrite - 1;
+    }
+    return offset;
+  }
+
+  // adds offset to the targets of the arcs of the nodes in bytes[start:end]
+  // that are not implied by BIT_TARGET_NEXT
+  private void relocate(int start, int end, int offset) throws IOException {
+    final BytesReader in = getBytesReader(0);
+    final Arc<T> arc = new Arc<T>();
+    int address = end;
+    while (address >= start) {
+      readFirstRealTargetArc(address, arc, in);
+      while (true) {
+        if (!arc.flag(BIT_STOP_NODE) && !arc.flag(BIT_TARGET_NEXT)) {
+          // the target is the int that was read (backwards) just before nextArc
+          final int target = arc.target + offset;
+          bytes[arc.nextArc+4] = (byte) (target >> 24);
+          bytes[arc.nextArc+3] = (byte) (target >> 16);
+          bytes[arc.nextArc+2] = (byte) (target >> 8);
+          bytes[arc.nextArc+1] = (byte) target;
+        }
+        if (arc.isLast()) {
+          break;
+        }
+        readNextRealArc(arc, in);
+      }
+      // the previous node ends just before the first arc of this one
+      if (arc.bytesPerArc != 0) {
+        address = arc.posArcsStart - arc.numArcs * arc.bytesPerArc;
+      } else {
+        address = arc.nextArc;
+      }
+    }
+    assert address == start - 1;
+  }
+
   /** Fills virtual 'start' arc, ie, an empty incoming arc to
    *  the FST's start node */
   public Arc<T> getFirstArc(Arc<T> arc) {
@@ -844,7 +1052,7 @@ public final class FST<T> {
   }
 
   public Arc<T> readFirstRealTargetArc(int node, Arc<T> arc, final BytesReader in) throws IOException {
-    assert in.bytes == bytes;
+    assert in.bytes == null || in.bytes == bytes;
     final int address = getNodeAddress(node);
     in.pos = address;
     //System.out.println("  readFirstRealTargtArc address="
@@ -908,17 +1116,19 @@ public final class FST<T> {
 
     if (arc.label == END_LABEL) {
       //System.out.println("    nextArc fake " + arc.nextArc);
-      in.pos = getNodeAddress(arc.nextArc);
-      final byte b = bytes[in.pos];
+      final int address = getNodeAddress(arc.nextArc);
+      in.pos = address;
+      final byte b = in.readByte();
       if (b == ARCS_AS_FIXED_ARRAY) {
         //System.out.println("    nextArc fake array");
-        in.skip(1);
         in.readVInt();
         if (packed) {
           in.readVInt();
         } else {
           in.readInt();
         }
+      } else {
+        in.pos = address;
       }
     } else {
       if (arc.bytesPerArc != 0) {
@@ -940,7 +1150,7 @@ public final class FST<T> {
   /** Never returns null, but you should never call this if
    *  arc.isLast() is true. */
   public Arc<T> readNextRealArc(Arc<T> arc, final BytesReader in) throws IOException {
-    assert in.bytes == bytes;
+    assert in.bytes == null || in.bytes == bytes;
 
     // TODO: can't assert this because we call from readFirstArc
     // assert !flag(arc.flags, BIT_LAST_ARC);
@@ -1024,7 +1234,7 @@ public final class FST<T> {
    *  This returns null if the arc was not found, else the incoming arc. */
   public Arc<T> findTargetArc(int labelToMatch, Arc<T> follow, Arc<T> arc, BytesReader in) throws IOException {
     assert cachedRootArcs != null;
-    assert in.bytes == bytes;
+    assert in.bytes == null || in.bytes == bytes;
 
     if (labelToMatch == END_LABEL) {
       if (follow.isFinal()) {
@@ -1233,7 +1443,13 @@ public final class FST<T> {
    *  the provided position. */
   public BytesReader getBytesReader(int pos) {
     // TODO: maybe re-use via ThreadLocal?
-    if (packed) {
+    if (offHeapIn != null) {
+      if (packed) {
+        return new ForwardRandomAccessBytesReader(offHeapIn, offHeapStart, pos);
+      } else {
+        return new ReverseRandomAccessBytesReader(offHeapIn, offHeapStart, pos);
+      }
+    } else if (packed) {
       return new ForwardBytesReader(bytes, pos);
     } else {
       return new ReverseBytesReader(bytes, pos);
@@ -1310,6 +1526,70 @@ public final class FST<T> {
     }
   }
 
+  // Reads the bytes of an off-heap FST backwards
+  final static class ReverseRandomAccessBytesReader extends BytesReader {
+    private final RandomAccessInput in;
+    private final long start;
+
+    public ReverseRandomAccessBytesReader(RandomAccessInput in, long start, int pos) {
+      super(null, pos);
+      this.in = in;
+      this.start = start;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      return in.readByte(start + pos--);
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      for(int i=0;i<len;i++) {
+        b[offset+i] = in.readByte(start + pos--);
+      }
+    }
+
+    public void skip(int count) {
+      pos -= count;
+    }
+
+    public void skip(int base, int count) {
+      pos = base - count;
+    }
+  }
+
+  // Reads the bytes of an off-heap, packed FST
+  final static class ForwardRandomAccessBytesReader extends BytesReader {
+    private final RandomAccessInput in;
+    private final long start;
+
+    public ForwardRandomAccessBytesReader(RandomAccessInput in, long start, int pos) {
+      super(null, pos);
+      this.in = in;
+      this.start = start;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      return in.readByte(start + pos++);
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      for(int i=0;i<len;i++) {
+        b[offset+i] = in.readByte(start + pos++);
+      }
+    }
+
+    public void skip(int count) {
+      pos += count;
+    }
+
+    public void skip(int base, int count) {
+      pos = base + count;
+    }
+  }
+
   private static class ArcAndState<T> {
     final Arc<T> arc;
     final IntsRef chain;
@@ -18,20 +18,39 @@ package org.apache.lucene.util.fst;
  */
 
 import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.util.ArrayUtil;
 
 // Used to dedup states (lookup already-frozen states)
 final class NodeHash<T> {
 
-  private int[] table;
-  private int count;
-  private int mask;
   private final FST<T> fst;
   private final FST.Arc<T> scratchArc = new FST.Arc<T>();
+  // once the primary table holds that many nodes, it becomes the fallback
+  // table and the previous fallback table is cleared to become the primary
+  // one: only the nodes that were added or looked up recently are shared
+  private final int maxSize;
+  // if true, the FST doesn't keep the nodes it has written, so the tables
+  // keep copies of the bytes of their nodes
+  private final boolean copyNodes;
+  private final CopyReader copyReader;
+  private Table primary;
+  private Table fallback;
 
   public NodeHash(FST<T> fst) {
-    table = new int[16];
-    mask = 15;
+    this(fst, Integer.MAX_VALUE);
+  }
+
+  public NodeHash(FST<T> fst, int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be >= 1, got " + maxSize);
+    }
     this.fst = fst;
+    this.maxSize = maxSize;
+    copyNodes = fst.isStreaming();
+    copyReader = copyNodes ? new CopyReader() : null;
+    primary = new Table(copyNodes);
   }
 
   private boolean nodesEqual(Builder.UnCompiledNode<T> node, int address, FST.BytesReader in) throws IOException {
@@ -85,9 +104,8 @@ final class NodeHash<T> {
   }
 
   // hash code for a frozen node
-  private int hash(int node) throws IOException {
+  private int hash(int node, FST.BytesReader in) throws IOException {
     final int PRIME = 31;
-    final FST.BytesReader in = fst.getBytesReader(0);
     //System.out.println("hash frozen node=" + node);
     int h = 0;
     fst.readFirstRealTargetArc(node, scratchArc, in);
@@ -109,68 +127,199 @@ final class NodeHash<T> {
     return h & Integer.MAX_VALUE;
   }
 
-  public int add(Builder.UnCompiledNode<T> nodeIn) throws IOException {
-    // System.out.println("hash: add count=" + count + " vs " + table.length);
-    final FST.BytesReader in = fst.getBytesReader(0);
-    final int h = hash(nodeIn);
-    int pos = h & mask;
+  // returns a reader that can read the node at slot pos of t
+  private FST.BytesReader reader(Table t, int pos, FST.BytesReader in) {
+    if (copyNodes) {
+      copyReader.reset(t.copies, t.copyEnds[pos], t.table[pos]);
+      return copyReader;
+    } else {
+      return in;
+    }
+  }
+
+  // returns the slot of t that holds nodeIn, or the empty slot where
+  // it should be added
+  private int find(Table t, Builder.UnCompiledNode<T> nodeIn, int h, FST.BytesReader in) throws IOException {
+    int pos = h & t.mask;
     int c = 0;
     while(true) {
-      final int v = table[pos];
-      if (v == 0) {
-        // freeze & add
-        final int node = fst.addNode(nodeIn);
-        //System.out.println("  now freeze node=" + node);
-        assert hash(node) == h : "frozenHash=" + hash(node) + " vs h=" + h;
-        count++;
-        table[pos] = node;
-        if (table.length < 2*count) {
-          rehash();
-        }
-        return node;
-      } else if (nodesEqual(nodeIn, v, in)) {
-        // same node is already here
-        return v;
+      final int v = t.table[pos];
+      if (v == 0 || nodesEqual(nodeIn, v, reader(t, pos, in))) {
+        return pos;
       }
 
       // quadratic probe
-      pos = (pos + (++c)) & mask;
+      pos = (pos + (++c)) & t.mask;
     }
   }
 
-  // called only by rehash
-  private void addNew(int address) throws IOException {
-    int pos = hash(address) & mask;
-    int c = 0;
-    while(true) {
-      if (table[pos] == 0) {
-        table[pos] = address;
-        break;
+  public int add(Builder.UnCompiledNode<T> nodeIn) throws IOException {
+    // System.out.println("hash: add count=" + count() + " vs " + primary.table.length);
+    final FST.BytesReader in = copyNodes ? null : fst.getBytesReader(0);
+    final int h = hash(nodeIn);
+    final int pos = find(primary, nodeIn, h, in);
+    int node = primary.table[pos];
+    if (node != 0) {
+      // same node is already here
+      return node;
+    }
+
+    if (fallback != null) {
+      final int fallbackPos = find(fallback, nodeIn, h, in);
+      node = fallback.table[fallbackPos];
+      if (node != 0) {
+        // same node was added before the last rotation: share
+        // it again and move it to the primary table
+        primary.table[pos] = node;
+        if (copyNodes) {
+          final int length = fallback.copyLengths[fallbackPos];
+          primary.copy(fallback.copies, fallback.copyEnds[fallbackPos] - length + 1, length, pos);
+        }
       }
+    }
 
-      // quadratic probe
-      pos = (pos + (++c)) & mask;
+    if (node == 0) {
+      // freeze & add
+      node = fst.addNode(nodeIn);
+      //System.out.println("  now freeze node=" + node);
+      primary.table[pos] = node;
+      if (copyNodes) {
+        primary.copy(fst.bytes, 0, fst.lastNodeLength(), pos);
+      }
+      assert hash(node, reader(primary, pos, fst.getBytesReader(0))) == h : "frozenHash=" + hash(node, reader(primary, pos, fst.getBytesReader(0))) + " vs h=" + h;
     }
+
+    primary.count++;
+    if (primary.count >= maxSize) {
+      rotate();
+    } else if (primary.table.length < 2*primary.count) {
+      rehash(primary);
+    }
+    return node;
+  }
+
+  private void rotate() {
+    final Table t = fallback == null ? new Table(copyNodes) : fallback;
+    t.clear();
+    fallback = primary;
+    primary = t;
   }
 
-  private void rehash() throws IOException {
-    final int[] oldTable = table;
+  private void rehash(Table t) throws IOException {
+    final int[] oldTable = t.table;
+    final int[] oldCopyEnds = t.copyEnds;
+    final int[] oldCopyLengths = t.copyLengths;
 
     if (oldTable.length >= Integer.MAX_VALUE/2) {
       throw new IllegalStateException("FST too large (> 2.1 GB)");
     }
 
-    table = new int[2*table.length];
-    mask = table.length-1;
+    final FST.BytesReader in = copyNodes ? null : fst.getBytesReader(0);
+    t.table = new int[2*oldTable.length];
+    t.mask = t.table.length-1;
+    if (copyNodes) {
+      t.copyEnds = new int[t.table.length];
+      t.copyLengths = new int[t.table.length];
+    }
     for(int idx=0;idx<oldTable.length;idx++) {
       final int address = oldTable[idx];
       if (address != 0) {
-        addNew(address);
+        final FST.BytesReader reader;
+        if (copyNodes) {
+          copyReader.reset(t.copies, oldCopyEnds[idx], address);
+          reader = copyReader;
+        } else {
+          reader = in;
+        }
+        int pos = hash(address, reader) & t.mask;
+        int c = 0;
+        while (t.table[pos] != 0) {
+          // quadratic probe
+          pos = (pos + (++c)) & t.mask;
+        }
+        t.table[pos] = address;
+        if (copyNodes) {
+          t.copyEnds[pos] = oldCopyEnds[idx];
+          t.copyLengths[pos] = oldCopyLengths[idx];
+        }
       }
     }
   }
 
   public int count() {
-    return count;
+    return fallback == null ? primary.count : primary.count + fallback.count;
+  }
+
+  // a hash table of frozen nodes, identified by their addresses
+  private static final class Table {
+    int[] table = new int[16];
+    int mask = 15;
+    int count;
+    // only used if nodes are copied: copies[copyEnds[pos]] is the last
+    // byte of the copy of the node at table[pos], which has
+    // copyLengths[pos] bytes
+    int[] copyEnds;
+    int[] copyLengths;
+    byte[] copies;
+    int copyUpto;
+
+    Table(boolean copyNodes) {
+      if (copyNodes) {
+        copyEnds = new int[table.length];
+        copyLengths = new int[table.length];
+        copies = new byte[128];
+      }
+    }
+
+    void copy(byte[] bytes, int offset, int length, int pos) {
+      copies = ArrayUtil.grow(copies, copyUpto + length);
+      System.arraycopy(bytes, offset, copies, copyUpto, length);
+      copyUpto += length;
+      copyEnds[pos] = copyUpto - 1;
+      copyLengths[pos] = length;
+    }
+
+    void clear() {
+      Arrays.fill(table, 0);
+      count = 0;
+      copyUpto = 0;
+    }
+  }
+
+  // Reads the copy of a frozen node, at the addresses the node has in
+  // the FST
+  private static final class CopyReader extends FST.BytesReader {
+    private byte[] copies;
+    // copies[delta + pos] is the byte at address pos
+    private int delta;
+
+    CopyReader() {
+      super(null, 0);
+    }
+
+    void reset(byte[] copies, int copyEnd, int address) {
+      this.copies = copies;
+      delta = copyEnd - address;
+    }
+
+    @Override
+    public byte readByte() {
+      return copies[delta + pos--];
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) {
+      for(int i=0;i<len;i++) {
+        b[offset+i] = copies[delta + pos--];
+      }
+    }
+
+    public void skip(int count) {
+      pos -= count;
+    }
+
+    public void skip(int base, int count) {
+      pos = base - count;
+    }
   }
 }
@@ -23,6 +23,8 @@ import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.store.DataInput;
 import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.MMapDirectory; // javadocs
+import org.apache.lucene.store.RandomAccessInput;
 import org.apache.lucene.util.LongsRef;
 
 /**
@@ -880,6 +882,40 @@ public class PackedInts {
     }
   }
 
+  /**
+   * Construct a {@link Reader} that reads values from an {@link IndexInput}
+   * that is also a {@link RandomAccessInput}, such as the inputs of
+   * {@link MMapDirectory}. Like direct readers, the returned reader doesn't
+   * load values into memory, but it doesn't move the file pointer of
+   * <code>in</code> on {@link Reader#get(int)} and can be shared across
+   * threads.
+   * </p><p>
+   * This method reads the header from <code>in</code> and positions it at
+   * the end of the packed values when it returns.
+   *
+   * @param in           the stream to read data from
+   * @return a random-access Reader
+   * @throws IllegalArgumentException if <code>in</code> is not a {@link RandomAccessInput}
+   * @throws IOException If there is a low-level I/O error
+   * @lucene.internal
+   */
+  public static Reader getRandomAccessReader(IndexInput in) throws IOException {
+    if (!(in instanceof RandomAccessInput)) {
+      throw new IllegalArgumentException("input must implement RandomAccessInput, got " + in);
+    }
+    final int version = CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+    final int bitsPerValue = in.readVInt();
+    assert bitsPerValue > 0 && bitsPerValue <= 64: "bitsPerValue=" + bitsPerValue;
+    final int valueCount = in.readVInt();
+    final Format format = Format.byId(in.readVInt());
+    checkVersion(version);
+    final long startPointer = in.getFilePointer();
+    final long byteCount = format.byteCount(version, valueCount, bitsPerValue);
+    in.seek(startPointer + byteCount);
+    return new RandomAccessPackedReader((RandomAccessInput) in, startPointer, byteCount,
+        format, valueCount, bitsPerValue);
+  }
+
   /**
    * Construct a direct {@link Reader} from an {@link IndexInput}. This method
    * is useful to restore data from streams which have been created using
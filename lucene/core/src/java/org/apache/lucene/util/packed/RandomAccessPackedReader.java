@@ -0,0 +1,94 @@
+package org.apache.lucene.util.packed;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.store.RandomAccessInput;
+
+/* Reads values at absolute positions of a RandomAccessInput on each get,
+ * so unlike DirectPackedReader it can be shared across threads */
+final class RandomAccessPackedReader extends PackedInts.ReaderImpl {
+  private final RandomAccessInput in;
+  private final long startPointer;
+  private final long endPointer;
+  private final PackedInts.Format format;
+  private final long mask;
+  // only used by PACKED_SINGLE_BLOCK
+  private final int valuesPerBlock;
+
+  RandomAccessPackedReader(RandomAccessInput in, long startPointer, long byteCount,
+      PackedInts.Format format, int valueCount, int bitsPerValue) {
+    super(valueCount, bitsPerValue);
+    this.in = in;
+    this.startPointer = startPointer;
+    this.endPointer = startPointer + byteCount;
+    this.format = format;
+    mask = bitsPerValue == 64 ? ~0L : ~(~0L << bitsPerValue);
+    valuesPerBlock = 64 / bitsPerValue;
+  }
+
+  @Override
+  public long get(int index) {
+    try {
+      switch (format) {
+        case PACKED:
+          return getPacked(index);
+        case PACKED_SINGLE_BLOCK:
+          final long block = in.readLong(startPointer + (((long) (index / valuesPerBlock)) << 3));
+          return (block >>> ((index % valuesPerBlock) * bitsPerValue)) & mask;
+        default:
+          throw new AssertionError("Unknown format: " + format);
+      }
+    } catch (IOException ioe) {
+      throw new IllegalStateException("failed", ioe);
+    }
+  }
+
+  private long getPacked(int index) throws IOException {
+    final long majorBitPos = (long) index * bitsPerValue;
+    final long elementPos = startPointer + (majorBitPos >>> 3);
+    final int bitPos = (int) (majorBitPos & 7);
+    if (bitPos + bitsPerValue <= 64 && elementPos + 8 <= endPointer) {
+      // fast path: the value fits in the next 8 bytes
+      return (in.readLong(elementPos) >>> (64 - bitPos - bitsPerValue)) & mask;
+    }
+
+    // slow path, byte per byte, like DirectPackedReader
+    final byte b0 = in.readByte(elementPos);
+    if (bitPos + bitsPerValue <= 8) {
+      return (b0 & ((1L << (8 - bitPos)) - 1)) >>> (8 - bitPos - bitsPerValue);
+    }
+    int remainingBits = bitsPerValue - 8 + bitPos;
+    long result = (b0 & ((1L << (8 - bitPos)) - 1)) << remainingBits;
+    long pos = elementPos + 1;
+    while (remainingBits >= 8) {
+      remainingBits -= 8;
+      result |= (in.readByte(pos++) & 0xFFL) << remainingBits;
+    }
+    if (remainingBits > 0) {
+      result |= (in.readByte(pos) & 0xFFL) >>> (8 - remainingBits);
+    }
+    return result;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return 0;
+  }
+}
@@ -35,9 +35,12 @@ import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.FloatField;
 import org.apache.lucene.document.IntField;
 import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogDocMergePolicy;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.index.StorableField;
 import org.apache.lucene.index.StoredDocument;
@@ -52,6 +55,7 @@ import org.apache.lucene.store.MockDirectoryWrapper;
 import org.apache.lucene.store.MockDirectoryWrapper.Throttling;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.InfoStream;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util._TestUtil;
 
@@ -296,6 +300,56 @@ public class TestCompressingStoredFieldsFormat extends LuceneTestCase {
     }
   }
 
+  public void testMergeCopiesCompressedChunks() throws IOException {
+    iw.close();
+    final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+    iwConf.setCodec(CompressingCodec.randomInstance(random(), 1 << 10));
+    iwConf.setMaxBufferedDocs(RandomInts.randomIntBetween(random(), 100, 300));
+    iwConf.setMergePolicy(new LogDocMergePolicy());
+    iwConf.setInfoStream(new InfoStream() {
+      @Override
+      public void message(String component, String message) {
+        if (message.startsWith("stored fields:")) {
+          messages.add(message);
+        }
+      }
+      @Override
+      public boolean isEnabled(String component) {
+        return "SM".equals(component);
+      }
+      @Override
+      public void close() {}
+    });
+    final IndexWriter w = new IndexWriter(dir, iwConf);
+    final int numDocs = atLeast(1000);
+    for (int i = 0; i < numDocs; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Store.YES));
+      doc.add(new StoredField("bytes", randomByteArray(RandomInts.randomIntBetween(random(), 10, 200), 256)));
+      w.addDocument(doc);
+    }
+    w.deleteDocuments(new Term("id", Integer.toString(random().nextInt(numDocs))));
+    w.forceMerge(1);
+    w.close();
+    iw = new RandomIndexWriter(random(), dir, iwConf);
+
+    // chunks that are full of live documents are copied as-is
+    assertFalse(messages.isEmpty());
+    assertTrue(messages.toString(), messages.get(messages.size() - 1).matches("stored fields: copied [1-9].*"));
+
+    final DirectoryReader ir = DirectoryReader.open(dir);
+    assertEquals(1, ir.leaves().size());
+    assertEquals(numDocs - 1, ir.numDocs());
+    final IndexSearcher searcher = new IndexSearcher(ir);
+    for (int i = 0; i < ir.maxDoc(); ++i) {
+      final StoredDocument doc = ir.document(i);
+      final TopDocs topDocs = searcher.search(new TermQuery(new Term("id", doc.get("id"))), 1);
+      assertEquals(1, topDocs.totalHits);
+      assertEquals(i, topDocs.scoreDocs[0].doc);
+    }
+    ir.close();
+  }
+
   @Nightly
   public void testBigDocuments() throws IOException {
     // "big" as "much bigger than the chunk size"
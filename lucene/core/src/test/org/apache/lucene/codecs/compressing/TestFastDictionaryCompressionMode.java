@@ -0,0 +1,67 @@
+package org.apache.lucene.codecs.compressing;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.carrotsearch.randomizedtesting.generators.RandomInts;
+
+public class TestFastDictionaryCompressionMode extends AbstractTestLZ4CompressionMode {
+
+  public void setUp() throws Exception {
+    super.setUp();
+    mode = CompressionMode.FAST_DICTIONARY;
+  }
+
+  public void testDictionary() throws IOException {
+    final int iterations = atLeast(10);
+    for (int i = 0; i < iterations; ++i) {
+      final byte[] decompressed = randomArray();
+      final byte[] dictionary;
+      if (decompressed.length > 0 && random().nextBoolean()) {
+        // a dictionary that shares content with the data
+        final int offset = random().nextInt(decompressed.length);
+        final int length = Math.min(mode.maxDictionaryLength(), RandomInts.randomIntBetween(random(), 0, decompressed.length - offset));
+        dictionary = Arrays.copyOfRange(decompressed, offset, offset + length);
+      } else {
+        dictionary = randomArray(random().nextInt(mode.maxDictionaryLength() + 1), random().nextInt(256));
+      }
+      final Compressor compressor = mode.newCompressor();
+      compressor.setDictionary(dictionary);
+      final byte[] compressed = compress(compressor, decompressed);
+      final Decompressor decompressor = mode.newDecompressor();
+      decompressor.setDictionary(dictionary);
+      assertArrayEquals(decompressed, decompress(decompressor, compressed, decompressed.length));
+      assertArrayEquals(decompressed, decompress(decompressor.clone(), compressed, decompressed.length));
+      assertArrayEquals(compressed, copyCompressedData(decompressor, compressed, decompressed.length));
+    }
+  }
+
+  public void testDictionaryImprovesCompression() throws IOException {
+    final byte[] decompressed = randomArray(RandomInts.randomIntBetween(random(), 100, mode.maxDictionaryLength()), 255);
+    final Compressor compressor = mode.newCompressor();
+    compressor.setDictionary(decompressed);
+    final byte[] compressed = compress(compressor, decompressed);
+    assertTrue(compressed.length < compress(decompressed).length);
+    final Decompressor decompressor = mode.newDecompressor();
+    decompressor.setDictionary(decompressed);
+    assertArrayEquals(decompressed, decompress(decompressor, compressed, decompressed.length));
+  }
+
+}
@@ -37,6 +37,7 @@ import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.IndexableFieldType;
 import org.apache.lucene.index.StorableField;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Counter;
 import org.apache.lucene.util.LuceneTestCase;
@@ -422,9 +423,76 @@ public class TestDocValues extends LuceneTestCase {
   }
   
 
+  public void testOffHeapSources() throws IOException {
+    assumeTrue("test requires a jre that supports unmapping", MMapDirectory.UNMAP_SUPPORTED);
+    // use a tiny chunk size so that values span several buffers
+    MMapDirectory dir = new MMapDirectory(_TestUtil.getTempDir("testOffHeapSources"), null, 1 << _TestUtil.nextInt(random(), 4, 10));
+    DocValueHolder valueHolder = new DocValueHolder();
+    valueHolder.comp = COMP;
+    final int numDocs = atLeast(500);
+    final Type[] intTypes = new Type[] {Type.VAR_INTS, Type.FIXED_INTS_8, Type.FIXED_INTS_16, Type.FIXED_INTS_32, Type.FIXED_INTS_64};
+    final Type intType = intTypes[random().nextInt(intTypes.length)];
+    final Type floatType = random().nextBoolean() ? Type.FLOAT_32 : Type.FLOAT_64;
+    final boolean fixedSize = random().nextBoolean();
+    final int fixedLength = 1 + random().nextInt(10);
+
+    DocValuesConsumer ints = Ints.getWriter(dir, "ints", Counter.newCounter(), intType, newIOContext(random()));
+    DocValuesConsumer floats = Floats.getWriter(dir, "floats", Counter.newCounter(), newIOContext(random()), floatType);
+    DocValuesConsumer sorted = Bytes.getWriter(dir, "sorted", Bytes.Mode.SORTED, fixedSize, COMP, Counter.newCounter(),
+        newIOContext(random()), random().nextFloat() * PackedInts.FAST);
+    for (int i = 0; i < numDocs; i++) {
+      valueHolder.numberValue = (long) random().nextInt(100);
+      ints.add(i, valueHolder);
+      valueHolder.numberValue = random().nextDouble();
+      floats.add(i, valueHolder);
+      valueHolder.bytes = new BytesRef(_TestUtil.randomFixedByteLengthUnicodeString(random(), fixedSize ? fixedLength : 1 + random().nextInt(20)));
+      sorted.add(i, valueHolder);
+    }
+    ints.finish(numDocs);
+    floats.finish(numDocs);
+    sorted.finish(numDocs);
+
+    DocValues intValues = Ints.getValues(dir, "ints", numDocs, intType, newIOContext(random()));
+    DocValues floatValues = Floats.getValues(dir, "floats", numDocs, newIOContext(random()), floatType);
+    DocValues sortedValues = Bytes.getValues(dir, "sorted", Bytes.Mode.SORTED, fixedSize, numDocs, COMP, newIOContext(random()));
+    Source expectedInts = intValues.getSource();
+    Source expectedFloats = floatValues.getSource();
+    SortedSource expectedSorted = sortedValues.getSource().asSortedSource();
+    intValues.setCache(new DocValues.SourceCache.OffHeapSourceCache());
+    floatValues.setCache(new DocValues.SourceCache.OffHeapSourceCache());
+    sortedValues.setCache(new DocValues.SourceCache.OffHeapSourceCache());
+    Source actualInts = intValues.getSource();
+    Source actualFloats = floatValues.getSource();
+    SortedSource actualSorted = sortedValues.getSource().asSortedSource();
+    assertFalse(actualInts.hasArray());
+    assertNotSame(expectedInts, actualInts);
+    assertEquals(expectedSorted.getValueCount(), actualSorted.getValueCount());
+    final BytesRef expected = new BytesRef();
+    final BytesRef actual = new BytesRef();
+    for (int i = 0; i < numDocs; i++) {
+      assertEquals(expectedInts.getInt(i), actualInts.getInt(i));
+      assertEquals(expectedFloats.getFloat(i), actualFloats.getFloat(i), 0d);
+      assertEquals(expectedSorted.ord(i), actualSorted.ord(i));
+      assertEquals(expectedSorted.getBytes(i, expected), actualSorted.getBytes(i, actual));
+      assertEquals(expectedSorted.getDocToOrd().get(i), actualSorted.getDocToOrd().get(i));
+    }
+    for (int ord = 0; ord < expectedSorted.getValueCount(); ord++) {
+      assertEquals(expectedSorted.getByOrd(ord, expected), actualSorted.getByOrd(ord, actual));
+    }
+
+    intValues.close();
+    floatValues.close();
+    sortedValues.close();
+    dir.close();
+  }
+
   private Source getSource(DocValues values) throws IOException {
     // getSource uses cache internally
     switch(random().nextInt(5)) {
+    case 3:
+      // falls back to a regular source if the directory doesn't memory-map files
+      values.setCache(new DocValues.SourceCache.OffHeapSourceCache());
+      return values.getSource();
     case 2:
       return values.getDirectSource();
     case 1:
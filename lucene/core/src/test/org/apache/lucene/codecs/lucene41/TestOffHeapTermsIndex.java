@@ -0,0 +1,107 @@
+package org.apache.lucene.codecs.lucene41;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.codecs.BlockTreeTermsReader;
+import org.apache.lucene.codecs.BlockTreeTermsWriter;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+/**
+ * Tests terms indexes that are read from disk.
+ */
+public class TestOffHeapTermsIndex extends LuceneTestCase {
+
+  public void testSameTermsAsOnHeap() throws Exception {
+    // the terms index can only be off-heap with MMapDirectory, other
+    // directories (including MockDirectoryWrapper) load it in memory
+    final Directory dir = new MMapDirectory(_TestUtil.getTempDir("offheapterms"));
+    final PostingsFormat offHeap = new Lucene41PostingsFormat(
+        BlockTreeTermsWriter.DEFAULT_MIN_BLOCK_SIZE, BlockTreeTermsWriter.DEFAULT_MAX_BLOCK_SIZE, true);
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setCodec(new Lucene41Codec() {
+      @Override
+      public PostingsFormat getPostingsFormatForField(String field) {
+        return field.equals("off") ? offHeap : super.getPostingsFormatForField(field);
+      }
+    });
+    IndexWriter w = new IndexWriter(dir, iwc);
+    final Set<String> terms = new HashSet<String>();
+    final int numDocs = atLeast(2000);
+    for (int i = 0; i < numDocs; i++) {
+      final String term = _TestUtil.randomSimpleString(random(), 20);
+      terms.add(term);
+      Document doc = new Document();
+      doc.add(newStringField("on", term, Field.Store.NO));
+      doc.add(newStringField("off", term, Field.Store.NO));
+      w.addDocument(doc);
+    }
+    w.forceMerge(1);
+    w.close();
+
+    final DirectoryReader r = DirectoryReader.open(dir);
+    final AtomicReader reader = r.leaves().get(0).reader();
+    final BlockTreeTermsReader.Stats onStats = ((BlockTreeTermsReader.FieldReader) reader.terms("on")).computeStats();
+    final BlockTreeTermsReader.Stats offStats = ((BlockTreeTermsReader.FieldReader) reader.terms("off")).computeStats();
+    assertFalse(onStats.indexOffHeap);
+    assertTrue(offStats.indexOffHeap);
+    // same terms, so the same FST bytes, read from the file instead of the heap
+    assertEquals(onStats.indexNumBytes, offStats.indexNumBytes);
+    final TermsEnum on = reader.terms("on").iterator(null);
+    final TermsEnum off = reader.terms("off").iterator(null);
+    BytesRef term;
+    while ((term = on.next()) != null) {
+      assertEquals(term, off.next());
+      assertEquals(on.docFreq(), off.docFreq());
+    }
+    assertNull(off.next());
+
+    final List<String> termList = new ArrayList<String>(terms);
+    for (int i = 0; i < 1000; i++) {
+      final String target = random().nextBoolean()
+          ? termList.get(random().nextInt(termList.size()))
+          : _TestUtil.randomSimpleString(random(), 20);
+      final BytesRef ref = new BytesRef(target);
+      assertEquals(terms.contains(target), off.seekExact(ref, random().nextBoolean()));
+      final TermsEnum.SeekStatus status = on.seekCeil(ref);
+      assertEquals(status, off.seekCeil(ref));
+      if (status != TermsEnum.SeekStatus.END) {
+        assertEquals(on.term(), off.term());
+      }
+    }
+    r.close();
+    dir.close();
+  }
+}
@@ -0,0 +1,146 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+/**
+ * Tests that {@link DocsEnum#read(int[], int[])} returns the same
+ * documents and frequencies as {@link DocsEnum#nextDoc()}, also
+ * when mixed with calls to nextDoc and advance.
+ */
+public class TestDocsEnumBulkRead extends LuceneTestCase {
+
+  public void testBulkRead() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir,
+        newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+    final int numDocs = atLeast(1000);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      StringBuilder sb = new StringBuilder();
+      // "a" is in most docs, so that postings span many blocks
+      if (random().nextInt(10) != 0) {
+        final int freq = 1 + random().nextInt(5);
+        for (int j = 0; j < freq; j++) {
+          sb.append("a ");
+        }
+      }
+      if (random().nextInt(10) == 0) {
+        sb.append("b");
+      }
+      doc.add(newTextField("body", sb.toString(), Field.Store.NO));
+      doc.add(newStringField("id", "" + i, Field.Store.NO));
+      w.addDocument(doc);
+    }
+    if (random().nextBoolean()) {
+      final int numDeletes = random().nextInt(numDocs / 10);
+      for (int i = 0; i < numDeletes; i++) {
+        w.deleteDocuments(new Term("id", "" + random().nextInt(numDocs)));
+      }
+    }
+    IndexReader r = w.getReader();
+    w.close();
+
+    for (AtomicReaderContext ctx : r.leaves()) {
+      final AtomicReader reader = ctx.reader();
+      final Bits liveDocs = reader.getLiveDocs();
+      for (String term : new String[] {"a", "b"}) {
+        final List<Integer> expectedDocs = new ArrayList<Integer>();
+        final List<Integer> expectedFreqs = new ArrayList<Integer>();
+        DocsEnum docsEnum = _TestUtil.docs(random(), reader, "body", new BytesRef(term), liveDocs, null, DocsEnum.FLAG_FREQS);
+        if (docsEnum == null) {
+          continue;
+        }
+        int doc;
+        while ((doc = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+          expectedDocs.add(doc);
+          expectedFreqs.add(docsEnum.freq());
+        }
+
+        // bulk reads only
+        docsEnum = _TestUtil.docs(random(), reader, "body", new BytesRef(term), liveDocs, null, DocsEnum.FLAG_FREQS);
+        final int[] docs = new int[_TestUtil.nextInt(random(), 1, 300)];
+        final int[] freqs = new int[docs.length];
+        int upto = 0;
+        int count;
+        while ((count = docsEnum.read(docs, freqs)) != 0) {
+          for (int i = 0; i < count; i++) {
+            assertEquals(expectedDocs.get(upto).intValue(), docs[i]);
+            assertEquals(expectedFreqs.get(upto).intValue(), freqs[i]);
+            upto++;
+          }
+        }
+        assertEquals(expectedDocs.size(), upto);
+        assertEquals(0, docsEnum.read(docs, freqs));
+
+        // bulk reads mixed with nextDoc and advance
+        docsEnum = _TestUtil.docs(random(), reader, "body", new BytesRef(term), liveDocs, null, DocsEnum.FLAG_FREQS);
+        upto = 0;
+        while (true) {
+          final int op = random().nextInt(3);
+          if (op == 0) {
+            count = docsEnum.read(docs, random().nextBoolean() ? freqs : null);
+            if (count == 0) {
+              break;
+            }
+            for (int i = 0; i < count; i++) {
+              assertEquals(expectedDocs.get(upto++).intValue(), docs[i]);
+            }
+            if (docsEnum.docID() == DocIdSetIterator.NO_MORE_DOCS) {
+              break;
+            }
+          } else if (op == 1) {
+            doc = docsEnum.nextDoc();
+            if (doc == DocIdSetIterator.NO_MORE_DOCS) {
+              break;
+            }
+            assertEquals(expectedFreqs.get(upto).intValue(), docsEnum.freq());
+            assertEquals(expectedDocs.get(upto++).intValue(), doc);
+          } else {
+            final int current = upto == 0 ? -1 : expectedDocs.get(upto - 1);
+            final int target = current + 1 + random().nextInt(200);
+            while (upto < expectedDocs.size() && expectedDocs.get(upto) < target) {
+              upto++;
+            }
+            doc = docsEnum.advance(target);
+            if (doc == DocIdSetIterator.NO_MORE_DOCS) {
+              break;
+            }
+            assertEquals(expectedFreqs.get(upto).intValue(), docsEnum.freq());
+            assertEquals(expectedDocs.get(upto++).intValue(), doc);
+          }
+        }
+        assertEquals(expectedDocs.size(), upto);
+      }
+    }
+    r.close();
+    dir.close();
+  }
+}
@@ -0,0 +1,227 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.apache.lucene.util._TestUtil;
+
+/** Tests merging of small flushed segments before they are published. */
+public class TestFlushMerge extends LuceneTestCase {
+
+  // buffered deletes stop flushed segments from being merged together, but
+  // must still be applied to the segments that are
+  public void testConcurrentFlushesWithDeletes() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMaxBufferedDocs(2 + random().nextInt(10));
+    iwc.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc.setFlushMergeMaxDocs(50 + random().nextInt(100));
+    iwc.setMergePolicy(NoMergePolicy.NO_COMPOUND_FILES);
+    final IndexWriter w = new IndexWriter(dir, iwc);
+
+    final int numThreads = 2 + random().nextInt(4);
+    final int numDocsPerThread = atLeast(200);
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final int threadID = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < numDocsPerThread; i++) {
+              Document doc = new Document();
+              doc.add(new StringField("id", threadID + "_" + i, Field.Store.YES));
+              doc.add(new TextField("body", i % 3 == 0 ? "delete" : "keep", Field.Store.NO));
+              w.addDocument(doc);
+              if (i % 10 == 9) {
+                // buffered term deletes are applied at flush time
+                w.deleteDocuments(new Term("id", threadID + "_" + (i - 1)));
+              }
+            }
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+
+    // NRT reopens trigger full flushes, which flush all pending
+    // DocumentsWriterPerThreads at once
+    DirectoryReader reader = DirectoryReader.open(w, true);
+    boolean running = true;
+    while (running) {
+      running = false;
+      for (Thread t : threads) {
+        running |= t.isAlive();
+      }
+      DirectoryReader newReader = DirectoryReader.openIfChanged(reader, w, true);
+      if (newReader != null) {
+        reader.close();
+        reader = newReader;
+      }
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    w.deleteDocuments(new Term("body", "delete"));
+    w.commit();
+    reader.close();
+
+    int expected = 0;
+    for (int i = 0; i < numDocsPerThread; i++) {
+      if (i % 3 != 0 && i % 10 != 8) {
+        expected++;
+      }
+    }
+    expected *= numThreads;
+
+    reader = DirectoryReader.open(dir);
+    assertEquals(expected, reader.numDocs());
+    IndexSearcher searcher = newSearcher(reader);
+    assertEquals(0, searcher.search(new TermQuery(new Term("body", "delete")), 1).totalHits);
+    assertEquals(expected, searcher.search(new TermQuery(new Term("body", "keep")), 1).totalHits);
+    reader.close();
+    w.close();
+
+    // the index must not reference files of merged away segments
+    _TestUtil.checkIndex(dir);
+    dir.close();
+  }
+
+  public void testConcurrentFlushesAreMerged() throws Exception {
+    Directory dir = newDirectory();
+    final AtomicInteger flushedSegments = new AtomicInteger();
+    final AtomicInteger mergedAwaySegments = new AtomicInteger();
+    final AtomicBoolean publishing = new AtomicBoolean();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMaxBufferedDocs(5 + random().nextInt(10));
+    iwc.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc.setFlushMergeMaxDocs(100000);
+    iwc.setMergePolicy(NoMergePolicy.NO_COMPOUND_FILES);
+    iwc.setInfoStream(new InfoStream() {
+      @Override
+      public void message(String component, String message) {
+        if ("DWPT".equals(component) && message.startsWith("flushed: segment=")) {
+          flushedSegments.incrementAndGet();
+        } else if ("IW".equals(component) && message.startsWith("merged ")) {
+          // "merged N flushed segments into ..."
+          final int numMerged = Integer.parseInt(message.substring("merged ".length(), message.indexOf(' ', "merged ".length())));
+          mergedAwaySegments.addAndGet(numMerged - 1);
+        } else if ("DW".equals(component) && message.startsWith("publishFlushedSegment")
+            && publishing.compareAndSet(false, true)) {
+          // hold the first publish, while the flush queue is locked, until
+          // other threads flushed segments behind it
+          final long end = System.currentTimeMillis() + 10000;
+          try {
+            while (flushedSegments.get() < 3 && System.currentTimeMillis() < end) {
+              Thread.sleep(1);
+            }
+            Thread.sleep(20);
+          } catch (InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+          }
+        }
+      }
+
+      @Override
+      public boolean isEnabled(String component) {
+        return "DWPT".equals(component) || "IW".equals(component) || "DW".equals(component);
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+    final IndexWriter w = new IndexWriter(dir, iwc);
+
+    final int numThreads = 4 + random().nextInt(3);
+    final int numDocsPerThread = atLeast(100);
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final int threadID = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < numDocsPerThread; i++) {
+              Document doc = new Document();
+              doc.add(new StringField("id", threadID + "_" + i, Field.Store.YES));
+              doc.add(new TextField("body", "text", Field.Store.NO));
+              w.addDocument(doc);
+            }
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    w.commit();
+
+    assertTrue("no flushed segments were merged", mergedAwaySegments.get() > 0);
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(numThreads * numDocsPerThread, reader.numDocs());
+    assertEquals(flushedSegments.get() - mergedAwaySegments.get(), reader.leaves().size());
+    IndexSearcher searcher = newSearcher(reader);
+    assertEquals(numThreads * numDocsPerThread, searcher.search(new TermQuery(new Term("body", "text")), 1).totalHits);
+    reader.close();
+    w.close();
+
+    _TestUtil.checkIndex(dir);
+    dir.close();
+  }
+
+  public void testDisabledByDefault() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    assertEquals(0, iwc.getFlushMergeMaxDocs());
+    iwc.setMaxBufferedDocs(2);
+    iwc.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc.setMergePolicy(NoMergePolicy.NO_COMPOUND_FILES);
+    IndexWriter w = new IndexWriter(dir, iwc);
+    for (int i = 0; i < 10; i++) {
+      Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+      doc.add(new TextField("body", "text", Field.Store.NO));
+      w.addDocument(doc);
+    }
+    w.commit();
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(5, reader.leaves().size());
+    reader.close();
+    w.close();
+    dir.close();
+  }
+}
@@ -76,6 +76,9 @@ public class TestIndexWriterConfig extends LuceneTestCase {
     assertEquals(ThreadAffinityDocumentsWriterThreadPool.class, conf.getIndexerThreadPool().getClass());
     assertEquals(FlushByRamOrCountsPolicy.class, conf.getFlushPolicy().getClass());
     assertEquals(IndexWriterConfig.DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB, conf.getRAMPerThreadHardLimitMB());
+    assertEquals(IndexWriterConfig.DEFAULT_FLUSH_MERGE_MAX_DOCS, conf.getFlushMergeMaxDocs());
+    assertNull(conf.getApplyDeletesExecutor());
+    assertNull(conf.getMergePartsExecutor());
     assertEquals(Codec.getDefault(), conf.getCodec());
     assertEquals(InfoStream.getDefault(), conf.getInfoStream());
     // Sanity check - validate that all getters are covered.
@@ -102,6 +105,9 @@ public class TestIndexWriterConfig extends LuceneTestCase {
     getters.add("getReaderTermsIndexDivisor");
     getters.add("getFlushPolicy");
     getters.add("getRAMPerThreadHardLimitMB");
+    getters.add("getFlushMergeMaxDocs");
+    getters.add("getApplyDeletesExecutor");
+    getters.add("getMergePartsExecutor");
     getters.add("getCodec");
     getters.add("getInfoStream");
     
@@ -306,6 +312,13 @@ public class TestIndexWriterConfig extends LuceneTestCase {
       // this is expected
     }
     
+    try {
+      conf.setFlushMergeMaxDocs(-1);
+      fail("should not have succeeded to set flushMergeMaxDocs to < 0");
+    } catch (IllegalArgumentException e) {
+      // this is expected
+    }
+    
     try {
       conf.setRAMPerThreadHardLimitMB(2048);
       fail("should not have succeeded to set RAMPerThreadHardLimitMB to >= 2048");
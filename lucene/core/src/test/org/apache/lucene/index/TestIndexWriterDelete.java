@@ -22,9 +22,15 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -37,10 +43,14 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.MockDirectoryWrapper;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util._TestUtil;
 
 public class TestIndexWriterDelete extends LuceneTestCase {
@@ -1145,4 +1155,259 @@ public class TestIndexWriterDelete extends LuceneTestCase {
     r.close();
     d.close();
   }
+
+  // deletes are resolved across segments in parallel, and applied in order
+  public void testApplyDeletesExecutor() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(_TestUtil.nextInt(random(), 1, 4),
+        new NamedThreadFactory("testApplyDeletesExecutor"));
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setApplyDeletesExecutor(executor);
+    iwc.setMaxBufferedDocs(_TestUtil.nextInt(random(), 10, 50));
+    IndexWriter w = new IndexWriter(dir, iwc);
+    DirectoryReader r = DirectoryReader.open(w, true);
+    Map<String,String> expected = new HashMap<String,String>();
+    final int numIds = atLeast(100);
+    final int iters = atLeast(2000);
+    for (int i = 0; i < iters; i++) {
+      String id = Integer.toString(random().nextInt(numIds));
+      String value = Integer.toString(random().nextInt(5));
+      Document doc = new Document();
+      doc.add(newStringField("id", id, Field.Store.YES));
+      doc.add(newStringField("value", value, Field.Store.YES));
+      w.updateDocument(new Term("id", id), doc);
+      expected.put(id, value);
+      if (random().nextInt(500) == 17) {
+        w.deleteDocuments(new TermQuery(new Term("value", "0")));
+        expected.values().removeAll(Collections.singleton("0"));
+      }
+      if (random().nextInt(100) == 17) {
+        DirectoryReader r2 = DirectoryReader.openIfChanged(r, w, true);
+        if (r2 != null) {
+          r.close();
+          r = r2;
+        }
+        assertEquals(expected.size(), r.numDocs());
+      }
+    }
+    r.close();
+    w.close();
+
+    r = DirectoryReader.open(dir);
+    assertEquals(expected.size(), r.numDocs());
+    IndexSearcher s = newSearcher(r);
+    for (Map.Entry<String,String> ent : expected.entrySet()) {
+      ScoreDoc[] hits = s.search(new TermQuery(new Term("id", ent.getKey())), 2).scoreDocs;
+      assertEquals(1, hits.length);
+      assertEquals(ent.getValue(), r.document(hits[0].doc).get("value"));
+    }
+    r.close();
+    dir.close();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+  }
+
+  // few delete terms are looked up one by one, many are
+  // intersected with the terms dictionary
+  public void testSparseAndDenseDeleteTerms() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+    final int numDocs = atLeast(BufferedDeletesStream.SORTED_WALK_TERMS_PER_DELETE * 20);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newStringField("id", Integer.toString(2*i), Field.Store.NO));
+      w.addDocument(doc);
+    }
+    w.commit();
+
+    // sparse: a few present and absent ids, and one past the last term
+    int expectedDeletes = 0;
+    for (int i = 0; i < 5; i++) {
+      w.deleteDocuments(new Term("id", Integer.toString(2*random().nextInt(numDocs) + 1)));
+    }
+    w.deleteDocuments(new Term("id", Integer.toString(2*(numDocs-1))));
+    w.deleteDocuments(new Term("id", "a"));
+    expectedDeletes++;
+    DirectoryReader r = DirectoryReader.open(w, true);
+    assertEquals(numDocs - expectedDeletes, r.numDocs());
+    r.close();
+
+    // dense: every other id of the first half, mixed with absent ids
+    for (int i = 0; i < numDocs/2; i++) {
+      w.deleteDocuments(new Term("id", Integer.toString(i)));
+      if (i % 2 == 0 && i/2 != numDocs-1) {
+        expectedDeletes++;
+      }
+    }
+    r = DirectoryReader.open(w, true);
+    assertEquals(numDocs - expectedDeletes, r.numDocs());
+    r.close();
+    w.close();
+    dir.close();
+  }
+
+  // a failure while resolving deletes must release the pooled
+  // readers exactly once, with and without an executor
+  public void testFailureWhileResolvingDeletes() throws Exception {
+    for (int iter = 0; iter < 2; iter++) {
+      final ExecutorService executor = iter == 0 ? null
+          : Executors.newFixedThreadPool(_TestUtil.nextInt(random(), 1, 4),
+              new NamedThreadFactory("testFailureWhileResolvingDeletes"));
+      FailOnResolveDirectory dir = new FailOnResolveDirectory(newMockDirectory());
+      IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+      iwc.setApplyDeletesExecutor(executor);
+      iwc.setMaxBufferedDocs(10);
+      iwc.setMergePolicy(NoMergePolicy.NO_COMPOUND_FILES);
+      IndexWriter w = new IndexWriter(dir, iwc);
+      final int numDocs = atLeast(100);
+      for (int i = 0; i < numDocs; i++) {
+        Document doc = new Document();
+        doc.add(newStringField("id", Integer.toString(i), Field.Store.NO));
+        w.addDocument(doc);
+      }
+      w.commit();
+
+      for (int i = 0; i < numDocs; i += 2) {
+        w.deleteDocuments(new Term("id", Integer.toString(i)));
+      }
+      // fail after a few reads, so that some segments may
+      // already have their deletes applied
+      dir.failAfter.set(random().nextInt(20));
+      try {
+        w.commit();
+        fail("resolving the deletes should have failed");
+      } catch (IOException expected) {
+        // expected
+      }
+
+      dir.failAfter.set(-1);
+      w.commit();
+      DirectoryReader r = DirectoryReader.open(dir);
+      assertEquals(numDocs / 2, r.numDocs());
+      r.close();
+      w.close();
+      // fails if a reader leaked
+      dir.close();
+      if (executor != null) {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+      }
+    }
+  }
+
+  /** Fails reads made while resolving buffered deletes. */
+  private static class FailOnResolveDirectory extends Directory {
+    final Directory realDirectory;
+    // number of reads before failing, or -1 to never fail
+    final AtomicInteger failAfter = new AtomicInteger(-1);
+
+    FailOnResolveDirectory(Directory realDirectory) throws IOException {
+      this.realDirectory = realDirectory;
+      setLockFactory(realDirectory.getLockFactory());
+    }
+
+    void maybeFail() throws IOException {
+      if (failAfter.get() < 0) {
+        return;
+      }
+      for (StackTraceElement e : Thread.currentThread().getStackTrace()) {
+        if (e.getClassName().startsWith(BufferedDeletesStream.class.getName()) && e.getMethodName().equals("resolve")) {
+          if (failAfter.getAndDecrement() == 0) {
+            throw new IOException("fake IOException while resolving deletes");
+          }
+          return;
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      realDirectory.close();
+    }
+
+    @Override
+    public IndexOutput createOutput(String name, IOContext context) throws IOException {
+      return realDirectory.createOutput(name, context);
+    }
+
+    @Override
+    public void deleteFile(String name) throws IOException {
+      realDirectory.deleteFile(name);
+    }
+
+    @Override
+    public boolean fileExists(String name) throws IOException {
+      return realDirectory.fileExists(name);
+    }
+
+    @Override
+    public long fileLength(String name) throws IOException {
+      return realDirectory.fileLength(name);
+    }
+
+    @Override
+    public String[] listAll() throws IOException {
+      return realDirectory.listAll();
+    }
+
+    @Override
+    public IndexInput openInput(String name, IOContext context) throws IOException {
+      return new FailOnResolveInput(this, realDirectory.openInput(name, context));
+    }
+
+    @Override
+    public void sync(Collection<String> names) throws IOException {
+      realDirectory.sync(names);
+    }
+  }
+
+  private static class FailOnResolveInput extends IndexInput {
+    final FailOnResolveDirectory dir;
+    IndexInput in;
+
+    FailOnResolveInput(FailOnResolveDirectory dir, IndexInput in) {
+      super("FailOnResolveInput(" + in + ")");
+      this.dir = dir;
+      this.in = in;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      dir.maybeFail();
+      return in.readByte();
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      dir.maybeFail();
+      in.readBytes(b, offset, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+    @Override
+    public long getFilePointer() {
+      return in.getFilePointer();
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+      in.seek(pos);
+    }
+
+    @Override
+    public long length() {
+      return in.length();
+    }
+
+    @Override
+    public FailOnResolveInput clone() {
+      FailOnResolveInput clone = (FailOnResolveInput) super.clone();
+      clone.in = in.clone();
+      return clone;
+    }
+  }
 }
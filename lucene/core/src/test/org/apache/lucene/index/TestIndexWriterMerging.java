@@ -21,13 +21,22 @@ import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.LongDocValuesField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
+import org.apache.lucene.util._TestUtil;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 public class TestIndexWriterMerging extends LuceneTestCase
@@ -448,4 +457,64 @@ public class TestIndexWriterMerging extends LuceneTestCase
 
     directory.close();
   }
+
+  public void testMergePartsExecutor() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(_TestUtil.nextInt(random(), 1, 4),
+        new NamedThreadFactory("testMergePartsExecutor"));
+    checkMergeParts(executor);
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+  }
+
+  // parts that the executor rejects are merged by the merging thread
+  public void testMergePartsExecutorRejects() throws Exception {
+    // a single thread and no queue: parts are rejected while another one runs
+    ExecutorService executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new SynchronousQueue<Runnable>(), new NamedThreadFactory("testMergePartsExecutorRejects"));
+    if (random().nextBoolean()) {
+      // rejects all parts
+      executor.shutdown();
+    }
+    checkMergeParts(executor);
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+  }
+
+  private void checkMergeParts(ExecutorService executor) throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMergePartsExecutor(executor);
+    iwc.setMaxBufferedDocs(_TestUtil.nextInt(random(), 10, 100));
+    IndexWriter w = new IndexWriter(dir, iwc);
+    FieldType vectors = new FieldType(TextField.TYPE_STORED);
+    vectors.setStoreTermVectors(true);
+    final int numDocs = atLeast(1000);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newStringField("id", Integer.toString(i), Field.Store.YES));
+      doc.add(newField("body", "body" + (i % 10) + " doc" + i, vectors));
+      doc.add(new LongDocValuesField("dv", i));
+      w.addDocument(doc);
+      if (random().nextInt(50) == 17) {
+        w.deleteDocuments(new Term("id", Integer.toString(random().nextInt(i + 1))));
+      }
+    }
+    w.forceMerge(1);
+    w.close();
+    _TestUtil.checkIndex(dir);
+
+    DirectoryReader r = DirectoryReader.open(dir);
+    assertEquals(1, r.leaves().size());
+    AtomicReader reader = r.leaves().get(0).reader();
+    DocValues.Source values = reader.docValues("dv").getSource();
+    for (int docID = 0; docID < reader.maxDoc(); docID++) {
+      final int id = Integer.parseInt(reader.document(docID).get("id"));
+      assertEquals(id, values.getInt(docID));
+      final TermsEnum termsEnum = reader.getTermVector(docID, "body").iterator(null);
+      assertTrue(termsEnum.seekExact(new BytesRef("doc" + id), false));
+      assertEquals(1, reader.docFreq(new Term("body", "doc" + id)));
+    }
+    r.close();
+    dir.close();
+  }
 }
@@ -0,0 +1,78 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestPerThreadPKLookup extends LuceneTestCase {
+
+  public void testLookup() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir,
+        newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+    Map<String,String> expected = new HashMap<String,String>();
+    final int numIds = atLeast(100);
+    final int numDocs = atLeast(1000);
+    for (int i = 0; i < numDocs; i++) {
+      String id = "id" + random().nextInt(numIds);
+      String value = Integer.toString(i);
+      Document doc = new Document();
+      doc.add(newStringField("id", id, Field.Store.NO));
+      doc.add(newStringField("value", value, Field.Store.YES));
+      w.updateDocument(new Term("id", id), doc);
+      expected.put(id, value);
+      if (random().nextInt(20) == 7) {
+        String deleted = "id" + random().nextInt(numIds);
+        w.deleteDocuments(new Term("id", deleted));
+        expected.remove(deleted);
+      }
+    }
+    // one segment without the id field
+    Document doc = new Document();
+    doc.add(newStringField("other", "value", Field.Store.NO));
+    w.addDocument(doc);
+
+    IndexReader r = w.getReader();
+    w.close();
+    PerThreadPKLookup lookup = new PerThreadPKLookup(r, "id");
+    for (int iter = 0; iter < 2; iter++) {
+      for (int i = 0; i < numIds; i++) {
+        String id = "id" + i;
+        int docID = lookup.lookup(new BytesRef(id));
+        if (expected.containsKey(id)) {
+          assertTrue(docID >= 0);
+          assertEquals(expected.get(id), r.document(docID).get("value"));
+        } else {
+          assertEquals(-1, docID);
+        }
+      }
+    }
+    assertEquals(-1, lookup.lookup(new BytesRef("missing")));
+    assertEquals(-1, new PerThreadPKLookup(r, "missing").lookup(new BytesRef("id0")));
+    r.close();
+    dir.close();
+  }
+}
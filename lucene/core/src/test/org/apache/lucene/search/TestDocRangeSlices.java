@@ -0,0 +1,132 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher.LeafSlice;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.English;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
+
+/**
+ * Tests that searching docID range slices of large segments
+ * returns the same hits as a single-threaded search.
+ */
+public class TestDocRangeSlices extends LuceneTestCase {
+
+  public void testSlicesCoverAllDocs() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    int numDocs = atLeast(300);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newStringField("id", "" + i, Field.Store.NO));
+      w.addDocument(doc);
+    }
+    IndexReader r = w.getReader();
+    w.close();
+
+    final int maxDocsPerSlice = randomMaxDocsPerSlice(r.maxDoc());
+    LeafSlice[] slices = IndexSearcher.docRangeSlices(r.leaves(), maxDocsPerSlice);
+    int covered = 0;
+    for (LeafSlice slice : slices) {
+      assertEquals(1, slice.leaves.length);
+      if (slice.isDocRange()) {
+        assertTrue(slice.maxDoc - slice.minDoc <= maxDocsPerSlice);
+        covered += slice.maxDoc - slice.minDoc;
+      } else {
+        assertTrue(slice.leaves[0].reader().maxDoc() <= maxDocsPerSlice);
+        covered += slice.leaves[0].reader().maxDoc();
+      }
+    }
+    assertEquals(r.maxDoc(), covered);
+    r.close();
+    dir.close();
+  }
+
+  public void testSameHitsAsSingleThreaded() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newTextField("english", English.intToEnglish(i), Field.Store.NO));
+      doc.add(newStringField("oddeven", (i % 2 == 0) ? "even" : "odd", Field.Store.NO));
+      doc.add(newStringField("sort", "" + random().nextInt(1000), Field.Store.NO));
+      w.addDocument(doc);
+    }
+    if (random().nextBoolean()) {
+      w.forceMerge(1);
+    }
+    IndexReader r = w.getReader();
+    w.close();
+
+    final int maxDocsPerSlice = randomMaxDocsPerSlice(r.maxDoc());
+    ExecutorService es = Executors.newFixedThreadPool(3, new NamedThreadFactory("TestDocRangeSlices"));
+    try {
+      IndexSearcher single = new IndexSearcher(r);
+      IndexSearcher sliced = new IndexSearcher(r, es) {
+        @Override
+        protected LeafSlice[] slices(List<AtomicReaderContext> leaves) {
+          return docRangeSlices(leaves, maxDocsPerSlice);
+        }
+      };
+
+      Query[] queries = new Query[] {
+          new TermQuery(new Term("english", "hundred")),
+          new TermQuery(new Term("oddeven", "odd")),
+          new MatchAllDocsQuery()
+      };
+      for (Query q : queries) {
+        int n = 1 + random().nextInt(50);
+        assertSameHits(single.search(q, n), sliced.search(q, n));
+        Sort sort = new Sort(new SortField("sort", SortField.Type.STRING));
+        assertSameHits(single.search(q, null, n, sort), sliced.search(q, null, n, sort));
+      }
+    } finally {
+      es.shutdown();
+      es.awaitTermination(1, TimeUnit.SECONDS);
+    }
+    r.close();
+    dir.close();
+  }
+
+  private static int randomMaxDocsPerSlice(int maxDoc) {
+    return 1 + random().nextInt(Math.max(1, maxDoc / 2));
+  }
+
+  private static void assertSameHits(TopDocs expected, TopDocs actual) {
+    assertEquals(expected.totalHits, actual.totalHits);
+    assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+      assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0.0001f);
+    }
+  }
+}
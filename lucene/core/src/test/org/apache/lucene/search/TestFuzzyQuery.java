@@ -17,8 +17,12 @@ package org.apache.lucene.search;
  * limitations under the License.
  */
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Arrays;
+import java.util.Set;
 import java.io.IOException;
 
 import org.apache.lucene.analysis.MockAnalyzer;
@@ -31,6 +35,7 @@ import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
 
 /**
  * Tests {@link FuzzyQuery}.
@@ -358,6 +363,86 @@ public class TestFuzzyQuery extends LuceneTestCase {
     index.close();
   }
   
+  /** the competitive edit distance goes down during the enumeration:
+   *  compare the top terms with a brute force computation */
+  public void testTopTermsAgainstBruteForce() throws Exception {
+    Directory index = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), index, new MockAnalyzer(random(), MockTokenizer.KEYWORD, false));
+    final Set<String> terms = new HashSet<String>();
+    final int numDocs = atLeast(300);
+    for (int i = 0; i < numDocs; i++) {
+      final String term = randomTerm(1);
+      terms.add(term);
+      addDoc(term, w);
+    }
+    IndexReader reader = w.getReader();
+    w.close();
+
+    final int iters = atLeast(50);
+    for (int iter = 0; iter < iters; iter++) {
+      final int prefixLength = random().nextInt(3);
+      final String text = randomTerm(prefixLength + 1);
+      final int maxEdits = _TestUtil.nextInt(random(), 1, 2);
+      final int maxExpansions = _TestUtil.nextInt(random(), 1, 20);
+      final boolean transpositions = random().nextBoolean();
+      FuzzyQuery q = new FuzzyQuery(new Term("field", text), maxEdits, prefixLength, maxExpansions, transpositions);
+
+      final List<Float> expected = new ArrayList<Float>();
+      for (String term : terms) {
+        if (term.startsWith(text.substring(0, prefixLength))) {
+          final int ed = getDistance(text, term, transpositions);
+          if (ed == 0) {
+            expected.add(1f);
+          } else if (ed <= maxEdits) {
+            final float similarity = 1.0f - ((float) ed / (float) (Math.min(term.length(), text.length())));
+            if (similarity > 0) {
+              expected.add(similarity);
+            }
+          }
+        }
+      }
+      Collections.sort(expected, Collections.reverseOrder());
+
+      final List<Float> actual = new ArrayList<Float>();
+      for (BooleanClause clause : ((BooleanQuery) q.rewrite(reader)).clauses()) {
+        actual.add(clause.getQuery().getBoost());
+      }
+      Collections.sort(actual, Collections.reverseOrder());
+      assertEquals(expected.subList(0, Math.min(maxExpansions, expected.size())), actual);
+    }
+    reader.close();
+    index.close();
+  }
+
+  private static String randomTerm(int minLength) {
+    final char[] chars = new char[_TestUtil.nextInt(random(), minLength, 6)];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = (char) _TestUtil.nextInt(random(), 'a', 'd');
+    }
+    return new String(chars);
+  }
+
+  /** Levenshtein distance, or optimal string alignment distance with transpositions */
+  private static int getDistance(String a, String b, boolean transpositions) {
+    final int[][] d = new int[a.length() + 1][b.length() + 1];
+    for (int i = 0; i <= a.length(); i++) {
+      d[i][0] = i;
+    }
+    for (int j = 0; j <= b.length(); j++) {
+      d[0][j] = j;
+    }
+    for (int i = 1; i <= a.length(); i++) {
+      for (int j = 1; j <= b.length(); j++) {
+        final int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+        d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+        if (transpositions && i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+          d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + cost);
+        }
+      }
+    }
+    return d[a.length()][b.length()];
+  }
+
   private void addDoc(String text, RandomIndexWriter writer) throws IOException {
     Document doc = new Document();
     doc.add(newTextField("field", text, Field.Store.YES));
@@ -165,6 +165,26 @@ public class TestTermScorer extends LuceneTestCase {
     assertTrue("doc should be number 5", ts.docID() == 5);
   }
   
+  public void testTotalHitCount() throws Exception {
+    TermQuery termQuery = new TermQuery(new Term(FIELD, "all"));
+    TotalHitCountCollector counter = new TotalHitCountCollector();
+    indexSearcher.search(termQuery, counter);
+    assertEquals(2, counter.getTotalHits());
+
+    // a subclass has to see every hit
+    final int[] collected = new int[1];
+    TotalHitCountCollector subclass = new TotalHitCountCollector() {
+      @Override
+      public void collect(int doc) {
+        super.collect(doc);
+        collected[0]++;
+      }
+    };
+    indexSearcher.search(termQuery, subclass);
+    assertEquals(2, subclass.getTotalHits());
+    assertEquals(2, collected[0]);
+  }
+  
   private class TestHit {
     public int doc;
     public float score;
@@ -0,0 +1,349 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.FilterAtomicReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+/** Checks that conjunctions, exclusions and filters return the same
+ *  documents whether or not positions are verified lazily, and that they
+ *  only read the positions of documents that their other clauses accept. */
+public class TestTwoPhaseIteration extends LuceneTestCase {
+
+  private static final String[] WORDS = new String[] {"a", "b", "c", "d", "e"};
+
+  private Directory dir;
+  private IndexReader reader;
+  private IndexSearcher searcher;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    final int numDocs = atLeast(300);
+    for (int i = 0; i < numDocs; i++) {
+      StringBuilder sb = new StringBuilder();
+      final int length = _TestUtil.nextInt(random(), 1, 20);
+      for (int j = 0; j < length; j++) {
+        sb.append(WORDS[random().nextInt(WORDS.length)]).append(' ');
+      }
+      Document doc = new Document();
+      doc.add(newTextField("body", sb.toString(), Field.Store.NO));
+      doc.add(newStringField("cat", Integer.toString(random().nextInt(4)), Field.Store.NO));
+      w.addDocument(doc);
+    }
+    reader = w.getReader();
+    w.close();
+    searcher = newSearcher(reader);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    reader.close();
+    dir.close();
+    super.tearDown();
+  }
+
+  public void testApproximation() throws Exception {
+    for (int iter = 0; iter < 20; iter++) {
+      final Query q = randomPositionalQuery();
+      final Weight weight = searcher.createNormalizedWeight(q);
+      for (AtomicReaderContext context : reader.leaves()) {
+        final Set<Integer> expected = new HashSet<Integer>();
+        Scorer scorer = weight.scorer(context, true, false, context.reader().getLiveDocs());
+        if (scorer != null) {
+          int doc;
+          while ((doc = scorer.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            expected.add(doc);
+          }
+        }
+        final Set<Integer> actual = new HashSet<Integer>();
+        scorer = weight.scorer(context, true, false, context.reader().getLiveDocs());
+        if (scorer != null) {
+          final TwoPhaseDocIdSetIterator twoPhase = scorer.asTwoPhaseIterator();
+          if (twoPhase == null) {
+            continue;
+          }
+          final DocIdSetIterator approximation = twoPhase.approximation();
+          int doc;
+          while ((doc = approximation.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            assertEquals(doc, scorer.docID());
+            // only verify every other document: the next ones must not be affected
+            if (random().nextBoolean()) {
+              if (twoPhase.matches()) {
+                assertTrue(expected.contains(doc));
+                assertTrue(scorer.score() > 0);
+                actual.add(doc);
+              } else {
+                assertFalse(expected.contains(doc));
+              }
+            } else {
+              expected.remove(doc);
+            }
+          }
+        }
+        assertEquals(expected, actual);
+      }
+    }
+  }
+
+  public void testConjunction() throws Exception {
+    for (int iter = 0; iter < 50; iter++) {
+      final Query positional = randomPositionalQuery();
+      final Term term = new Term("body", WORDS[random().nextInt(WORDS.length)]);
+      BooleanQuery bq = new BooleanQuery();
+      bq.add(positional, Occur.MUST);
+      bq.add(new TermQuery(term), Occur.MUST);
+      if (random().nextBoolean()) {
+        // nested two-phase conjunction
+        BooleanQuery outer = new BooleanQuery();
+        outer.add(bq, Occur.MUST);
+        outer.add(new TermQuery(new Term("cat", Integer.toString(random().nextInt(4)))), Occur.MUST);
+        final Set<Integer> expected = docs(positional);
+        expected.retainAll(docs(new TermQuery(term)));
+        expected.retainAll(docs(((TermQuery) outer.clauses().get(1).getQuery())));
+        assertEquals(expected, docs(outer));
+      } else {
+        final Set<Integer> expected = docs(positional);
+        expected.retainAll(docs(new TermQuery(term)));
+        assertEquals(expected, docs(bq));
+      }
+    }
+  }
+
+  public void testExclusion() throws Exception {
+    for (int iter = 0; iter < 50; iter++) {
+      final Query positional = randomPositionalQuery();
+      final Query other = new TermQuery(new Term("cat", Integer.toString(random().nextInt(4))));
+      final boolean excludePositional = random().nextBoolean();
+      final Query required = excludePositional ? other : positional;
+      final Query prohibited = excludePositional ? positional : other;
+      BooleanQuery bq = new BooleanQuery();
+      bq.add(required, Occur.MUST);
+      bq.add(prohibited, Occur.MUST_NOT);
+      final Set<Integer> expected = docs(required);
+      expected.removeAll(docs(prohibited));
+      assertEquals(expected, docs(bq));
+    }
+  }
+
+  public void testFilter() throws Exception {
+    final FilteredQuery.FilterStrategy[] strategies = new FilteredQuery.FilterStrategy[] {
+        FilteredQuery.RANDOM_ACCESS_FILTER_STRATEGY,
+        FilteredQuery.LEAP_FROG_FILTER_FIRST_STRATEGY,
+        FilteredQuery.LEAP_FROG_QUERY_FIRST_STRATEGY,
+        FilteredQuery.QUERY_FIRST_FILTER_STRATEGY
+    };
+    for (int iter = 0; iter < 50; iter++) {
+      final Query positional = randomPositionalQuery();
+      final Query filterQuery = new TermQuery(new Term("cat", Integer.toString(random().nextInt(4))));
+      final Filter filter = new CachingWrapperFilter(new QueryWrapperFilter(filterQuery));
+      final Map<Integer,Float> expected = scores(positional);
+      expected.keySet().retainAll(docs(filterQuery));
+      for (FilteredQuery.FilterStrategy strategy : strategies) {
+        assertEquals(expected, scores(new FilteredQuery(positional, filter, strategy)));
+      }
+    }
+  }
+
+  public void testPositionsOnlyReadForCandidates() throws Exception {
+    final FilteredQuery.FilterStrategy[] strategies = new FilteredQuery.FilterStrategy[] {
+        FilteredQuery.RANDOM_ACCESS_FILTER_STRATEGY,
+        FilteredQuery.LEAP_FROG_FILTER_FIRST_STRATEGY,
+        FilteredQuery.LEAP_FROG_QUERY_FIRST_STRATEGY,
+        FilteredQuery.QUERY_FIRST_FILTER_STRATEGY
+    };
+    final PositionsReadReader positionsReader = new PositionsReadReader(SlowCompositeReaderWrapper.wrap(reader));
+    // not newSearcher: the reader must not be wrapped, and searches not be concurrent
+    final IndexSearcher positionsSearcher = new IndexSearcher(positionsReader);
+    int totalPositionsRead = 0;
+    for (int iter = 0; iter < 100; iter++) {
+      final Query phrase = randomPhraseQuery();
+      final Query cat = new TermQuery(new Term("cat", Integer.toString(random().nextInt(4))));
+      final Set<Integer> catDocs = docs(cat);
+      final Query q;
+      final boolean exclude;
+      switch (random().nextInt(4)) {
+        case 0: {
+          BooleanQuery bq = new BooleanQuery();
+          bq.add(phrase, Occur.MUST);
+          bq.add(cat, Occur.MUST);
+          q = bq;
+          exclude = false;
+          break;
+        }
+        case 1: {
+          // the inner conjunction must not verify documents before the outer one agrees on them
+          BooleanQuery inner = new BooleanQuery();
+          inner.add(phrase, Occur.MUST);
+          inner.add(new TermQuery(new Term("body", WORDS[random().nextInt(WORDS.length)])), Occur.MUST);
+          BooleanQuery outer = new BooleanQuery();
+          outer.add(inner, Occur.MUST);
+          outer.add(cat, Occur.MUST);
+          q = outer;
+          exclude = false;
+          break;
+        }
+        case 2: {
+          BooleanQuery bq = new BooleanQuery();
+          bq.add(phrase, Occur.MUST);
+          bq.add(cat, Occur.MUST_NOT);
+          q = bq;
+          exclude = true;
+          break;
+        }
+        default: {
+          final Filter filter = new CachingWrapperFilter(new QueryWrapperFilter(cat));
+          q = new FilteredQuery(phrase, filter, strategies[random().nextInt(strategies.length)]);
+          exclude = false;
+          break;
+        }
+      }
+      positionsReader.docs.clear();
+      assertEquals(docs(q), docs(positionsSearcher, q));
+      for (int doc : positionsReader.docs) {
+        assertEquals("positions of doc " + doc + " read for " + q, !exclude, catDocs.contains(doc));
+      }
+      totalPositionsRead += positionsReader.docs.size();
+    }
+    assertTrue(totalPositionsRead > 0);
+  }
+
+  /** Records the documents whose positions are read. */
+  private static class PositionsReadReader extends FilterAtomicReader {
+    final Set<Integer> docs = new HashSet<Integer>();
+
+    PositionsReadReader(AtomicReader in) {
+      super(in);
+    }
+
+    @Override
+    public Fields fields() throws IOException {
+      return new FilterFields(super.fields()) {
+        @Override
+        public Terms terms(String field) throws IOException {
+          final Terms terms = super.terms(field);
+          if (terms == null) {
+            return null;
+          }
+          return new FilterTerms(terms) {
+            @Override
+            public TermsEnum iterator(TermsEnum reuse) throws IOException {
+              return new FilterTermsEnum(in.iterator(null)) {
+                @Override
+                public DocsAndPositionsEnum docsAndPositions(Bits liveDocs, DocsAndPositionsEnum reuse, int flags) throws IOException {
+                  final DocsAndPositionsEnum postings = in.docsAndPositions(liveDocs, null, flags);
+                  if (postings == null) {
+                    return null;
+                  }
+                  return new FilterDocsAndPositionsEnum(postings) {
+                    @Override
+                    public int nextPosition() throws IOException {
+                      docs.add(docID());
+                      return super.nextPosition();
+                    }
+                  };
+                }
+              };
+            }
+          };
+        }
+      };
+    }
+  }
+
+  private Query randomPhraseQuery() {
+    PhraseQuery pq = new PhraseQuery();
+    pq.add(new Term("body", WORDS[random().nextInt(WORDS.length)]));
+    pq.add(new Term("body", WORDS[random().nextInt(WORDS.length)]));
+    if (random().nextBoolean()) {
+      pq.setSlop(_TestUtil.nextInt(random(), 1, 3));
+    }
+    return pq;
+  }
+
+  private Query randomPositionalQuery() {
+    final String first = WORDS[random().nextInt(WORDS.length)];
+    final String second = WORDS[random().nextInt(WORDS.length)];
+    switch (random().nextInt(3)) {
+      case 0:
+        PhraseQuery exact = new PhraseQuery();
+        exact.add(new Term("body", first));
+        exact.add(new Term("body", second));
+        return exact;
+      case 1:
+        PhraseQuery sloppy = new PhraseQuery();
+        sloppy.add(new Term("body", first));
+        sloppy.add(new Term("body", second));
+        sloppy.setSlop(_TestUtil.nextInt(random(), 1, 3));
+        return sloppy;
+      default:
+        return new SpanNearQuery(new SpanQuery[] {
+            new SpanTermQuery(new Term("body", first)),
+            new SpanTermQuery(new Term("body", second))
+        }, random().nextInt(3), random().nextBoolean());
+    }
+  }
+
+  private Set<Integer> docs(Query q) throws Exception {
+    return docs(searcher, q);
+  }
+
+  private Set<Integer> docs(IndexSearcher searcher, Query q) throws Exception {
+    final Set<Integer> docs = new HashSet<Integer>();
+    for (ScoreDoc hit : searcher.search(q, reader.maxDoc()).scoreDocs) {
+      docs.add(hit.doc);
+    }
+    return docs;
+  }
+
+  private Map<Integer,Float> scores(Query q) throws Exception {
+    final Map<Integer,Float> scores = new HashMap<Integer,Float>();
+    for (ScoreDoc hit : searcher.search(q, reader.maxDoc()).scoreDocs) {
+      scores.put(hit.doc, hit.score);
+    }
+    return scores;
+  }
+}
@@ -0,0 +1,137 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestWANDScorer extends LuceneTestCase {
+
+  private static final String[] TERMS = new String[] {"a", "b", "c", "d", "e", "f", "g"};
+
+  private Directory dir;
+  private IndexReader reader;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setSimilarity(new BM25Similarity());
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+    final int numDocs = atLeast(1000);
+    for (int i = 0; i < numDocs; i++) {
+      StringBuilder sb = new StringBuilder();
+      final int numTokens = random().nextInt(20);
+      for (int j = 0; j < numTokens; j++) {
+        // skew the distribution so that we get both frequent and rare terms
+        final int term = (int) (TERMS.length * Math.pow(random().nextDouble(), 3));
+        sb.append(TERMS[term]).append(' ');
+      }
+      Document doc = new Document();
+      doc.add(newTextField("body", sb.toString(), Field.Store.NO));
+      w.addDocument(doc);
+    }
+    reader = w.getReader();
+    w.close();
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    reader.close();
+    dir.close();
+    super.tearDown();
+  }
+
+  private BooleanQuery randomDisjunction() {
+    BooleanQuery q = new BooleanQuery(random().nextBoolean());
+    final int numClauses = 2 + random().nextInt(TERMS.length - 1);
+    for (int i = 0; i < numClauses; i++) {
+      TermQuery tq = new TermQuery(new Term("body", TERMS[random().nextInt(TERMS.length)]));
+      if (random().nextInt(5) == 0) {
+        tq.setBoost(1 + random().nextInt(5));
+      }
+      q.add(tq, BooleanClause.Occur.SHOULD);
+    }
+    return q;
+  }
+
+  public void testUsesWANDScorer() throws Exception {
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setSimilarity(new BM25Similarity());
+    BooleanQuery q = new BooleanQuery();
+    q.add(new TermQuery(new Term("body", "a")), BooleanClause.Occur.SHOULD);
+    q.add(new TermQuery(new Term("body", "b")), BooleanClause.Occur.SHOULD);
+    Weight w = searcher.createNormalizedWeight(q);
+    for (AtomicReaderContext ctx : reader.leaves()) {
+      Scorer s = w.scorer(ctx, true, true, ctx.reader().getLiveDocs());
+      if (ctx.reader().docFreq(new Term("body", "a")) > 0 && ctx.reader().docFreq(new Term("body", "b")) > 0) {
+        assertTrue(s instanceof WANDScorer);
+      }
+    }
+
+    // no known upper bound: use BooleanScorer2
+    searcher.setSimilarity(new DefaultSimilarity());
+    w = searcher.createNormalizedWeight(q);
+    for (AtomicReaderContext ctx : reader.leaves()) {
+      Scorer s = w.scorer(ctx, true, true, ctx.reader().getLiveDocs());
+      assertFalse(s instanceof WANDScorer);
+    }
+  }
+
+  public void testSkippingReturnsSameTopHits() throws Exception {
+    IndexSearcher searcher = newSearcher(reader);
+    searcher.setSimilarity(new BM25Similarity());
+    final int iters = atLeast(20);
+    for (int iter = 0; iter < iters; iter++) {
+      BooleanQuery q = randomDisjunction();
+      final int numHits = 1 + random().nextInt(20);
+
+      TopScoreDocCollector expected = TopScoreDocCollector.create(numHits, null, true, true);
+      searcher.search(q, expected);
+      TopScoreDocCollector actual = TopScoreDocCollector.create(numHits, null, true, false);
+      searcher.search(q, actual);
+
+      TopDocs expectedDocs = expected.topDocs();
+      TopDocs actualDocs = actual.topDocs();
+      assertTrue(actualDocs.totalHits <= expectedDocs.totalHits);
+      assertEquals(expectedDocs.scoreDocs.length, actualDocs.scoreDocs.length);
+      for (int i = 0; i < expectedDocs.scoreDocs.length; i++) {
+        assertEquals(expectedDocs.scoreDocs[i].doc, actualDocs.scoreDocs[i].doc);
+        assertEquals(expectedDocs.scoreDocs[i].score, actualDocs.scoreDocs[i].score, 0.000001f);
+      }
+
+      // BooleanScorer sums up the scores in a different order
+      TopDocs bs1Docs = searcher.search(q, numHits);
+      assertEquals(expectedDocs.totalHits, bs1Docs.totalHits);
+      for (int i = 0; i < expectedDocs.scoreDocs.length; i++) {
+        assertEquals(expectedDocs.scoreDocs[i].score, bs1Docs.scoreDocs[i].score, 0.0001f);
+      }
+    }
+  }
+}
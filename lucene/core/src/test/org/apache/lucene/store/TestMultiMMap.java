@@ -18,6 +18,10 @@ package org.apache.lucene.store;
  */
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 import org.apache.lucene.analysis.MockAnalyzer;
@@ -48,6 +52,31 @@ public class TestMultiMMap extends LuceneTestCase {
     workDir.mkdirs();
   }
   
+  public void testMappedHook() throws Exception {
+    final List<String> mapped = new ArrayList<String>();
+    MMapDirectory mmapDir = new MMapDirectory(_TestUtil.getTempDir("testMappedHook"), null, 1 << _TestUtil.nextInt(random(), 2, 10)) {
+      @Override
+      protected void mapped(String name, ByteBuffer[] buffers, IOContext context) {
+        long length = 0;
+        for (ByteBuffer buffer : buffers) {
+          length += buffer.capacity();
+        }
+        assertEquals(20, length);
+        mapped.add(name + ":" + context.context);
+      }
+    };
+    IndexOutput io = mmapDir.createOutput("bytes", newIOContext(random()));
+    io.writeBytes(new byte[20], 20);
+    io.close();
+    IndexInput in = mmapDir.openInput("bytes", IOContext.READ);
+    in.close();
+    IndexInputSlicer slicer = mmapDir.createSlicer("bytes", new IOContext(new MergeInfo(1, 20, false, -1)));
+    slicer.openSlice("slice", 5, 10).close();
+    slicer.close();
+    assertEquals(Arrays.asList("bytes:READ", "bytes:MERGE"), mapped);
+    mmapDir.close();
+  }
+
   public void testCloneSafety() throws Exception {
     MMapDirectory mmapDir = new MMapDirectory(_TestUtil.getTempDir("testCloneSafety"));
     IndexOutput io = mmapDir.createOutput("bytes", newIOContext(random()));
@@ -294,6 +323,56 @@ public class TestMultiMMap extends LuceneTestCase {
     }
   }
   
+  public void testRandomAccessReads() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      MMapDirectory mmapDir = new MMapDirectory(_TestUtil.getTempDir("testRandomAccessReads"), null, 1<<i);
+      IndexOutput io = mmapDir.createOutput("bytes", newIOContext(random()));
+      byte bytes[] = new byte[(1<<(i+1)) + 8]; // make sure we switch buffers
+      random().nextBytes(bytes);
+      io.writeBytes(bytes, bytes.length);
+      io.close();
+      IndexInput ii = mmapDir.openInput("bytes", newIOContext(random()));
+      assertTrue(ii instanceof RandomAccessInput);
+      RandomAccessInput ra = (RandomAccessInput) ii;
+      for (int pos = 0; pos < bytes.length; pos++) {
+        ii.seek(pos);
+        assertEquals(ii.readByte(), ra.readByte(pos));
+        if (pos + 2 <= bytes.length) {
+          ii.seek(pos);
+          assertEquals(ii.readShort(), ra.readShort(pos));
+        }
+        if (pos + 4 <= bytes.length) {
+          ii.seek(pos);
+          assertEquals(ii.readInt(), ra.readInt(pos));
+        }
+        if (pos + 8 <= bytes.length) {
+          ii.seek(pos);
+          assertEquals(ii.readLong(), ra.readLong(pos));
+        }
+      }
+      try {
+        ra.readLong(bytes.length - 4);
+        fail("must not read past EOF");
+      } catch (java.io.EOFException expected) {
+        // ok
+      }
+      ii.close();
+
+      IndexInputSlicer slicer = mmapDir.createSlicer("bytes", newIOContext(random()));
+      final int sliceStart = random().nextInt(bytes.length - 8);
+      final int sliceLength = 8 + random().nextInt(bytes.length - sliceStart - 7);
+      IndexInput slice = slicer.openSlice("bytesSlice", sliceStart, sliceLength);
+      RandomAccessInput raSlice = (RandomAccessInput) slice;
+      for (int pos = 0; pos + 8 <= sliceLength; pos++) {
+        slice.seek(pos);
+        assertEquals(slice.readLong(), raSlice.readLong(pos));
+      }
+      slice.close();
+      slicer.close();
+      mmapDir.close();
+    }
+  }
+  
   public void testRandomChunkSizes() throws Exception {
     int num = atLeast(10);
     for (int i = 0; i < num; i++)
@@ -0,0 +1,140 @@
+package org.apache.lucene.util.automaton;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestCompiledAutomatonCache extends LuceneTestCase {
+
+  private static final AtomicInteger builds = new AtomicInteger();
+
+  private static final class StringKey extends CompiledAutomatonCache.Key {
+    StringKey(String pattern) {
+      super(pattern, 0);
+    }
+
+    @Override
+    public Automaton toAutomaton() {
+      builds.incrementAndGet();
+      return BasicAutomata.makeString(pattern);
+    }
+  }
+
+  public void testHitsAndMisses() {
+    builds.set(0);
+    final CompiledAutomatonCache cache = new CompiledAutomatonCache(10);
+    final CompiledAutomatonCache.Entry entry = cache.get(new StringKey("foo"));
+    assertEquals(CompiledAutomaton.AUTOMATON_TYPE.SINGLE, entry.compiled.type);
+    assertSame(entry, cache.get(new StringKey("foo")));
+    assertNotSame(entry, cache.get(new StringKey("bar")));
+    assertEquals(2, builds.get());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+    assertEquals(1d / 3, cache.getHitRate(), 0.0001);
+    assertTrue(cache.getBuildTimeNanos() >= 0);
+
+    // evictions
+    for (int i = 0; i < 30; i++) {
+      cache.get(new StringKey("key" + i));
+    }
+    builds.set(0);
+    cache.get(new StringKey("foo"));
+    assertEquals(1, builds.get());
+  }
+
+  public void testNoCaching() {
+    builds.set(0);
+    final CompiledAutomatonCache cache = new CompiledAutomatonCache(0);
+    assertNotSame(cache.get(new StringKey("foo")), cache.get(new StringKey("foo")));
+    assertEquals(2, builds.get());
+    assertEquals(0, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+
+  public void testQueries() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+    final int numDocs = atLeast(200);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newStringField("field", _TestUtil.randomSimpleString(random(), 6), Field.Store.NO));
+      w.addDocument(doc);
+    }
+    IndexReader r = w.getReader();
+    w.close();
+    IndexSearcher s = newSearcher(r);
+
+    final CompiledAutomatonCache previous = CompiledAutomatonCache.getDefault();
+    try {
+      final CompiledAutomatonCache cache = new CompiledAutomatonCache(10);
+      for (int iter = 0; iter < 20; iter++) {
+        // fuzzy queries on the empty term do not need automata
+        final String text = _TestUtil.randomSimpleString(random(), 3) + (char) (_TestUtil.nextInt(random(), 'a', 'z'));
+        final int maxEdits = _TestUtil.nextInt(random(), 1, 2);
+        for (int type = 0; type < 3; type++) {
+          // wildcard and regexp queries compile their automaton when they are
+          // created, fuzzy queries when they are executed
+          CompiledAutomatonCache.setDefault(new CompiledAutomatonCache(0));
+          final int expected = s.search(newQuery(type, text, maxEdits), 1).totalHits;
+          CompiledAutomatonCache.setDefault(cache);
+          assertEquals(expected, s.search(newQuery(type, text, maxEdits), 1).totalHits);
+          final long hits = cache.getHitCount();
+          assertEquals(expected, s.search(newQuery(type, text, maxEdits), 1).totalHits);
+          assertTrue(cache.getHitCount() > hits);
+        }
+        CompiledAutomatonCache.setDefault(new CompiledAutomatonCache(0));
+        final Query uncached = new WildcardQuery(new Term("field", text + "*"));
+        CompiledAutomatonCache.setDefault(cache);
+        final Query cached = new WildcardQuery(new Term("field", text + "*"));
+        assertEquals(uncached, cached);
+        assertEquals(uncached.hashCode(), cached.hashCode());
+        assertEquals(uncached.hashCode(), new WildcardQuery(new Term("field", text + "*")).hashCode());
+      }
+    } finally {
+      CompiledAutomatonCache.setDefault(previous);
+    }
+    r.close();
+    dir.close();
+  }
+
+  private static Query newQuery(int type, String text, int maxEdits) {
+    switch (type) {
+      case 0:
+        return new WildcardQuery(new Term("field", text + "*"));
+      case 1:
+        return new RegexpQuery(new Term("field", text + ".?"));
+      default:
+        return new FuzzyQuery(new Term("field", text), maxEdits);
+    }
+  }
+}
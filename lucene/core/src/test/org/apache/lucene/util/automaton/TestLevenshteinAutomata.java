@@ -44,6 +44,36 @@ public class TestLevenshteinAutomata extends LuceneTestCase {
     AutomatonTestUtil.assertNoDetachedStates(new LevenshteinAutomata("abc", false).toAutomaton(1));
   }
   
+  public void testDistanceAutomaton() throws Exception {
+    final int iters = atLeast(20);
+    for (int iter = 0; iter < iters; iter++) {
+      final String s = Integer.toString(random().nextInt(64), 2).substring(random().nextInt(2));
+      for (int n = 0; n <= 2; n++) {
+        assertDistances(s, n, false);
+        assertDistances(s, n, true);
+      }
+    }
+  }
+
+  /**
+   * Checks that the distance automaton returns the exact distance of all
+   * strings within n edits of input.
+   */
+  private void assertDistances(String input, int n, boolean transpositions) {
+    LevenshteinAutomata.DistanceRunAutomaton ra = new LevenshteinAutomata(input, transpositions).toDistanceAutomaton(n);
+    int maxLen = input.length() + n + 1;
+    int maxNum = (int) Math.pow(2, maxLen);
+    for (int i = 0; i < maxNum; i++) {
+      String encoded = Integer.toString(i, 2);
+      int codePoints[] = new int[encoded.length()];
+      for (int j = 0; j < codePoints.length; j++) {
+        codePoints[j] = encoded.charAt(j);
+      }
+      int expected = transpositions ? getTDistance(input, encoded) : getDistance(input, encoded);
+      assertEquals(expected <= n ? expected : -1, ra.getDistance(codePoints, 0, codePoints.length));
+    }
+  }
+
   /** 
    * Tests all possible characteristic vectors for some n
    * This exhaustively tests the parametric transitions tables.
@@ -27,6 +27,10 @@ import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
@@ -47,6 +51,7 @@ import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.MockDirectoryWrapper;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IntsRef;
@@ -54,6 +59,7 @@ import org.apache.lucene.util.LineFileDocs;
 import org.apache.lucene.util.LuceneTestCase.Slow;
 import org.apache.lucene.util.LuceneTestCase.SuppressCodecs;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util._TestUtil;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.CompiledAutomaton;
@@ -1504,4 +1510,232 @@ public class TestFSTs extends LuceneTestCase {
       }
     }
   }
+
+  public void testOffHeap() throws Exception {
+    final boolean doPack = random().nextBoolean();
+    final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton(true);
+    final Builder<Long> builder = new Builder<Long>(FST.INPUT_TYPE.BYTE1, 0, 0, true, true, Integer.MAX_VALUE, outputs, null, doPack, PackedInts.DEFAULT);
+    final SortedSet<BytesRef> terms = new TreeSet<BytesRef>();
+    final int numTerms = atLeast(1000);
+    while (terms.size() < numTerms) {
+      terms.add(new BytesRef(_TestUtil.randomSimpleString(random())));
+    }
+    final IntsRef scratch = new IntsRef();
+    long ord = 0;
+    for (BytesRef term : terms) {
+      builder.add(Util.toIntsRef(term, scratch), ord++);
+    }
+    FST<Long> fst = builder.finish();
+    if (doPack) {
+      fst = fst.pack(_TestUtil.nextInt(random(), 1, 10), _TestUtil.nextInt(random(), 10, 1000), PackedInts.DEFAULT);
+    }
+
+    // not newDirectory(): off-heap FSTs need a RandomAccessInput
+    final Directory dir = new MMapDirectory(_TestUtil.getTempDir("testOffHeap"));
+    IndexOutput out = dir.createOutput("fst", IOContext.DEFAULT);
+    out.writeVInt(42);
+    fst.save(out);
+    out.writeVInt(17);
+    out.close();
+
+    IndexInput in = dir.openInput("fst", IOContext.DEFAULT);
+    assertEquals(42, in.readVInt());
+    final FST<Long> offHeap = new FST<Long>(in, outputs, true);
+    assertEquals(17, in.readVInt());
+    assertTrue(offHeap.isOffHeap());
+    assertFalse(fst.isOffHeap());
+
+    ord = 0;
+    for (BytesRef term : terms) {
+      assertEquals(Long.valueOf(ord++), Util.get(offHeap, term));
+    }
+    assertNull(Util.get(offHeap, new BytesRef("0")));
+
+    final BytesRefFSTEnum<Long> expected = new BytesRefFSTEnum<Long>(fst);
+    final BytesRefFSTEnum<Long> actual = new BytesRefFSTEnum<Long>(offHeap);
+    InputOutput<Long> expectedIO;
+    while ((expectedIO = expected.next()) != null) {
+      final InputOutput<Long> actualIO = actual.next();
+      assertEquals(expectedIO.input, actualIO.input);
+      assertEquals(expectedIO.output, actualIO.output);
+    }
+    assertNull(actual.next());
+    for (int i = 0; i < 100; i++) {
+      final BytesRef target = new BytesRef(_TestUtil.randomSimpleString(random()));
+      expectedIO = expected.seekCeil(target);
+      final InputOutput<Long> actualIO = actual.seekCeil(target);
+      if (expectedIO == null) {
+        assertNull(actualIO);
+      } else {
+        assertEquals(expectedIO.input, actualIO.input);
+        assertEquals(expectedIO.output, actualIO.output);
+      }
+    }
+
+    if (!doPack) {
+      // an off-heap FST can be saved again
+      out = dir.createOutput("fst2", IOContext.DEFAULT);
+      offHeap.save(out);
+      out.close();
+      final IndexInput in2 = dir.openInput("fst2", IOContext.DEFAULT);
+      assertEquals(in.length() - 2, in2.length());
+      in.seek(1);
+      for (long i = 0; i < in2.length(); i++) {
+        assertEquals(in.readByte(), in2.readByte());
+      }
+      in2.close();
+    }
+
+    in.close();
+    dir.close();
+  }
+
+  public void testBoundedNodeHashAndStreaming() throws Exception {
+    final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton(true);
+    final SortedSet<BytesRef> terms = new TreeSet<BytesRef>();
+    final int numTerms = atLeast(1000);
+    while (terms.size() < numTerms) {
+      terms.add(new BytesRef(_TestUtil.randomSimpleString(random())));
+    }
+    final FST<Long> minimal = buildOrdFST(new Builder<Long>(FST.INPUT_TYPE.BYTE1, outputs), terms);
+
+    final boolean bounded = random().nextBoolean();
+    final boolean streaming = random().nextBoolean();
+    final Builder<Long> builder = new Builder<Long>(FST.INPUT_TYPE.BYTE1, outputs);
+    if (bounded) {
+      builder.setMaxNodeHashSize(_TestUtil.nextInt(random(), 1, 100));
+    }
+    if (streaming) {
+      builder.streamTo(dir, "fst.tmp");
+      assertTrue(dir.fileExists("fst.tmp"));
+    }
+    final FST<Long> fst = buildOrdFST(builder, terms);
+    assertEquals(0, dir.listAll().length);
+
+    if (bounded) {
+      assertTrue(fst.nodeCount >= minimal.nodeCount);
+    } else {
+      // streaming doesn't change which nodes are shared
+      assertEquals(minimal.nodeCount, fst.nodeCount);
+      assertEquals(minimal.arcCount, fst.arcCount);
+      assertEquals(minimal.sizeInBytes(), fst.sizeInBytes());
+    }
+    assertSameFST(minimal, fst);
+  }
+
+  public void testStreamingNothingAccepted() throws Exception {
+    final Builder<Object> builder = new Builder<Object>(FST.INPUT_TYPE.BYTE1, 3, 0, true, true, Integer.MAX_VALUE, NoOutputs.getSingleton(), null, false, PackedInts.COMPACT);
+    builder.setMaxNodeHashSize(10);
+    builder.streamTo(dir, "fst.tmp");
+    final IntsRef scratch = new IntsRef();
+    builder.add(Util.toIntsRef(new BytesRef("foo"), scratch), NoOutputs.getSingleton().getNoOutput());
+    try {
+      builder.setMaxNodeHashSize(20);
+      fail();
+    } catch (IllegalStateException expected) {
+      // expected
+    }
+    builder.add(Util.toIntsRef(new BytesRef("foobar"), scratch), NoOutputs.getSingleton().getNoOutput());
+    // everything is pruned
+    assertNull(builder.finish());
+    assertEquals(0, dir.listAll().length);
+  }
+
+  public void testStitch() throws Exception {
+    final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton(true);
+    final SortedSet<BytesRef> terms = new TreeSet<BytesRef>();
+    final int numTerms = atLeast(1000);
+    if (random().nextBoolean()) {
+      terms.add(new BytesRef());
+    }
+    while (terms.size() < numTerms) {
+      terms.add(new BytesRef(_TestUtil.randomSimpleString(random())));
+    }
+    final FST<Long> expected = buildOrdFST(new Builder<Long>(FST.INPUT_TYPE.BYTE1, outputs), terms);
+
+    // split by first label, some partitions may be empty
+    final List<SortedSet<BytesRef>> partitionTerms = new ArrayList<SortedSet<BytesRef>>();
+    int upto = 0;
+    while (upto < 256) {
+      final int end = random().nextInt(4) == 0 ? 256 : Math.min(256, upto + 1 + random().nextInt(30));
+      final BytesRef from = new BytesRef(new byte[] {(byte) upto});
+      if (end == 256) {
+        partitionTerms.add(new TreeSet<BytesRef>(terms.tailSet(from)));
+      } else {
+        partitionTerms.add(new TreeSet<BytesRef>(terms.subSet(from, new BytesRef(new byte[] {(byte) end}))));
+      }
+      upto = end;
+    }
+    if (terms.first().length == 0) {
+      partitionTerms.get(0).add(terms.first());
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(_TestUtil.nextInt(random(), 1, 4), new NamedThreadFactory("TestFSTs"));
+    final List<FST<Long>> partitions = new ArrayList<FST<Long>>();
+    try {
+      final List<Future<FST<Long>>> futures = new ArrayList<Future<FST<Long>>>();
+      long ord = 0;
+      for (final SortedSet<BytesRef> subSet : partitionTerms) {
+        final long firstOrd = ord;
+        ord += subSet.size();
+        futures.add(executor.submit(new Callable<FST<Long>>() {
+          @Override
+          public FST<Long> call() throws Exception {
+            final Builder<Long> builder = new Builder<Long>(FST.INPUT_TYPE.BYTE1, outputs);
+            final IntsRef scratch = new IntsRef();
+            long ord = firstOrd;
+            for (BytesRef term : subSet) {
+              builder.add(Util.toIntsRef(term, scratch), ord++);
+            }
+            return builder.finish();
+          }
+        }));
+      }
+      for (Future<FST<Long>> future : futures) {
+        partitions.add(future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    final FST<Long> stitched = Builder.stitch(partitions);
+    assertTrue(stitched.nodeCount >= expected.nodeCount);
+    assertSameFST(expected, stitched);
+    long ord = 0;
+    for (BytesRef term : terms) {
+      assertEquals(Long.valueOf(ord++), Util.get(stitched, term));
+    }
+
+    // partitions must not overlap
+    if (partitions.size() > 1 && partitions.get(0) != null) {
+      try {
+        Builder.stitch(Arrays.asList(partitions.get(0), partitions.get(0)));
+        fail();
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  private static FST<Long> buildOrdFST(Builder<Long> builder, SortedSet<BytesRef> terms) throws IOException {
+    final IntsRef scratch = new IntsRef();
+    long ord = 0;
+    for (BytesRef term : terms) {
+      builder.add(Util.toIntsRef(term, scratch), ord++);
+    }
+    return builder.finish();
+  }
+
+  private static <T> void assertSameFST(FST<T> expected, FST<T> actual) throws IOException {
+    final BytesRefFSTEnum<T> expectedEnum = new BytesRefFSTEnum<T>(expected);
+    final BytesRefFSTEnum<T> actualEnum = new BytesRefFSTEnum<T>(actual);
+    InputOutput<T> expectedIO;
+    while ((expectedIO = expectedEnum.next()) != null) {
+      final InputOutput<T> actualIO = actualEnum.next();
+      assertEquals(expectedIO.input, actualIO.input);
+      assertEquals(expectedIO.output, actualIO.output);
+    }
+    assertNull(actualEnum.next());
+    assertEquals(expected.getEmptyOutput(), actual.getEmptyOutput());
+  }
 }
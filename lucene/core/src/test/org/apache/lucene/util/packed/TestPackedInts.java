@@ -31,6 +31,7 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.LongsRef;
 import org.apache.lucene.util.LuceneTestCase;
@@ -186,6 +187,37 @@ public class TestPackedInts extends LuceneTestCase {
     }
   }
 
+  public void testRandomAccessReader() throws IOException {
+    final Directory d = new MMapDirectory(_TestUtil.getTempDir("testRandomAccessReader"), null, 1 << _TestUtil.nextInt(random(), 3, 10));
+    for (int nbits = 1; nbits <= 64; nbits++) {
+      final long maxValue = PackedInts.maxValue(nbits);
+      final int valueCount = _TestUtil.nextInt(random(), 1, 600);
+      IndexOutput out = d.createOutput("out.bin", newIOContext(random()));
+      PackedInts.Writer w = PackedInts.getWriter(out, valueCount, nbits, random().nextFloat());
+      final long[] values = new long[valueCount];
+      for (int i = 0; i < valueCount; i++) {
+        values[i] = _TestUtil.nextLong(random(), 0, maxValue);
+        w.add(values[i]);
+      }
+      w.finish();
+      final long fp = out.getFilePointer();
+      out.writeLong(random().nextLong()); // trailing data must not be decoded
+      out.close();
+
+      IndexInput in = d.openInput("out.bin", newIOContext(random()));
+      PackedInts.Reader r = PackedInts.getRandomAccessReader(in);
+      assertEquals(fp, in.getFilePointer());
+      assertEquals(valueCount, r.size());
+      for (int i = 0; i < valueCount; i++) {
+        assertEquals("index=" + i + " valueCount=" + valueCount + " nbits=" + nbits
+            + " format=" + w.getFormat(), values[i], r.get(i));
+      }
+      in.close();
+      d.deleteFile("out.bin");
+    }
+    d.close();
+  }
+
   public void testEndPointer() throws IOException {
     final Directory dir = newDirectory();
     final int valueCount = RandomInts.randomIntBetween(random(), 1, 1000);
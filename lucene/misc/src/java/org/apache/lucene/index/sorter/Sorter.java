@@ -0,0 +1,201 @@
+package org.apache.lucene.index.sorter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldComparator;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.SorterTemplate;
+
+/**
+ * Computes the permutation of the documents of an {@link IndexReader} that
+ * sorts them according to a {@link Sort}. Documents that compare equal keep
+ * their relative order. Sorting by {@link SortField.Type#SCORE score} is not
+ * supported.
+ *
+ * @lucene.experimental
+ */
+public final class Sorter {
+
+  /** A permutation of doc IDs. For every document ID between <tt>0</tt> and
+   *  {@link IndexReader#maxDoc()}, <code>oldToNew(newToOld(docID))</code> must
+   *  return <code>docID</code>. */
+  public static abstract class DocMap {
+
+    /** Sole constructor. (For invocation by subclass 
+     *  constructors, typically implicit.) */
+    protected DocMap() {
+    }
+
+    /** Given a doc ID from the original index, return its ordinal in the
+     *  sorted index. */
+    public abstract int oldToNew(int docID);
+
+    /** Given the ordinal of a doc ID, return its doc ID in the original
+     *  index. */
+    public abstract int newToOld(int docID);
+
+    /** Return the number of documents in this map. This must be equal to the
+     *  {@link IndexReader#maxDoc() number of documents} of the
+     *  {@link IndexReader} which is sorted. */
+    public abstract int size();
+  }
+
+  private final Sort sort;
+
+  /** Creates a new {@link Sorter} that sorts documents according to
+   *  <code>sort</code>. */
+  public Sorter(Sort sort) {
+    for (SortField field : sort.getSort()) {
+      if (field.getType() == SortField.Type.SCORE) {
+        throw new IllegalArgumentException("cannot sort documents by score: " + sort);
+      }
+    }
+    this.sort = sort;
+  }
+
+  /** Returns the {@link Sort} of this {@link Sorter}. */
+  public Sort getSort() {
+    return sort;
+  }
+
+  /**
+   * Returns a mapping from the old document ID to its new location in the
+   * sorted index, or <code>null</code> if the documents of
+   * <code>reader</code> are already sorted. Deleted documents are sorted like
+   * live ones.
+   * <p>
+   * The values to sort on are loaded through the {@link FieldComparator}s of
+   * the {@link SortField}s, one leaf of <code>reader</code> at a time, so
+   * that the {@link org.apache.lucene.search.FieldCache} entries (or doc
+   * values sources) of the leaves are reused.
+   */
+  public DocMap sort(IndexReader reader) throws IOException {
+    final int maxDoc = reader.maxDoc();
+    final SortField[] fields = sort.getSort();
+    final FieldComparator<?>[] comparators = new FieldComparator<?>[fields.length];
+    final int[] reverseMul = new int[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      comparators[i] = fields[i].getComparator(maxDoc, i);
+      reverseMul[i] = fields[i].getReverse() ? -1 : 1;
+    }
+    // one slot per document
+    for (AtomicReaderContext context : reader.leaves()) {
+      final int docBase = context.docBase;
+      final int leafMaxDoc = context.reader().maxDoc();
+      for (int i = 0; i < comparators.length; i++) {
+        comparators[i] = comparators[i].setNextReader(context);
+      }
+      for (int doc = 0; doc < leafMaxDoc; doc++) {
+        for (FieldComparator<?> comparator : comparators) {
+          comparator.copy(docBase + doc, doc);
+        }
+      }
+    }
+
+    final int[] newToOld = new int[maxDoc];
+    for (int i = 0; i < maxDoc; i++) {
+      newToOld[i] = i;
+    }
+    new SorterTemplate() {
+      private int pivot;
+
+      @Override
+      protected void swap(int i, int j) {
+        final int tmp = newToOld[i];
+        newToOld[i] = newToOld[j];
+        newToOld[j] = tmp;
+      }
+
+      @Override
+      protected int compare(int i, int j) {
+        return compareDocs(newToOld[i], newToOld[j]);
+      }
+
+      @Override
+      protected void setPivot(int i) {
+        pivot = newToOld[i];
+      }
+
+      @Override
+      protected int comparePivot(int j) {
+        return compareDocs(pivot, newToOld[j]);
+      }
+
+      private int compareDocs(int doc1, int doc2) {
+        for (int i = 0; i < comparators.length; i++) {
+          final int c = reverseMul[i] * comparators[i].compare(doc1, doc2);
+          if (c != 0) {
+            return c;
+          }
+        }
+        // ties are broken by doc ID, so that equal documents are not
+        // reordered
+        return doc1 < doc2 ? -1 : (doc1 == doc2 ? 0 : 1);
+      }
+    }.quickSort(0, maxDoc - 1);
+
+    boolean sorted = true;
+    for (int i = 0; i < maxDoc; i++) {
+      if (newToOld[i] != i) {
+        sorted = false;
+        break;
+      }
+    }
+    if (sorted) {
+      return null;
+    }
+
+    final int[] oldToNew = new int[maxDoc];
+    for (int i = 0; i < maxDoc; i++) {
+      oldToNew[newToOld[i]] = i;
+    }
+    return new DocMap() {
+      @Override
+      public int oldToNew(int docID) {
+        return oldToNew[docID];
+      }
+
+      @Override
+      public int newToOld(int docID) {
+        return newToOld[docID];
+      }
+
+      @Override
+      public int size() {
+        return maxDoc;
+      }
+    };
+  }
+
+  /** Returns the identifier of this {@link Sorter}, which is recorded in the
+   *  diagnostics of the segments that it sorted. Two sorters that sort
+   *  documents the same way must have the same identifier. */
+  public String getID() {
+    return sort.toString();
+  }
+
+  @Override
+  public String toString() {
+    return getID();
+  }
+}
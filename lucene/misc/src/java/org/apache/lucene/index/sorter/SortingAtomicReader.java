@@ -0,0 +1,685 @@
+package org.apache.lucene.index.sorter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValues.SortedSource;
+import org.apache.lucene.index.DocValues.Source;
+import org.apache.lucene.index.DocValues.Type;
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.FilterAtomicReader;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RAMFile;
+import org.apache.lucene.store.RAMInputStream;
+import org.apache.lucene.store.RAMOutputStream;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.SorterTemplate;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.packed.PackedInts;
+
+/**
+ * An {@link AtomicReader} which presents the documents of another
+ * {@link AtomicReader} in the order of a {@link Sorter}: postings, live docs,
+ * stored fields, term vectors, norms and doc values are all remapped. The
+ * postings of a term are buffered in memory when they are enumerated, so
+ * this reader is meant to be consumed sequentially, e.g. to write a sorted
+ * copy of an index with {@link org.apache.lucene.index.IndexWriter#addIndexes(
+ * org.apache.lucene.index.IndexReader...)} or through
+ * {@link SortingMergePolicy}, rather than to be searched.
+ *
+ * @lucene.experimental
+ */
+public class SortingAtomicReader extends FilterAtomicReader {
+
+  private static class SortingFields extends FilterFields {
+
+    private final Sorter.DocMap docMap;
+    private final FieldInfos infos;
+
+    public SortingFields(final Fields in, FieldInfos infos, Sorter.DocMap docMap) {
+      super(in);
+      this.docMap = docMap;
+      this.infos = infos;
+    }
+
+    @Override
+    public Terms terms(final String field) throws IOException {
+      Terms terms = in.terms(field);
+      if (terms == null) {
+        return null;
+      } else {
+        return new SortingTerms(terms, infos.fieldInfo(field).getIndexOptions(), docMap);
+      }
+    }
+
+  }
+
+  private static class SortingTerms extends FilterTerms {
+
+    private final Sorter.DocMap docMap;
+    private final IndexOptions indexOptions;
+
+    public SortingTerms(final Terms in, IndexOptions indexOptions, final Sorter.DocMap docMap) {
+      super(in);
+      this.docMap = docMap;
+      this.indexOptions = indexOptions;
+    }
+
+    @Override
+    public TermsEnum iterator(final TermsEnum reuse) throws IOException {
+      return new SortingTermsEnum(in.iterator(null), docMap, indexOptions);
+    }
+
+    @Override
+    public TermsEnum intersect(CompiledAutomaton compiled, BytesRef startTerm) throws IOException {
+      return new SortingTermsEnum(in.intersect(compiled, startTerm), docMap, indexOptions);
+    }
+
+  }
+
+  private static class SortingTermsEnum extends FilterTermsEnum {
+
+    private final Sorter.DocMap docMap;
+    private final IndexOptions indexOptions;
+
+    public SortingTermsEnum(final TermsEnum in, Sorter.DocMap docMap, IndexOptions indexOptions) {
+      super(in);
+      this.docMap = docMap;
+      this.indexOptions = indexOptions;
+    }
+
+    Bits newToOld(final Bits liveDocs) {
+      if (liveDocs == null) {
+        return null;
+      }
+      return new Bits() {
+
+        @Override
+        public boolean get(int index) {
+          return liveDocs.get(docMap.oldToNew(index));
+        }
+
+        @Override
+        public int length() {
+          return liveDocs.length();
+        }
+
+      };
+    }
+
+    @Override
+    public DocsEnum docs(Bits liveDocs, DocsEnum reuse, final int flags) throws IOException {
+      final DocsEnum inReuse;
+      final SortingDocsEnum wrapReuse;
+      if (reuse != null && reuse instanceof SortingDocsEnum) {
+        // if we're asked to reuse the given DocsEnum and it is Sorting, return
+        // the wrapped one, since some Codecs expect it.
+        wrapReuse = (SortingDocsEnum) reuse;
+        inReuse = wrapReuse.getWrapped();
+      } else {
+        wrapReuse = null;
+        inReuse = reuse;
+      }
+
+      final DocsEnum inDocs = in.docs(newToOld(liveDocs), inReuse, flags);
+      if (inDocs == null) {
+        return null;
+      }
+      final boolean withFreqs = indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS) >= 0 && (flags & DocsEnum.FLAG_FREQS) != 0;
+      return new SortingDocsEnum(wrapReuse, inDocs, withFreqs, docMap);
+    }
+
+    @Override
+    public DocsAndPositionsEnum docsAndPositions(Bits liveDocs, DocsAndPositionsEnum reuse, final int flags) throws IOException {
+      final DocsAndPositionsEnum inReuse;
+      final SortingDocsAndPositionsEnum wrapReuse;
+      if (reuse != null && reuse instanceof SortingDocsAndPositionsEnum) {
+        // if we're asked to reuse the given DocsEnum and it is Sorting, return
+        // the wrapped one, since some Codecs expect it.
+        wrapReuse = (SortingDocsAndPositionsEnum) reuse;
+        inReuse = wrapReuse.getWrapped();
+      } else {
+        wrapReuse = null;
+        inReuse = reuse;
+      }
+
+      final DocsAndPositionsEnum inDocsAndPositions = in.docsAndPositions(newToOld(liveDocs), inReuse, flags);
+      if (inDocsAndPositions == null) {
+        return null;
+      }
+
+      // we ignore the fact that offsets may be stored but not asked for,
+      // since this code is expected to be used during addIndexes which will
+      // ask for everything. if that assumption changes in the future, we can
+      // factor in whether 'flags' says offsets are not required.
+      final boolean storeOffsets = indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) >= 0;
+      return new SortingDocsAndPositionsEnum(wrapReuse, inDocsAndPositions, docMap, storeOffsets);
+    }
+
+  }
+
+  /** Sorts parallel arrays by their first array, which holds doc IDs. */
+  private static abstract class DocSorterTemplate extends SorterTemplate {
+
+    protected final int[] docs;
+    private int pivot;
+
+    DocSorterTemplate(int[] docs) {
+      this.docs = docs;
+    }
+
+    @Override
+    protected int compare(int i, int j) {
+      return docs[i] - docs[j];
+    }
+
+    @Override
+    protected void setPivot(int i) {
+      pivot = docs[i];
+    }
+
+    @Override
+    protected int comparePivot(int j) {
+      return pivot - docs[j];
+    }
+
+  }
+
+  private static final class SortingDocsEnum extends DocsEnum {
+
+    private final DocsEnum in;
+    private int[] docs;
+    private int[] freqs;
+    private int docIt = -1;
+    private final int upto;
+    private final boolean withFreqs;
+
+    SortingDocsEnum(SortingDocsEnum reuse, final DocsEnum in, boolean withFreqs, final Sorter.DocMap docMap) throws IOException {
+      this.in = in;
+      this.withFreqs = withFreqs;
+      if (reuse != null) {
+        docs = reuse.docs;
+        freqs = reuse.freqs;
+      } else {
+        docs = new int[64];
+        freqs = withFreqs ? new int[64] : null;
+      }
+      int i = 0;
+      int doc;
+      if (withFreqs) {
+        if (freqs == null || freqs.length < docs.length) {
+          freqs = new int[docs.length];
+        }
+        while ((doc = in.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+          if (i >= docs.length) {
+            docs = ArrayUtil.grow(docs, docs.length + 1);
+            freqs = ArrayUtil.grow(freqs, freqs.length + 1);
+          }
+          docs[i] = docMap.oldToNew(doc);
+          freqs[i] = in.freq();
+          ++i;
+        }
+        final int[] freqs = this.freqs;
+        new DocSorterTemplate(docs) {
+          @Override
+          protected void swap(int i, int j) {
+            int tmp = docs[i];
+            docs[i] = docs[j];
+            docs[j] = tmp;
+            tmp = freqs[i];
+            freqs[i] = freqs[j];
+            freqs[j] = tmp;
+          }
+        }.quickSort(0, i - 1);
+      } else {
+        while ((doc = in.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+          if (i >= docs.length) {
+            docs = ArrayUtil.grow(docs, docs.length + 1);
+          }
+          docs[i++] = docMap.oldToNew(doc);
+        }
+        Arrays.sort(docs, 0, i);
+      }
+      upto = i;
+    }
+
+    @Override
+    public int advance(final int target) throws IOException {
+      // need to support it for checkIndex, but in practice it won't be called, so
+      // don't bother to implement efficiently for now.
+      while (nextDoc() < target) {}
+      return docID();
+    }
+
+    @Override
+    public int docID() {
+      return docIt < 0 ? -1 : docIt >= upto ? NO_MORE_DOCS : docs[docIt];
+    }
+
+    @Override
+    public int freq() throws IOException {
+      return withFreqs && docIt < upto ? freqs[docIt] : 1;
+    }
+
+    @Override
+    public int nextDoc() throws IOException {
+      if (++docIt >= upto) return NO_MORE_DOCS;
+      return docs[docIt];
+    }
+
+    @Override
+    public AttributeSource attributes() {
+      return in.attributes();
+    }
+
+    /** Returns the wrapped {@link DocsEnum}. */
+    DocsEnum getWrapped() {
+      return in;
+    }
+  }
+
+  private static final class SortingDocsAndPositionsEnum extends DocsAndPositionsEnum {
+
+    private final DocsAndPositionsEnum in;
+    private final int upto;
+    private final IndexInput postingInput;
+    private final boolean storeOffsets;
+
+    private int docIt = -1;
+    private int pos;
+    private int startOffset = -1;
+    private int endOffset = -1;
+    private final BytesRef payload;
+    private boolean hasPayload;
+    private int currFreq;
+
+    // reused across instances
+    private final RAMFile file;
+    private int[] docs;
+    private long[] offsets;
+
+    SortingDocsAndPositionsEnum(SortingDocsAndPositionsEnum reuse, final DocsAndPositionsEnum in, Sorter.DocMap docMap, boolean storeOffsets) throws IOException {
+      this.in = in;
+      this.storeOffsets = storeOffsets;
+      if (reuse != null) {
+        docs = reuse.docs;
+        offsets = reuse.offsets;
+        payload = reuse.payload;
+        file = reuse.file;
+      } else {
+        docs = new int[32];
+        offsets = new long[32];
+        payload = new BytesRef(32);
+        file = new RAMFile();
+      }
+      final RAMOutputStream out = new RAMOutputStream(file);
+      int doc;
+      int i = 0;
+      while ((doc = in.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        if (i == docs.length) {
+          final int newLength = ArrayUtil.oversize(i + 1, 4);
+          docs = Arrays.copyOf(docs, newLength);
+          offsets = Arrays.copyOf(offsets, newLength);
+        }
+        docs[i] = docMap.oldToNew(doc);
+        offsets[i] = out.getFilePointer();
+        addPositions(in, out);
+        i++;
+      }
+      upto = i;
+      final int[] docs = this.docs;
+      final long[] offsets = this.offsets;
+      new DocSorterTemplate(docs) {
+        @Override
+        protected void swap(int i, int j) {
+          final int tmpDoc = docs[i];
+          docs[i] = docs[j];
+          docs[j] = tmpDoc;
+          final long tmpOffset = offsets[i];
+          offsets[i] = offsets[j];
+          offsets[j] = tmpOffset;
+        }
+      }.quickSort(0, upto - 1);
+      out.close();
+      this.postingInput = new RAMInputStream("", file);
+    }
+
+    private void addPositions(final DocsAndPositionsEnum in, final RAMOutputStream out) throws IOException {
+      int freq = in.freq();
+      out.writeVInt(freq);
+      int previousPosition = 0;
+      int previousEndOffset = 0;
+      for (int i = 0; i < freq; i++) {
+        final int pos = in.nextPosition();
+        final BytesRef payload = in.getPayload();
+        // The low-order bit of token is set only if there is a payload, the
+        // previous bits are the delta-encoded position. 
+        final int token = (pos - previousPosition) << 1 | (payload == null ? 0 : 1);
+        out.writeVInt(token);
+        previousPosition = pos;
+        if (storeOffsets) { // don't encode offsets if they are not stored
+          final int startOffset = in.startOffset();
+          final int endOffset = in.endOffset();
+          out.writeVInt(startOffset - previousEndOffset);
+          out.writeVInt(endOffset - startOffset);
+          previousEndOffset = endOffset;
+        }
+        if (payload != null) {
+          out.writeVInt(payload.length);
+          out.writeBytes(payload.bytes, payload.offset, payload.length);
+        }
+      }
+    }
+
+    @Override
+    public int advance(final int target) throws IOException {
+      // need to support it for checkIndex, but in practice it won't be called, so
+      // don't bother to implement efficiently for now.
+      while (nextDoc() < target) {}
+      return docID();
+    }
+
+    @Override
+    public int docID() {
+      return docIt < 0 ? -1 : docIt >= upto ? NO_MORE_DOCS : docs[docIt];
+    }
+
+    @Override
+    public int endOffset() throws IOException {
+      return endOffset;
+    }
+
+    @Override
+    public int freq() throws IOException {
+      return currFreq;
+    }
+
+    @Override
+    public BytesRef getPayload() throws IOException {
+      return hasPayload ? payload : null;
+    }
+
+    @Override
+    public int nextDoc() throws IOException {
+      if (++docIt >= upto) return DocIdSetIterator.NO_MORE_DOCS;
+      postingInput.seek(offsets[docIt]);
+      currFreq = postingInput.readVInt();
+      // reset variables used in nextPosition
+      pos = 0;
+      startOffset = endOffset = storeOffsets ? 0 : -1;
+      hasPayload = false;
+      return docs[docIt];
+    }
+
+    @Override
+    public int nextPosition() throws IOException {
+      final int token = postingInput.readVInt();
+      pos += token >>> 1;
+      if (storeOffsets) {
+        startOffset = endOffset + postingInput.readVInt();
+        endOffset = startOffset + postingInput.readVInt();
+      }
+      hasPayload = (token & 1) != 0;
+      if (hasPayload) {
+        payload.offset = 0;
+        payload.length = postingInput.readVInt();
+        if (payload.length > payload.bytes.length) {
+          payload.bytes = new byte[ArrayUtil.oversize(payload.length, 1)];
+        }
+        postingInput.readBytes(payload.bytes, 0, payload.length);
+      }
+      return pos;
+    }
+
+    @Override
+    public int startOffset() throws IOException {
+      return startOffset;
+    }
+
+    @Override
+    public AttributeSource attributes() {
+      return in.attributes();
+    }
+
+    /** Returns the wrapped {@link DocsAndPositionsEnum}. */
+    DocsAndPositionsEnum getWrapped() {
+      return in;
+    }
+  }
+
+  /** Remaps the documents of a {@link Source}. */
+  private static class SortingSource extends Source {
+
+    private final Source in;
+    private final Sorter.DocMap docMap;
+
+    SortingSource(Source in, Sorter.DocMap docMap) {
+      super(in.getType());
+      this.in = in;
+      this.docMap = docMap;
+    }
+
+    @Override
+    public long getInt(int docID) {
+      return in.getInt(docMap.newToOld(docID));
+    }
+
+    @Override
+    public double getFloat(int docID) {
+      return in.getFloat(docMap.newToOld(docID));
+    }
+
+    @Override
+    public BytesRef getBytes(int docID, BytesRef ref) {
+      return in.getBytes(docMap.newToOld(docID), ref);
+    }
+
+    @Override
+    public SortedSource asSortedSource() {
+      return new SortingSortedSource(in.asSortedSource(), docMap);
+    }
+  }
+
+  /** Remaps the documents of a {@link SortedSource}, ords are unchanged. */
+  private static class SortingSortedSource extends SortedSource {
+
+    private final SortedSource in;
+    private final Sorter.DocMap docMap;
+
+    SortingSortedSource(SortedSource in, Sorter.DocMap docMap) {
+      super(in.getType(), in.getComparator());
+      this.in = in;
+      this.docMap = docMap;
+    }
+
+    @Override
+    public int ord(int docID) {
+      return in.ord(docMap.newToOld(docID));
+    }
+
+    @Override
+    public BytesRef getByOrd(int ord, BytesRef result) {
+      return in.getByOrd(ord, result);
+    }
+
+    @Override
+    public int getOrdByValue(BytesRef value, BytesRef spare) {
+      return in.getOrdByValue(value, spare);
+    }
+
+    @Override
+    public PackedInts.Reader getDocToOrd() {
+      // hasPackedDocToOrd() is false
+      return null;
+    }
+
+    @Override
+    public int getValueCount() {
+      return in.getValueCount();
+    }
+  }
+
+  private static Source wrap(Source source, Sorter.DocMap docMap) {
+    if (source instanceof SortedSource) {
+      return new SortingSortedSource((SortedSource) source, docMap);
+    } else {
+      return new SortingSource(source, docMap);
+    }
+  }
+
+  /** Remaps the documents of a {@link DocValues} instance. */
+  private static class SortingDocValues extends DocValues {
+
+    private final DocValues in;
+    private final Sorter.DocMap docMap;
+
+    SortingDocValues(DocValues in, Sorter.DocMap docMap) {
+      this.in = in;
+      this.docMap = docMap;
+    }
+
+    @Override
+    protected Source loadSource() throws IOException {
+      return wrap(in.getSource(), docMap);
+    }
+
+    @Override
+    protected Source loadDirectSource() throws IOException {
+      return wrap(in.getDirectSource(), docMap);
+    }
+
+    @Override
+    public Type getType() {
+      return in.getType();
+    }
+
+    @Override
+    public int getValueSize() {
+      return in.getValueSize();
+    }
+  }
+
+  /** Return a sorted view of <code>reader</code> according to the order
+   *  defined by <code>sorter</code>. If the reader is already sorted, this
+   *  method might return the reader as-is. */
+  public static AtomicReader wrap(AtomicReader reader, Sorter sorter) throws IOException {
+    final Sorter.DocMap docMap = sorter.sort(reader);
+    if (docMap == null) {
+      // the reader is already sorted
+      return reader;
+    }
+    return wrap(reader, docMap);
+  }
+
+  /** Expert: same as {@link #wrap(AtomicReader, Sorter)} but operates
+   *  directly on a {@link Sorter.DocMap}. */
+  public static AtomicReader wrap(AtomicReader reader, Sorter.DocMap docMap) {
+    if (docMap.size() != reader.maxDoc()) {
+      throw new IllegalArgumentException("reader.maxDoc() should be equal to docMap.size(), got " + reader.maxDoc() + " != " + docMap.size());
+    }
+    return new SortingAtomicReader(reader, docMap);
+  }
+
+  final Sorter.DocMap docMap; // pkg-protected to avoid synthetic accessor methods
+
+  private SortingAtomicReader(final AtomicReader in, final Sorter.DocMap docMap) {
+    super(in);
+    this.docMap = docMap;
+  }
+
+  @Override
+  public void document(final int docID, final StoredFieldVisitor visitor) throws IOException {
+    in.document(docMap.newToOld(docID), visitor);
+  }
+
+  @Override
+  public Fields fields() throws IOException {
+    Fields fields = in.fields();
+    if (fields == null) {
+      return null;
+    } else {
+      return new SortingFields(fields, in.getFieldInfos(), docMap);
+    }
+  }
+
+  @Override
+  public Bits getLiveDocs() {
+    final Bits inLiveDocs = in.getLiveDocs();
+    if (inLiveDocs == null) {
+      return null;
+    }
+    return new Bits() {
+
+      @Override
+      public boolean get(int index) {
+        return inLiveDocs.get(docMap.newToOld(index));
+      }
+
+      @Override
+      public int length() {
+        return inLiveDocs.length();
+      }
+
+    };
+  }
+
+  @Override
+  public DocValues docValues(String field) throws IOException {
+    final DocValues values = in.docValues(field);
+    return values == null ? null : new SortingDocValues(values, docMap);
+  }
+
+  @Override
+  public DocValues normValues(String field) throws IOException {
+    final DocValues norms = in.normValues(field);
+    return norms == null ? null : new SortingDocValues(norms, docMap);
+  }
+
+  @Override
+  public Fields getTermVectors(final int docID) throws IOException {
+    return in.getTermVectors(docMap.newToOld(docID));
+  }
+
+  @Override
+  public Object getCoreCacheKey() {
+    // documents are reordered, this reader can't share cache entries with
+    // the wrapped one
+    return this;
+  }
+
+  @Override
+  public Object getCombinedCoreAndDeletesKey() {
+    return this;
+  }
+
+}
@@ -0,0 +1,249 @@
+package org.apache.lucene.index.sorter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.SegmentInfoPerCommit;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.packed.PackedInts;
+
+/** A {@link MergePolicy} that reorders documents according to a {@link Sort}
+ *  before merging them. As a consequence, all segments resulting from a merge
+ *  will be sorted while segments resulting from a flush will be in the order
+ *  in which documents have been added.
+ *  <p>Sorted segments are recorded in the diagnostics of their
+ *  {@link org.apache.lucene.index.SegmentInfo}, see
+ *  {@link #isSorted(AtomicReader, Sorter)}. This is what
+ *  {@link EarlyTerminatingSortingCollector} relies on to stop collecting
+ *  documents of a segment early.
+ *  <p><b>NOTE</b>: Never use this {@link MergePolicy} if you rely on
+ *  {@link IndexWriter#addDocuments(Iterable, org.apache.lucene.analysis.Analyzer)}
+ *  to have sequentially-assigned doc IDs, this policy will scatter doc IDs.
+ *  <p><b>NOTE</b>: This {@link MergePolicy} should only be used with idempotent
+ *  {@link Sort}s so that the order of segments is predictable. For example,
+ *  using {@link Sort#INDEXORDER} in reverse (which is not idempotent) will make
+ *  the order of documents in a segment depend on the number of times the segment
+ *  has been merged.
+ *  @lucene.experimental */
+public final class SortingMergePolicy extends MergePolicy {
+
+  /**
+   * Put in the {@link org.apache.lucene.index.SegmentInfo#getDiagnostics()
+   * diagnostics} to denote that this segment is sorted.
+   */
+  public static final String SORTER_ID_PROP = "sorter";
+  
+  class SortingOneMerge extends OneMerge {
+
+    List<AtomicReader> unsortedReaders;
+    AtomicReader unsortedView;
+    Sorter.DocMap docMap;
+
+    SortingOneMerge(List<SegmentInfoPerCommit> segments) {
+      super(segments);
+    }
+
+    @Override
+    public List<AtomicReader> getMergeReaders() throws IOException {
+      if (unsortedReaders == null) {
+        unsortedReaders = super.getMergeReaders();
+        if (unsortedReaders.isEmpty()) {
+          return unsortedReaders;
+        }
+        final IndexReader topView;
+        if (unsortedReaders.size() == 1) {
+          topView = unsortedView = unsortedReaders.get(0);
+        } else {
+          // the MultiReader doesn't incRef the merge readers, they are
+          // released by IndexWriter
+          topView = new MultiReader(unsortedReaders.toArray(new AtomicReader[unsortedReaders.size()]));
+          unsortedView = SlowCompositeReaderWrapper.wrap(topView);
+        }
+        // sort the segment readers rather than the atomic view so that their
+        // field cache entries are reused
+        docMap = sorter.sort(topView);
+      }
+      if (unsortedReaders.isEmpty()) {
+        return unsortedReaders;
+      }
+      final AtomicReader sortedView;
+      if (docMap == null) {
+        // already sorted
+        sortedView = unsortedView;
+      } else {
+        sortedView = SortingAtomicReader.wrap(unsortedView, docMap);
+      }
+      return Collections.singletonList(sortedView);
+    }
+    
+    @Override
+    public void setInfo(SegmentInfoPerCommit info) {
+      Map<String,String> diagnostics = info.info.getDiagnostics();
+      diagnostics.put(SORTER_ID_PROP, sorter.getID());
+      super.setInfo(info);
+    }
+
+    @Override
+    public DocMap getDocMap() {
+      if (docMap == null) {
+        return super.getDocMap();
+      }
+      // docMap maps doc IDs including deleted documents, but the merged
+      // segment only has the documents that were live when the merge started
+      final Bits liveDocs = unsortedView.getLiveDocs();
+      final int maxDoc = docMap.size();
+      final int numDocs = unsortedView.numDocs();
+      final PackedInts.Mutable newToMerged = PackedInts.getMutable(maxDoc, PackedInts.bitsRequired(Math.max(0, numDocs - 1)), PackedInts.COMPACT);
+      int mergedDoc = 0;
+      for (int newDoc = 0; newDoc < maxDoc; ++newDoc) {
+        if (liveDocs == null || liveDocs.get(docMap.newToOld(newDoc))) {
+          newToMerged.set(newDoc, mergedDoc++);
+        }
+      }
+      assert mergedDoc == numDocs;
+      final PackedInts.Mutable naturalToMerged = PackedInts.getMutable(numDocs, newToMerged.getBitsPerValue(), PackedInts.COMPACT);
+      int naturalDoc = 0;
+      for (int oldDoc = 0; oldDoc < maxDoc; ++oldDoc) {
+        if (liveDocs == null || liveDocs.get(oldDoc)) {
+          naturalToMerged.set(naturalDoc++, newToMerged.get(docMap.oldToNew(oldDoc)));
+        }
+      }
+      return new DocMap() {
+        @Override
+        public int map(int docID) {
+          return (int) naturalToMerged.get(docID);
+        }
+      };
+    }
+    
+  }
+
+  class SortingMergeSpecification extends MergeSpecification {
+
+    @Override
+    public void add(OneMerge merge) {
+      super.add(new SortingOneMerge(merge.segments));
+    }
+
+    @Override
+    public String segString(Directory dir) {
+      return "SortingMergeSpec(" + super.segString(dir) + ", sorter=" + sorter + ")";
+    }
+
+  }
+
+  /** Returns true if the given reader is sorted by the given sorter. */
+  public static boolean isSorted(AtomicReader reader, Sorter sorter) {
+    if (reader instanceof SegmentReader) {
+      final SegmentReader segReader = (SegmentReader) reader;
+      final Map<String, String> diagnostics = segReader.getSegmentInfo().info.getDiagnostics();
+      if (diagnostics != null && sorter.getID().equals(diagnostics.get(SORTER_ID_PROP))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private MergeSpecification sortedMergeSpecification(MergeSpecification specification) {
+    if (specification == null) {
+      return null;
+    }
+    MergeSpecification sortingSpec = new SortingMergeSpecification();
+    for (OneMerge merge : specification.merges) {
+      sortingSpec.add(merge);
+    }
+    return sortingSpec;
+  }
+
+  final MergePolicy in;
+  final Sorter sorter;
+  final Sort sort;
+
+  /** Create a new {@link MergePolicy} that sorts documents with <code>sort</code>. */
+  public SortingMergePolicy(MergePolicy in, Sort sort) {
+    this.in = in;
+    this.sorter = new Sorter(sort);
+    this.sort = sort;
+  }
+
+  /** Return the {@link Sort} of this {@link MergePolicy}. */
+  public Sort getSort() {
+    return sort;
+  }
+
+  @Override
+  public MergeSpecification findMerges(MergeTrigger mergeTrigger,
+      SegmentInfos segmentInfos) throws IOException {
+    return sortedMergeSpecification(in.findMerges(mergeTrigger, segmentInfos));
+  }
+
+  @Override
+  public MergeSpecification findForcedMerges(SegmentInfos segmentInfos,
+      int maxSegmentCount, Map<SegmentInfoPerCommit,Boolean> segmentsToMerge)
+      throws IOException {
+    return sortedMergeSpecification(in.findForcedMerges(segmentInfos, maxSegmentCount, segmentsToMerge));
+  }
+
+  @Override
+  public MergeSpecification findForcedDeletesMerges(SegmentInfos segmentInfos)
+      throws IOException {
+    return sortedMergeSpecification(in.findForcedDeletesMerges(segmentInfos));
+  }
+
+  @Override
+  public MergePolicy clone() {
+    return new SortingMergePolicy(in.clone(), sort);
+  }
+
+  @Override
+  public void close() {
+    in.close();
+  }
+
+  @Override
+  public boolean useCompoundFile(SegmentInfos segments,
+      SegmentInfoPerCommit newSegment) throws IOException {
+    return in.useCompoundFile(segments, newSegment);
+  }
+
+  @Override
+  public void setIndexWriter(IndexWriter writer) {
+    super.setIndexWriter(writer);
+    in.setIndexWriter(writer);
+  }
+
+  @Override
+  public String toString() {
+    return "SortingMergePolicy(" + in + ", sorter=" + sorter + ")";
+  }
+
+}
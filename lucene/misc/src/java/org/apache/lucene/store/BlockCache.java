@@ -0,0 +1,340 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of fixed-size blocks of file data, stored off-heap in direct
+ * {@link ByteBuffer}s, used by {@link BlockCacheDirectory}. A single
+ * cache can be shared by several directories.
+ *
+ * <p>All blocks are allocated up-front. Once the cache is full, a block is
+ * evicted with the CLOCK algorithm (an approximation of LRU): every hit
+ * marks its block as referenced, and the clock hand sweeps over the blocks,
+ * clearing the referenced marks, until it finds one that was not
+ * referenced since the last sweep.
+ *
+ * <p>Lookups don't take a global lock: the block of a key is found through a
+ * {@link ConcurrentHashMap}, and its data is copied while holding one of a
+ * fixed number of block locks, which eviction must also hold to replace the
+ * block. The blocks of each file are also indexed per file, so that
+ * evicting a deleted or rewritten file only visits its own blocks.
+ *
+ * @lucene.experimental
+ */
+public class BlockCache {
+
+  /** Default size of a block (8 KB). */
+  public static final int DEFAULT_BLOCK_SIZE = 8192;
+
+  private static final int NUM_BLOCK_LOCKS = 64;
+  private static final int MAX_SLAB_BYTES = 1 << 27;
+
+  private final int blockSize;
+  private final int numBlocks;
+  private final int blocksPerSlab;
+  private final ByteBuffer[] slabs;
+
+  private final ConcurrentHashMap<BlockKey,Integer> blocks;
+  // guarded by the block lock of each block:
+  private final BlockKey[] keys;
+  private final int[] lengths;
+  // written without synchronization, a lost update only costs accuracy
+  private final boolean[] referenced;
+  private final Object[] blockLocks = new Object[NUM_BLOCK_LOCKS];
+  // guarded by this:
+  private final Map<FileKey,Set<Integer>> fileBlocks = new HashMap<FileKey,Set<Integer>>();
+  private int clockHand;
+  private int numUsed;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong storeCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * Creates a cache holding up to <code>maxBytes</code> bytes in blocks of
+   * <code>blockSize</code> bytes. The memory is allocated right away.
+   */
+  public BlockCache(long maxBytes, int blockSize) {
+    if (blockSize <= 0 || Integer.bitCount(blockSize) != 1) {
+      throw new IllegalArgumentException("blockSize must be a power of 2 (got " + blockSize + ")");
+    }
+    if (maxBytes < blockSize) {
+      throw new IllegalArgumentException("maxBytes must be at least blockSize=" + blockSize + " (got " + maxBytes + ")");
+    }
+    if (maxBytes / blockSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("too many blocks: maxBytes=" + maxBytes + " blockSize=" + blockSize);
+    }
+    this.blockSize = blockSize;
+    this.numBlocks = (int) (maxBytes / blockSize);
+    this.blocksPerSlab = Math.max(1, MAX_SLAB_BYTES / blockSize);
+    final int numSlabs = (numBlocks + blocksPerSlab - 1) / blocksPerSlab;
+    slabs = new ByteBuffer[numSlabs];
+    for (int i = 0; i < numSlabs; i++) {
+      final int slabBlocks = Math.min(blocksPerSlab, numBlocks - i * blocksPerSlab);
+      slabs[i] = ByteBuffer.allocateDirect(slabBlocks * blockSize);
+    }
+    blocks = new ConcurrentHashMap<BlockKey,Integer>(numBlocks);
+    keys = new BlockKey[numBlocks];
+    lengths = new int[numBlocks];
+    referenced = new boolean[numBlocks];
+    for (int i = 0; i < NUM_BLOCK_LOCKS; i++) {
+      blockLocks[i] = new Object();
+    }
+  }
+
+  /** Creates a cache holding up to <code>maxBytes</code> bytes in blocks of
+   *  {@link #DEFAULT_BLOCK_SIZE} bytes. */
+  public BlockCache(long maxBytes) {
+    this(maxBytes, DEFAULT_BLOCK_SIZE);
+  }
+
+  /** Returns the size of a block. */
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /** Returns the number of blocks this cache can hold. */
+  public int getNumBlocks() {
+    return numBlocks;
+  }
+
+  /**
+   * Copies <code>length</code> bytes, starting at <code>blockOffset</code>
+   * in the cached block, into <code>dest</code>. Returns false if the block
+   * is not cached, or is shorter than requested.
+   */
+  boolean fetch(BlockKey key, int blockOffset, byte[] dest, int destOffset, int length) {
+    final Integer block = blocks.get(key);
+    if (block != null) {
+      final int i = block.intValue();
+      synchronized (blockLock(i)) {
+        // the block may have been evicted in the meantime
+        if (key.equals(keys[i]) && blockOffset + length <= lengths[i]) {
+          final ByteBuffer data = slabs[i / blocksPerSlab].duplicate();
+          data.position((i % blocksPerSlab) * blockSize + blockOffset);
+          data.get(dest, destOffset, length);
+          referenced[i] = true;
+          hitCount.incrementAndGet();
+          return true;
+        }
+      }
+    }
+    missCount.incrementAndGet();
+    return false;
+  }
+
+  /** Caches the <code>length</code> first bytes of <code>src</code> as the
+   *  data of the given block. */
+  void store(BlockKey key, byte[] src, int length) {
+    assert length <= blockSize;
+    if (blocks.containsKey(key)) {
+      return;
+    }
+    synchronized (this) {
+      if (blocks.containsKey(key)) {
+        return;
+      }
+      final int i = nextFreeBlock();
+      synchronized (blockLock(i)) {
+        final ByteBuffer data = slabs[i / blocksPerSlab].duplicate();
+        data.position((i % blocksPerSlab) * blockSize);
+        data.put(src, 0, length);
+        keys[i] = key;
+        lengths[i] = length;
+        referenced[i] = false;
+      }
+      blocks.put(key, Integer.valueOf(i));
+      final FileKey fileKey = new FileKey(key.dirKey, key.fileName);
+      Set<Integer> ids = fileBlocks.get(fileKey);
+      if (ids == null) {
+        ids = new HashSet<Integer>();
+        fileBlocks.put(fileKey, ids);
+      }
+      ids.add(Integer.valueOf(i));
+      storeCount.incrementAndGet();
+    }
+  }
+
+  /** Removes all blocks of the given file. */
+  void evict(Object dirKey, String fileName) {
+    synchronized (this) {
+      final Set<Integer> ids = fileBlocks.remove(new FileKey(dirKey, fileName));
+      if (ids != null) {
+        for (Integer i : ids) {
+          clearBlock(i.intValue());
+        }
+      }
+    }
+  }
+
+  /** Returns the number of blocks that are currently cached. */
+  public synchronized int getNumUsedBlocks() {
+    return numUsed;
+  }
+
+  /** Returns the number of reads that were served from the cache. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** Returns the number of reads that were not found in the cache. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /** Returns the number of blocks that were added to the cache. */
+  public long getStoreCount() {
+    return storeCount.get();
+  }
+
+  /** Returns the number of blocks that were evicted to make room for
+   *  other blocks. */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /** Returns the ratio of reads served from the cache, or 0 if nothing was
+   *  read yet. */
+  public double getHitRatio() {
+    final long hits = hitCount.get();
+    final long lookups = hits + missCount.get();
+    return lookups == 0 ? 0.0 : (double) hits / lookups;
+  }
+
+  @Override
+  public String toString() {
+    return "BlockCache(blockSize=" + blockSize + " numBlocks=" + numBlocks + " hits=" + getHitCount()
+        + " misses=" + getMissCount() + " evictions=" + getEvictionCount() + ")";
+  }
+
+  private Object blockLock(int block) {
+    return blockLocks[block & (NUM_BLOCK_LOCKS - 1)];
+  }
+
+  private int nextFreeBlock() {
+    assert Thread.holdsLock(this);
+    while (true) {
+      final int i = clockHand;
+      clockHand = clockHand + 1 == numBlocks ? 0 : clockHand + 1;
+      if (keys[i] == null) {
+        numUsed++;
+        return i;
+      }
+      if (referenced[i]) {
+        // give it another chance
+        referenced[i] = false;
+      } else {
+        clearBlock(i);
+        evictionCount.incrementAndGet();
+        numUsed++;
+        return i;
+      }
+    }
+  }
+
+  private void clearBlock(int i) {
+    assert Thread.holdsLock(this);
+    final BlockKey key = keys[i];
+    final FileKey fileKey = new FileKey(key.dirKey, key.fileName);
+    final Set<Integer> ids = fileBlocks.get(fileKey);
+    // null if evict already took the whole file out of the index
+    if (ids != null) {
+      ids.remove(Integer.valueOf(i));
+      if (ids.isEmpty()) {
+        fileBlocks.remove(fileKey);
+      }
+    }
+    synchronized (blockLock(i)) {
+      blocks.remove(key);
+      keys[i] = null;
+      lengths[i] = 0;
+    }
+    numUsed--;
+  }
+
+  /** Identifies a file of a given directory. */
+  static final class FileKey {
+    final Object dirKey;
+    final String fileName;
+
+    FileKey(Object dirKey, String fileName) {
+      this.dirKey = dirKey;
+      this.fileName = fileName;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(dirKey) + fileName.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof FileKey)) {
+        return false;
+      }
+      final FileKey o = (FileKey) other;
+      return dirKey == o.dirKey && fileName.equals(o.fileName);
+    }
+  }
+
+  /** Identifies a block of a file of a given directory. The
+   *  <code>dirKey</code> is compared by identity; {@link
+   *  BlockCacheDirectory} uses one per version of each file. */
+  static final class BlockKey {
+    final Object dirKey;
+    final String fileName;
+    final long block;
+    private final int hashCode;
+
+    BlockKey(Object dirKey, String fileName, long block) {
+      this.dirKey = dirKey;
+      this.fileName = fileName;
+      this.block = block;
+      this.hashCode = 31 * (31 * System.identityHashCode(dirKey) + fileName.hashCode()) + (int) (block ^ (block >>> 32));
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof BlockKey)) {
+        return false;
+      }
+      final BlockKey o = (BlockKey) other;
+      return dirKey == o.dirKey && block == o.block && fileName.equals(o.fileName);
+    }
+  }
+}
@@ -0,0 +1,321 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.store.BlockCache.BlockKey;
+import org.apache.lucene.store.IOContext.Context;
+
+/**
+ * Wraps a {@link BlockCache} around any provided delegate directory, so that
+ * the hot parts of the index files are read from off-heap memory instead of
+ * the delegate.
+ *
+ * <p>This is meant to be used with {@link NIOFSDirectory} or
+ * {@link SimpleFSDirectory}, when {@link MMapDirectory} is not an option
+ * (for instance because the number of memory maps is limited) or when the
+ * application wants to control which files stay in memory, regardless of
+ * the OS cache.
+ *
+ * <p>Reads are done one block at a time: a block that is not in the cache
+ * is read from the delegate and added to the cache. Only files that are
+ * admitted by {@link #doCacheRead} populate the cache; by default these are
+ * all files with one of the extensions passed to the constructor, as long
+ * as they are not read for merging. Files inside compound files are
+ * admitted based on the extension of the sub-file.
+ *
+ * <p>Blocks are cached per version of a file: when a file is deleted or
+ * overwritten, its blocks are evicted, and inputs that are still open on
+ * the previous version keep reading and caching blocks that inputs opened
+ * on the new version never see.
+ *
+ * <p>Here's a simple example usage:
+ *
+ * <pre class="prettyprint">
+ *   Directory fsDir = new NIOFSDirectory(new File("/path/to/index"));
+ *   BlockCache cache = new BlockCache(512 * 1024 * 1024);
+ *   Set&lt;String&gt; extensions = new HashSet&lt;String&gt;(Arrays.asList("tip", "tim", "doc"));
+ *   Directory dir = new BlockCacheDirectory(fsDir, cache, extensions);
+ * </pre>
+ *
+ * @lucene.experimental
+ */
+public class BlockCacheDirectory extends Directory {
+
+  private final Directory delegate;
+  private final BlockCache cache;
+  private final Set<String> extensions;
+  // identity of the current version of each file, which the blocks of
+  // that version are cached under
+  private final Map<String,Object> fileKeys = new HashMap<String,Object>();
+
+  /**
+   * Creates a new BlockCacheDirectory.
+   *
+   * @param delegate the directory to read from on cache misses, and to
+   *        delegate all other operations to
+   * @param cache the cache, which may be shared with other directories
+   * @param extensions the extensions of the files to cache, or
+   *        <code>null</code> to cache all files
+   */
+  public BlockCacheDirectory(Directory delegate, BlockCache cache, Set<String> extensions) {
+    this.delegate = delegate;
+    this.cache = cache;
+    this.extensions = extensions == null ? null : Collections.unmodifiableSet(new HashSet<String>(extensions));
+  }
+
+  public Directory getDelegate() {
+    return delegate;
+  }
+
+  public BlockCache getCache() {
+    return cache;
+  }
+
+  @Override
+  public LockFactory getLockFactory() {
+    return delegate.getLockFactory();
+  }
+
+  @Override
+  public void setLockFactory(LockFactory lf) throws IOException {
+    delegate.setLockFactory(lf);
+  }
+
+  @Override
+  public String getLockID() {
+    return delegate.getLockID();
+  }
+
+  @Override
+  public Lock makeLock(String name) {
+    return delegate.makeLock(name);
+  }
+
+  @Override
+  public void clearLock(String name) throws IOException {
+    delegate.clearLock(name);
+  }
+
+  @Override
+  public String toString() {
+    return "BlockCacheDirectory(" + delegate + "; " + cache + ")";
+  }
+
+  @Override
+  public String[] listAll() throws IOException {
+    return delegate.listAll();
+  }
+
+  @Override
+  public boolean fileExists(String name) throws IOException {
+    return delegate.fileExists(name);
+  }
+
+  @Override
+  public void deleteFile(String name) throws IOException {
+    dropFileKey(name);
+    delegate.deleteFile(name);
+  }
+
+  @Override
+  public long fileLength(String name) throws IOException {
+    return delegate.fileLength(name);
+  }
+
+  @Override
+  public IndexOutput createOutput(String name, IOContext context) throws IOException {
+    // the file may be overwritten, eg. segments.gen
+    dropFileKey(name);
+    return delegate.createOutput(name, context);
+  }
+
+  @Override
+  public void sync(Collection<String> fileNames) throws IOException {
+    delegate.sync(fileNames);
+  }
+
+  @Override
+  public IndexInput openInput(String name, IOContext context) throws IOException {
+    ensureOpen();
+    final IndexInput in = delegate.openInput(name, context);
+    return new BlockCacheIndexInput("BlockCacheIndexInput(" + in + ")", fileKey(name), name, in, 0L, in.length(), doCacheRead(name, context));
+  }
+
+  @Override
+  public IndexInputSlicer createSlicer(final String name, final IOContext context) throws IOException {
+    ensureOpen();
+    return new IndexInputSlicer() {
+      private final IndexInput base = delegate.openInput(name, context);
+      private final Object fileKey = fileKey(name);
+
+      @Override
+      public IndexInput openSlice(String sliceDescription, long offset, long length) throws IOException {
+        // blocks are keyed on the offsets in the compound file, so that
+        // sub-files share the blocks they have in common
+        return new BlockCacheIndexInput("BlockCacheIndexInput(" + sliceDescription + " in " + base + ")",
+            fileKey, name, base.clone(), offset, length, doCacheRead(sliceDescription, context));
+      }
+
+      @Override
+      public void close() throws IOException {
+        base.close();
+      }
+    };
+  }
+
+  /** Closes the delegate. Blocks of this directory stay in the cache until
+   *  they are evicted. */
+  @Override
+  public void close() throws IOException {
+    isOpen = false;
+    delegate.close();
+  }
+
+  /** Returns the identity of the current version of this file. */
+  private Object fileKey(String name) {
+    synchronized (fileKeys) {
+      Object fileKey = fileKeys.get(name);
+      if (fileKey == null) {
+        fileKey = new Object();
+        fileKeys.put(name, fileKey);
+      }
+      return fileKey;
+    }
+  }
+
+  /** Evicts the blocks of the current version of this file, and makes
+   *  inputs opened from now on use a new version. */
+  private void dropFileKey(String name) {
+    final Object fileKey;
+    synchronized (fileKeys) {
+      fileKey = fileKeys.remove(name);
+    }
+    if (fileKey != null) {
+      cache.evict(fileKey, name);
+    }
+  }
+
+  /** Subclass can override this to customize logic; return
+   *  true if blocks read from this file should be added to
+   *  the cache. Blocks that are already cached are used
+   *  either way. */
+  protected boolean doCacheRead(String name, IOContext context) {
+    if (context.context == Context.MERGE) {
+      // merges read every file once, don't let them evict hot blocks
+      return false;
+    }
+    return extensions == null || extensions.contains(FileSwitchDirectory.getExtension(name));
+  }
+
+  private final class BlockCacheIndexInput extends BufferedIndexInput {
+    private final Object fileKey;
+    private final String fileName;
+    private final long fileOffset;
+    private final long length;
+    private final boolean cacheMisses;
+    private IndexInput in;
+    private boolean isClone;
+    // block being read from the delegate, allocated lazily
+    private byte[] block;
+
+    BlockCacheIndexInput(String resourceDescription, Object fileKey, String fileName, IndexInput in,
+                         long fileOffset, long length, boolean cacheMisses) {
+      super(resourceDescription, cache.getBlockSize());
+      this.fileKey = fileKey;
+      this.fileName = fileName;
+      this.in = in;
+      this.fileOffset = fileOffset;
+      this.length = length;
+      this.cacheMisses = cacheMisses;
+    }
+
+    @Override
+    protected void readInternal(byte[] b, int offset, int len) throws IOException {
+      long pos = fileOffset + getFilePointer();
+      if (getFilePointer() + len > length) {
+        throw new EOFException("read past EOF: " + this);
+      }
+      final int blockSize = cache.getBlockSize();
+      while (len > 0) {
+        final long blockIndex = pos / blockSize;
+        final int blockOffset = (int) (pos % blockSize);
+        final int chunk = Math.min(len, blockSize - blockOffset);
+        final BlockKey key = new BlockKey(fileKey, fileName, blockIndex);
+        if (!cache.fetch(key, blockOffset, b, offset, chunk)) {
+          readBlock(key, blockIndex * blockSize, blockOffset, b, offset, chunk);
+        }
+        pos += chunk;
+        offset += chunk;
+        len -= chunk;
+      }
+    }
+
+    private void readBlock(BlockKey key, long blockStart, int blockOffset, byte[] b, int offset, int len) throws IOException {
+      if (!cacheMisses) {
+        in.seek(blockStart + blockOffset);
+        in.readBytes(b, offset, len);
+        return;
+      }
+      // read the whole block; the delegate input may span more than this
+      // slice, so the block may extend beyond it
+      final int blockLength = (int) Math.min(cache.getBlockSize(), in.length() - blockStart);
+      if (block == null) {
+        block = new byte[cache.getBlockSize()];
+      }
+      in.seek(blockStart);
+      in.readBytes(block, 0, blockLength);
+      cache.store(key, block, blockLength);
+      System.arraycopy(block, blockOffset, b, offset, len);
+    }
+
+    @Override
+    protected void seekInternal(long pos) {
+      // blocks are looked up by position
+    }
+
+    @Override
+    public long length() {
+      return length;
+    }
+
+    @Override
+    public BlockCacheIndexInput clone() {
+      final BlockCacheIndexInput clone = (BlockCacheIndexInput) super.clone();
+      clone.in = in.clone();
+      clone.isClone = true;
+      clone.block = null;
+      return clone;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!isClone) {
+        in.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,239 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.store.IOContext.Context;
+
+/**
+ * A {@link MMapDirectory} that tells the OS how the mapped files are going
+ * to be accessed, using <code>madvise</code> and <code>mlock</code> on the
+ * mapped buffers:
+ * <ul>
+ *   <li>Files opened for merging are advised as sequential, so that the
+ *       kernel reads ahead aggressively and drops their pages soon after they
+ *       have been read, instead of evicting pages searches depend on.</li>
+ *   <li>Files with one of the {@link #setPrefetchExtensions prefetch
+ *       extensions} (by default the terms dictionary and terms index) are
+ *       loaded into the page cache as soon as they are opened for
+ *       searching.</li>
+ *   <li>Files with one of the {@link #setLockedExtensions locked extensions}
+ *       are locked into RAM for as long as they are open for searching, so
+ *       that they can never be paged out. Locking memory is usually limited
+ *       by <code>ulimit -l</code>; if the limit is exceeded, opening the
+ *       file fails with an {@link IOException}.</li>
+ * </ul>
+ * Files inside compound files are handled the same way, based on the
+ * extension of the sub-file.
+ *
+ * <p>See <a
+ * href="{@docRoot}/overview-summary.html#NativeUnixDirectory">Overview</a>
+ * for how to compile the native library this directory depends on.
+ *
+ * @lucene.experimental
+ */
+public class NativeMMapDirectory extends MMapDirectory {
+
+  /** Default extensions of the files that are loaded into the page cache
+   *  when they are opened for searching: the terms index and terms
+   *  dictionary. */
+  public static final Set<String> DEFAULT_PREFETCH_EXTENSIONS =
+      Collections.unmodifiableSet(new HashSet<String>(Arrays.asList("tip", "tim")));
+
+  private volatile Set<String> prefetchExtensions = DEFAULT_PREFETCH_EXTENSIONS;
+  private volatile Set<String> lockedExtensions = Collections.emptySet();
+
+  /** Create a new NativeMMapDirectory for the named location.
+   *
+   * @param path the path of the directory
+   * @param lockFactory the lock factory to use, or null for the default
+   * ({@link NativeFSLockFactory});
+   * @throws IOException if there is a low-level I/O error
+   */
+  public NativeMMapDirectory(File path, LockFactory lockFactory) throws IOException {
+    super(path, lockFactory);
+  }
+
+  /** Create a new NativeMMapDirectory for the named location and {@link NativeFSLockFactory}.
+   *
+   * @param path the path of the directory
+   * @throws IOException if there is a low-level I/O error
+   */
+  public NativeMMapDirectory(File path) throws IOException {
+    super(path);
+  }
+
+  /** Create a new NativeMMapDirectory for the named location, specifying the
+   * maximum chunk size used for memory mapping.
+   *
+   * @param path the path of the directory
+   * @param lockFactory the lock factory to use, or null for the default
+   * ({@link NativeFSLockFactory});
+   * @param maxChunkSize maximum chunk size (default is 1 GiBytes for
+   * 64 bit JVMs and 256 MiBytes for 32 bit JVMs) used for memory mapping.
+   * @throws IOException if there is a low-level I/O error
+   * @see MMapDirectory#MMapDirectory(File, LockFactory, int)
+   */
+  public NativeMMapDirectory(File path, LockFactory lockFactory, int maxChunkSize) throws IOException {
+    super(path, lockFactory, maxChunkSize);
+  }
+
+  /**
+   * Sets the extensions of the files that are loaded into the page cache
+   * when they are opened for searching.
+   * @see #DEFAULT_PREFETCH_EXTENSIONS
+   */
+  public void setPrefetchExtensions(Set<String> extensions) {
+    prefetchExtensions = Collections.unmodifiableSet(new HashSet<String>(extensions));
+  }
+
+  /** Returns the extensions of the files that are loaded into the page
+   *  cache when they are opened for searching. */
+  public Set<String> getPrefetchExtensions() {
+    return prefetchExtensions;
+  }
+
+  /**
+   * Sets the extensions of the files that are locked into RAM while they
+   * are open for searching. By default no file is locked.
+   * <p>Only affects files opened after this call.
+   */
+  public void setLockedExtensions(Set<String> extensions) {
+    lockedExtensions = Collections.unmodifiableSet(new HashSet<String>(extensions));
+  }
+
+  /** Returns the extensions of the files that are locked into RAM while
+   *  they are open for searching. */
+  public Set<String> getLockedExtensions() {
+    return lockedExtensions;
+  }
+
+  @Override
+  protected void mapped(String name, ByteBuffer[] buffers, IOContext context) throws IOException {
+    if (context.context == Context.MERGE) {
+      for (ByteBuffer buffer : buffers) {
+        if (buffer.capacity() > 0) {
+          NativePosixUtil.madvise(buffer, NativePosixUtil.SEQUENTIAL);
+        }
+      }
+    } else {
+      final String ext = FileSwitchDirectory.getExtension(name);
+      if (lockedExtensions.contains(ext)) {
+        // the pages stay locked until the buffers are unmapped
+        for (ByteBuffer buffer : buffers) {
+          if (buffer.capacity() > 0) {
+            NativePosixUtil.mlock(buffer);
+          }
+        }
+      } else if (prefetchExtensions.contains(ext)) {
+        for (ByteBuffer buffer : buffers) {
+          if (buffer.capacity() > 0) {
+            NativePosixUtil.madvise(buffer, NativePosixUtil.WILLNEED);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public IndexInputSlicer createSlicer(final String name, IOContext context) throws IOException {
+    final IndexInputSlicer slicer = super.createSlicer(name, context);
+    if (context.context == Context.MERGE) {
+      // the whole compound file was already advised as sequential
+      return slicer;
+    }
+    return new IndexInputSlicer() {
+      // separate mappings of the sub-files that are locked into RAM; the
+      // pages are shared with the mapping of the whole compound file
+      private final List<ByteBuffer> locked = new ArrayList<ByteBuffer>();
+
+      @Override
+      public IndexInput openSlice(String sliceDescription, long offset, long length) throws IOException {
+        final IndexInput slice = slicer.openSlice(sliceDescription, offset, length);
+        final String ext = FileSwitchDirectory.getExtension(sliceDescription);
+        if (length > 0 && (lockedExtensions.contains(ext) || prefetchExtensions.contains(ext))) {
+          boolean success = false;
+          try {
+            adviseSlice(name, offset, length, lockedExtensions.contains(ext));
+            success = true;
+          } finally {
+            if (!success) {
+              slice.close();
+            }
+          }
+        }
+        return slice;
+      }
+
+      private void adviseSlice(String name, long offset, long length, boolean lock) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(new File(getDirectory(), name), "r");
+        try {
+          final FileChannel channel = raf.getChannel();
+          final long chunkSize = getMaxChunkSize();
+          for (long pos = 0; pos < length; pos += chunkSize) {
+            final ByteBuffer buffer = channel.map(MapMode.READ_ONLY, offset + pos, Math.min(chunkSize, length - pos));
+            if (lock) {
+              synchronized (locked) {
+                locked.add(buffer);
+              }
+              NativePosixUtil.mlock(buffer);
+            } else {
+              // the read ahead fills the page cache, which outlives this mapping
+              try {
+                NativePosixUtil.madvise(buffer, NativePosixUtil.WILLNEED);
+              } finally {
+                cleanMapping(buffer);
+              }
+            }
+          }
+        } finally {
+          raf.close();
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        try {
+          slicer.close();
+        } finally {
+          synchronized (locked) {
+            for (ByteBuffer buffer : locked) {
+              // unlock explicitly, the buffer is only unmapped right away
+              // if the unmap hack is enabled
+              NativePosixUtil.munlock(buffer);
+              cleanMapping(buffer);
+            }
+            locked.clear();
+          }
+        }
+      }
+    };
+  }
+}
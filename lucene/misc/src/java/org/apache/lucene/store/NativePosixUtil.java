@@ -40,6 +40,8 @@ public final class NativePosixUtil {
   private static native int posix_fadvise(FileDescriptor fd, long offset, long len, int advise) throws IOException;
   public static native int posix_madvise(ByteBuffer buf, int advise) throws IOException;
   public static native int madvise(ByteBuffer buf, int advise) throws IOException;
+  public static native int mlock(ByteBuffer buf) throws IOException;
+  public static native int munlock(ByteBuffer buf) throws IOException;
   public static native FileDescriptor open_direct(String filename, boolean read) throws IOException;
   public static native long pread(FileDescriptor fd, long pos, ByteBuffer byteBuf) throws IOException;
 
@@ -0,0 +1,99 @@
+package org.apache.lucene.index.sorter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongDocValuesField;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestEarlyTerminatingSortingCollector extends LuceneTestCase {
+
+  public void testSameTopHits() throws Exception {
+    Directory dir = newDirectory();
+    final SortField sortField = new SortField("ts", SortField.Type.LONG, true);
+    final Sort sort = new Sort(sortField);
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMergePolicy(new SortingMergePolicy(iwc.getMergePolicy(), sort));
+    IndexWriter w = new IndexWriter(dir, iwc);
+    final int numDocs = atLeast(1000);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      final long ts = random().nextInt(100000);
+      doc.add(new LongField("ts", ts, Field.Store.NO));
+      doc.add(new LongDocValuesField("ts_dv", ts));
+      doc.add(newStringField("s", "t" + random().nextInt(5), Field.Store.NO));
+      w.addDocument(doc);
+      if (random().nextInt(100) == 0) {
+        w.deleteDocuments(new Term("s", "t" + random().nextInt(5)));
+      }
+    }
+    if (random().nextBoolean()) {
+      w.forceMerge(_TestUtil.nextInt(random(), 1, 3));
+    }
+    DirectoryReader reader = DirectoryReader.open(w, true);
+    w.close();
+    IndexSearcher searcher = newSearcher(reader);
+    final int iters = atLeast(20);
+    for (int iter = 0; iter < iters; iter++) {
+      final Query query = new TermQuery(new Term("s", "t" + random().nextInt(5)));
+      final int numHits = _TestUtil.nextInt(random(), 1, 50);
+      final boolean inOrder = random().nextBoolean();
+      TopFieldCollector expected = TopFieldCollector.create(sort, numHits, true, false, false, inOrder);
+      TopFieldCollector actual = TopFieldCollector.create(sort, numHits, true, false, false, inOrder);
+      searcher.search(query, expected);
+      searcher.search(query, new EarlyTerminatingSortingCollector(actual, sort, numHits));
+      assertTrue(actual.getTotalHits() <= expected.getTotalHits());
+      final ScoreDoc[] expectedHits = expected.topDocs().scoreDocs;
+      final ScoreDoc[] actualHits = actual.topDocs().scoreDocs;
+      assertEquals(expectedHits.length, actualHits.length);
+      for (int i = 0; i < expectedHits.length; i++) {
+        // documents that have the same value may differ
+        assertEquals(((FieldDoc) expectedHits[i]).fields[0], ((FieldDoc) actualHits[i]).fields[0]);
+      }
+    }
+    reader.close();
+    dir.close();
+  }
+
+  public void testNumDocsToCollect() {
+    try {
+      new EarlyTerminatingSortingCollector(null, new Sort(new SortField("ts", SortField.Type.LONG)), 0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,115 @@
+package org.apache.lucene.index.sorter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongDocValuesField;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredDocument;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestSortingMergePolicy extends LuceneTestCase {
+
+  public void testMergedSegmentsAreSorted() throws Exception {
+    Directory dir = newDirectory();
+    final SortField sortField = new SortField("ts", SortField.Type.LONG, random().nextBoolean());
+    final Sort sort = new Sort(sortField);
+    final Sorter sorter = new Sorter(sort);
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMergePolicy(new SortingMergePolicy(iwc.getMergePolicy(), sort));
+    IndexWriter w = new IndexWriter(dir, iwc);
+    final Map<String,Long> expected = new HashMap<String,Long>();
+    final int numIds = atLeast(200);
+    final int numDocs = atLeast(1000);
+    for (int i = 0; i < numDocs; i++) {
+      final String id = Integer.toString(random().nextInt(numIds));
+      final long ts = random().nextInt(10000);
+      Document doc = new Document();
+      doc.add(newStringField("id", id, Field.Store.YES));
+      doc.add(new StoredField("stored_ts", ts));
+      doc.add(new LongField("ts", ts, Field.Store.NO));
+      doc.add(new LongDocValuesField("ts_dv", ts));
+      doc.add(newTextField("body", "id" + id + " t" + (ts % 5), Field.Store.NO));
+      w.updateDocument(new Term("id", id), doc);
+      expected.put(id, ts);
+      if (random().nextInt(30) == 0) {
+        final String deleted = Integer.toString(random().nextInt(numIds));
+        w.deleteDocuments(new Term("id", deleted));
+        expected.remove(deleted);
+      }
+      if (random().nextInt(200) == 0) {
+        // deletes applied while merging must be mapped to the sorted docs
+        DirectoryReader.open(w, true).close();
+      }
+    }
+    w.forceMerge(_TestUtil.nextInt(random(), 1, 3));
+    w.close();
+    _TestUtil.checkIndex(dir);
+
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(expected.size(), reader.numDocs());
+    for (AtomicReaderContext context : reader.leaves()) {
+      final AtomicReader leaf = context.reader();
+      final boolean sorted = SortingMergePolicy.isSorted(leaf, sorter);
+      final DocValues.Source values = leaf.docValues("ts_dv").getSource();
+      final Bits liveDocs = leaf.getLiveDocs();
+      for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+        final StoredDocument stored = leaf.document(doc);
+        final long ts = stored.getField("stored_ts").numericValue().longValue();
+        assertEquals(ts, values.getInt(doc));
+        if (sorted && doc > 0) {
+          final long previous = values.getInt(doc - 1);
+          if (sortField.getReverse()) {
+            assertTrue(previous >= ts);
+          } else {
+            assertTrue(previous <= ts);
+          }
+        }
+        if (liveDocs == null || liveDocs.get(doc)) {
+          assertEquals(expected.get(stored.get("id")).longValue(), ts);
+          final DocsEnum postings = leaf.termDocsEnum(new Term("body", "id" + stored.get("id")));
+          assertEquals(doc, postings.nextDoc());
+          assertEquals(DocIdSetIterator.NO_MORE_DOCS, postings.nextDoc());
+        }
+      }
+    }
+    reader.close();
+    dir.close();
+  }
+
+}
@@ -0,0 +1,205 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.EOFException;
+import java.util.Collections;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestBlockCacheDirectory extends LuceneTestCase {
+
+  private byte[] writeRandomFile(Directory dir, String name, int length) throws Exception {
+    byte[] data = new byte[length];
+    random().nextBytes(data);
+    IndexOutput out = dir.createOutput(name, newIOContext(random()));
+    out.writeBytes(data, data.length);
+    out.close();
+    return data;
+  }
+
+  public void testRandomReads() throws Exception {
+    // a small cache, so that blocks get evicted
+    BlockCache cache = new BlockCache(16 * 1024, 1 << _TestUtil.nextInt(random(), 6, 10));
+    Directory dir = new BlockCacheDirectory(newFSDirectory(_TestUtil.getTempDir("testRandomReads")), cache, null);
+    byte[] data = writeRandomFile(dir, "file.bin", atLeast(50000));
+
+    IndexInput in = dir.openInput("file.bin", IOContext.DEFAULT);
+    assertEquals(data.length, in.length());
+    final int iters = atLeast(1000);
+    for (int i = 0; i < iters; i++) {
+      IndexInput input = random().nextBoolean() ? in : in.clone();
+      int pos = random().nextInt(data.length);
+      int len = Math.min(random().nextInt(3000), data.length - pos);
+      input.seek(pos);
+      byte[] bytes = new byte[len];
+      input.readBytes(bytes, 0, len);
+      for (int j = 0; j < len; j++) {
+        assertEquals(data[pos + j], bytes[j]);
+      }
+    }
+    in.close();
+
+    assertTrue(cache.getHitCount() > 0);
+    assertTrue(cache.getMissCount() > 0);
+    assertTrue(cache.getEvictionCount() > 0);
+    assertEquals(cache.getNumBlocks(), cache.getNumUsedBlocks());
+    dir.close();
+  }
+
+  public void testAdmission() throws Exception {
+    BlockCache cache = new BlockCache(64 * 1024, 1024);
+    Directory dir = new BlockCacheDirectory(newFSDirectory(_TestUtil.getTempDir("testAdmission")), cache,
+        Collections.singleton("tim"));
+    writeRandomFile(dir, "_0.tim", 4096);
+    writeRandomFile(dir, "_0.fdt", 4096);
+    byte[] bytes = new byte[4096];
+
+    IndexInput in = dir.openInput("_0.fdt", IOContext.DEFAULT);
+    in.readBytes(bytes, 0, bytes.length);
+    in.close();
+    assertEquals(0, cache.getNumUsedBlocks());
+
+    // merges don't populate the cache
+    in = dir.openInput("_0.tim", new IOContext(new MergeInfo(1, 4096, false, -1)));
+    in.readBytes(bytes, 0, bytes.length);
+    in.close();
+    assertEquals(0, cache.getNumUsedBlocks());
+
+    in = dir.openInput("_0.tim", IOContext.DEFAULT);
+    in.readBytes(bytes, 0, bytes.length);
+    in.close();
+    assertEquals(4, cache.getNumUsedBlocks());
+    final long hits = cache.getHitCount();
+    in = dir.openInput("_0.tim", IOContext.READ);
+    in.readBytes(bytes, 0, bytes.length);
+    in.close();
+    assertEquals(hits + 4, cache.getHitCount());
+
+    // deleting a file drops its blocks
+    dir.deleteFile("_0.tim");
+    assertEquals(0, cache.getNumUsedBlocks());
+    dir.close();
+  }
+
+  public void testEvictOnlyDropsBlocksOfThatFile() throws Exception {
+    // one cache shared by two directories that hold files with the same name
+    BlockCache cache = new BlockCache(64 * 1024, 1024);
+    Directory dir1 = new BlockCacheDirectory(newFSDirectory(_TestUtil.getTempDir("testEvict1")), cache, null);
+    Directory dir2 = new BlockCacheDirectory(newFSDirectory(_TestUtil.getTempDir("testEvict2")), cache, null);
+    writeRandomFile(dir1, "a.bin", 4096);
+    writeRandomFile(dir1, "b.bin", 2048);
+    writeRandomFile(dir2, "a.bin", 3072);
+    byte[] bytes = new byte[4096];
+    for (Directory dir : new Directory[] {dir1, dir2}) {
+      for (String name : dir.listAll()) {
+        IndexInput in = dir.openInput(name, IOContext.DEFAULT);
+        in.readBytes(bytes, 0, (int) in.length());
+        in.close();
+      }
+    }
+    assertEquals(9, cache.getNumUsedBlocks());
+
+    dir1.deleteFile("a.bin");
+    assertEquals(5, cache.getNumUsedBlocks());
+    final long hits = cache.getHitCount();
+    IndexInput in = dir2.openInput("a.bin", IOContext.DEFAULT);
+    in.readBytes(bytes, 0, 3072);
+    in.close();
+    assertEquals(hits + 3, cache.getHitCount());
+
+    // rewriting a file drops its stale blocks
+    writeRandomFile(dir2, "a.bin", 1024);
+    assertEquals(2, cache.getNumUsedBlocks());
+    dir1.deleteFile("b.bin");
+    assertEquals(0, cache.getNumUsedBlocks());
+    dir1.close();
+    dir2.close();
+  }
+
+  public void testInputOpenOnOverwrittenFile() throws Exception {
+    BlockCache cache = new BlockCache(64 * 1024, 1024);
+    // RAMDirectory lets inputs keep reading a file that is overwritten
+    Directory dir = new BlockCacheDirectory(new RAMDirectory(), cache, null);
+    byte[] oldData = writeRandomFile(dir, "segments.gen", 3072);
+    IndexInput oldIn = dir.openInput("segments.gen", IOContext.DEFAULT);
+    // only caches the first block
+    assertEquals(oldData[0], oldIn.readByte());
+
+    byte[] newData = writeRandomFile(dir, "segments.gen", 3072);
+    // the old input caches the second block of the old file
+    oldIn.seek(1024);
+    assertEquals(oldData[1024], oldIn.readByte());
+
+    IndexInput newIn = dir.openInput("segments.gen", IOContext.DEFAULT);
+    byte[] bytes = new byte[newData.length];
+    newIn.readBytes(bytes, 0, bytes.length);
+    for (int i = 0; i < newData.length; i++) {
+      assertEquals(newData[i], bytes[i]);
+    }
+    try {
+      newIn.readByte();
+      fail("should have hit EOFException");
+    } catch (EOFException expected) {
+      // expected
+    }
+    newIn.close();
+    oldIn.close();
+    dir.close();
+  }
+
+  public void testIndexAndSearch() throws Exception {
+    BlockCache cache = new BlockCache(1024 * 1024, 1 << _TestUtil.nextInt(random(), 9, 13));
+    Directory dir = new BlockCacheDirectory(newFSDirectory(_TestUtil.getTempDir("testIndexAndSearch")), cache, null);
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    IndexWriter w = new IndexWriter(dir, iwc);
+    final int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newStringField("id", Integer.toString(i), Field.Store.YES));
+      doc.add(newTextField("body", "text " + (i % 2 == 0 ? "even" : "odd"), Field.Store.NO));
+      w.addDocument(doc);
+    }
+    w.close();
+
+    DirectoryReader reader = DirectoryReader.open(dir);
+    IndexSearcher searcher = newSearcher(reader);
+    for (int iter = 0; iter < 2; iter++) {
+      assertEquals(numDocs, searcher.search(new TermQuery(new Term("body", "text")), 1).totalHits);
+      assertEquals((numDocs + 1) / 2, searcher.search(new TermQuery(new Term("body", "even")), 1).totalHits);
+      for (int i = 0; i < numDocs; i += 17) {
+        int doc = searcher.search(new TermQuery(new Term("id", Integer.toString(i))), 1).scoreDocs[0].doc;
+        assertEquals(Integer.toString(i), reader.document(doc).get("id"));
+      }
+    }
+    assertTrue(cache.getHitCount() > 0);
+    reader.close();
+    _TestUtil.checkIndex(dir);
+    dir.close();
+  }
+}
@@ -0,0 +1,145 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Collections;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestNativeMMapDirectory extends LuceneTestCase {
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    boolean loaded;
+    try {
+      Class.forName(NativePosixUtil.class.getName());
+      loaded = true;
+    } catch (Throwable t) {
+      loaded = false;
+    }
+    assumeTrue("test requires the NativePosixUtil library", loaded);
+  }
+
+  private NativeMMapDirectory newNativeMMapDirectory(String name) throws Exception {
+    // small chunks, so that files are mapped as several buffers
+    return new NativeMMapDirectory(_TestUtil.getTempDir(name), null, 1 << _TestUtil.nextInt(random(), 12, 20));
+  }
+
+  private byte[] writeRandomFile(Directory dir, String name, int length) throws Exception {
+    byte[] data = new byte[length];
+    random().nextBytes(data);
+    IndexOutput out = dir.createOutput(name, newIOContext(random()));
+    out.writeBytes(data, data.length);
+    out.close();
+    return data;
+  }
+
+  private void assertContent(byte[] data, IndexInput in) throws Exception {
+    assertEquals(data.length, in.length());
+    byte[] bytes = new byte[data.length];
+    in.readBytes(bytes, 0, bytes.length);
+    for (int i = 0; i < data.length; i++) {
+      assertEquals(data[i], bytes[i]);
+    }
+  }
+
+  public void testAdvisedReads() throws Exception {
+    NativeMMapDirectory dir = newNativeMMapDirectory("testAdvisedReads");
+    dir.setPrefetchExtensions(Collections.singleton("tim"));
+    byte[] prefetched = writeRandomFile(dir, "_0.tim", atLeast(10000));
+    byte[] other = writeRandomFile(dir, "_0.fdt", atLeast(10000));
+    byte[] empty = writeRandomFile(dir, "_0.tip", 0);
+
+    final IOContext merge = new IOContext(new MergeInfo(1, prefetched.length, false, -1));
+    for (IOContext context : new IOContext[] {IOContext.DEFAULT, IOContext.READ, merge}) {
+      IndexInput in = dir.openInput("_0.tim", context);
+      assertContent(prefetched, in);
+      in.close();
+      in = dir.openInput("_0.fdt", context);
+      assertContent(other, in);
+      in.close();
+      in = dir.openInput("_0.tip", context);
+      assertContent(empty, in);
+      in.close();
+    }
+    dir.close();
+  }
+
+  public void testAdvisedSlices() throws Exception {
+    NativeMMapDirectory dir = newNativeMMapDirectory("testAdvisedSlices");
+    dir.setPrefetchExtensions(Collections.singleton("tim"));
+    byte[] first = new byte[atLeast(10000)];
+    byte[] second = new byte[atLeast(10000)];
+    random().nextBytes(first);
+    random().nextBytes(second);
+    IndexOutput out = dir.createOutput("_0.cfs", newIOContext(random()));
+    out.writeBytes(first, first.length);
+    out.writeBytes(second, second.length);
+    out.close();
+
+    Directory.IndexInputSlicer slicer = dir.createSlicer("_0.cfs", IOContext.DEFAULT);
+    IndexInput in = slicer.openSlice("_0.fdt", 0, first.length);
+    assertContent(first, in);
+    in.close();
+    // the sub-file is advised through its own mapping
+    in = slicer.openSlice("_0.tim", first.length, second.length);
+    assertContent(second, in);
+    in.close();
+    slicer.close();
+    dir.close();
+  }
+
+  public void testIndexAndSearch() throws Exception {
+    NativeMMapDirectory dir = newNativeMMapDirectory("testIndexAndSearch");
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    IndexWriter w = new IndexWriter(dir, iwc);
+    final int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newStringField("id", Integer.toString(i), Field.Store.YES));
+      doc.add(newTextField("body", "text " + (i % 2 == 0 ? "even" : "odd"), Field.Store.NO));
+      w.addDocument(doc);
+    }
+    // merges read their inputs with sequential advice
+    w.forceMerge(1);
+    w.close();
+
+    DirectoryReader reader = DirectoryReader.open(dir);
+    IndexSearcher searcher = newSearcher(reader);
+    assertEquals(numDocs, searcher.search(new TermQuery(new Term("body", "text")), 1).totalHits);
+    assertEquals((numDocs + 1) / 2, searcher.search(new TermQuery(new Term("body", "even")), 1).totalHits);
+    for (int i = 0; i < numDocs; i += 17) {
+      int doc = searcher.search(new TermQuery(new Term("id", Integer.toString(i))), 1).scoreDocs[0].doc;
+      assertEquals(Integer.toString(i), reader.document(doc).get("id"));
+    }
+    reader.close();
+    _TestUtil.checkIndex(dir);
+    dir.close();
+  }
+}
@@ -35,7 +35,7 @@ public abstract class CompressingCodec extends FilterCodec {
    * Create a random instance.
    */
   public static CompressingCodec randomInstance(Random random, int chunkSize) {
-    switch (random.nextInt(4)) {
+    switch (random.nextInt(5)) {
     case 0:
       return new FastCompressingCodec(chunkSize);
     case 1:
@@ -44,6 +44,8 @@ public abstract class CompressingCodec extends FilterCodec {
       return new HighCompressionCompressingCodec(chunkSize);
     case 3:
       return new DummyCompressingCodec(chunkSize);
+    case 4:
+      return new FastDictionaryCompressingCodec(chunkSize);
     default:
       throw new AssertionError();
     }
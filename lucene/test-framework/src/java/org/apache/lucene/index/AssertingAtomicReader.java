@@ -216,6 +216,17 @@ public class AssertingAtomicReader extends FilterAtomicReader {
   }
   
   static enum DocsEnumState { START, ITERATING, FINISHED };
+
+  static void assertBulkRead(DocsEnumState state, int prevDoc, int[] docs, int count) {
+    assert count >= 0 && count <= docs.length : "invalid count: " + count;
+    assert state != DocsEnumState.FINISHED || count == 0 : "read() returned docs after NO_MORE_DOCS";
+    int lastDoc = state == DocsEnumState.START ? -1 : prevDoc;
+    for (int i = 0; i < count; i++) {
+      assert docs[i] > lastDoc : "docs out of order: " + docs[i] + " after " + lastDoc;
+      lastDoc = docs[i];
+    }
+  }
+
   static class AssertingDocsEnum extends FilterDocsEnum {
     private DocsEnumState state = DocsEnumState.START;
     
@@ -252,6 +263,20 @@ public class AssertingAtomicReader extends FilterAtomicReader {
       return advanced;
     }
 
+    @Override
+    public int read(int[] docs, int[] freqs) throws IOException {
+      assert freqs == null || freqs.length >= docs.length : "freqs is shorter than docs";
+      final int prevDoc = super.docID();
+      int count = super.read(docs, freqs);
+      assertBulkRead(state, prevDoc, docs, count);
+      if (count == 0 || super.docID() == DocIdSetIterator.NO_MORE_DOCS) {
+        state = DocsEnumState.FINISHED;
+      } else {
+        state = DocsEnumState.ITERATING;
+      }
+      return count;
+    }
+
     // NOTE: We don't assert anything for docId(). Specifically DocsEnum javadocs
     // are ambiguous with DocIdSetIterator here, DocIdSetIterator says its ok
     // to call this method before nextDoc(), just that it must be -1 or NO_MORE_DOCS!
@@ -310,6 +335,23 @@ public class AssertingAtomicReader extends FilterAtomicReader {
       return advanced;
     }
 
+    @Override
+    public int read(int[] docs, int[] freqs) throws IOException {
+      assert freqs == null || freqs.length >= docs.length : "freqs is shorter than docs";
+      final int prevDoc = super.docID();
+      int count = super.read(docs, freqs);
+      assertBulkRead(state, prevDoc, docs, count);
+      positionCount = 0;
+      if (count == 0 || super.docID() == DocIdSetIterator.NO_MORE_DOCS) {
+        state = DocsEnumState.FINISHED;
+        positionMax = 0;
+      } else {
+        state = DocsEnumState.ITERATING;
+        positionMax = super.freq();
+      }
+      return count;
+    }
+
     @Override
     public int freq() throws IOException {
       assert state != DocsEnumState.START : "freq() called before nextDoc()/advance()";
@@ -0,0 +1,486 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.request;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocTermOrds;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.UnicodeUtil;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.TrieField;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.LongPriorityQueue;
+
+/**
+ * A multi-valued field un-inverted per segment, used by <code>facet.method=fcs</code>
+ * on multi-valued fields.
+ * <p>
+ * Every segment is un-inverted into its own {@link DocTermOrds}, which is cached by
+ * segment core and therefore survives commits: after a reopen, only the new segments
+ * need to be un-inverted. The terms of all segments are merged into a global ordinal
+ * space the first time a searcher facets on the field, and faceting counts every
+ * segment against its own term ordinals (optionally in parallel) before mapping the
+ * counts to global ordinals.
+ * <p>
+ * Unlike {@link UnInvertedField}, terms with a high document frequency are
+ * un-inverted like all other terms, and documents deleted after a segment was
+ * un-inverted are never counted since base DocSets only contain live documents.
+ */
+public class PerSegmentUnInvertedField {
+
+  /** The un-inverted terms of a single segment. */
+  static final class SegmentTermOrds extends DocTermOrds {
+    SegmentTermOrds(AtomicReader reader, String field, BytesRef termPrefix) throws IOException {
+      super(field, Integer.MAX_VALUE, DEFAULT_INDEX_INTERVAL_BITS);
+      uninvert(reader, termPrefix);
+      docsEnum = null;  // don't keep the segment reachable from the cache
+    }
+
+    /** The ordinal of the first un-inverted term, which is stored at index 0 of the counts. */
+    int ordBase() {
+      return ordBase;
+    }
+  }
+
+  // Neither cache must reference a reader from its values, or its weak keys would never be collected.
+  // per-segment structures, by segment core key
+  private static final Map<Object,Map<String,SegmentTermOrds>> segmentCache = new WeakHashMap<Object,Map<String,SegmentTermOrds>>();
+  // global ordinal maps, by top-level reader
+  private static final Map<Object,Map<String,PerSegmentUnInvertedField>> readerCache = new WeakHashMap<Object,Map<String,PerSegmentUnInvertedField>>();
+
+  private final String field;
+  final SegmentTermOrds[] segOrds;  // by leaf, null if the segment has no terms for the field
+  final AtomicLong use = new AtomicLong(); // number of uses
+
+  // the global ordinal map, merged lazily
+  private int numTerms;
+  private int[][] segToGlobal;  // by leaf, segment term index -> global ordinal
+  private int[] globalToSeg;    // global ordinal -> first leaf that has the term
+  private int[] globalToSegOrd; // global ordinal -> term index in that leaf
+
+  private PerSegmentUnInvertedField(String field, SolrIndexSearcher searcher) throws IOException {
+    this.field = field;
+    final String prefix = TrieField.getMainValuePrefix(searcher.getSchema().getFieldType(field));
+    final BytesRef termPrefix = prefix == null ? null : new BytesRef(prefix);
+    final List<AtomicReaderContext> leaves = searcher.getTopReaderContext().leaves();
+    segOrds = new SegmentTermOrds[leaves.size()];
+    for (int i = 0; i < segOrds.length; i++) {
+      final SegmentTermOrds ords = getSegmentTermOrds(leaves.get(i).reader(), field, termPrefix);
+      segOrds[i] = ords.numTerms() == 0 ? null : ords;
+    }
+  }
+
+  private static SegmentTermOrds getSegmentTermOrds(AtomicReader reader, String field, BytesRef termPrefix) throws IOException {
+    final Object key = reader.getCoreCacheKey();
+    synchronized (segmentCache) {
+      final Map<String,SegmentTermOrds> fields = segmentCache.get(key);
+      final SegmentTermOrds ords = fields == null ? null : fields.get(field);
+      if (ords != null) {
+        return ords;
+      }
+    }
+
+    // un-invert outside of the lock: concurrent requests may both un-invert the same
+    // segment, but only one of the results is kept
+    SegmentTermOrds ords;
+    try {
+      ords = new SegmentTermOrds(reader, field, termPrefix);
+    } catch (IllegalStateException ise) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, ise.getMessage());
+    }
+    if (SolrCore.log.isDebugEnabled()) {
+      SolrCore.log.debug("UnInverted multi-valued field " + field + " of segment " + reader + ": nTerms=" + ords.numTerms() + ",memSize=" + ords.ramUsedInBytes());
+    }
+
+    synchronized (segmentCache) {
+      Map<String,SegmentTermOrds> fields = segmentCache.get(key);
+      if (fields == null) {
+        fields = new HashMap<String,SegmentTermOrds>();
+        segmentCache.put(key, fields);
+      }
+      final SegmentTermOrds existing = fields.get(field);
+      if (existing != null) {
+        return existing;
+      }
+      fields.put(field, ords);
+      return ords;
+    }
+  }
+
+  public long memSize() {
+    long sz = 0;
+    for (SegmentTermOrds ords : segOrds) {
+      if (ords != null) {
+        sz += ords.ramUsedInBytes();
+      }
+    }
+    synchronized (this) {
+      if (segToGlobal != null) {
+        for (int[] map : segToGlobal) {
+          if (map != null) {
+            sz += map.length * 4;
+          }
+        }
+        sz += globalToSeg.length * 8L;
+      }
+    }
+    return sz;
+  }
+
+  private static final class SegmentTerms {
+    final int leaf;
+    final TermsEnum termsEnum;
+    BytesRef term;
+    int upto;
+
+    SegmentTerms(int leaf, TermsEnum termsEnum) {
+      this.leaf = leaf;
+      this.termsEnum = termsEnum;
+    }
+  }
+
+  /** Merges the sorted terms of all segments into the global ordinal map, once. */
+  private synchronized void mergeOrds(List<AtomicReaderContext> leaves) throws IOException {
+    if (segToGlobal != null) return;
+
+    final PriorityQueue<SegmentTerms> queue = new PriorityQueue<SegmentTerms>(Math.max(1, segOrds.length)) {
+      @Override
+      protected boolean lessThan(SegmentTerms a, SegmentTerms b) {
+        final int cmp = a.term.compareTo(b.term);
+        return cmp < 0 || (cmp == 0 && a.leaf < b.leaf);
+      }
+    };
+
+    final int[][] toGlobal = new int[segOrds.length][];
+    for (int i = 0; i < segOrds.length; i++) {
+      final SegmentTermOrds ords = segOrds[i];
+      if (ords == null) continue;
+      final TermsEnum te = ords.getOrdTermsEnum(leaves.get(i).reader());
+      if (te == null) continue;
+      te.seekExact(ords.ordBase());
+      final SegmentTerms st = new SegmentTerms(i, te);
+      st.term = te.term();
+      toGlobal[i] = new int[ords.numTerms()];
+      queue.add(st);
+    }
+
+    int[] toSeg = new int[16];
+    int[] toSegOrd = new int[16];
+    int count = 0;
+    final BytesRef last = new BytesRef();
+    while (queue.size() > 0) {
+      final SegmentTerms top = queue.top();
+      if (count == 0 || !top.term.bytesEquals(last)) {
+        if (count == toSeg.length) {
+          toSeg = ArrayUtil.grow(toSeg, count + 1);
+          toSegOrd = ArrayUtil.grow(toSegOrd, toSeg.length);
+        }
+        toSeg[count] = top.leaf;
+        toSegOrd[count] = top.upto;
+        count++;
+        last.copyBytes(top.term);
+      }
+      toGlobal[top.leaf][top.upto] = count - 1;
+
+      if (++top.upto < toGlobal[top.leaf].length) {
+        top.term = top.termsEnum.next();
+        queue.updateTop();
+      } else {
+        queue.pop();
+      }
+    }
+
+    numTerms = count;
+    globalToSeg = toSeg;
+    globalToSegOrd = toSegOrd;
+    segToGlobal = toGlobal;
+  }
+
+  /** Looks up terms by global ordinal, reusing one TermsEnum per segment. */
+  private final class TermLookup {
+    private final List<AtomicReaderContext> leaves;
+    private final TermsEnum[] termsEnums = new TermsEnum[segOrds.length];
+
+    TermLookup(List<AtomicReaderContext> leaves) {
+      this.leaves = leaves;
+    }
+
+    /** may return a reused BytesRef */
+    BytesRef term(int globalOrd) throws IOException {
+      final int leaf = globalToSeg[globalOrd];
+      final SegmentTermOrds ords = segOrds[leaf];
+      if (termsEnums[leaf] == null) {
+        termsEnums[leaf] = ords.getOrdTermsEnum(leaves.get(leaf).reader());
+      }
+      return ords.lookupTerm(termsEnums[leaf], ords.ordBase() + globalToSegOrd[globalOrd]);
+    }
+
+    /** Returns the smallest global ordinal whose term is greater than or equal to the target. */
+    int ceil(BytesRef target) throws IOException {
+      int lo = 0;
+      int hi = numTerms;
+      while (lo < hi) {
+        final int mid = (lo + hi) >>> 1;
+        if (term(mid).compareTo(target) < 0) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      return lo;
+    }
+  }
+
+  /** Counts the terms of the documents of a single segment, by segment term index. */
+  private int[] countSegment(AtomicReaderContext leaf, SegmentTermOrds ords, Filter filter) throws IOException {
+    final int[] segCounts = new int[ords.numTerms()];
+    final DocIdSet set = filter.getDocIdSet(leaf, null);
+    final DocIdSetIterator it = set == null ? null : set.iterator();
+    if (it == null) {
+      return segCounts;
+    }
+    final int ordBase = ords.ordBase();
+    final int[] buffer = new int[16];
+    DocTermOrds.TermOrdsIterator iter = null;
+    int doc;
+    while ((doc = it.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+      iter = ords.lookup(doc, iter);
+      int n;
+      do {
+        n = iter.read(buffer);
+        for (int i = 0; i < n; i++) {
+          segCounts[buffer[i] - ordBase]++;
+        }
+      } while (n == buffer.length);
+    }
+    return segCounts;
+  }
+
+  /**
+   * Returns the facet counts of this field for the given documents. Segments are counted
+   * on the executor, at most <code>numThreads</code> at a time (unlimited if
+   * <code>numThreads &lt;= 0</code>), while the calling thread merges the global
+   * ordinals if this hasn't been done yet.
+   */
+  public NamedList<Integer> getCounts(final SolrIndexSearcher searcher, DocSet baseDocs, int offset, int limit, int mincount, boolean missing, String sort, String prefix,
+                                      Executor executor, int numThreads) throws IOException {
+    use.incrementAndGet();
+
+    final FieldType ft = searcher.getSchema().getFieldType(field);
+    final NamedList<Integer> res = new NamedList<Integer>();  // order is important
+    final List<AtomicReaderContext> leaves = searcher.getTopReaderContext().leaves();
+    assert leaves.size() == segOrds.length;
+
+    if (baseDocs.size() >= mincount) {
+      // the top-level filter translates top-level doc ids to per-segment ids
+      final Filter filter = baseDocs.getTopFilter();
+      final List<FutureTask<int[]>> tasks = new ArrayList<FutureTask<int[]>>(segOrds.length);
+      final int[] taskLeaves = new int[segOrds.length];
+      int threads = numThreads <= 0 ? Integer.MAX_VALUE : numThreads;
+      for (int i = 0; i < segOrds.length; i++) {
+        final AtomicReaderContext leaf = leaves.get(i);
+        final SegmentTermOrds ords = segOrds[i];
+        if (ords == null) continue;
+        final FutureTask<int[]> task = new FutureTask<int[]>(new Callable<int[]>() {
+          @Override
+          public int[] call() throws Exception {
+            return countSegment(leaf, ords, filter);
+          }
+        });
+        taskLeaves[tasks.size()] = i;
+        tasks.add(task);
+        if (--threads >= 0) {
+          executor.execute(task);
+        }
+      }
+
+      mergeOrds(leaves);
+
+      final int[] counts = new int[numTerms];
+      for (int t = 0; t < tasks.size(); t++) {
+        final FutureTask<int[]> task = tasks.get(t);
+        if (t >= numThreads && numThreads > 0) {
+          // tasks over the thread limit run in the calling thread
+          task.run();
+        }
+        final int[] segCounts = getSegmentCounts(task);
+        final int[] map = segToGlobal[taskLeaves[t]];
+        for (int i = 0; i < segCounts.length; i++) {
+          counts[map[i]] += segCounts[i];
+        }
+      }
+
+      final TermLookup lookup = new TermLookup(leaves);
+      int startTerm = 0;
+      int endTerm = numTerms;  // one past the end
+      if (prefix != null && prefix.length() > 0) {
+        final BytesRef prefixBr = new BytesRef(prefix);
+        startTerm = lookup.ceil(prefixBr);
+        prefixBr.append(UnicodeUtil.BIG_TERM);
+        endTerm = lookup.ceil(prefixBr);
+      }
+
+      final CharsRef charsRef = new CharsRef();
+      int off = offset;
+      int lim = limit >= 0 ? limit : Integer.MAX_VALUE;
+
+      if (sort.equals(FacetParams.FACET_SORT_COUNT) || sort.equals(FacetParams.FACET_SORT_COUNT_LEGACY)) {
+        int maxsize = limit > 0 ? offset + limit : Integer.MAX_VALUE - 1;
+        maxsize = Math.min(maxsize, numTerms);
+        final LongPriorityQueue queue = new LongPriorityQueue(Math.min(maxsize, 1000), maxsize, Long.MIN_VALUE);
+
+        int min = mincount - 1;  // the smallest value in the top 'N' values
+        for (int i = startTerm; i < endTerm; i++) {
+          final int c = counts[i];
+          if (c > min) {
+            // smaller term numbers sort higher, so subtract the term number instead
+            final long pair = (((long) c) << 32) + (Integer.MAX_VALUE - i);
+            if (queue.insert(pair)) {
+              min = (int) (queue.top() >>> 32);
+            }
+          }
+        }
+
+        // if we are deep paging, we don't have to order the highest "offset" counts.
+        final int collectCount = Math.max(0, queue.size() - off);
+        assert collectCount <= lim;
+
+        // the start and end indexes of our list "sorted" (starting with the highest value)
+        final int sortedIdxStart = queue.size() - (collectCount - 1);
+        final int sortedIdxEnd = queue.size() + 1;
+        final long[] sorted = queue.sort(collectCount);
+        for (int i = sortedIdxStart; i < sortedIdxEnd; i++) {
+          final long pair = sorted[i];
+          final int c = (int) (pair >>> 32);
+          final int tnum = Integer.MAX_VALUE - (int) pair;
+          res.add(ft.indexedToReadable(lookup.term(tnum), charsRef).toString(), c);
+        }
+      } else {
+        // add results in index order
+        int i = startTerm;
+        if (mincount <= 0) {
+          // if mincount<=0, then we won't discard any terms and we know exactly
+          // where to start.
+          i = startTerm + off;
+          off = 0;
+        }
+
+        for (; i < endTerm; i++) {
+          final int c = counts[i];
+          if (c < mincount || --off >= 0) continue;
+          if (--lim < 0) break;
+          res.add(ft.indexedToReadable(lookup.term(i), charsRef).toString(), c);
+        }
+      }
+    }
+
+    if (missing) {
+      res.add(null, SimpleFacets.getFieldMissingCount(searcher, baseDocs, field));
+    }
+
+    return res;
+  }
+
+  private int[] getSegmentCounts(FutureTask<int[]> task) {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      } else {
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error in per-segment faceting on field: " + field, cause);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    int numSegments = 0;
+    for (SegmentTermOrds ords : segOrds) {
+      if (ords != null) numSegments++;
+    }
+    return "{field=" + field
+        + ",memSize=" + memSize()
+        + ",segments=" + numSegments
+        + ",uses=" + use.get()
+        + "}";
+  }
+
+  //////////////////////////////////////////////////////////////////
+  //////////////////////////// caching /////////////////////////////
+  //////////////////////////////////////////////////////////////////
+
+  /**
+   * Returns the per-segment un-inverted field for this searcher, un-inverting the
+   * segments that haven't been un-inverted by a previous searcher.
+   */
+  public static PerSegmentUnInvertedField getPerSegmentUnInvertedField(String field, SolrIndexSearcher searcher) throws IOException {
+    final Object key = searcher.getIndexReader().getCoreCacheKey();
+    synchronized (readerCache) {
+      final Map<String,PerSegmentUnInvertedField> fields = readerCache.get(key);
+      final PerSegmentUnInvertedField psuif = fields == null ? null : fields.get(field);
+      if (psuif != null) {
+        return psuif;
+      }
+    }
+
+    final PerSegmentUnInvertedField psuif = new PerSegmentUnInvertedField(field, searcher);
+    synchronized (readerCache) {
+      Map<String,PerSegmentUnInvertedField> fields = readerCache.get(key);
+      if (fields == null) {
+        fields = new HashMap<String,PerSegmentUnInvertedField>();
+        readerCache.put(key, fields);
+      }
+      final PerSegmentUnInvertedField existing = fields.get(field);
+      if (existing != null) {
+        return existing;
+      }
+      fields.put(field, psuif);
+      return psuif;
+    }
+  }
+}
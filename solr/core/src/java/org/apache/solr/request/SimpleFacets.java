@@ -321,9 +321,18 @@ public class SimpleFacets {
       if (enumMethod) {
         counts = getFacetTermEnumCounts(searcher, docs, field, offset, limit, mincount,missing,sort,prefix);
       } else {
-        if (multiToken) {
+        if (multiToken && per_segment) {
+          PerSegmentUnInvertedField psuif = PerSegmentUnInvertedField.getPerSegmentUnInvertedField(field, searcher);
+          Executor executor = threads == 0 ? directExecutor : facetExecutor;
+          counts = psuif.getCounts(searcher, docs, offset, limit, mincount, missing, sort, prefix, executor, threads);
+        } else if (multiToken) {
           UnInvertedField uif = UnInvertedField.getUnInvertedField(field, searcher);
-          counts = uif.getCounts(searcher, docs, offset, limit, mincount,missing,sort,prefix);
+          // each counting thread needs its own counts array, so only count in parallel when asked to
+          if (threads > 1) {
+            counts = uif.getCounts(searcher, docs, offset, limit, mincount,missing,sort,prefix, facetExecutor, threads);
+          } else {
+            counts = uif.getCounts(searcher, docs, offset, limit, mincount,missing,sort,prefix);
+          }
         } else {
           // TODO: future logic could use filters instead of the fieldcache if
           // the number of terms in the field is small enough.
@@ -17,7 +17,11 @@
 
 package org.apache.solr.request;
 
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.DocTermOrds;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermsEnum;
@@ -43,10 +47,17 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.UnicodeUtil;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -203,6 +214,19 @@ public class UnInvertedField extends DocTermOrds {
   }
 
   public NamedList<Integer> getCounts(SolrIndexSearcher searcher, DocSet baseDocs, int offset, int limit, Integer mincount, boolean missing, String sort, String prefix) throws IOException {
+    return getCounts(searcher, baseDocs, offset, limit, mincount, missing, sort, prefix, null, 1);
+  }
+
+  /**
+   * Like {@link #getCounts(SolrIndexSearcher, DocSet, int, int, Integer, boolean, String, String)},
+   * but counts the terms of up to <code>numThreads</code> groups of segments in parallel
+   * on the given executor, each into its own counts array, and then sums up the arrays.
+   * The set intersections for the big terms run in the calling thread in the meantime.
+   * Counting is single-threaded if the executor is null, if <code>numThreads</code> is
+   * less than 2 or if the index has a single segment.
+   */
+  public NamedList<Integer> getCounts(SolrIndexSearcher searcher, DocSet baseDocs, int offset, int limit, Integer mincount, boolean missing, String sort, String prefix,
+                                      Executor executor, int numThreads) throws IOException {
     use.incrementAndGet();
 
     FieldType ft = searcher.getSchema().getFieldType(field);
@@ -216,7 +240,6 @@ public class UnInvertedField extends DocTermOrds {
     //System.out.println("GET COUNTS field=" + field + " baseSize=" + baseSize + " minCount=" + mincount + " maxDoc=" + maxDoc + " numTermsInField=" + numTermsInField);
     if (baseSize >= mincount) {
 
-      final int[] index = this.index;
       // tricky: we add more more element than we need because we will reuse this array later
       // for ordering term ords before converting to term labels.
       final int[] counts = new int[numTermsInField + 1];
@@ -269,6 +292,12 @@ public class UnInvertedField extends DocTermOrds {
         //System.out.println("  NEG");
       }
 
+      // start counting the segments while we compute the counts of the big terms
+      List<Future<int[]>> segmentCounts = null;
+      if (termInstances > 0 && executor != null && numThreads > 1) {
+        segmentCounts = countSegments(searcher, docs, executor, numThreads);
+      }
+
       // For the biggest terms, do straight set intersections
       for (TopTerm tt : bigTerms.values()) {
         //System.out.println("  do big termNum=" + tt.termNum + " term=" + tt.term.utf8ToString());
@@ -290,47 +319,18 @@ public class UnInvertedField extends DocTermOrds {
       // they would be predictable for the non-prefix case).
       // Perhaps a different copy of the code would be warranted.
 
-      if (termInstances > 0) {
+      if (segmentCounts != null) {
+        // big terms are never un-inverted, so their counts are 0 in the per-segment arrays
+        for (Future<int[]> future : segmentCounts) {
+          final int[] segCounts = getSegmentCounts(future);
+          for (int i=startTerm; i<endTerm; i++) {
+            counts[i] += segCounts[i];
+          }
+        }
+      } else if (termInstances > 0) {
         DocIterator iter = docs.iterator();
         while (iter.hasNext()) {
-          int doc = iter.nextDoc();
-          //System.out.println("iter doc=" + doc);
-          int code = index[doc];
-
-          if ((code & 0xff)==1) {
-            //System.out.println("  ptr");
-            int pos = code>>>8;
-            int whichArray = (doc >>> 16) & 0xff;
-            byte[] arr = tnums[whichArray];
-            int tnum = 0;
-            for(;;) {
-              int delta = 0;
-              for(;;) {
-                byte b = arr[pos++];
-                delta = (delta << 7) | (b & 0x7f);
-                if ((b & 0x80) == 0) break;
-              }
-              if (delta == 0) break;
-              tnum += delta - TNUM_OFFSET;
-              //System.out.println("    tnum=" + tnum);
-              counts[tnum]++;
-            }
-          } else {
-            //System.out.println("  inlined");
-            int tnum = 0;
-            int delta = 0;
-            for (;;) {
-              delta = (delta << 7) | (code & 0x7f);
-              if ((code & 0x80)==0) {
-                if (delta==0) break;
-                tnum += delta - TNUM_OFFSET;
-                //System.out.println("    tnum=" + tnum);
-                counts[tnum]++;
-                delta = 0;
-              }
-              code >>>= 8;
-            }
-          }
+          countTerms(iter.nextDoc(), counts);
         }
       }
       final CharsRef charsRef = new CharsRef();
@@ -446,6 +446,106 @@ public class UnInvertedField extends DocTermOrds {
     return res;
   }
 
+  /**
+   * Splits the segments into up to <code>numThreads</code> groups of contiguous segments
+   * with about the same number of documents, and submits a task to count the terms of the
+   * documents of each group.
+   */
+  private List<Future<int[]>> countSegments(SolrIndexSearcher searcher, DocSet docs, Executor executor, int numThreads) {
+    final List<AtomicReaderContext> leaves = searcher.getTopReaderContext().leaves();
+    final int numGroups = Math.min(numThreads, leaves.size());
+    if (numGroups <= 1) {
+      return null;
+    }
+
+    // the top-level filter translates top-level doc ids to per-segment ids
+    final Filter filter = docs.getTopFilter();
+    final int docsPerGroup = (searcher.maxDoc() + numGroups - 1) / numGroups;
+    final List<Future<int[]>> futures = new ArrayList<Future<int[]>>(numGroups);
+    int upto = 0;
+    while (upto < leaves.size()) {
+      final int start = upto;
+      int numDocs = 0;
+      do {
+        numDocs += leaves.get(upto++).reader().maxDoc();
+      } while (upto < leaves.size() && numDocs < docsPerGroup);
+      final List<AtomicReaderContext> group = leaves.subList(start, upto);
+
+      FutureTask<int[]> task = new FutureTask<int[]>(new Callable<int[]>() {
+        @Override
+        public int[] call() throws Exception {
+          final int[] segCounts = new int[numTermsInField];
+          for (AtomicReaderContext leaf : group) {
+            final DocIdSet set = filter.getDocIdSet(leaf, null);
+            final DocIdSetIterator it = set == null ? null : set.iterator();
+            if (it == null) continue;
+            final int base = leaf.docBase;
+            int doc;
+            while ((doc = it.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+              countTerms(base + doc, segCounts);
+            }
+          }
+          return segCounts;
+        }
+      });
+      executor.execute(task);
+      futures.add(task);
+    }
+    return futures;
+  }
+
+  private int[] getSegmentCounts(Future<int[]> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      } else {
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error in per-segment faceting on field: " + field, cause);
+      }
+    }
+  }
+
+  /** Increments the counts of the term numbers of this (top-level) document. */
+  private void countTerms(int doc, int[] counts) {
+    int code = index[doc];
+
+    if ((code & 0xff)==1) {
+      int pos = code>>>8;
+      int whichArray = (doc >>> 16) & 0xff;
+      byte[] arr = tnums[whichArray];
+      int tnum = 0;
+      for(;;) {
+        int delta = 0;
+        for(;;) {
+          byte b = arr[pos++];
+          delta = (delta << 7) | (b & 0x7f);
+          if ((b & 0x80) == 0) break;
+        }
+        if (delta == 0) break;
+        tnum += delta - TNUM_OFFSET;
+        counts[tnum]++;
+      }
+    } else {
+      int tnum = 0;
+      int delta = 0;
+      for (;;) {
+        delta = (delta << 7) | (code & 0x7f);
+        if ((code & 0x80)==0) {
+          if (delta==0) break;
+          tnum += delta - TNUM_OFFSET;
+          counts[tnum]++;
+          delta = 0;
+        }
+        code >>>= 8;
+      }
+    }
+  }
+
   /**
    * Collect statistics about the UninvertedField.  Code is very similar to {@link #getCounts(org.apache.solr.search.SolrIndexSearcher, org.apache.solr.search.DocSet, int, int, Integer, boolean, String, String)}
    * It can be used to calculate stats on multivalued fields.
@@ -16,6 +16,7 @@ package org.apache.solr.search;
  * limitations under the License.
  */
 
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.util.ConcurrentLRUCache;
 import org.apache.solr.common.util.NamedList;
@@ -50,11 +51,14 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   private String description = "Concurrent LRU Cache";
   private ConcurrentLRUCache<K,V> cache;
   private int showItems = 0;
+  private long maxRamBytes = -1;
 
   public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
     super.init(args, regenerator);
+    maxRamBytes = parseMaxRamBytes(args);
     String str = (String) args.get("size");
-    int limit = str == null ? 1024 : Integer.parseInt(str);
+    // a cache that is limited by RAM has no limit on the number of entries unless configured
+    int limit = str == null ? (maxRamBytes > 0 ? Integer.MAX_VALUE : 1024) : Integer.parseInt(str);
     int minLimit;
     str = (String) args.get("minSize");
     if (str == null) {
@@ -76,14 +80,20 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     acceptableLimit = Math.max(minLimit, acceptableLimit);
 
     str = (String) args.get("initialSize");
-    final int initialSize = str == null ? limit : Integer.parseInt(str);
+    final int initialSize = str == null ? (maxRamBytes > 0 ? Math.min(limit, 1024) : limit) : Integer.parseInt(str);
     str = (String) args.get("cleanupThread");
     boolean newThread = str == null ? false : Boolean.parseBoolean(str);
 
     str = (String) args.get("showItems");
     showItems = str == null ? 0 : Integer.parseInt(str);
     description = generateDescription(limit, initialSize, minLimit, acceptableLimit, newThread);
-    cache = new ConcurrentLRUCache<K,V>(limit, minLimit, acceptableLimit, initialSize, newThread, false, null);
+    if (maxRamBytes > 0) {
+      // like minSize, evict down to 90% of the RAM limit to amortize the cost of sweeping
+      cache = new ConcurrentLRUCache<K,V>(limit, minLimit, acceptableLimit, initialSize, newThread, false, null,
+          maxRamBytes, (long) (maxRamBytes * 0.9));
+    } else {
+      cache = new ConcurrentLRUCache<K,V>(limit, minLimit, acceptableLimit, initialSize, newThread, false, null);
+    }
     cache.setAlive(false);
 
     statsList = (List<ConcurrentLRUCache.Stats>) persistence;
@@ -106,6 +116,9 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   protected String generateDescription(int limit, int initialSize, int minLimit, int acceptableLimit, boolean newThread) {
     String description = "Concurrent LRU Cache(maxSize=" + limit + ", initialSize=" + initialSize +
         ", minSize="+minLimit + ", acceptableSize="+acceptableLimit+", cleanupThread="+newThread;
+    if (maxRamBytes > 0) {
+      description += ", maxRamMB=" + ((double) maxRamBytes / RamUsageEstimator.ONE_MB);
+    }
     if (isAutowarmingOn()) {
       description += ", " + getAutowarmDescription();
     }
@@ -118,6 +131,9 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   }
 
   public V put(K key, V value) {
+    if (maxRamBytes > 0) {
+      return cache.put(key, value, ramBytesUsed(key, value));
+    }
     return cache.put(key, value);
   }
 
@@ -211,6 +227,10 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     lst.add("inserts", inserts);
     lst.add("evictions", evictions);
     lst.add("size", size);
+    if (maxRamBytes > 0) {
+      lst.add("maxRamMB", (double) maxRamBytes / RamUsageEstimator.ONE_MB);
+      lst.add("ramBytesUsed", stats.getCurrentRamBytes());
+    }
 
     lst.add("warmupTime", warmupTime);
     lst.add("cumulative_lookups", clookups);
@@ -22,6 +22,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
@@ -53,13 +54,19 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
 
   private long warmupTime = 0;
 
+  // maximum and current RAM usage of the entries, when limited by maxRamMB
+  private long maxRamBytes = -1;
+  private long ramBytes;
+
   private Map<K,V> map;
   private String description="LRU Cache";
 
   public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
     super.init(args, regenerator);
+    maxRamBytes = parseMaxRamBytes(args);
     String str = (String)args.get("size");
-    final int limit = str==null ? 1024 : Integer.parseInt(str);
+    // a cache that is limited by RAM has no limit on the number of entries unless configured
+    final int limit = str==null ? (maxRamBytes > 0 ? Integer.MAX_VALUE : 1024) : Integer.parseInt(str);
     str = (String)args.get("initialSize");
     final int initialSize = Math.min(str==null ? 1024 : Integer.parseInt(str), limit);
     description = generateDescription(limit, initialSize);
@@ -73,6 +80,9 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
             // only be called in the context of a higher level synchronized block.
             evictions++;
             stats.evictions.incrementAndGet();
+            if (maxRamBytes > 0) {
+              ramBytes -= ramBytesUsed(eldest.getKey(), eldest.getValue());
+            }
             return true;
           }
           return false;
@@ -95,6 +105,9 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
    */
   private String generateDescription(int limit, int initialSize) {
     String description = "LRU Cache(maxSize=" + limit + ", initialSize=" + initialSize;
+    if (maxRamBytes > 0) {
+      description += ", maxRamMB=" + ((double) maxRamBytes / RamUsageEstimator.ONE_MB);
+    }
     if (isAutowarmingOn()) {
       description += ", " + getAutowarmDescription();
     }
@@ -117,7 +130,27 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
       // increment local inserts regardless of state???
       // it does make it more consistent with the current size...
       inserts++;
-      return map.put(key,value);
+      if (maxRamBytes <= 0) {
+        return map.put(key,value);
+      }
+
+      final long entryBytes = ramBytesUsed(key, value);
+      final V old = map.put(key, value);
+      ramBytes += entryBytes;
+      if (old != null) {
+        ramBytes -= ramBytesUsed(key, old);
+      }
+      // evict least recently used entries until we are back under the limit,
+      // but always keep the entry that was just added
+      Iterator<Map.Entry<K,V>> iter = map.entrySet().iterator();
+      while (ramBytes > maxRamBytes && map.size() > 1) {
+        Map.Entry<K,V> eldest = iter.next();
+        ramBytes -= ramBytesUsed(eldest.getKey(), eldest.getValue());
+        iter.remove();
+        evictions++;
+        stats.evictions.incrementAndGet();
+      }
+      return old;
     }
   }
 
@@ -140,6 +173,7 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   public void clear() {
     synchronized(map) {
       map.clear();
+      ramBytes = 0;
     }
   }
 
@@ -220,6 +254,10 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
       lst.add("inserts", inserts);
       lst.add("evictions", evictions);
       lst.add("size", map.size());
+      if (maxRamBytes > 0) {
+        lst.add("maxRamMB", (double) maxRamBytes / RamUsageEstimator.ONE_MB);
+        lst.add("ramBytesUsed", ramBytes);
+      }
     }
     lst.add("warmupTime", warmupTime);
     
@@ -21,6 +21,10 @@ import java.io.Serializable;
 import java.net.URL;
 import java.util.Map;
  
+import org.apache.lucene.index.StorableField;
+import org.apache.lucene.index.StoredDocument;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.core.SolrInfoMBean.Category;
@@ -105,6 +109,69 @@ public abstract class SolrCacheBase {
   }
 
 
+  /** Approximate size of the map entry holding a cached value. */
+  private static final long ENTRY_OVERHEAD = RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+      + 5 * RamUsageEstimator.NUM_BYTES_OBJECT_REF + 2 * RamUsageEstimator.NUM_BYTES_LONG;
+
+  /** Approximate size of a stored field, excluding its value. */
+  private static final long FIELD_OVERHEAD = RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+      + 5 * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
+  /**
+   * Returns the approximate amount of memory taken by a cache entry, used to
+   * enforce the <code>maxRamMB</code> limit of caches.
+   * {@link DocSet}s (including {@link DocList}s) report their own size, stored
+   * documents are estimated from the values of their fields, and other values
+   * only count for their shallow size.
+   */
+  public static long ramBytesUsed(Object key, Object value) {
+    long size = ENTRY_OVERHEAD + RamUsageEstimator.shallowSizeOf(key);
+    if (value instanceof DocSet) {
+      size += ((DocSet) value).memSize();
+    } else if (value instanceof StoredDocument) {
+      size += ramBytesUsed((StoredDocument) value);
+    } else if (value != null) {
+      size += RamUsageEstimator.shallowSizeOf(value);
+    }
+    return size;
+  }
+
+  private static long ramBytesUsed(StoredDocument doc) {
+    long size = RamUsageEstimator.shallowSizeOf(doc);
+    for (StorableField field : doc) {
+      size += FIELD_OVERHEAD;
+      final String s = field.stringValue();
+      final BytesRef bytes = field.binaryValue();
+      final Number n = field.numericValue();
+      if (n != null) {
+        size += RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_LONG;
+      } else if (s != null) {
+        size += RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+            + (long) s.length() * RamUsageEstimator.NUM_BYTES_CHAR;
+      } else if (bytes != null) {
+        size += RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+            + bytes.bytes.length;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Parses the <code>maxRamMB</code> argument of a cache.
+   * @return the maximum number of bytes, or -1 if the cache is not limited by RAM
+   */
+  protected static long parseMaxRamBytes(Map args) {
+    String str = (String) args.get("maxRamMB");
+    if (str == null) {
+      return -1;
+    }
+    final double maxRamMB = Double.parseDouble(str);
+    if (maxRamMB <= 0) {
+      throw new IllegalArgumentException("maxRamMB must be > 0, got " + str);
+    }
+    return (long) (maxRamMB * RamUsageEstimator.ONE_MB);
+  }
+
   public String getVersion() {
     return SolrCore.version;
   }
@@ -40,6 +40,7 @@ import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.NRTCachingDirectory;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CloseableThreadLocal;
 import org.apache.lucene.util.OpenBitSet;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.ModifiableSolrParams;
@@ -115,6 +116,9 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
   
   private final AtomicReader atomicReader; 
 
+  // per-thread lookups of the unique key, see lookupId
+  private final CloseableThreadLocal<PerThreadPKLookup> pkLookups = new CloseableThreadLocal<PerThreadPKLookup>();
+
   public SolrIndexSearcher(SolrCore core, String path, IndexSchema schema, SolrIndexConfig config, String name, boolean enableCache, DirectoryFactory directoryFactory) throws IOException {
     // we don't need to reserve the directory because we get it from the factory
     this(core, schema,name, core.getIndexReaderFactory().newReader(directoryFactory.get(path, config.lockType), core), true, enableCache, false, directoryFactory);
@@ -282,6 +286,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       cache.close();
     }
 
+    pkLookups.close();
 
     directoryFactory.release(getIndexReader().directory());
    
@@ -605,27 +610,17 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
    * @lucene.internal
    */
   public long lookupId(BytesRef idBytes) throws IOException {
-    String field = schema.getUniqueKeyField().getName();
-
-    for (int i=0, c=leafContexts.size(); i<c; i++) {
-      final AtomicReaderContext leaf = leafContexts.get(i);
-      final AtomicReader reader = leaf.reader();
-
-      final Terms terms = reader.terms(field);
-      if (terms == null) continue;
-      
-      TermsEnum te = terms.iterator(null);
-      if (te.seekExact(idBytes, true)) {
-        DocsEnum docs = te.docs(reader.getLiveDocs(), null, 0);
-        int id = docs.nextDoc();
-        if (id == DocIdSetIterator.NO_MORE_DOCS) continue;
-        assert docs.nextDoc() == DocIdSetIterator.NO_MORE_DOCS;
-
-        return (((long)i) << 32) | id;
-      }
+    PerThreadPKLookup pkLookup = pkLookups.get();
+    if (pkLookup == null) {
+      pkLookup = new PerThreadPKLookup(reader, schema.getUniqueKeyField().getName());
+      pkLookups.set(pkLookup);
     }
 
-    return -1;
+    int docID = pkLookup.lookup(idBytes);
+    if (docID == -1) return -1;
+
+    int i = ReaderUtil.subIndex(docID, leafContexts);
+    return (((long)i) << 32) | (docID - leafContexts.get(i).docBase);
   }
 
 
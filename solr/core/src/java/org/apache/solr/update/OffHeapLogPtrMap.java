@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.update;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * A map from indexed id to {@link UpdateLog.LogPtr} that keeps its keys and
+ * values in direct (off-heap) buffers, so that the ids of all documents added
+ * between two commits don't pile up on the heap.
+ * <p>
+ * The hash table uses open addressing with linear probing. Each slot holds the
+ * hash of the key, the offset of the key bytes in a separate key pool, the
+ * tlog pointer and the version. Overwriting an id leaves its old key bytes
+ * behind in the pool until the next {@link #clear()}.
+ * <p>
+ * Direct buffers are only given back to the OS once they are garbage
+ * collected, which may take a long time since they barely weigh anything on
+ * the heap. So buffers that are outgrown by a rehash, or dropped by
+ * {@link #clear()} or {@link #close()}, are freed eagerly when the JVM allows
+ * it (the same workaround as {@code MMapDirectory}'s unmap hack).
+ * <p>
+ * This class is not thread safe: {@link UpdateLog} only accesses it while
+ * holding its own lock.
+ *
+ * @lucene.internal
+ */
+public class OffHeapLogPtrMap {
+  private static final int SLOT_BYTES = 4 + 4 + 8 + 8;  // hash, key offset + 1, pointer, version
+  private static final int INITIAL_SLOTS = 1024;
+  private static final int INITIAL_POOL_BYTES = 16 * 1024;
+
+  /** true if direct buffers can be freed before they are garbage collected. */
+  private static final boolean FREE_SUPPORTED;
+  static {
+    boolean v;
+    try {
+      Class.forName("sun.misc.Cleaner");
+      Class.forName("java.nio.DirectByteBuffer")
+        .getMethod("cleaner");
+      v = true;
+    } catch (Exception e) {
+      v = false;
+    }
+    FREE_SUPPORTED = v;
+  }
+
+  private ByteBuffer table;
+  private int mask;
+  private int size;
+
+  private ByteBuffer keys;
+  private int keysUpto;
+
+  public OffHeapLogPtrMap() {
+    init();
+  }
+
+  private void init() {
+    table = ByteBuffer.allocateDirect(INITIAL_SLOTS * SLOT_BYTES);
+    mask = INITIAL_SLOTS - 1;
+    size = 0;
+    keys = ByteBuffer.allocateDirect(INITIAL_POOL_BYTES);
+    keysUpto = 0;
+  }
+
+  /** Returns the number of ids in the map. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the number of off-heap bytes used by the table and the key pool. */
+  public long ramBytesUsed() {
+    return (long) table.capacity() + keys.capacity();
+  }
+
+  /** Returns the pointer for this id, or null if the id is not in the map. */
+  public UpdateLog.LogPtr get(BytesRef id) {
+    final int slot = findSlot(id, id.hashCode());
+    final int base = slot * SLOT_BYTES;
+    if (table.getInt(base + 4) == 0) {
+      return null;
+    }
+    return new UpdateLog.LogPtr(table.getLong(base + 8), table.getLong(base + 16));
+  }
+
+  /** Maps this id to the given pointer, replacing any previous one. */
+  public void put(BytesRef id, UpdateLog.LogPtr ptr) {
+    final int hash = id.hashCode();
+    int slot = findSlot(id, hash);
+    int base = slot * SLOT_BYTES;
+    if (table.getInt(base + 4) == 0) {
+      if (size + 1 > (mask + 1) >> 1) {
+        rehash();
+        slot = findSlot(id, hash);
+        base = slot * SLOT_BYTES;
+      }
+      table.putInt(base, hash);
+      table.putInt(base + 4, addKey(id) + 1);
+      size++;
+    }
+    table.putLong(base + 8, ptr.pointer);
+    table.putLong(base + 16, ptr.version);
+  }
+
+  /**
+   * Removes all ids. The buffers are kept for reuse, unless they grew past
+   * their initial size, in which case they are freed.
+   */
+  public void clear() {
+    if (table.capacity() > INITIAL_SLOTS * SLOT_BYTES || keys.capacity() > INITIAL_POOL_BYTES) {
+      free(table);
+      free(keys);
+      init();
+    } else {
+      for (int i = 0; i < table.capacity(); i += 8) {
+        table.putLong(i, 0L);
+      }
+      size = 0;
+      keysUpto = 0;
+    }
+  }
+
+  /**
+   * Frees the buffers of this map. The map must not be used after it has
+   * been closed.
+   */
+  public void close() {
+    if (table != null) {
+      free(table);
+      free(keys);
+      table = null;
+      keys = null;
+      size = 0;
+      keysUpto = 0;
+    }
+  }
+
+  /** Returns the slot that holds this id, or the empty slot where it would go. */
+  private int findSlot(BytesRef id, int hash) {
+    int slot = mix(hash) & mask;
+    while (true) {
+      final int base = slot * SLOT_BYTES;
+      final int keyOffset = table.getInt(base + 4);
+      if (keyOffset == 0) {
+        return slot;
+      }
+      if (table.getInt(base) == hash && keyEquals(keyOffset - 1, id)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /** BytesRef hashes are weak in their low bits, which select the slot. */
+  private static int mix(int hash) {
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    return hash;
+  }
+
+  private boolean keyEquals(int keyOffset, BytesRef id) {
+    final int length = keys.getInt(keyOffset);
+    if (length != id.length) {
+      return false;
+    }
+    final int start = keyOffset + 4;
+    for (int i = 0; i < length; i++) {
+      if (keys.get(start + i) != id.bytes[id.offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int addKey(BytesRef id) {
+    final int needed = 4 + id.length;
+    if (keysUpto + needed > keys.capacity()) {
+      final long newCapacity = Math.max((long) keys.capacity() << 1, (long) keysUpto + needed);
+      if (newCapacity > Integer.MAX_VALUE) {
+        throw new IllegalStateException("too many ids in the update log map: " + size);
+      }
+      final ByteBuffer newKeys = ByteBuffer.allocateDirect((int) newCapacity);
+      final ByteBuffer src = keys.duplicate();
+      src.position(0).limit(keysUpto);
+      newKeys.put(src);
+      free(keys);
+      keys = newKeys;
+    }
+    final int offset = keysUpto;
+    keys.putInt(offset, id.length);
+    final ByteBuffer dst = keys.duplicate();
+    dst.position(offset + 4);
+    dst.put(id.bytes, id.offset, id.length);
+    keysUpto += needed;
+    return offset;
+  }
+
+  private void rehash() {
+    final ByteBuffer oldTable = table;
+    final int oldSlots = mask + 1;
+    final int newSlots = oldSlots << 1;
+    if ((long) newSlots * SLOT_BYTES > Integer.MAX_VALUE) {
+      throw new IllegalStateException("too many ids in the update log map: " + size);
+    }
+    table = ByteBuffer.allocateDirect(newSlots * SLOT_BYTES);
+    mask = newSlots - 1;
+    for (int i = 0; i < oldSlots; i++) {
+      final int oldBase = i * SLOT_BYTES;
+      final int keyOffset = oldTable.getInt(oldBase + 4);
+      if (keyOffset == 0) {
+        continue;
+      }
+      final int hash = oldTable.getInt(oldBase);
+      int slot = mix(hash) & mask;
+      while (table.getInt(slot * SLOT_BYTES + 4) != 0) {
+        slot = (slot + 1) & mask;
+      }
+      final int base = slot * SLOT_BYTES;
+      table.putInt(base, hash);
+      table.putInt(base + 4, keyOffset);
+      table.putLong(base + 8, oldTable.getLong(oldBase + 8));
+      table.putLong(base + 16, oldTable.getLong(oldBase + 16));
+    }
+    free(oldTable);
+  }
+
+  /**
+   * Releases the native memory of a direct buffer that is no longer
+   * referenced. Failures are ignored: the buffer is then simply left to the
+   * garbage collector.
+   */
+  private static void free(final ByteBuffer buffer) {
+    if (!FREE_SUPPORTED) {
+      return;
+    }
+    AccessController.doPrivileged(new PrivilegedAction<Object>() {
+      public Object run() {
+        try {
+          final Method getCleanerMethod = buffer.getClass()
+            .getMethod("cleaner");
+          getCleanerMethod.setAccessible(true);
+          final Object cleaner = getCleanerMethod.invoke(buffer);
+          if (cleaner != null) {
+            cleaner.getClass().getMethod("clean")
+              .invoke(cleaner);
+          }
+        } catch (Exception e) {
+          // leave it to the garbage collector
+        }
+        return null;
+      }
+    });
+  }
+}
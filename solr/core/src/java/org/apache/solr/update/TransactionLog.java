@@ -18,6 +18,7 @@
 package org.apache.solr.update;
 
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Constants;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.util.FastInputStream;
@@ -83,6 +84,24 @@ public class TransactionLog {
 
   long snapshot_size;
   int snapshot_numRecords;
+
+  // Group commit: only one thread fsyncs at a time, and records written by other threads
+  // while it waits for the lock are made durable by the same fsync.
+  // Lock order is syncLock before "this".
+  private final Object syncLock = new Object();
+  private volatile long syncedPos;  // everything before this position has been fsynced
+  final AtomicInteger numSyncs = new AtomicInteger();
+
+  /** Whether logs from a previous run are memory-mapped for replay and lookups.
+   * Not on Windows, where mapped files can't be deleted until they are garbage collected. */
+  static final boolean MMAP_EXISTING_LOGS = Constants.JRE_IS_64BIT && !Constants.WINDOWS;
+  static final int MMAP_CHUNK_BITS = 30;
+
+  // read-only mappings of the log as it existed when it was opened, or null.
+  // Existing logs are only ever appended to (a commit record after replay),
+  // never truncated, so these stay valid. Reads past them go to the channel.
+  private volatile ByteBuffer[] mappedChunks;
+  private long mappedSize;
   
   // write a BytesRef as a byte array
   JavaBinCodec.ObjectResolver resolver = new JavaBinCodec.ObjectResolver() {
@@ -157,6 +176,9 @@ public class TransactionLog {
 
       if (openExisting) {
         if (start > 0) {
+          if (MMAP_EXISTING_LOGS) {
+            map(start);
+          }
           readHeader(null);
           raf.seek(start);
           assert channel.position() == start;
@@ -191,6 +213,27 @@ public class TransactionLog {
     }
   }
 
+  private void map(long size) throws IOException {
+    final long chunkSize = 1L << MMAP_CHUNK_BITS;
+    final int numChunks = (int) ((size + chunkSize - 1) >>> MMAP_CHUNK_BITS);
+    final ByteBuffer[] chunks = new ByteBuffer[numChunks];
+    for (int i = 0; i < numChunks; i++) {
+      final long offset = (long) i << MMAP_CHUNK_BITS;
+      chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(chunkSize, size - offset));
+    }
+    mappedChunks = chunks;
+    mappedSize = size;
+  }
+
+  /** Returns a stream positioned at <code>pos</code> that reads from the mapped
+   * part of the log if there is one, and from the channel otherwise. */
+  ChannelFastInputStream newInputStream(long pos) {
+    if (mappedChunks != null) {
+      return new MappedChannelFastInputStream(channel, pos, mappedChunks, mappedSize);
+    }
+    return new ChannelFastInputStream(channel, pos);
+  }
+
   /** Returns the number of records in the log (currently includes the header and an optional commit).
    * Note: currently returns 0 for reopened existing log files.
    */
@@ -212,7 +255,7 @@ public class TransactionLog {
     byte[] buf = new byte[ END_MESSAGE.length() ];
     long pos = size - END_MESSAGE.length() - 4;
     if (pos < 0) return false;
-    ChannelFastInputStream is = new ChannelFastInputStream(channel, pos);
+    ChannelFastInputStream is = newInputStream(pos);
     is.read(buf);
     for (int i=0; i<buf.length; i++) {
       if (buf[i] != END_MESSAGE.charAt(i)) return false;
@@ -233,13 +276,18 @@ public class TransactionLog {
   // This could mess with any readers or reverse readers that are open, or anything that might try to do a log lookup.
   // This should only be used to roll back buffered updates, not actually applied updates.
   public void rollback(long pos) throws IOException {
-    synchronized (this) {
-      assert snapshot_size == pos;
-      fos.flush();
-      raf.setLength(pos);
-      fos.setWritten(pos);
-      assert fos.size() == pos;
-      numRecords = snapshot_numRecords;
+    synchronized (syncLock) {
+      synchronized (this) {
+        assert snapshot_size == pos;
+        fos.flush();
+        raf.setLength(pos);
+        fos.setWritten(pos);
+        assert fos.size() == pos;
+        numRecords = snapshot_numRecords;
+        if (syncedPos > pos) {
+          syncedPos = pos;  // records written from now on have not been synced
+        }
+      }
     }
   }
 
@@ -259,7 +307,7 @@ public class TransactionLog {
 
   private void readHeader(FastInputStream fis) throws IOException {
     // read existing header
-    fis = fis != null ? fis : new ChannelFastInputStream(channel, 0);
+    fis = fis != null ? fis : newInputStream(0);
     LogCodec codec = new LogCodec();
     Map header = (Map)codec.unmarshal(fis);
 
@@ -478,7 +526,7 @@ public class TransactionLog {
         ***/
       }
 
-      ChannelFastInputStream fis = new ChannelFastInputStream(channel, pos);
+      ChannelFastInputStream fis = newInputStream(pos);
       LogCodec codec = new LogCodec();
       return codec.readVal(fis);
     } catch (IOException e) {
@@ -513,15 +561,14 @@ public class TransactionLog {
   public void finish(UpdateLog.SyncLevel syncLevel) {
     if (syncLevel == UpdateLog.SyncLevel.NONE) return;
     try {
+      long pos;
       synchronized (this) {
         fos.flushBuffer();
+        pos = fos.size();
       }
 
       if (syncLevel == UpdateLog.SyncLevel.FSYNC) {
-        // Since fsync is outside of synchronized block, we can end up with a partial
-        // last record on power failure (which is OK, and does not represent an error...
-        // we just need to be aware of it when reading).
-        raf.getFD().sync();
+        sync(pos);
       }
 
     } catch (IOException e) {
@@ -529,6 +576,33 @@ public class TransactionLog {
     }
   }
 
+  /** Makes sure everything up to <code>pos</code> is on stable storage.  Concurrent
+   * callers are grouped: the thread that gets the lock flushes everything written so far
+   * and fsyncs once, and callers whose records were covered by that fsync return
+   * without syncing again.
+   */
+  private void sync(long pos) throws IOException {
+    if (syncedPos >= pos) return;
+
+    synchronized (syncLock) {
+      if (syncedPos >= pos) return;  // check again: another thread's fsync covered our records
+
+      long syncPos;
+      synchronized (this) {
+        // pick up records other threads wrote while we were waiting for the lock
+        fos.flushBuffer();
+        syncPos = fos.size();
+      }
+
+      // Since fsync is outside of synchronized(this), we can end up with a partial
+      // last record on power failure (which is OK, and does not represent an error...
+      // we just need to be aware of it when reading).
+      raf.getFD().sync();
+      numSyncs.incrementAndGet();
+      syncedPos = syncPos;
+    }
+  }
+
   private void close() {
     try {
       if (debug) {
@@ -538,6 +612,7 @@ public class TransactionLog {
       synchronized (this) {
         fos.flush();
         fos.close();
+        mappedChunks = null;  // the mappings go away once they are garbage collected
       }
 
       if (deleteOnClose) {
@@ -579,7 +654,7 @@ public class TransactionLog {
 
     public LogReader(long startingPos) {
       incref();
-      fis = new ChannelFastInputStream(channel, startingPos);
+      fis = newInputStream(startingPos);
     }
 
     /** Returns the next object from the log, or null if none available.
@@ -661,7 +736,7 @@ public class TransactionLog {
         assert sz == channel.size();
       }
 
-      fis = new ChannelFastInputStream(channel, 0);
+      fis = newInputStream(0);
       if (sz >=4) {
         // readHeader(fis);  // should not be needed
         prevPos = sz - 4;
@@ -786,3 +861,32 @@ class ChannelFastInputStream extends FastInputStream {
 }
 
 
+/** Reads the memory-mapped part of a log without a system call per buffer refill,
+ * and falls back to reading from the channel past it. */
+class MappedChannelFastInputStream extends ChannelFastInputStream {
+  private final ByteBuffer[] chunks;
+  private final long mappedSize;
+
+  public MappedChannelFastInputStream(FileChannel ch, long chPosition, ByteBuffer[] chunks, long mappedSize) {
+    super(ch, chPosition);
+    // duplicates have their own position, so that streams can be used concurrently
+    this.chunks = new ByteBuffer[chunks.length];
+    for (int i = 0; i < chunks.length; i++) {
+      this.chunks[i] = chunks[i].duplicate();
+    }
+    this.mappedSize = mappedSize;
+  }
+
+  @Override
+  public int readWrappedStream(byte[] target, int offset, int len) throws IOException {
+    if (readFromStream >= mappedSize) {
+      return super.readWrappedStream(target, offset, len);
+    }
+    final ByteBuffer chunk = chunks[(int) (readFromStream >>> TransactionLog.MMAP_CHUNK_BITS)];
+    final int chunkPos = (int) (readFromStream & ((1L << TransactionLog.MMAP_CHUNK_BITS) - 1));
+    final int n = Math.min(len, chunk.limit() - chunkPos);
+    chunk.position(chunkPos);
+    chunk.get(target, offset, n);
+    return n;
+  }
+}
@@ -113,11 +113,12 @@ public class UpdateLog implements PluginInfoInitialized {
   private LinkedList<TransactionLog> newestLogsOnStartup = new LinkedList<TransactionLog>();
   private int numOldRecords;  // number of records in the recent logs
 
-  private Map<BytesRef,LogPtr> map = new HashMap<BytesRef, LogPtr>();
-  private Map<BytesRef,LogPtr> prevMap;  // used while committing/reopening is happening
-  private Map<BytesRef,LogPtr> prevMap2;  // used while committing/reopening is happening
+  private OffHeapLogPtrMap map = new OffHeapLogPtrMap();
+  private OffHeapLogPtrMap prevMap;  // used while committing/reopening is happening
+  private OffHeapLogPtrMap prevMap2;  // used while committing/reopening is happening
   private TransactionLog prevMapLog;  // the transaction log used to look up entries found in prevMap
   private TransactionLog prevMapLog2;  // the transaction log used to look up entries found in prevMap
+  private OffHeapLogPtrMap spareMap;  // a dropped map whose buffers are reused by the next new map
 
   private final int numDeletesToKeep = 1000;
   private final int numDeletesByQueryToKeep = 100;
@@ -527,20 +528,39 @@ public class UpdateLog implements PluginInfoInitialized {
   }
 
   private void newMap() {
+    dropMap(prevMap2);
     prevMap2 = prevMap;
     prevMapLog2 = prevMapLog;
 
     prevMap = map;
     prevMapLog = tlog;
 
-    map = new HashMap<BytesRef, LogPtr>();
+    if (spareMap != null) {
+      map = spareMap;
+      spareMap = null;
+    } else {
+      map = new OffHeapLogPtrMap();
+    }
   }
 
   private void clearOldMaps() {
+    dropMap(prevMap);
     prevMap = null;
+    dropMap(prevMap2);
     prevMap2 = null;
   }
 
+  /** Keeps a map that is no longer referenced as the spare one, or frees its buffers. */
+  private void dropMap(OffHeapLogPtrMap m) {
+    if (m == null) return;
+    if (spareMap == null) {
+      m.clear();
+      spareMap = m;
+    } else {
+      m.close();
+    }
+  }
+
   public boolean hasUncommittedChanges() {
     return tlog != null;
   }
@@ -601,13 +621,11 @@ public class UpdateLog implements PluginInfoInitialized {
     synchronized (this) {
 
       if (!cmd.softCommit) return;  // already handled this at the start of the hard commit
-      newMap();
-
       // start adding documents to a new map since we won't know if
       // any added documents will make it into this commit or not.
       // But we do know that any updates already added will definitely
       // show up in the latest reader after the commit succeeds.
-      map = new HashMap<BytesRef, LogPtr>();
+      newMap();
 
       if (debug) {
         log.debug("TLOG: preSoftCommit: prevMap="+ System.identityHashCode(prevMap) + " new map=" + System.identityHashCode(map));
@@ -822,6 +840,12 @@ public class UpdateLog implements PluginInfoInitialized {
         log.forceClose();
       }
 
+      // the current map stays usable for lookups that race with the close
+      clearOldMaps();
+      if (spareMap != null) {
+        spareMap.close();
+        spareMap = null;
+      }
     }
   }
 
@@ -48,6 +48,7 @@ public class ConcurrentLRUCache<K,V> {
 
   private final ConcurrentHashMap<Object, CacheEntry<K,V>> map;
   private final int upperWaterMark, lowerWaterMark;
+  private final long ramUpperWaterMark, ramLowerWaterMark;
   private final ReentrantLock markAndSweepLock = new ReentrantLock(true);
   private boolean isCleaning = false;  // not volatile... piggybacked on other volatile vars
   private final boolean newThreadForCleanup;
@@ -61,9 +62,28 @@ public class ConcurrentLRUCache<K,V> {
   public ConcurrentLRUCache(int upperWaterMark, final int lowerWaterMark, int acceptableWatermark,
                             int initialSize, boolean runCleanupThread, boolean runNewThreadForCleanup,
                             EvictionListener<K,V> evictionListener) {
+    this(upperWaterMark, lowerWaterMark, acceptableWatermark, initialSize, runCleanupThread,
+        runNewThreadForCleanup, evictionListener, Long.MAX_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Creates a cache that is also limited by the RAM used by its entries, as
+   * reported to {@link #put(Object, Object, long)}: once it exceeds
+   * <code>ramUpperWaterMark</code> bytes, least recently used entries are
+   * evicted until it is below <code>ramLowerWaterMark</code>.
+   */
+  public ConcurrentLRUCache(int upperWaterMark, final int lowerWaterMark, int acceptableWatermark,
+                            int initialSize, boolean runCleanupThread, boolean runNewThreadForCleanup,
+                            EvictionListener<K,V> evictionListener,
+                            long ramUpperWaterMark, long ramLowerWaterMark) {
     if (upperWaterMark < 1) throw new IllegalArgumentException("upperWaterMark must be > 0");
     if (lowerWaterMark >= upperWaterMark)
       throw new IllegalArgumentException("lowerWaterMark must be  < upperWaterMark");
+    if (ramUpperWaterMark < 1) throw new IllegalArgumentException("ramUpperWaterMark must be > 0");
+    if (ramLowerWaterMark > ramUpperWaterMark)
+      throw new IllegalArgumentException("ramLowerWaterMark must be <= ramUpperWaterMark");
+    this.ramUpperWaterMark = ramUpperWaterMark;
+    this.ramLowerWaterMark = ramLowerWaterMark;
     map = new ConcurrentHashMap<Object, CacheEntry<K,V>>(initialSize);
     newThreadForCleanup = runNewThreadForCleanup;
     this.upperWaterMark = upperWaterMark;
@@ -99,20 +119,31 @@ public class ConcurrentLRUCache<K,V> {
     CacheEntry<K,V> cacheEntry = map.remove(key);
     if (cacheEntry != null) {
       stats.size.decrementAndGet();
+      stats.ramBytes.addAndGet(-cacheEntry.ramBytes);
       return cacheEntry.value;
     }
     return null;
   }
 
   public V put(K key, V val) {
+    return put(key, val, 0L);
+  }
+
+  /**
+   * Adds an entry that takes <code>ramBytes</code> bytes of memory, which
+   * counts towards the RAM limit of this cache.
+   */
+  public V put(K key, V val, long ramBytes) {
     if (val == null) return null;
-    CacheEntry<K,V> e = new CacheEntry<K,V>(key, val, stats.accessCounter.incrementAndGet());
+    CacheEntry<K,V> e = new CacheEntry<K,V>(key, val, stats.accessCounter.incrementAndGet(), ramBytes);
     CacheEntry<K,V> oldCacheEntry = map.put(key, e);
     int currentSize;
     if (oldCacheEntry == null) {
       currentSize = stats.size.incrementAndGet();
+      stats.ramBytes.addAndGet(ramBytes);
     } else {
       currentSize = stats.size.get();
+      stats.ramBytes.addAndGet(ramBytes - oldCacheEntry.ramBytes);
     }
     if (islive) {
       stats.putCounter.incrementAndGet();
@@ -130,7 +161,7 @@ public class ConcurrentLRUCache<K,V> {
     //
     // Thread safety note: isCleaning read is piggybacked (comes after) other volatile reads
     // in this method.
-    if (currentSize > upperWaterMark && !isCleaning) {
+    if ((currentSize > upperWaterMark || stats.ramBytes.get() > ramUpperWaterMark) && !isCleaning) {
       if (newThreadForCleanup) {
         new Thread() {
           @Override
@@ -173,6 +204,13 @@ public class ConcurrentLRUCache<K,V> {
       isCleaning = true;
       this.oldestEntry = oldestEntry;     // volatile write to make isCleaning visible
 
+      if (stats.ramBytes.get() > ramUpperWaterMark) {
+        markAndSweepByRam();
+        if (stats.size.get() <= upperWaterMark) {
+          return;
+        }
+      }
+
       long timeCurrent = stats.accessCounter.get();
       int sz = stats.size.get();
 
@@ -352,6 +390,23 @@ public class ConcurrentLRUCache<K,V> {
     }
   }
 
+  /**
+   * Evicts the least recently used entries until the RAM used by the cache
+   * goes down to 'ramLowerWaterMark'. Must be called with the markAndSweepLock.
+   */
+  private void markAndSweepByRam() {
+    @SuppressWarnings("unchecked") // generic array's are anoying
+    CacheEntry<K,V>[] entries = map.values().toArray(new CacheEntry[0]);
+    for (CacheEntry<K,V> ce : entries) {
+      ce.lastAccessedCopy = ce.lastAccessed;
+    }
+    // sorts by descending access time
+    Arrays.sort(entries);
+    for (int i = entries.length - 1; i >= 0 && stats.ramBytes.get() > ramLowerWaterMark; i--) {
+      evictEntry(entries[i].key);
+    }
+  }
+
   private static class PQueue<K,V> extends PriorityQueue<CacheEntry<K,V>> {
     int myMaxSize;
     final Object[] heap;
@@ -395,6 +450,7 @@ public class ConcurrentLRUCache<K,V> {
     CacheEntry<K,V> o = map.remove(key);
     if (o == null) return;
     stats.size.decrementAndGet();
+    stats.ramBytes.addAndGet(-o.ramBytes);
     stats.evictionCounter.incrementAndGet();
     if(evictionListener != null) evictionListener.evictedEntry(o.key,o.value);
   }
@@ -470,6 +526,7 @@ public class ConcurrentLRUCache<K,V> {
 
   public void clear() {
     map.clear();
+    stats.ramBytes.set(0);
   }
 
   public Map<Object, CacheEntry<K,V>> getMap() {
@@ -481,12 +538,18 @@ public class ConcurrentLRUCache<K,V> {
     V value;
     volatile long lastAccessed = 0;
     long lastAccessedCopy = 0;
+    final long ramBytes;
 
 
     public CacheEntry(K key, V value, long lastAccessed) {
+      this(key, value, lastAccessed, 0L);
+    }
+
+    public CacheEntry(K key, V value, long lastAccessed, long ramBytes) {
       this.key = key;
       this.value = value;
       this.lastAccessed = lastAccessed;
+      this.ramBytes = ramBytes;
     }
 
     public void setLastAccessed(long lastAccessed) {
@@ -536,6 +599,7 @@ public class ConcurrentLRUCache<K,V> {
             nonLivePutCounter = new AtomicLong(0),
             missCounter = new AtomicLong();
     private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong ramBytes = new AtomicLong();
     private AtomicLong evictionCounter = new AtomicLong();
 
     public long getCumulativeLookups() {
@@ -558,6 +622,12 @@ public class ConcurrentLRUCache<K,V> {
       return size.get();
     }
 
+    /** Returns the RAM used by the entries of the cache, as reported by
+     *  {@link ConcurrentLRUCache#put(Object, Object, long)}. */
+    public long getCurrentRamBytes() {
+      return ramBytes.get();
+    }
+
     public long getCumulativeNonLivePuts() {
       return nonLivePutCounter.get();
     }
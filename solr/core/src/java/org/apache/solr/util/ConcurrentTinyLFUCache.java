@@ -0,0 +1,407 @@
+package org.apache.solr.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache implementation that is split into independently locked segments,
+ * each of which evicts its least recently used entry in constant time, but
+ * only admits a new entry if it has been requested more often than the entry
+ * it would evict (TinyLFU admission).
+ * <p/>
+ * Access frequencies are estimated with a count-min sketch of 4-bit counters
+ * per segment, which is periodically halved so that the estimates follow the
+ * recent popularity of keys. This protects frequently used entries from being
+ * flushed out by a burst of entries that are only used once, which a pure LRU
+ * policy can't do.
+ * <p/>
+ * Entries that are put while the cache is not live (eg. during autowarming)
+ * are always admitted.
+ *
+ * @see org.apache.solr.search.TinyLFUCache
+ * @since solr 4.2
+ */
+public class ConcurrentTinyLFUCache<K,V> {
+
+  /** Segments are not split below this capacity. */
+  private static final int MIN_SEGMENT_CAPACITY = 16;
+
+  private final Segment<K,V>[] segments;
+  private final int segmentShift;
+  private final int upperWaterMark;
+  private final Stats stats = new Stats();
+  private volatile boolean islive = true;
+
+  /**
+   * @param upperWaterMark the maximum number of entries
+   * @param initialSize the initial capacity of the cache
+   * @param concurrencyLevel the estimated number of concurrently updating threads,
+   *        the cache is split into at most that many segments
+   */
+  @SuppressWarnings("unchecked")
+  public ConcurrentTinyLFUCache(int upperWaterMark, int initialSize, int concurrencyLevel) {
+    if (upperWaterMark < 1) throw new IllegalArgumentException("upperWaterMark must be > 0");
+    if (concurrencyLevel < 1) throw new IllegalArgumentException("concurrencyLevel must be > 0");
+    int numSegments = 1;
+    int shift = 0;
+    while (numSegments < concurrencyLevel && numSegments * 2 * MIN_SEGMENT_CAPACITY <= upperWaterMark) {
+      numSegments <<= 1;
+      shift++;
+    }
+    this.upperWaterMark = upperWaterMark;
+    this.segmentShift = 32 - shift;
+    this.segments = new Segment[numSegments];
+    // the first upperWaterMark % numSegments segments hold one more entry,
+    // so that the capacities add up to upperWaterMark
+    final int segmentCapacity = upperWaterMark / numSegments;
+    final int remainder = upperWaterMark % numSegments;
+    for (int i = 0; i < numSegments; i++) {
+      final int capacity = segmentCapacity + (i < remainder ? 1 : 0);
+      final int segmentInitialSize = Math.min(capacity, Math.max(1, initialSize / numSegments));
+      segments[i] = new Segment<K,V>(capacity, segmentInitialSize);
+    }
+  }
+
+  public void setAlive(boolean live) {
+    islive = live;
+  }
+
+  public V get(K key) {
+    final int hash = hash(key);
+    final Segment<K,V> segment = segmentFor(hash);
+    CacheEntry<K,V> e;
+    synchronized (segment) {
+      segment.sketch.increment(hash);
+      e = segment.map.get(key);
+      if (e != null && islive) {
+        e.lastAccessed = stats.accessCounter.incrementAndGet();
+      }
+    }
+    if (islive) {
+      if (e == null) {
+        stats.missCounter.incrementAndGet();
+      } else {
+        stats.hitCounter.incrementAndGet();
+      }
+    }
+    return e == null ? null : e.value;
+  }
+
+  public V remove(K key) {
+    final Segment<K,V> segment = segmentFor(hash(key));
+    CacheEntry<K,V> e;
+    synchronized (segment) {
+      e = segment.map.remove(key);
+    }
+    if (e == null) {
+      return null;
+    }
+    stats.size.decrementAndGet();
+    return e.value;
+  }
+
+  /**
+   * Adds an entry to the cache, unless the segment it belongs to is full and
+   * the new key is estimated to be requested less often than the least
+   * recently used entry of the segment.
+   *
+   * @return the previous value for this key, or null
+   */
+  public V put(K key, V val) {
+    if (val == null) return null;
+    final int hash = hash(key);
+    final Segment<K,V> segment = segmentFor(hash);
+    final boolean live = islive;
+    CacheEntry<K,V> old;
+    synchronized (segment) {
+      old = segment.map.get(key);
+      if (old == null && segment.map.size() >= segment.capacity) {
+        // the map is in access order, so the first entry is the least recently used one
+        final Iterator<CacheEntry<K,V>> it = segment.map.values().iterator();
+        final CacheEntry<K,V> victim = it.next();
+        if (live && segment.sketch.frequency(hash) <= segment.sketch.frequency(victim.hash)) {
+          stats.rejectionCounter.incrementAndGet();
+          return null;
+        }
+        it.remove();
+        stats.size.decrementAndGet();
+        stats.evictionCounter.incrementAndGet();
+        if (live) {
+          stats.admissionCounter.incrementAndGet();
+        }
+      }
+      segment.map.put(key, new CacheEntry<K,V>(key, val, hash, stats.accessCounter.incrementAndGet()));
+    }
+    if (old == null) {
+      stats.size.incrementAndGet();
+    }
+    if (live) {
+      stats.putCounter.incrementAndGet();
+    } else {
+      stats.nonLivePutCounter.incrementAndGet();
+    }
+    return old == null ? null : old.value;
+  }
+
+  /**
+   * Returns up to 'n' of the most recently accessed entries, ordered by
+   * descending access time.
+   */
+  public Map<K,V> getLatestAccessedItems(int n) {
+    Map<K,V> result = new LinkedHashMap<K,V>();
+    if (n <= 0)
+      return result;
+    // copies, since the access times keep changing while we sort
+    List<CacheEntry<K,V>> entries = new ArrayList<CacheEntry<K,V>>();
+    for (Segment<K,V> segment : segments) {
+      synchronized (segment) {
+        for (CacheEntry<K,V> ce : segment.map.values()) {
+          entries.add(new CacheEntry<K,V>(ce.key, ce.value, ce.hash, ce.lastAccessed));
+        }
+      }
+    }
+    // a list rather than a sorted set, so that entries with the same
+    // access time are all kept
+    Collections.sort(entries);
+    for (CacheEntry<K,V> e : entries) {
+      if (result.size() >= n) {
+        break;
+      }
+      result.put(e.key, e.value);
+    }
+    return result;
+  }
+
+  public int size() {
+    return stats.size.get();
+  }
+
+  /** Returns the maximum number of entries of this cache. */
+  public int getMaxSize() {
+    return upperWaterMark;
+  }
+
+  /** Returns the number of independently locked segments. */
+  public int getNumSegments() {
+    return segments.length;
+  }
+
+  public void clear() {
+    for (Segment<K,V> segment : segments) {
+      synchronized (segment) {
+        stats.size.addAndGet(-segment.map.size());
+        segment.map.clear();
+      }
+    }
+  }
+
+  public Stats getStats() {
+    return stats;
+  }
+
+  private Segment<K,V> segmentFor(int hash) {
+    // the sketch uses the low bits of the hash, so pick the segment with the high ones
+    return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private static final class Segment<K,V> {
+    final int capacity;
+    final LinkedHashMap<Object, CacheEntry<K,V>> map;
+    final FrequencySketch sketch;
+
+    Segment(int capacity, int initialSize) {
+      this.capacity = capacity;
+      this.map = new LinkedHashMap<Object, CacheEntry<K,V>>(initialSize, 0.75f, true);
+      this.sketch = new FrequencySketch(capacity);
+    }
+  }
+
+  private static final class CacheEntry<K,V> implements Comparable<CacheEntry<K,V>> {
+    final K key;
+    final V value;
+    final int hash;
+    long lastAccessed; // only accessed under the lock of the segment
+
+    CacheEntry(K key, V value, int hash, long lastAccessed) {
+      this.key = key;
+      this.value = value;
+      this.hash = hash;
+      this.lastAccessed = lastAccessed;
+    }
+
+    public int compareTo(CacheEntry<K,V> that) {
+      // most recently accessed first
+      if (this.lastAccessed == that.lastAccessed) return 0;
+      return this.lastAccessed < that.lastAccessed ? 1 : -1;
+    }
+  }
+
+  /**
+   * A count-min sketch with four 4-bit counters per key, packed sixteen to a
+   * long. Once the number of increments reaches ten times the capacity of the
+   * segment, all counters are halved. Not thread-safe: it is only used under
+   * the lock of its segment.
+   */
+  static final class FrequencySketch {
+    private static final long[] SEEDS = new long[] {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int capacity) {
+      int size = 8;
+      while (size < capacity) {
+        size <<= 1;
+      }
+      table = new long[size];
+      tableMask = size - 1;
+      sampleSize = 10 * Math.max(capacity, MIN_SEGMENT_CAPACITY);
+    }
+
+    /** Returns the estimated number of occurrences of the given hash, at most 15. */
+    int frequency(int hash) {
+      final int start = (hash & 3) << 2;
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++) {
+        final int offset = (start + i) << 2;
+        final int count = (int) ((table[indexOf(hash, i)] >>> offset) & 0xfL);
+        frequency = Math.min(frequency, count);
+      }
+      return frequency;
+    }
+
+    /** Records an occurrence of the given hash. */
+    void increment(int hash) {
+      final int start = (hash & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++) {
+        added |= incrementAt(indexOf(hash, i), start + i);
+      }
+      if (added && ++additions == sampleSize) {
+        reset();
+      }
+    }
+
+    private boolean incrementAt(int i, int j) {
+      final int offset = j << 2;
+      final long mask = 0xfL << offset;
+      if ((table[i] & mask) != mask) {
+        table[i] += 1L << offset;
+        return true;
+      }
+      return false;
+    }
+
+    /** Halves all counters, this makes old occurrences count less than recent ones. */
+    private void reset() {
+      int odd = 0;
+      for (int i = 0; i < table.length; i++) {
+        odd += Long.bitCount(table[i] & ONE_MASK);
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      additions = (additions >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int hash, int i) {
+      long h = (hash + SEEDS[i]) * SEEDS[i];
+      h += h >>> 32;
+      return ((int) h) & tableMask;
+    }
+  }
+
+  public static class Stats {
+    private final AtomicLong accessCounter = new AtomicLong(0),
+            hitCounter = new AtomicLong(0),
+            missCounter = new AtomicLong(0),
+            putCounter = new AtomicLong(0),
+            nonLivePutCounter = new AtomicLong(0),
+            evictionCounter = new AtomicLong(0),
+            admissionCounter = new AtomicLong(0),
+            rejectionCounter = new AtomicLong(0);
+    private final AtomicInteger size = new AtomicInteger();
+
+    public long getCumulativeLookups() {
+      return hitCounter.get() + missCounter.get();
+    }
+
+    public long getCumulativeHits() {
+      return hitCounter.get();
+    }
+
+    public long getCumulativeMisses() {
+      return missCounter.get();
+    }
+
+    public long getCumulativePuts() {
+      return putCounter.get();
+    }
+
+    public long getCumulativeNonLivePuts() {
+      return nonLivePutCounter.get();
+    }
+
+    public long getCumulativeEvictions() {
+      return evictionCounter.get();
+    }
+
+    /** Number of new entries that were added to a full segment by evicting a less frequent entry. */
+    public long getCumulativeAdmissions() {
+      return admissionCounter.get();
+    }
+
+    /** Number of new entries that were not added because they were less frequent than the entry to evict. */
+    public long getCumulativeRejections() {
+      return rejectionCounter.get();
+    }
+
+    public int getCurrentSize() {
+      return size.get();
+    }
+
+    public void add(Stats other) {
+      accessCounter.addAndGet(other.accessCounter.get());
+      hitCounter.addAndGet(other.hitCounter.get());
+      missCounter.addAndGet(other.missCounter.get());
+      putCounter.addAndGet(other.putCounter.get());
+      nonLivePutCounter.addAndGet(other.nonLivePutCounter.get());
+      evictionCounter.addAndGet(other.evictionCounter.get());
+      admissionCounter.addAndGet(other.admissionCounter.get());
+      rejectionCounter.addAndGet(other.rejectionCounter.get());
+      size.set(Math.max(size.get(), other.size.get()));
+    }
+  }
+}
@@ -1752,6 +1752,10 @@ public class SimpleFacetsTest extends SolrTestCaseJ4 {
     doFacetPrefix("t_s", null, "facet.method", "enum", "facet.enum.cache.minDf", "3");
     doFacetPrefix("t_s", null, "facet.method", "enum", "facet.enum.cache.minDf", "100");
     doFacetPrefix("t_s", null, "facet.method", "fc");
+    doFacetPrefix("t_s", "{!threads=2}", "facet.method", "fc");  // count segments in parallel
+    doFacetPrefix("t_s", null, "facet.method", "fcs");
+    doFacetPrefix("t_s", "{!threads=0}", "facet.method", "fcs");   // direct execution
+    doFacetPrefix("t_s", "{!threads=2}", "facet.method", "fcs");   // specific number of threads
   }
 
   static void indexFacetPrefixSingleValued() {
@@ -208,6 +208,81 @@ public class TestFaceting extends SolrTestCaseJ4 {
               );
   }
 
+  @Test
+  public void testPerSegmentMultiValued() throws Exception {
+    assertU(adoc("id", "1", "many_ws", "a b c"));
+    assertU(adoc("id", "2", "many_ws", "b c"));
+    assertU(commit());
+
+    req = lrf.makeRequest("q","*:*");
+    PerSegmentUnInvertedField first = PerSegmentUnInvertedField.getPerSegmentUnInvertedField("many_ws", req.getSearcher());
+    assertSame(first, PerSegmentUnInvertedField.getPerSegmentUnInvertedField("many_ws", req.getSearcher()));
+    close();
+
+    assertU(adoc("id", "3", "many_ws", "c d"));
+    assertU(commit());
+
+    for (String threads : new String[] {"", "{!threads=0}", "{!threads=1}", "{!threads=-1}"}) {
+      assertQ("per-segment multi-valued faceting",
+              req("q", "*:*", "indent", "true"
+                  ,"facet", "true", "facet.method", "fcs"
+                  ,"facet.field", threads + "many_ws"
+                  ,"facet.mincount", "1"
+                  )
+              ,"*[count(//lst[@name='many_ws']/int)=4]"
+              ,"//lst[@name='many_ws']/int[1][@name='c'][.='3']"
+              ,"//lst[@name='many_ws']/int[2][@name='b'][.='2']"
+              ,"//lst[@name='many_ws']/int[3][@name='a'][.='1']"
+              ,"//lst[@name='many_ws']/int[4][@name='d'][.='1']"
+              );
+    }
+
+    req = lrf.makeRequest("q","*:*");
+    PerSegmentUnInvertedField second = PerSegmentUnInvertedField.getPerSegmentUnInvertedField("many_ws", req.getSearcher());
+    assertNotSame(first, second);
+    if (req.getSearcher().getTopReaderContext().leaves().size() == 2) {
+      // the segment from the first commit was not un-inverted again
+      assertSame(first.segOrds[0], second.segOrds[0]);
+    }
+  }
+
+  @Test
+  public void testParallelMultiValued() throws Exception {
+    Random rand = random();
+    int numDocs = atLeast(300);
+    int numSegments = 4;
+    for (int i=0; i<numDocs; i++) {
+      // a small vocabulary, so that some terms are big enough to be counted by set intersection
+      StringBuilder sb = new StringBuilder();
+      int numValues = rand.nextInt(5);
+      for (int j=0; j<numValues; j++) {
+        sb.append(t(rand.nextInt(j == 0 ? 3 : 200))).append(' ');
+      }
+      assertU(adoc("id", Integer.toString(i), "many_ws", sb.toString()));
+      if (i % (numDocs / numSegments) == 0) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+
+    // all docs, which counts the complement, and a subset of them
+    for (String q : new String[] {"*:*", "id:1*"}) {
+      for (String sort : new String[] {"count", "index"}) {
+        String serial = h.query(req("q", q, "omitHeader", "true", "rows", "0"
+            ,"facet", "true", "facet.method", "fc", "facet.sort", sort
+            ,"facet.field", "many_ws", "facet.limit", "-1", "facet.mincount", "1"
+            ));
+        for (String threads : new String[] {"{!threads=2}", "{!threads=3}", "{!threads=8}"}) {
+          String parallel = h.query(req("q", q, "omitHeader", "true", "rows", "0"
+              ,"facet", "true", "facet.method", "fc", "facet.sort", sort
+              ,"facet.field", threads + "many_ws", "facet.limit", "-1", "facet.mincount", "1"
+              ));
+          assertEquals("q=" + q + " sort=" + sort + " " + threads, serial, parallel);
+        }
+      }
+    }
+  }
+
   @Test
   public void testRegularBig() throws Exception {
     StringBuilder sb = new StringBuilder();
@@ -122,6 +122,36 @@ public class TestLRUCache extends LuceneTestCase {
     lruCacheNew.close();
   }
   
+  public void testMaxRamSize() throws IOException {
+    LRUCache<Object, Object> cache = new LRUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("maxRamMB", "1");
+    cache.init(params, null, null);
+    cache.setState(SolrCache.State.LIVE);
+    final long maxRamBytes = 1024 * 1024;
+    // ~400KB each, so that only two of them fit
+    final DocSet big = new SortedIntDocSet(new int[100000]);
+    for (int i = 0; i < 10; i++) {
+      cache.put(i, big);
+      NamedList<Serializable> nl = cache.getStatistics();
+      assertTrue((Long) nl.get("ramBytesUsed") <= maxRamBytes);
+    }
+    assertEquals(big, cache.get(9));
+    assertEquals(null, cache.get(0));
+    assertTrue(cache.size() <= 2);
+
+    // small entries are not limited by the default number of entries
+    for (int i = 0; i < 1100; i++) {
+      cache.put("small" + i, SortedIntDocSet.zero);
+    }
+    assertEquals(SortedIntDocSet.zero, cache.get("small1099"));
+    assertTrue(cache.size() > 1024);
+    NamedList<Serializable> nl = cache.getStatistics();
+    assertTrue((Long) nl.get("ramBytesUsed") <= maxRamBytes);
+    assertEquals(1.0, (Double) nl.get("maxRamMB"), 0.001);
+    cache.close();
+  }
+
   private CacheRegenerator createCodeRegenerator() {
     CacheRegenerator cr = new CacheRegenerator() {
       @SuppressWarnings("unchecked")
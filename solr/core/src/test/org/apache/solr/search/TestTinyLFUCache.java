@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.util.ConcurrentTinyLFUCache;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Test for TinyLFUCache
+ *
+ * @see org.apache.solr.search.TinyLFUCache
+ */
+public class TestTinyLFUCache extends LuceneTestCase {
+
+  public void testSimple() throws IOException {
+    TinyLFUCache<Object, Object> sc = new TinyLFUCache<Object, Object>();
+    Map<String, String> l = new HashMap<String, String>();
+    l.put("size", "100");
+    l.put("initialSize", "10");
+    l.put("autowarmCount", "100%");
+    CacheRegenerator cr = createCodeRegenerator();
+    Object o = sc.init(l, null, cr);
+    sc.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 50; i++) {
+      sc.put(i + 1, "" + (i + 1));
+    }
+    assertEquals("25", sc.get(25));
+    assertEquals(null, sc.get(110));
+    NamedList<Serializable> nl = sc.getStatistics();
+    assertEquals(2L, nl.get("lookups"));
+    assertEquals(1L, nl.get("hits"));
+    assertEquals(50L, nl.get("inserts"));
+    assertEquals(0L, nl.get("evictions"));
+    assertEquals(0L, nl.get("rejections"));
+    assertEquals(50L, nl.get("size"));
+
+    TinyLFUCache<Object, Object> scNew = new TinyLFUCache<Object, Object>();
+    scNew.init(l, o, cr);
+    scNew.warm(null, sc);
+    scNew.setState(SolrCache.State.LIVE);
+    sc.close();
+    assertEquals(50, scNew.size());
+    scNew.put(103, "103");
+    assertEquals("25", scNew.get(25));
+    assertEquals("1", scNew.get(1));
+    assertEquals("103", scNew.get(103));
+    nl = scNew.getStatistics();
+    assertEquals(3L, nl.get("lookups"));
+    assertEquals(3L, nl.get("hits"));
+    assertEquals(1L, nl.get("inserts"));
+    assertEquals(5L, nl.get("cumulative_lookups"));
+    assertEquals(4L, nl.get("cumulative_hits"));
+    assertEquals(51L, nl.get("cumulative_inserts"));
+    scNew.close();
+  }
+
+  public void testOneOffEntriesDoNotEvictFrequentOnes() {
+    ConcurrentTinyLFUCache<Integer, String> cache = new ConcurrentTinyLFUCache<Integer, String>(64, 64, 1);
+    cache.setAlive(true);
+    for (int i = 0; i < 64; i++) {
+      cache.put(i, "" + i);
+    }
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 64; i++) {
+        assertEquals("" + i, cache.get(i));
+      }
+    }
+    // a scan over keys that are only requested once: frequencies are
+    // estimated, so a few of them may still collide with frequent keys
+    for (int i = 1000; i < 2000; i++) {
+      assertNull(cache.get(i));
+      cache.put(i, "" + i);
+    }
+    assertEquals(64, cache.size());
+    final long rejections = cache.getStats().getCumulativeRejections();
+    assertTrue("rejections=" + rejections, rejections >= 900);
+    assertEquals(1000 - rejections, cache.getStats().getCumulativeEvictions());
+    int frequentLeft = 0;
+    for (int i = 0; i < 64; i++) {
+      if (cache.get(i) != null) {
+        frequentLeft++;
+      }
+    }
+    assertTrue("frequentLeft=" + frequentLeft, frequentLeft >= 56);
+
+    // a key that becomes popular is admitted
+    final long admissions = cache.getStats().getCumulativeAdmissions();
+    for (int i = 0; i < 15; i++) {
+      cache.get(5000);
+    }
+    cache.put(5000, "5000");
+    assertEquals("5000", cache.get(5000));
+    assertEquals(admissions + 1, cache.getStats().getCumulativeAdmissions());
+  }
+
+  public void testNonLivePutsAreAdmitted() {
+    ConcurrentTinyLFUCache<Integer, String> cache = new ConcurrentTinyLFUCache<Integer, String>(32, 32, 1);
+    cache.setAlive(false);
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, "" + i);
+    }
+    assertEquals(32, cache.size());
+    assertEquals(0, cache.getStats().getCumulativeRejections());
+    assertEquals(68, cache.getStats().getCumulativeEvictions());
+    // least recently used entries were evicted
+    assertEquals("99", cache.get(99));
+    assertNull(cache.get(0));
+  }
+
+  public void testLatestAccessedItems() {
+    ConcurrentTinyLFUCache<Integer, String> cache = new ConcurrentTinyLFUCache<Integer, String>(100, 10, 4);
+    for (int i = 0; i < 50; i++) {
+      cache.put(i + 1, "" + (i + 1));
+    }
+    cache.get(1);
+    cache.get(3);
+    Map<Integer, String> m = cache.getLatestAccessedItems(4);
+    assertEquals(4, m.size());
+    assertNotNull(m.get(1));
+    assertNotNull(m.get(3));
+    assertNotNull(m.get(50));
+    assertNotNull(m.get(49));
+    assertEquals(Integer.valueOf(3), m.keySet().iterator().next());
+
+    assertTrue(cache.getLatestAccessedItems(0).isEmpty());
+  }
+
+  public void testSegmentCapacitiesAddUpToMaxSize() {
+    // 70 entries over 4 segments
+    ConcurrentTinyLFUCache<Integer, String> cache = new ConcurrentTinyLFUCache<Integer, String>(70, 70, 4);
+    assertEquals(4, cache.getNumSegments());
+    cache.setAlive(false);
+    for (int i = 0; i < 10000; i++) {
+      cache.put(i, "" + i);
+    }
+    assertEquals(70, cache.size());
+    // all entries are returned, whatever their access times
+    assertEquals(70, cache.getLatestAccessedItems(100).size());
+    assertEquals(70, cache.getLatestAccessedItems(70).size());
+    assertEquals(10, cache.getLatestAccessedItems(10).size());
+  }
+
+  // enough randomness to exercise concurrent gets, puts and evictions
+  public void testRandom() throws Exception {
+    final int sz = random().nextInt(1000) + 5;
+    final int keyrange = random().nextInt(sz * 3) + 1;
+    final ConcurrentTinyLFUCache<Integer, String> cache =
+        new ConcurrentTinyLFUCache<Integer, String>(sz, sz, random().nextInt(32) + 1);
+    Thread[] threads = new Thread[1 + random().nextInt(4)];
+    final long seed = random().nextLong();
+    for (int t = 0; t < threads.length; t++) {
+      final int threadNum = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          java.util.Random r = new java.util.Random(seed + threadNum);
+          for (int i = 0; i < 10000; i++) {
+            Integer k = r.nextInt(keyrange);
+            if (cache.get(k) == null) {
+              cache.put(k, "" + k);
+            }
+          }
+        }
+      };
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(cache.size() <= sz);
+    ConcurrentTinyLFUCache.Stats stats = cache.getStats();
+    assertEquals(threads.length * 10000L, stats.getCumulativeLookups());
+  }
+
+  private CacheRegenerator createCodeRegenerator() {
+    CacheRegenerator cr = new CacheRegenerator() {
+        public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
+                                      SolrCache oldCache, Object oldKey, Object oldVal) {
+          newCache.put(oldKey, oldVal);
+          return true;
+        }
+      };
+    return cr;
+  }
+}
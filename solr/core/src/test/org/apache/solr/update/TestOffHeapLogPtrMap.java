@@ -0,0 +1,88 @@
+package org.apache.solr.update;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestOffHeapLogPtrMap extends LuceneTestCase {
+
+  public void testAgainstHashMap() {
+    OffHeapLogPtrMap map = new OffHeapLogPtrMap();
+    final int iters = atLeast(3);
+    for (int iter = 0; iter < iters; iter++) {
+      Map<BytesRef,Long> expected = new HashMap<BytesRef,Long>();
+      final int numIds = atLeast(1000);
+      final int numPuts = atLeast(5000);
+      for (int i = 0; i < numPuts; i++) {
+        String id = _TestUtil.randomUnicodeString(random(), 10) + random().nextInt(numIds);
+        BytesRef key = new BytesRef(id);
+        if (random().nextBoolean()) {
+          // keys don't have to start at offset 0
+          BytesRef padded = new BytesRef("xx" + id);
+          padded.offset = 2;
+          padded.length -= 2;
+          key = padded;
+        }
+        long pointer = random().nextLong();
+        map.put(key, new UpdateLog.LogPtr(pointer, pointer + 1));
+        expected.put(new BytesRef(id), pointer);
+      }
+
+      assertEquals(expected.size(), map.size());
+      for (Map.Entry<BytesRef,Long> entry : expected.entrySet()) {
+        UpdateLog.LogPtr ptr = map.get(entry.getKey());
+        assertNotNull(ptr);
+        assertEquals(entry.getValue().longValue(), ptr.pointer);
+        assertEquals(entry.getValue().longValue() + 1, ptr.version);
+      }
+      assertNull(map.get(new BytesRef("missing")));
+
+      map.clear();
+      assertEquals(0, map.size());
+      for (BytesRef id : expected.keySet()) {
+        assertNull(map.get(id));
+      }
+    }
+  }
+
+  public void testClearKeepsSmallBuffers() {
+    OffHeapLogPtrMap map = new OffHeapLogPtrMap();
+    final long initialBytes = map.ramBytesUsed();
+    map.put(new BytesRef("a"), new UpdateLog.LogPtr(1, 2));
+    map.clear();
+    assertEquals(initialBytes, map.ramBytesUsed());
+    assertNull(map.get(new BytesRef("a")));
+
+    final int numIds = atLeast(5000);
+    for (int i = 0; i < numIds; i++) {
+      map.put(new BytesRef("id" + i), new UpdateLog.LogPtr(i, i));
+    }
+    assertTrue(map.ramBytesUsed() > initialBytes);
+    map.clear();
+    // grown buffers are freed and replaced by initial ones
+    assertEquals(initialBytes, map.ramBytesUsed());
+    map.put(new BytesRef("b"), new UpdateLog.LogPtr(3, 4));
+    assertEquals(3, map.get(new BytesRef("b")).pointer);
+    map.close();
+  }
+}
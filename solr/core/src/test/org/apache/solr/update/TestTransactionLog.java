@@ -0,0 +1,185 @@
+package org.apache.solr.update;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+import org.apache.solr.common.SolrInputDocument;
+
+public class TestTransactionLog extends LuceneTestCase {
+
+  private static AddUpdateCommand newAdd(String id, long version) {
+    AddUpdateCommand cmd = new AddUpdateCommand(null);
+    cmd.solrDoc = new SolrInputDocument();
+    cmd.solrDoc.addField("id", id);
+    cmd.setVersion(version);
+    return cmd;
+  }
+
+  private static File newTlogFile(String name) {
+    File dir = _TestUtil.getTempDir(name);
+    dir.mkdirs();
+    return new File(dir, "tlog.0000000000000000001");
+  }
+
+  public void testSyncIsSkippedWhenAlreadyDurable() throws Exception {
+    TransactionLog tlog = new TransactionLog(newTlogFile("tlog_sync"), null);
+    try {
+      tlog.write(newAdd("1", 1), 0);
+      tlog.finish(UpdateLog.SyncLevel.FSYNC);
+      assertEquals(1, tlog.numSyncs.get());
+
+      // nothing new was written
+      tlog.finish(UpdateLog.SyncLevel.FSYNC);
+      assertEquals(1, tlog.numSyncs.get());
+
+      // FLUSH never syncs
+      tlog.write(newAdd("2", 2), 0);
+      tlog.finish(UpdateLog.SyncLevel.FLUSH);
+      assertEquals(1, tlog.numSyncs.get());
+      tlog.finish(UpdateLog.SyncLevel.FSYNC);
+      assertEquals(2, tlog.numSyncs.get());
+
+      // records written after a rollback must be synced again, even if
+      // the log ends up at a position that was synced before
+      long pos = tlog.snapshot();
+      tlog.write(newAdd("3", 3), 0);
+      tlog.finish(UpdateLog.SyncLevel.FSYNC);
+      assertEquals(3, tlog.numSyncs.get());
+      tlog.rollback(pos);
+      tlog.write(newAdd("4", 4), 0);
+      tlog.finish(UpdateLog.SyncLevel.FSYNC);
+      assertEquals(4, tlog.numSyncs.get());
+    } finally {
+      tlog.decref();
+    }
+  }
+
+  public void testConcurrentGroupCommit() throws Exception {
+    final TransactionLog tlog = new TransactionLog(newTlogFile("tlog_group"), null);
+    final int numThreads = 2 + random().nextInt(4);
+    final int numAddsPerThread = atLeast(50);
+    final AtomicInteger version = new AtomicInteger();
+    final AtomicInteger numFinishes = new AtomicInteger();
+    Thread[] threads = new Thread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < numAddsPerThread; j++) {
+            int v = version.incrementAndGet();
+            tlog.write(newAdd(Integer.toString(v), v), 0);
+            tlog.finish(UpdateLog.SyncLevel.FSYNC);
+            numFinishes.incrementAndGet();
+          }
+        }
+      };
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    try {
+      assertEquals(numThreads * numAddsPerThread, numFinishes.get());
+      assertTrue(tlog.numSyncs.get() > 0);
+      assertTrue(tlog.numSyncs.get() <= numFinishes.get());
+
+      // every record made it to the log
+      TransactionLog.LogReader reader = tlog.getReader(0);
+      int numRecords = 0;
+      try {
+        Object o;
+        while ((o = reader.next()) != null) {
+          List entry = (List) o;
+          assertEquals(UpdateLog.ADD, ((Integer) entry.get(0)) & UpdateLog.OPERATION_MASK);
+          numRecords++;
+        }
+      } finally {
+        reader.close();
+      }
+      assertEquals(numThreads * numAddsPerThread, numRecords);
+    } finally {
+      tlog.decref();
+    }
+  }
+
+  public void testReopenedLogIsReadFromMappedFile() throws Exception {
+    File file = newTlogFile("tlog_reopen");
+    TransactionLog tlog = new TransactionLog(file, null);
+    final int numAdds = atLeast(100);
+    List<Long> positions = new ArrayList<Long>();
+    for (int i = 0; i < numAdds; i++) {
+      positions.add(tlog.write(newAdd(Integer.toString(i), i + 1), 0));
+    }
+    tlog.finish(UpdateLog.SyncLevel.FLUSH);
+    tlog.deleteOnClose = false;
+    tlog.decref();
+
+    tlog = new TransactionLog(file, null, true);
+    try {
+      // random access, as done by real-time get
+      for (int i = 0; i < numAdds; i++) {
+        int idx = random().nextInt(numAdds);
+        List entry = (List) tlog.lookup(positions.get(idx));
+        assertEquals(Long.valueOf(idx + 1), entry.get(1));
+      }
+
+      // forward, as done by replay
+      TransactionLog.LogReader reader = tlog.getReader(0);
+      try {
+        for (int i = 0; i < numAdds; i++) {
+          List entry = (List) reader.next();
+          assertEquals(Long.valueOf(i + 1), entry.get(1));
+        }
+        assertNull(reader.next());
+      } finally {
+        reader.close();
+      }
+
+      // records appended to a reopened log are read from the channel
+      CommitUpdateCommand commit = new CommitUpdateCommand(null, false);
+      commit.setVersion(numAdds + 1);
+      long commitPos = tlog.writeCommit(commit, 0);
+      assertTrue(tlog.endsWithCommit());
+      List entry = (List) tlog.lookup(commitPos);
+      assertEquals(UpdateLog.COMMIT, ((Integer) entry.get(0)) & UpdateLog.OPERATION_MASK);
+
+      // backward, as done when getting recent updates
+      TransactionLog.ReverseReader reverseReader = tlog.getReverseReader();
+      try {
+        assertEquals(Long.valueOf(numAdds + 1), ((List) reverseReader.next()).get(1));
+        for (int i = numAdds - 1; i >= 0; i--) {
+          assertEquals(Long.valueOf(i + 1), ((List) reverseReader.next()).get(1));
+        }
+        assertNull(reverseReader.next());
+      } finally {
+        reverseReader.close();
+      }
+    } finally {
+      tlog.decref();
+    }
+  }
+}